@@ -0,0 +1,311 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.BoundedExecutor;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+
+/**
+ * Calculates the checksums of files that are already in storage - such as the
+ * files transferred by Globus, when they are added to a dataset - on the
+ * container's threads, shared by the whole server.
+ * <p>
+ * At most {@code dataverse.files.checksums.threads} files are read at a time
+ * (see {@link BoundedExecutor}). At most
+ * {@code dataverse.files.<id>.checksum-concurrency} files of any one store are
+ * read at the same time, and at most {@code queue-size} files wait for a
+ * thread; a caller submitting more files than that waits until there is room.
+ * Where a store has the checksum of a file already (see
+ * {@link StorageIO#retrieveChecksumFromMedia}), it is used instead of reading
+ * the file, unless {@code dataverse.files.<id>.stored-checksums} is false.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ChecksumServiceBean {
+    private static final Logger logger = Logger.getLogger(ChecksumServiceBean.class.getCanonicalName());
+
+    /**
+     * The size of the buffer each worker reads the files into.
+     */
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The number of files between two progress messages, when checksumming a
+     * list of files.
+     */
+    static final int PROGRESS_INTERVAL = 1000;
+
+    /**
+     * The number of times a file is tried, when reading it fails with
+     * something other than an IOException.
+     */
+    static final int MAX_ATTEMPTS = 3;
+
+    private static final ThreadLocal<ByteBuffer> directBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+    private static final ThreadLocal<byte[]> heapBuffer = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    @Resource
+    ManagedExecutorService managedExecutor;
+
+    private BoundedExecutor executor;
+    private int threads;
+    // The files being checksummed or waiting for a thread:
+    private Semaphore queueSlots;
+    // The files of each store being checksummed or waiting, by store id:
+    private final Map<String, Semaphore> storePermits = new ConcurrentHashMap<>();
+    private final AtomicLong calculatedCount = new AtomicLong();
+    private final AtomicLong storedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * The checksum of a file.
+     *
+     * @param storageLocation the full storage location of the file, as
+     * submitted
+     * @param value the checksum, or null if it could not be calculated (for
+     * example, because the file is not there, or the store is not accessible
+     * to Dataverse)
+     * @param stored whether the checksum was taken from the store, rather
+     * than calculated
+     */
+    public record Checksum(String storageLocation, String value, boolean stored) {
+    }
+
+    @PostConstruct
+    public void init() {
+        threads = Math.max(1, JvmSettings.CHECKSUMS_THREADS.lookupOptional(Integer.class).orElse(8));
+        int queueSize = Math.max(0, JvmSettings.CHECKSUMS_QUEUE_SIZE.lookupOptional(Integer.class).orElse(1000));
+
+        // The queue itself is not bounded; the semaphore is, so that the
+        // callers wait for room rather than having their files rejected
+        executor = new BoundedExecutor(managedExecutor, threads);
+        queueSlots = new Semaphore(threads + queueSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues a file to have its checksum calculated; waits, if the queue is
+     * full, or if as many files of the same store as it may read at a time are
+     * already queued.
+     *
+     * @param storageLocation the full storage location of the file, including
+     * the store id (e.g. {@code s3://bucket/10.5072/FK2/ABCDEF/18b39722140-50eb7d3c5ece})
+     * @param checksumType the type of checksum to calculate
+     * @return the checksum, once it is available. The future always completes
+     * normally; a checksum that could not be calculated has a null value.
+     * @throws InterruptedException if interrupted while waiting for room in
+     * the queue
+     */
+    public CompletableFuture<Checksum> calculateChecksum(String storageLocation, ChecksumType checksumType) throws InterruptedException {
+        String driverId = DataAccess.getDriverIdAndStorageLocation(storageLocation)[0];
+        Semaphore permits = storePermits.computeIfAbsent(driverId,
+                id -> new Semaphore(Math.max(1, JvmSettings.CHECKSUM_CONCURRENCY.lookupOptional(Integer.class, id).orElse(threads))));
+
+        permits.acquire();
+        try {
+            queueSlots.acquire();
+        } catch (InterruptedException ie) {
+            permits.release();
+            throw ie;
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> calculate(storageLocation, driverId, checksumType), executor)
+                    .whenComplete((checksum, ex) -> {
+                        queueSlots.release();
+                        permits.release();
+                    });
+        } catch (RejectedExecutionException ree) {
+            queueSlots.release();
+            permits.release();
+            throw ree;
+        }
+    }
+
+    /**
+     * Calculates the checksums of a list of files, in parallel, logging the
+     * progress as it goes.
+     *
+     * @param storageLocations the full storage locations of the files
+     * @param checksumType the type of checksum to calculate
+     * @param progressLogger the logger for the progress messages; the class
+     * logger if null
+     * @return the checksums, in the same order as the storage locations
+     * @throws InterruptedException if interrupted while waiting for room in
+     * the queue
+     */
+    public List<Checksum> calculateChecksums(List<String> storageLocations, ChecksumType checksumType, Logger progressLogger) throws InterruptedException {
+        Logger myLogger = progressLogger != null ? progressLogger : logger;
+        int total = storageLocations.size();
+        AtomicInteger doneCount = new AtomicInteger();
+        AtomicInteger storedInBatch = new AtomicInteger();
+        AtomicInteger failedInBatch = new AtomicInteger();
+
+        List<CompletableFuture<Checksum>> futures = new ArrayList<>(total);
+        for (String storageLocation : storageLocations) {
+            futures.add(calculateChecksum(storageLocation, checksumType).whenComplete((checksum, ex) -> {
+                if (checksum.value() == null) {
+                    failedInBatch.incrementAndGet();
+                } else if (checksum.stored()) {
+                    storedInBatch.incrementAndGet();
+                }
+                int done = doneCount.incrementAndGet();
+                if (done % PROGRESS_INTERVAL == 0 && done < total) {
+                    myLogger.info("Checksums calculated for " + done + " of " + total + " files");
+                }
+            }));
+        }
+
+        List<Checksum> checksums = new ArrayList<>(total);
+        for (CompletableFuture<Checksum> future : futures) {
+            checksums.add(future.join());
+        }
+        myLogger.info("Checksums calculated for " + total + " files (" + storedInBatch.get()
+                + " taken from the storage, " + failedInBatch.get() + " not available)");
+        return checksums;
+    }
+
+    private Checksum calculate(String storageLocation, String driverId, ChecksumType checksumType) {
+        if (!StorageIO.isDataverseAccessible(driverId)) {
+            failedCount.incrementAndGet();
+            return new Checksum(storageLocation, null, false);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                StorageIO<DvObject> storageIO = DataAccess.getDirectStorageIO(storageLocation);
+
+                if (JvmSettings.STORED_CHECKSUMS.lookupOptional(Boolean.class, driverId).orElse(true)) {
+                    try {
+                        String storedChecksum = storageIO.retrieveChecksumFromMedia(checksumType);
+                        if (storedChecksum != null) {
+                            storedCount.incrementAndGet();
+                            return new Checksum(storageLocation, storedChecksum, true);
+                        }
+                    } catch (IOException ioex) {
+                        logger.fine("Could not retrieve the stored checksum of " + storageLocation + ": " + ioex.getMessage());
+                    }
+                }
+
+                String checksum = digest(storageIO, checksumType);
+                calculatedCount.incrementAndGet();
+                return new Checksum(storageLocation, checksum, false);
+            } catch (IOException ioex) {
+                // Not there, or not readable; trying again would not help
+                logger.fine("Could not read " + storageLocation + ": " + ioex.getMessage());
+                failedCount.incrementAndGet();
+                return new Checksum(storageLocation, null, false);
+            } catch (Exception ex) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    logger.log(Level.WARNING, "Could not calculate the checksum of " + storageLocation, ex);
+                    failedCount.incrementAndGet();
+                    return new Checksum(storageLocation, null, false);
+                }
+                logger.fine("Could not calculate the checksum of " + storageLocation + ", trying again: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads a file and calculates its checksum. Local files are read into a
+     * direct buffer, through a FileChannel; the others through their input
+     * streams. The buffers are reused by each thread.
+     */
+    static String digest(StorageIO<?> storageIO, ChecksumType checksumType) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(checksumType.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (storageIO.isLocalFile()) {
+            ByteBuffer buffer = directBuffer.get();
+            buffer.clear();
+            try (FileChannel channel = FileChannel.open(storageIO.getFileSystemPath(), StandardOpenOption.READ)) {
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    md.update(buffer);
+                    buffer.clear();
+                }
+            }
+        } else {
+            byte[] buffer = heapBuffer.get();
+            try (InputStream in = storageIO.getInputStream()) {
+                if (in == null) {
+                    throw new IOException("No input stream");
+                }
+                int nread;
+                while ((nread = in.read(buffer)) != -1) {
+                    md.update(buffer, 0, nread);
+                }
+            }
+        }
+        return FileUtil.checksumDigestToString(md.digest());
+    }
+
+    @Gauge(name = "checksum_queue_size", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of files waiting for their checksums to be calculated")
+    public int getQueueSize() {
+        return executor == null ? 0 : executor.getQueueSize();
+    }
+
+    @Gauge(name = "checksum_active", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of files whose checksums are being calculated")
+    public int getActiveCount() {
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    @Gauge(name = "checksum_calculated", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of files read to calculate their checksums")
+    public long getCalculatedCount() {
+        return calculatedCount.get();
+    }
+
+    @Gauge(name = "checksum_stored", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of files whose checksums were taken from the storage")
+    public long getStoredCount() {
+        return storedCount.get();
+    }
+
+    @Gauge(name = "checksum_failed", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of files whose checksums could not be calculated")
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+}
@@ -0,0 +1,184 @@
+package edu.harvard.iq.dataverse;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.logging.Logger;
+import jakarta.ejb.EJB;
+import jakarta.ejb.EJBException;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Keeps the rendered citations of the released dataset versions, in the
+ * datasetversioncitation table, so that they are not put together again from
+ * the metadata of the version (authors, producers, dates, PIDs...) every time
+ * a page is displayed, a dataset is indexed or a citation is downloaded.
+ * <p>
+ * A citation is stored along with the last update time of the version, and
+ * with what it depends on outside of the version: the collection the dataset
+ * is in, and the fields that collection adds to the citations of its datasets
+ * (see {@link #getContext(DatasetVersion)}). It is only used while the
+ * version has not been updated since, and the dataset is still in the same
+ * collection, with the same citation fields. The citations of a dataset are
+ * rendered when it is published, and dropped when a version is curated or
+ * deaccessioned, the dataset is moved, or its citation date is changed.
+ * The citations of draft versions, of harvested datasets, and anonymized
+ * citations, are always rendered on the fly.
+ * <p>
+ * The lookups run in the caller's transaction, if there is one; the writes
+ * in a transaction of their own, so that a citation that cannot be stored
+ * never affects the caller's transaction.
+ */
+@Stateless
+public class CitationCacheServiceBean {
+
+    private static final Logger logger = Logger.getLogger(CitationCacheServiceBean.class.getCanonicalName());
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    private EntityManager em;
+
+    // this bean, through the container, for the writes that need a
+    // transaction of their own
+    @EJB
+    CitationCacheServiceBean self;
+
+    public enum Format {
+        TEXT, HTML, BIBTEX, RIS, ENDNOTE;
+
+        /**
+         * @return the format as recorded in the database
+         */
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * @return the citation of the version in the given format, from the
+     * cache if it is there and up to date
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public String getCitation(DatasetVersion version, Format format) {
+        if (!isCacheable(version)) {
+            return render(new DataCitation(version), format);
+        }
+        List<?> cached = em.createNativeQuery("SELECT citation FROM datasetversioncitation"
+                + " WHERE datasetversion_id = ?1 AND format = ?2 AND lastupdatetime = ?3 AND context = ?4")
+                .setParameter(1, version.getId())
+                .setParameter(2, format.label())
+                .setParameter(3, new Timestamp(version.getLastUpdateTime().getTime()))
+                .setParameter(4, getContext(version))
+                .getResultList();
+        if (!cached.isEmpty()) {
+            return (String) cached.get(0);
+        }
+        String citation = render(new DataCitation(version), format);
+        try {
+            self.storeCitation(version, format, citation);
+        } catch (EJBException e) {
+            logger.fine("Could not store the citation of version " + version.getId() + ": " + e.getMessage());
+        }
+        return citation;
+    }
+
+    /**
+     * Stores a citation rendered by {@link #getCitation}, replacing any older
+     * one.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void storeCitation(DatasetVersion version, Format format, String citation) {
+        store(version, format, citation);
+    }
+
+    /**
+     * Renders and stores the citations of the version in all the formats,
+     * replacing any older ones; called when the version is published.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void cacheCitations(DatasetVersion version) {
+        if (!isCacheable(version)) {
+            return;
+        }
+        DataCitation dataCitation = new DataCitation(version);
+        for (Format format : Format.values()) {
+            store(version, format, render(dataCitation, format));
+        }
+    }
+
+    /**
+     * Drops the citations of all the versions of the dataset.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void invalidate(Dataset dataset) {
+        em.createNativeQuery("DELETE FROM datasetversioncitation"
+                + " WHERE datasetversion_id IN (SELECT id FROM datasetversion WHERE dataset_id = ?1)")
+                .setParameter(1, dataset.getId())
+                .executeUpdate();
+    }
+
+    /**
+     * Drops all the citations, for when something they all depend on has
+     * changed, such as the name of the installation.
+     *
+     * @return the number of citations dropped
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int clear() {
+        int deleted = em.createNativeQuery("DELETE FROM datasetversioncitation").executeUpdate();
+        logger.info("Cleared " + deleted + " cached citations");
+        return deleted;
+    }
+
+    private void store(DatasetVersion version, Format format, String citation) {
+        // The version may not be committed yet, when this is called from the
+        // transaction creating it; it is then simply not stored
+        em.createNativeQuery("INSERT INTO datasetversioncitation (datasetversion_id, format, lastupdatetime, context, citation)"
+                + " SELECT ?1, ?2, ?3, ?4, ?5 WHERE EXISTS (SELECT 1 FROM datasetversion WHERE id = ?1)"
+                + " ON CONFLICT (datasetversion_id, format)"
+                + " DO UPDATE SET lastupdatetime = EXCLUDED.lastupdatetime, context = EXCLUDED.context, citation = EXCLUDED.citation")
+                .setParameter(1, version.getId())
+                .setParameter(2, format.label())
+                .setParameter(3, new Timestamp(version.getLastUpdateTime().getTime()))
+                .setParameter(4, getContext(version))
+                .setParameter(5, citation)
+                .executeUpdate();
+    }
+
+    /**
+     * @return what the citations of the version depend on, besides the
+     * version itself: the id of the collection the dataset is in, followed by
+     * the ids of the fields that collection adds to the citations of its
+     * datasets, in order (e.g. {@code "12:5,31"})
+     */
+    static String getContext(DatasetVersion version) {
+        Dataverse owner = version.getDataset().getOwner();
+        if (owner == null) {
+            return "";
+        }
+        StringBuilder context = new StringBuilder().append(owner.getId()).append(':');
+        String separator = "";
+        for (DatasetFieldType fieldType : owner.getCitationDatasetFieldTypes()) {
+            context.append(separator).append(fieldType.getId());
+            separator = ",";
+        }
+        return context.toString();
+    }
+
+    static boolean isCacheable(DatasetVersion version) {
+        return version.getId() != null && version.isReleased() && version.getLastUpdateTime() != null
+                && !version.getDataset().isHarvested();
+    }
+
+    static String render(DataCitation dataCitation, Format format) {
+        return switch (format) {
+            case TEXT -> dataCitation.toString(false);
+            case HTML -> dataCitation.toString(true);
+            case BIBTEX -> dataCitation.toBibtexString();
+            case RIS -> dataCitation.toRISString();
+            case ENDNOTE -> dataCitation.toEndNoteString();
+        };
+    }
+}
@@ -18,6 +18,7 @@ import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -30,6 +31,7 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
@@ -70,6 +72,9 @@ public class DataFileServiceBean implements java.io.Serializable {
     
     @EJB
     StorageUseServiceBean storageUseService; 
+
+    @EJB
+    ThumbnailGenerationQueue thumbnailGenerationQueue;
     
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
@@ -402,26 +407,115 @@ public class DataFileServiceBean implements java.io.Serializable {
     }
 
     public DataFile findCheapAndEasy(Long id) {
-        DataFile dataFile;
+        if (id == null) {
+            return null;
+        }
+        return findCheapAndEasy(List.of(id)).get(id);
+    }
 
-        Object[] result;
+    /**
+     * Batch version of {@link #findCheapAndEasy(Long)}: looks up all the files
+     * with a fixed number of queries (one for the files, plus one for the data
+     * tables and one for the tags of those that are tabular), however many
+     * there are. As with the single file version, the DataFiles returned are
+     * not managed entities, and are only populated with what is needed to
+     * display them in search cards and the like.
+     *
+     * @param ids the ids of the files
+     * @return the files found, by id
+     */
+    public Map<Long, DataFile> findCheapAndEasy(Collection<Long> ids) {
+        Map<Long, DataFile> dataFiles = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return dataFiles;
+        }
+        String idList = joinIds(ids);
 
+        List<Object[]> results;
         try {
-            result = (Object[]) em.createNativeQuery("SELECT t0.ID, t0.CREATEDATE, t0.INDEXTIME, t0.MODIFICATIONTIME, t0.PERMISSIONINDEXTIME, t0.PERMISSIONMODIFICATIONTIME, t0.PUBLICATIONDATE, t0.CREATOR_ID, t0.RELEASEUSER_ID, t0.PREVIEWIMAGEAVAILABLE, t1.CONTENTTYPE, t0.STORAGEIDENTIFIER, t1.FILESIZE, t1.INGESTSTATUS, t1.CHECKSUMVALUE, t1.RESTRICTED, t3.ID, t2.AUTHORITY, t2.IDENTIFIER, t1.CHECKSUMTYPE, t1.PREVIOUSDATAFILEID, t1.ROOTDATAFILEID, t0.AUTHORITY, T0.PROTOCOL, T0.IDENTIFIER, t2.PROTOCOL FROM DVOBJECT t0, DATAFILE t1, DVOBJECT t2, DATASET t3 WHERE ((t0.ID = " + id + ") AND (t0.OWNER_ID = t2.ID) AND (t2.ID = t3.ID) AND (t1.ID = t0.ID))").getSingleResult();
+            results = em.createNativeQuery("SELECT t0.ID, t0.CREATEDATE, t0.INDEXTIME, t0.MODIFICATIONTIME, t0.PERMISSIONINDEXTIME, t0.PERMISSIONMODIFICATIONTIME, t0.PUBLICATIONDATE, t0.CREATOR_ID, t0.RELEASEUSER_ID, t0.PREVIEWIMAGEAVAILABLE, t1.CONTENTTYPE, t0.STORAGEIDENTIFIER, t1.FILESIZE, t1.INGESTSTATUS, t1.CHECKSUMVALUE, t1.RESTRICTED, t3.ID, t2.AUTHORITY, t2.IDENTIFIER, t1.CHECKSUMTYPE, t1.PREVIOUSDATAFILEID, t1.ROOTDATAFILEID, t0.AUTHORITY, T0.PROTOCOL, T0.IDENTIFIER, t2.PROTOCOL, t0.PREVIEWIMAGEFAIL FROM DVOBJECT t0, DATAFILE t1, DVOBJECT t2, DATASET t3 WHERE ((t0.ID IN (" + idList + ")) AND (t0.OWNER_ID = t2.ID) AND (t2.ID = t3.ID) AND (t1.ID = t0.ID))").getResultList();
         } catch (Exception ex) {
-            return null;
+            return dataFiles;
         }
 
-        if (result == null) {
-            return null;
+        List<Long> tabularIds = new ArrayList<>();
+        for (Object[] result : results) {
+            DataFile dataFile = cheapDataFile(result);
+            dataFiles.put(dataFile.getId(), dataFile);
+            // If content type indicates it's tabular data, we'll also need
+            // the data table and the tabular tags:
+            if (MIME_TYPE_TSV.equalsIgnoreCase(dataFile.getContentType()) || MIME_TYPE_TSV_ALT.equalsIgnoreCase(dataFile.getContentType())) {
+                tabularIds.add(dataFile.getId());
+            }
         }
 
-        Integer file_id = (Integer) result[0];
+        if (!tabularIds.isEmpty()) {
+            String tabularIdList = joinIds(tabularIds);
+            List<Object[]> dtResults;
+            try {
+                dtResults = em.createNativeQuery("SELECT ID, UNF, CASEQUANTITY, VARQUANTITY, ORIGINALFILEFORMAT, ORIGINALFILESIZE, DATAFILE_ID FROM dataTable WHERE DATAFILE_ID IN (" + tabularIdList + ")").getResultList();
+            } catch (Exception ex) {
+                dtResults = List.of();
+            }
+
+            Set<Long> filesWithDataTables = new HashSet<>();
+            for (Object[] dtResult : dtResults) {
+                DataFile dataFile = dataFiles.get(((Number) dtResult[6]).longValue());
+                if (dataFile == null || dataFile.getDataTable() != null) {
+                    continue;
+                }
+                DataTable dataTable = new DataTable(); 
+
+                dataTable.setId(((Number) dtResult[0]).longValue());
+            
+                dataTable.setUnf((String)dtResult[1]);
+            
+                dataTable.setCaseQuantity((Long)dtResult[2]);
+            
+                dataTable.setVarQuantity((Long)dtResult[3]);
+            
+                dataTable.setOriginalFileFormat((String)dtResult[4]);
+                
+                dataTable.setOriginalFileSize((Long)dtResult[5]);
+                
+                dataTable.setDataFile(dataFile);
+                dataFile.setDataTable(dataTable);
+                filesWithDataTables.add(dataFile.getId());
+            }
+
+            // tabular tags: 
+            if (!filesWithDataTables.isEmpty()) {
+                List<Object[]> tagResults;
+                try {
+                    tagResults = em.createNativeQuery("SELECT t.TYPE, t.DATAFILE_ID FROM DATAFILETAG t WHERE t.DATAFILE_ID IN (" + joinIds(filesWithDataTables) + ")").getResultList();
+                } catch (Exception ex) {
+                    logger.info("EXCEPTION looking up tags.");
+                    tagResults = null;
+                }
+
+                if (tagResults != null) {
+                    List<String> fileTagLabels = DataFileTag.listTags();
+
+                    for (Object[] tagResult : tagResults) {
+                        Integer tagId = (Integer)tagResult[0];
+                        DataFile dataFile = dataFiles.get(((Number) tagResult[1]).longValue());
+                        DataFileTag tag = new DataFileTag();
+                        tag.setTypeByLabel(fileTagLabels.get(tagId));
+                        tag.setDataFile(dataFile);
+                        dataFile.addTag(tag);
+                    }
+                }
+            }
+        }
+        
+        return dataFiles;
+    }
 
-        dataFile = new DataFile();
+    private DataFile cheapDataFile(Object[] result) {
+        DataFile dataFile = new DataFile();
         dataFile.setMergeable(false);
 
-        dataFile.setId(file_id.longValue());
+        dataFile.setId(((Number) result[0]).longValue());
 
         Timestamp createDate = (Timestamp) result[1];
         Timestamp indexTime = (Timestamp) result[2];
@@ -556,61 +650,17 @@ public class DataFileServiceBean implements java.io.Serializable {
         
         dataFile.setOwner(owner);
 
-        // If content type indicates it's tabular data, spend 2 extra queries 
-        // looking up the data table and tabular tags objects:
-        
-        if (MIME_TYPE_TSV.equalsIgnoreCase(contentType) || MIME_TYPE_TSV_ALT.equalsIgnoreCase(contentType)) {
-            Object[] dtResult;
-            try {
-                dtResult = (Object[]) em.createNativeQuery("SELECT ID, UNF, CASEQUANTITY, VARQUANTITY, ORIGINALFILEFORMAT, ORIGINALFILESIZE FROM dataTable WHERE DATAFILE_ID = " + id).getSingleResult();
-            } catch (Exception ex) {
-                dtResult = null;
-            }
-        
-            if (dtResult != null) {
-                DataTable dataTable = new DataTable(); 
-
-                dataTable.setId(((Integer) dtResult[0]).longValue());
-            
-                dataTable.setUnf((String)dtResult[1]);
-            
-                dataTable.setCaseQuantity((Long)dtResult[2]);
-            
-                dataTable.setVarQuantity((Long)dtResult[3]);
-            
-                dataTable.setOriginalFileFormat((String)dtResult[4]);
-                
-                dataTable.setOriginalFileSize((Long)dtResult[5]);
-                
-                dataTable.setDataFile(dataFile);
-                dataFile.setDataTable(dataTable);
-                
-                // tabular tags: 
-                
-                List<Object[]> tagResults;
-                try {
-                    tagResults = em.createNativeQuery("SELECT t.TYPE, t.DATAFILE_ID FROM DATAFILETAG t WHERE t.DATAFILE_ID = " + id).getResultList();
-                } catch (Exception ex) {
-                    logger.info("EXCEPTION looking up tags.");
-                    tagResults = null;
-                }
-                
-                if (tagResults != null) {
-                    List<String> fileTagLabels = DataFileTag.listTags();
-                    
-                    for (Object[] tagResult : tagResults) {
-                        Integer tagId = (Integer)tagResult[0];
-                        DataFileTag tag = new DataFileTag();
-                        tag.setTypeByLabel(fileTagLabels.get(tagId));
-                        tag.setDataFile(dataFile);
-                        dataFile.addTag(tag);
-                    }
-                }
-            }
+        Boolean previewImageFail = (Boolean) result[26];
+        if (previewImageFail != null) {
+            dataFile.setPreviewImageFail(previewImageFail);
         }
-        
+
         return dataFile;
     }
+
+    private static String joinIds(Collection<Long> ids) {
+        return ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
     
     private List<AuthenticatedUser> retrieveFileAccessRequesters(DataFile fileIn) {
         List<AuthenticatedUser> retList = new ArrayList<>();
@@ -836,6 +886,22 @@ public class DataFileServiceBean implements java.io.Serializable {
         return (retList.size() > 1);
     }
     
+    /**
+     * Records whether the thumbnails of the file could be generated, without
+     * merging the whole file (which may be modified by a request at the same
+     * time).
+     *
+     * @param fileId
+     * @param available
+     */
+    public void setPreviewImageStatus(Long fileId, boolean available) {
+        em.createNativeQuery("UPDATE dvobject SET previewimageavailable = ?1, previewimagefail = ?2 WHERE id = ?3")
+                .setParameter(1, available)
+                .setParameter(2, !available)
+                .setParameter(3, fileId)
+                .executeUpdate();
+    }
+
     public void deleteFromVersion( DatasetVersion d, DataFile f ) {
 		em.createNamedQuery("DataFile.removeFromDatasetVersion")
 			.setParameter("versionId", d.getId()).setParameter("fileId", f.getId())
@@ -967,6 +1033,10 @@ public class DataFileServiceBean implements java.io.Serializable {
             this.save(file);
             return true;
         }
+        // Not a failure, if it's being generated in the background:
+        if (thumbnailGenerationQueue.isPending(file.getId(), ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE)) {
+            return false;
+        }
         file.setPreviewImageFail(true);
         file.setPreviewImageAvailable(false);
         this.save(file);
@@ -1194,6 +1264,21 @@ public class DataFileServiceBean implements java.io.Serializable {
     public void populateFileSearchCard(SolrSearchResult solrSearchResult) {
         solrSearchResult.setEntity(this.findCheapAndEasy(solrSearchResult.getEntityId()));
     }
+
+    /**
+     * Same as {@link #populateFileSearchCard(SolrSearchResult)}, for a whole
+     * page of file search results at once.
+     */
+    public void populateFileSearchCards(List<SolrSearchResult> solrSearchResults) {
+        Set<Long> ids = new HashSet<>();
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            ids.add(solrSearchResult.getEntityId());
+        }
+        Map<Long, DataFile> dataFiles = findCheapAndEasy(ids);
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            solrSearchResult.setEntity(dataFiles.get(solrSearchResult.getEntityId()));
+        }
+    }
     
     public boolean hasBeenDeleted(DataFile df){
         Dataset dataset = df.getOwner();
@@ -12,14 +12,24 @@ import java.text.MessageFormat;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Logger;
 
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Named;
 import jakarta.json.Json;
@@ -51,6 +61,7 @@ import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 
 /**
@@ -69,6 +80,9 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
     @EJB
     SettingsServiceBean settingsService;
 
+    @Resource
+    ManagedExecutorService managedExecutor;
+
     private static final String NAME_QUERY = "SELECT dsfType from DatasetFieldType dsfType where dsfType.name= :fieldName";
     
     /*
@@ -91,6 +105,26 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
     //The hash of the existing CVocConf setting. Used to determine when the setting has changed and it needs to be re-parsed to recreate the cvocMaps
     String oldHash = null;
 
+    //The parsed values of the terms in the ExternalVocabularyValue table, shared by all the bean instances
+    private static ExternalVocabularyValueCache cvocValueCache = null;
+
+    //The number of new terms being retrieved from the external services at once (on the managed executor), and the number of retrievals each service (host) may have going at once
+    private static Semaphore cvocRetrievalSlots = null;
+    private static final Map<String, Semaphore> cvocRetrievalPermits = new ConcurrentHashMap<>();
+
+    //Number of term URIs looked up in one query when preloading
+    private static final int CVOC_PRELOAD_BATCH_SIZE = 1000;
+
+    /**
+     * A term to retrieve from an external vocabulary service.
+     *
+     * @param term - the term uri
+     * @param retrievalUri - the url to retrieve it from
+     * @param cvocEntry - the configuration for the DatasetFieldType the term is used in
+     */
+    record ExternalTermRetrieval(String term, String retrievalUri, JsonObject cvocEntry) {
+    }
+
     public List<DatasetFieldType> findAllAdvancedSearchFieldTypes() {
         return em.createQuery("select object(o) from DatasetFieldType as o where o.advancedSearchFieldType = true and o.title != '' order by o.id", DatasetFieldType.class).getResultList();
     }
@@ -358,6 +392,38 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
      * @param df - the primitive/parent compound field containing a newly saved value
      */
     public void registerExternalVocabValues(DatasetField df) {
+        Map<String, ExternalTermRetrieval> retrievals = new LinkedHashMap<>();
+        addExternalTermRetrievals(df, retrievals);
+        retrieveExternalTerms(retrievals.values());
+    }
+
+    /**
+     * Adds information about all the external vocabulary terms used in this version
+     * to the ExternalVocabularyValue table if it doesn't already exist.
+     * <p>
+     * The terms already in the table are looked up together, and the new ones are
+     * retrieved from the external services concurrently (a few at a time from any
+     * one service), so that saving a version with many terms doesn't take one
+     * round trip per term.
+     * @param version - the version containing newly saved values
+     */
+    public void registerExternalVocabValues(DatasetVersion version) {
+        Map<Long, JsonObject> cvocConf = getCVocConf(true);
+        if (cvocConf.isEmpty()) {
+            return;
+        }
+        preloadExternalVocabularyValues(version);
+        Map<String, ExternalTermRetrieval> retrievals = new LinkedHashMap<>();
+        for (DatasetField df : version.getFlatDatasetFields()) {
+            logger.fine("Found id: " + df.getDatasetFieldType().getId());
+            if (cvocConf.containsKey(df.getDatasetFieldType().getId())) {
+                addExternalTermRetrievals(df, retrievals);
+            }
+        }
+        retrieveExternalTerms(retrievals.values());
+    }
+
+    private void addExternalTermRetrievals(DatasetField df, Map<String, ExternalTermRetrieval> retrievals) {
         DatasetFieldType dft = df.getDatasetFieldType();
         logger.fine("Registering for field: " + dft.getName());
         JsonObject cvocEntry = getCVocConf(true).get(dft.getId());
@@ -367,7 +433,7 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
                 siblingsDatasetFields = df.getParentDatasetFieldCompoundValue().getChildDatasetFields();
             }
             for (DatasetFieldValue dfv : df.getDatasetFieldValues()) {
-                registerExternalTerm(cvocEntry, dfv.getValue(), siblingsDatasetFields);
+                addExternalTermRetrieval(getExternalTermRetrieval(cvocEntry, dfv.getValue(), siblingsDatasetFields), retrievals);
             }
         } else {
             if (df.getDatasetFieldType().isCompound()) {
@@ -376,7 +442,7 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
                     for (DatasetField cdf : cv.getChildDatasetFields()) {
                         logger.fine("Found term uri field type id: " + cdf.getDatasetFieldType().getId());
                         if (cdf.getDatasetFieldType().equals(termdft)) {
-                            registerExternalTerm(cvocEntry, cdf.getValue(), cv.getChildDatasetFields());
+                            addExternalTermRetrieval(getExternalTermRetrieval(cvocEntry, cdf.getValue(), cv.getChildDatasetFields()), retrievals);
                         }
                     }
                 }
@@ -384,6 +450,13 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
         }
     }
 
+    private void addExternalTermRetrieval(ExternalTermRetrieval retrieval, Map<String, ExternalTermRetrieval> retrievals) {
+        if (retrieval != null) {
+            //The same term may be used more than once; it only needs to be retrieved once
+            retrievals.putIfAbsent(retrieval.term(), retrieval);
+        }
+    }
+
     /**
      * Retrieves indexable strings from a cached externalvocabularyvalue entry filtered through retrieval-filtering configuration.
      * <p>
@@ -466,29 +539,112 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
     }
 
     /**
-     * Perform a query to retrieve a cached value from the externalvocabularvalue table
+     * Retrieve a cached value from the externalvocabularvalue table, from memory
+     * if it was used recently (see {@link #preloadExternalVocabularyValues(DatasetVersion)})
+     * or with a query otherwise
      * @param termUri
      * @return - the entry's value as a JsonObject
      */
     public JsonObject getExternalVocabularyValue(String termUri) {
+        ExternalVocabularyValueCache cache = getCVocValueCache();
+        ExternalVocabularyValueCache.Entry cached = cache.get(termUri);
+        if (cached != null) {
+            return cached.value();
+        }
+        JsonObject value = null;
         try {
             ExternalVocabularyValue evv = em
                     .createQuery("select object(o) from ExternalVocabularyValue as o where o.uri=:uri",
                             ExternalVocabularyValue.class)
                     .setParameter("uri", termUri).getSingleResult();
-            String valString = evv.getValue();
-            try (JsonReader jr = Json.createReader(new StringReader(valString))) {
-                return jr.readObject();
-            } catch (Exception e) {
-                logger.warning("Problem parsing external vocab value for uri: " + termUri + " : " + e.getMessage());
-            }
+            value = parseExternalVocabularyValue(termUri, evv.getValue());
         } catch (NoResultException nre) {
             //Could just be a plain text value
             logger.fine("No external vocab value for uri: " + termUri);
         }
+        cache.put(termUri, value);
+        return value;
+    }
+
+    private JsonObject parseExternalVocabularyValue(String termUri, String valString) {
+        if (valString == null) {
+            logger.fine("No value yet for uri: " + termUri);
+            return null;
+        }
+        try (JsonReader jr = Json.createReader(new StringReader(valString))) {
+            return jr.readObject();
+        } catch (Exception e) {
+            logger.warning("Problem parsing external vocab value for uri: " + termUri + " : " + e.getMessage());
+        }
         return null;
     }
 
+    /**
+     * Looks up the values of all the external vocabulary terms used in this version,
+     * in a few queries, so that getExternalVocabularyValue() and
+     * getIndexableStringsByTermUri() find them in memory rather than querying the
+     * table once per term.
+     * @param version
+     */
+    public void preloadExternalVocabularyValues(DatasetVersion version) {
+        Map<Long, JsonObject> cvocConf = getCVocConf(true);
+        if (cvocConf.isEmpty()) {
+            return;
+        }
+        Set<String> termUris = new LinkedHashSet<>();
+        for (DatasetField df : version.getFlatDatasetFields()) {
+            if (cvocConf.containsKey(df.getDatasetFieldType().getId())) {
+                termUris.addAll(df.getValues_nondisplay());
+            }
+        }
+        preloadExternalVocabularyValues(termUris);
+    }
+
+    /**
+     * Looks up the values of the given terms that aren't in memory yet, in batches.
+     * Terms that aren't in the table are remembered as not having a value.
+     * @param termUris
+     */
+    public void preloadExternalVocabularyValues(Collection<String> termUris) {
+        ExternalVocabularyValueCache cache = getCVocValueCache();
+        if (!cache.isEnabled()) {
+            return;
+        }
+        List<String> missing = new ArrayList<>();
+        for (String termUri : termUris) {
+            if (StringUtils.isNotBlank(termUri) && cache.get(termUri) == null) {
+                missing.add(termUri);
+            }
+        }
+        for (int i = 0; i < missing.size(); i += CVOC_PRELOAD_BATCH_SIZE) {
+            List<String> batch = missing.subList(i, Math.min(i + CVOC_PRELOAD_BATCH_SIZE, missing.size()));
+            Set<String> found = new HashSet<>();
+            List<ExternalVocabularyValue> evvs = em
+                    .createQuery("select object(o) from ExternalVocabularyValue as o where o.uri in :uris",
+                            ExternalVocabularyValue.class)
+                    .setParameter("uris", batch).getResultList();
+            for (ExternalVocabularyValue evv : evvs) {
+                cache.put(evv.getUri(), parseExternalVocabularyValue(evv.getUri(), evv.getValue()));
+                found.add(evv.getUri());
+            }
+            for (String termUri : batch) {
+                if (!found.contains(termUri)) {
+                    cache.put(termUri, null);
+                }
+            }
+        }
+        logger.fine("Preloaded " + missing.size() + " external vocab values");
+    }
+
+    private static synchronized ExternalVocabularyValueCache getCVocValueCache() {
+        if (cvocValueCache == null) {
+            int size = JvmSettings.CVOC_CACHE_SIZE.lookupOptional(Integer.class).orElse(10000);
+            int ttl = JvmSettings.CVOC_CACHE_TTL.lookupOptional(Integer.class).orElse(3600);
+            cvocValueCache = new ExternalVocabularyValueCache(Math.max(size, 0), ttl * 1000L);
+        }
+        return cvocValueCache;
+    }
+
     /**
      * Perform a call to the external service to retrieve information about the term URI
      *
@@ -497,12 +653,29 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
      * @param relatedDatasetFields  - siblings or childs of the term
      */
     public void registerExternalTerm(JsonObject cvocEntry, String term, List<DatasetField> relatedDatasetFields) {
+        ExternalTermRetrieval retrieval = getExternalTermRetrieval(cvocEntry, term, relatedDatasetFields);
+        if (retrieval != null) {
+            JsonObject value = retrieveExternalTerm(retrieval);
+            if (value != null) {
+                saveExternalTerm(term, value);
+            }
+        }
+    }
+
+    /**
+     * Determines whether the term needs to be retrieved from the external service,
+     * and from where.
+     *
+     * @return the retrieval to make, or null if the term is free text, already has a
+     * value, or can't be retrieved
+     */
+    private ExternalTermRetrieval getExternalTermRetrieval(JsonObject cvocEntry, String term, List<DatasetField> relatedDatasetFields) {
         String retrievalUri = cvocEntry.getString("retrieval-uri");
         String termUriFieldName = cvocEntry.getString("term-uri-field");
         String prefix = cvocEntry.getString("prefix", null);
         if(StringUtils.isBlank(term)) {
             logger.fine("Ignoring blank term");
-            return;
+            return null;
         }
 
         boolean isExternal = false;
@@ -518,92 +691,204 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
         }
         if (!isExternal) {
             logger.fine("Ignoring free text entry: " + term);
-            return;
+            return null;
         }
         logger.fine("Registering term: " + term);
         try {
             //Assure the term is in URI form - should be if the uriSpace entry was correct
             new URI(term);
-            ExternalVocabularyValue evv = null;
+        } catch (URISyntaxException e) {
+            logger.fine("Term is not a URI: " + term);
+            return null;
+        }
+        if (getExternalVocabularyValue(term) != null) {
+            return null;
+        }
+        String adjustedTerm = (prefix==null)? term: term.replace(prefix, "");
+
+        try {
+            retrievalUri = tryToReplaceRetrievalUriParam(retrievalUri, "0", adjustedTerm);
+            retrievalUri = tryToReplaceRetrievalUriParam(retrievalUri, termUriFieldName, adjustedTerm);
+            for (DatasetField f : relatedDatasetFields) {
+                retrievalUri = tryToReplaceRetrievalUriParam(retrievalUri, f.getDatasetFieldType().getName(), f.getValue());
+            }
+        } catch (InvalidParameterException e) {
+            logger.warning("InvalidParameterException in tryReplaceRetrievalUriParam : " + e.getMessage());
+            return null;
+        }
+        if (retrievalUri.contains("{")) {
+            logger.severe("Retrieval URI still contains unreplaced parameter :" + retrievalUri);
+            return null;
+        }
+        return new ExternalTermRetrieval(term, retrievalUri, cvocEntry);
+    }
+
+    /**
+     * Retrieves the terms, several at once, and saves their values. Only the calls
+     * to the external services are made from other threads; the values are saved
+     * from this one, in the current transaction.
+     */
+    private void retrieveExternalTerms(Collection<ExternalTermRetrieval> retrievals) {
+        if (retrievals.size() == 1) {
+            registerRetrievedTerm(retrievals.iterator().next(), null);
+            return;
+        }
+        Map<ExternalTermRetrieval, CompletableFuture<JsonObject>> values = new LinkedHashMap<>();
+        Semaphore slots = getCVocRetrievalSlots();
+        for (ExternalTermRetrieval retrieval : retrievals) {
+            CompletableFuture<JsonObject> value;
             try {
-                evv = em.createQuery("select object(o) from ExternalVocabularyValue as o where o.uri=:uri",
-                        ExternalVocabularyValue.class).setParameter("uri", term).getSingleResult();
-            } catch (NoResultException nre) {
-                evv = new ExternalVocabularyValue(term, null);
+                slots.acquire();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                values.put(retrieval, CompletableFuture.failedFuture(ie));
+                continue;
             }
-            if (evv.getValue() == null) {
-                String adjustedTerm = (prefix==null)? term: term.replace(prefix, "");
+            try {
+                value = CompletableFuture.supplyAsync(() -> retrieveExternalTerm(retrieval), managedExecutor);
+            } catch (RejectedExecutionException e) {
+                slots.release();
+                values.put(retrieval, CompletableFuture.failedFuture(e));
+                continue;
+            }
+            value.whenComplete((v, e) -> slots.release());
+            values.put(retrieval, value);
+        }
+        for (Map.Entry<ExternalTermRetrieval, CompletableFuture<JsonObject>> value : values.entrySet()) {
+            registerRetrievedTerm(value.getKey(), value.getValue());
+        }
+    }
 
-                try {
-                    retrievalUri = tryToReplaceRetrievalUriParam(retrievalUri, "0", adjustedTerm);
-                    retrievalUri = tryToReplaceRetrievalUriParam(retrievalUri, termUriFieldName, adjustedTerm);
-                    for (DatasetField f : relatedDatasetFields) {
-                        retrievalUri = tryToReplaceRetrievalUriParam(retrievalUri, f.getDatasetFieldType().getName(), f.getValue());
-                    }
-                } catch (InvalidParameterException e) {
-                    logger.warning("InvalidParameterException in tryReplaceRetrievalUriParam : " + e.getMessage());
-                    return;
-                }
-                if (retrievalUri.contains("{")) {
-                    logger.severe("Retrieval URI still contains unreplaced parameter :" + retrievalUri);
-                    return;
-                }
+    private void registerRetrievedTerm(ExternalTermRetrieval retrieval, CompletableFuture<JsonObject> future) {
+        JsonObject value;
+        try {
+            value = (future == null) ? retrieveExternalTerm(retrieval) : future.join();
+        } catch (RuntimeException e) {
+            Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+            logger.severe("Error retrieving: " + retrieval.retrievalUri() + " : " + cause.getMessage());
+            return;
+        }
+        if (value != null) {
+            saveExternalTerm(retrieval.term(), value);
+        }
+    }
 
-                logger.fine("Didn't find " + term + ", calling " + retrievalUri);
-                try (CloseableHttpClient httpClient = HttpClients.custom()
-                        .addInterceptorLast(new HttpResponseInterceptor() {
-                            @Override
-                            public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
-                                int statusCode = response.getStatusLine().getStatusCode();
-                                if (statusCode == 504) {
-                                    //Throwing an exception triggers the retry handler
-                                    throw new IOException("Retry due to 504 response");
-                                }
-                            }
-                        })
-                        //The retry handler will also do retries for network errors/other things that cause an IOException
-                        .setRetryHandler(new DefaultHttpRequestRetryHandler(3, false))
-                        .build()) {
-                    HttpGet httpGet = new HttpGet(retrievalUri);
-                    //application/json+ld is for backward compatibility
-                    httpGet.addHeader("Accept", "application/ld+json, application/json+ld, application/json");
-                    //Adding others custom HTTP request headers if exists
-                    final JsonObject headers = cvocEntry.getJsonObject("headers");
-                    if (headers != null) {
-                        final Set<String> headerKeys = headers.keySet();
-                        for (final String hKey: headerKeys) {
-                            httpGet.addHeader(hKey, headers.getString(hKey));
-                        }
-                    }
-                    HttpResponse response = httpClient.execute(httpGet);
-                    String data = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-                    int statusCode = response.getStatusLine().getStatusCode();
-                    if (statusCode == 200) {
-                        logger.fine("Returned data: " + data);
-                        try (JsonReader jsonReader = Json.createReader(new StringReader(data))) {
-                            String dataObj = filterResponse(cvocEntry, jsonReader.readObject(), term).toString();
-                            evv.setValue(dataObj);
-                            evv.setLastUpdateDate(Timestamp.from(Instant.now()));
-                            logger.fine("JsonObject: " + dataObj);
-                            em.merge(evv);
-                            em.flush();
-                            logger.fine("Wrote value for term: " + term);
-                        } catch (JsonException je) {
-                            logger.severe("Error retrieving: " + retrievalUri + " : " + je.getMessage());
-                        } catch (PersistenceException e) {
-                            logger.fine("Problem persisting: " + retrievalUri + " : " + e.getMessage());
+    /**
+     * Calls the external service. Doesn't use the EntityManager, so that it can be
+     * called from any thread.
+     *
+     * @return the filtered value of the term, or null if it couldn't be retrieved
+     */
+    private JsonObject retrieveExternalTerm(ExternalTermRetrieval retrieval) {
+        String term = retrieval.term();
+        String retrievalUri = retrieval.retrievalUri();
+        JsonObject cvocEntry = retrieval.cvocEntry();
+        Semaphore permits = getCVocRetrievalPermits(retrievalUri);
+        try {
+            permits.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            logger.warning("Interrupted while waiting to retrieve: " + retrievalUri);
+            return null;
+        }
+        logger.fine("Didn't find " + term + ", calling " + retrievalUri);
+        try (CloseableHttpClient httpClient = HttpClients.custom()
+                .addInterceptorLast(new HttpResponseInterceptor() {
+                    @Override
+                    public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+                        int statusCode = response.getStatusLine().getStatusCode();
+                        if (statusCode == 504) {
+                            //Throwing an exception triggers the retry handler
+                            throw new IOException("Retry due to 504 response");
                         }
-                    } else {
-                        logger.severe("Received response code : " + statusCode + " when retrieving " + retrievalUri
-                                + " : " + data);
                     }
-                } catch (IOException ioe) {
-                    logger.severe("IOException when retrieving url: " + retrievalUri + " : " + ioe.getMessage());
+                })
+                //The retry handler will also do retries for network errors/other things that cause an IOException
+                .setRetryHandler(new DefaultHttpRequestRetryHandler(3, false))
+                .build()) {
+            HttpGet httpGet = new HttpGet(retrievalUri);
+            //application/json+ld is for backward compatibility
+            httpGet.addHeader("Accept", "application/ld+json, application/json+ld, application/json");
+            //Adding others custom HTTP request headers if exists
+            final JsonObject headers = cvocEntry.getJsonObject("headers");
+            if (headers != null) {
+                final Set<String> headerKeys = headers.keySet();
+                for (final String hKey: headerKeys) {
+                    httpGet.addHeader(hKey, headers.getString(hKey));
                 }
             }
-        } catch (URISyntaxException e) {
-            logger.fine("Term is not a URI: " + term);
+            HttpResponse response = httpClient.execute(httpGet);
+            String data = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == 200) {
+                logger.fine("Returned data: " + data);
+                try (JsonReader jsonReader = Json.createReader(new StringReader(data))) {
+                    return filterResponse(cvocEntry, jsonReader.readObject(), term);
+                } catch (JsonException je) {
+                    logger.severe("Error retrieving: " + retrievalUri + " : " + je.getMessage());
+                }
+            } else {
+                logger.severe("Received response code : " + statusCode + " when retrieving " + retrievalUri
+                        + " : " + data);
+            }
+        } catch (IOException ioe) {
+            logger.severe("IOException when retrieving url: " + retrievalUri + " : " + ioe.getMessage());
+        } finally {
+            permits.release();
+        }
+        return null;
+    }
+
+    private void saveExternalTerm(String term, JsonObject value) {
+        ExternalVocabularyValue evv = null;
+        try {
+            evv = em.createQuery("select object(o) from ExternalVocabularyValue as o where o.uri=:uri",
+                    ExternalVocabularyValue.class).setParameter("uri", term).getSingleResult();
+        } catch (NoResultException nre) {
+            evv = new ExternalVocabularyValue(term, null);
+        }
+        String dataObj = value.toString();
+        evv.setValue(dataObj);
+        evv.setLastUpdateDate(Timestamp.from(Instant.now()));
+        logger.fine("JsonObject: " + dataObj);
+        try {
+            em.merge(evv);
+            em.flush();
+            getCVocValueCache().put(term, value);
+            logger.fine("Wrote value for term: " + term);
+        } catch (PersistenceException e) {
+            logger.fine("Problem persisting: " + term + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the permits for retrievals on the managed executor, shared by all
+     * the datasets being saved on the server
+     */
+    private static synchronized Semaphore getCVocRetrievalSlots() {
+        if (cvocRetrievalSlots == null) {
+            cvocRetrievalSlots = new Semaphore(Math.max(
+                    JvmSettings.CVOC_RETRIEVAL_THREADS.lookupOptional(Integer.class).orElse(8), 1));
+        }
+        return cvocRetrievalSlots;
+    }
+
+    /**
+     * @return the permits for retrievals from the service (host) of this url
+     */
+    private static Semaphore getCVocRetrievalPermits(String retrievalUri) {
+        String host = getRetrievalHost(retrievalUri);
+        return cvocRetrievalPermits.computeIfAbsent(host, h -> new Semaphore(Math.max(
+                JvmSettings.CVOC_RETRIEVAL_MAX_PER_SERVICE.lookupOptional(Integer.class).orElse(2), 1)));
+    }
+
+    static String getRetrievalHost(String retrievalUri) {
+        String host = StringUtils.substringAfter(retrievalUri, "://");
+        if (host.isEmpty()) {
+            host = retrievalUri;
         }
+        host = StringUtils.substringBefore(StringUtils.substringBefore(StringUtils.substringBefore(host, "/"), "?"), "#");
+        return StringUtils.substringAfterLast("@" + host, "@").toLowerCase();
     }
 
     private String tryToReplaceRetrievalUriParam(String retrievalUri, String paramName, String value) throws InvalidParameterException {
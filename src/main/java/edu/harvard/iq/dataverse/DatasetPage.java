@@ -197,6 +197,8 @@ public class DatasetPage implements java.io.Serializable {
     @EJB
     DatasetVersionServiceBean datasetVersionService;
     @EJB
+    CitationCacheServiceBean citationCacheService;
+    @EJB
     DataFileServiceBean datafileService;
     @EJB
     PermissionServiceBean permissionService;
@@ -2101,7 +2103,8 @@ public class DatasetPage implements java.io.Serializable {
             }
 
             // init the citation
-            displayCitation = dataset.getCitation(true, workingVersion, isAnonymizedAccess());
+            displayCitation = isAnonymizedAccess() ? dataset.getCitation(true, workingVersion, true)
+                    : citationCacheService.getCitation(workingVersion, CitationCacheServiceBean.Format.HTML);
             logger.fine("Citation: " + displayCitation);
 
             if(workingVersion.isPublished()) {
@@ -3025,7 +3028,7 @@ public class DatasetPage implements java.io.Serializable {
 
         fileMetadatasSearch = selectFileMetadatasForDisplay();
 
-        displayCitation = dataset.getCitation(true, workingVersion);
+        displayCitation = citationCacheService.getCitation(workingVersion, CitationCacheServiceBean.Format.HTML);
         stateChanged = false;
 
         if (lockedDueToIngestVar != null && lockedDueToIngestVar) {
@@ -164,14 +164,7 @@ public class DatasetVersionFilesServiceBean implements Serializable {
      * @return a FileMetadata list from the specified DatasetVersion
      */
     public List<FileMetadata> getFileMetadatas(DatasetVersion datasetVersion, Integer limit, Integer offset, FileSearchCriteria searchCriteria, FileOrderCriteria orderCriteria) {
-        CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
-        CriteriaQuery<FileMetadata> criteriaQuery = criteriaBuilder.createQuery(FileMetadata.class);
-        Root<FileMetadata> fileMetadataRoot = criteriaQuery.from(FileMetadata.class);
-        criteriaQuery
-                .select(fileMetadataRoot)
-                .where(createSearchCriteriaPredicate(datasetVersion, searchCriteria, criteriaBuilder, criteriaQuery, fileMetadataRoot))
-                .orderBy(createGetFileMetadatasOrder(criteriaBuilder, orderCriteria, fileMetadataRoot));
-        TypedQuery<FileMetadata> typedQuery = em.createQuery(criteriaQuery);
+        TypedQuery<FileMetadata> typedQuery = createGetFileMetadatasQuery(datasetVersion, null, searchCriteria, orderCriteria);
         if (limit != null) {
             typedQuery.setMaxResults(limit);
         }
@@ -181,6 +174,77 @@ public class DatasetVersionFilesServiceBean implements Serializable {
         return typedQuery.getResultList();
     }
 
+    /**
+     * Given a DatasetVersion, returns its file metadatas that come after the
+     * specified cursor (keyset pagination). Unlike with an offset, the cost of
+     * a page does not depend on how deep into the list it is.
+     *
+     * @param datasetVersion the DatasetVersion to access
+     * @param limit          for pagination, can be null
+     * @param cursor         the position after which the page starts; null for the first page
+     * @param searchCriteria for retrieving only files matching this criteria
+     * @param orderCriteria  a FileOrderCriteria to order the results; must be the order the cursor was created for
+     * @return a FileMetadata list from the specified DatasetVersion
+     * @see FileMetadataCursor#after(FileMetadata, FileOrderCriteria)
+     */
+    public List<FileMetadata> getFileMetadatas(DatasetVersion datasetVersion, Integer limit, FileMetadataCursor cursor, FileSearchCriteria searchCriteria, FileOrderCriteria orderCriteria) {
+        TypedQuery<FileMetadata> typedQuery = createGetFileMetadatasQuery(datasetVersion, cursor, searchCriteria, orderCriteria);
+        if (limit != null) {
+            typedQuery.setMaxResults(limit);
+        }
+        return typedQuery.getResultList();
+    }
+
+    /**
+     * Returns the file metadatas of a DatasetVersion one page at a time, in
+     * the order of {@link DatasetVersion#getFileMetadatas()} (by label; then
+     * by id, for a stable order), for going through all the files of a
+     * possibly very large version without loading them all at once.
+     * The next page is found by seeking past the last entry of the previous
+     * one, so each page costs the same however deep into the version it is.
+     * The related entities needed to serialize the files are fetched
+     * together with each page.
+     *
+     * @param datasetVersion the DatasetVersion to access
+     * @param last           the last FileMetadata of the previous page, or null for the first page
+     * @param limit          the page size
+     * @return the next page of FileMetadatas; empty once there are no more
+     */
+    public List<FileMetadata> getFileMetadatasAfter(DatasetVersion datasetVersion, FileMetadata last, int limit) {
+        TypedQuery<FileMetadata> typedQuery;
+        if (last == null) {
+            typedQuery = em.createQuery("SELECT o FROM FileMetadata o WHERE o.datasetVersion.id = :datasetVersionId"
+                    + " ORDER BY o.label, o.id", FileMetadata.class);
+        } else {
+            typedQuery = em.createQuery("SELECT o FROM FileMetadata o WHERE o.datasetVersion.id = :datasetVersionId"
+                    + " AND (o.label > :label OR (o.label = :label AND o.id > :id))"
+                    + " ORDER BY o.label, o.id", FileMetadata.class)
+                    .setParameter("label", last.getLabel())
+                    .setParameter("id", last.getId());
+        }
+        List<FileMetadata> fileMetadatas = typedQuery
+                .setParameter("datasetVersionId", datasetVersion.getId())
+                .setMaxResults(limit)
+                // Optimization hints: the single-valued relationships are joined;
+                // the collections are read in one query per page (they can't
+                // be joined, as that would break the limit):
+                .setHint("eclipselink.left-join-fetch", "o.dataFile")
+                .setHint("eclipselink.left-join-fetch", "o.dataFile.embargo")
+                .setHint("eclipselink.left-join-fetch", "o.dataFile.retention")
+                .setHint("eclipselink.batch.type", "IN")
+                .setHint("eclipselink.batch", "o.fileCategories")
+                .setHint("eclipselink.batch", "o.dataFile.dataFileTags")
+                .setHint("eclipselink.batch", "o.dataFile.dataTables")
+                .getResultList();
+        // Trigger the batch reads while we are still in the transaction:
+        for (FileMetadata fileMetadata : fileMetadatas) {
+            fileMetadata.getCategories().size();
+            fileMetadata.getDataFile().getTags().size();
+            fileMetadata.getDataFile().getDataTables().size();
+        }
+        return fileMetadatas;
+    }
+
     /**
      * Returns the total download size of all files for a particular DatasetVersion
      *
@@ -299,27 +363,103 @@ public class DatasetVersionFilesServiceBean implements Serializable {
         return criteriaBuilder.and(predicates.toArray(new Predicate[]{}));
     }
 
-    private List<Order> createGetFileMetadatasOrder(CriteriaBuilder criteriaBuilder,
-                                                    FileOrderCriteria orderCriteria,
-                                                    Root<FileMetadata> fileMetadataRoot) {
-        Path<Object> label = fileMetadataRoot.get("label");
+    private TypedQuery<FileMetadata> createGetFileMetadatasQuery(DatasetVersion datasetVersion,
+                                                                 FileMetadataCursor cursor,
+                                                                 FileSearchCriteria searchCriteria,
+                                                                 FileOrderCriteria orderCriteria) {
+        CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+        CriteriaQuery<FileMetadata> criteriaQuery = criteriaBuilder.createQuery(FileMetadata.class);
+        Root<FileMetadata> fileMetadataRoot = criteriaQuery.from(FileMetadata.class);
+        List<SortKey> sortKeys = createGetFileMetadatasSortKeys(criteriaBuilder, orderCriteria, fileMetadataRoot);
+        Predicate predicate = createSearchCriteriaPredicate(datasetVersion, searchCriteria, criteriaBuilder, criteriaQuery, fileMetadataRoot);
+        if (cursor != null) {
+            predicate = criteriaBuilder.and(predicate, createCursorPredicate(criteriaBuilder, sortKeys, cursor));
+        }
+        List<Order> orderList = new ArrayList<>();
+        for (SortKey sortKey : sortKeys) {
+            orderList.add(sortKey.ascending() ? criteriaBuilder.asc(sortKey.expression()) : criteriaBuilder.desc(sortKey.expression()));
+        }
+        criteriaQuery
+                .select(fileMetadataRoot)
+                .where(predicate)
+                .orderBy(orderList);
+        return em.createQuery(criteriaQuery);
+    }
+
+    private record SortKey(Expression<? extends Comparable<?>> expression, boolean ascending) {
+    }
+
+    /**
+     * The sort keys for each order; the id of the file metadata always comes
+     * last, to make the order total (which keyset pagination depends on).
+     * The values in {@link FileMetadataCursor} must match these keys.
+     */
+    private List<SortKey> createGetFileMetadatasSortKeys(CriteriaBuilder criteriaBuilder,
+                                                         FileOrderCriteria orderCriteria,
+                                                         Root<FileMetadata> fileMetadataRoot) {
+        Path<String> label = fileMetadataRoot.get("label");
         Path<Object> dataFile = fileMetadataRoot.get("dataFile");
         Path<Timestamp> publicationDate = dataFile.get("publicationDate");
         Path<Timestamp> createDate = dataFile.get("createDate");
-        Expression<Object> orderByLifetimeExpression = criteriaBuilder.selectCase().when(publicationDate.isNotNull(), publicationDate).otherwise(createDate);
-        List<Order> orderList = new ArrayList<>();
+        Expression<Timestamp> lifetime = criteriaBuilder.coalesce(publicationDate, createDate);
+        Path<Long> id = fileMetadataRoot.get("id");
+        List<SortKey> sortKeys = new ArrayList<>();
         switch (orderCriteria) {
-            case NameZA -> orderList.add(criteriaBuilder.desc(label));
-            case Newest -> orderList.add(criteriaBuilder.desc(orderByLifetimeExpression));
-            case Oldest -> orderList.add(criteriaBuilder.asc(orderByLifetimeExpression));
-            case Size -> orderList.add(criteriaBuilder.asc(dataFile.get("filesize")));
+            case NameZA -> sortKeys.add(new SortKey(label, false));
+            case Newest -> sortKeys.add(new SortKey(lifetime, false));
+            case Oldest -> sortKeys.add(new SortKey(lifetime, true));
+            case Size -> sortKeys.add(new SortKey(dataFile.<Long>get("filesize"), true));
             case Type -> {
-                orderList.add(criteriaBuilder.asc(dataFile.get("contentType")));
-                orderList.add(criteriaBuilder.asc(label));
+                sortKeys.add(new SortKey(dataFile.<String>get("contentType"), true));
+                sortKeys.add(new SortKey(label, true));
+            }
+            default -> sortKeys.add(new SortKey(label, true));
+        }
+        // ties are broken in the same direction as the (first) key:
+        sortKeys.add(new SortKey(id, sortKeys.get(0).ascending()));
+        return sortKeys;
+    }
+
+    /**
+     * (k1 > v1) OR (k1 = v1 AND k2 > v2) OR ... OR (k1 = v1 AND ... AND id > lastId);
+     * with "<" for the descending keys.
+     * <p>
+     * The sort keys may be null (the size or the content type of a file, for
+     * example). The criteria API can't say NULLS FIRST or NULLS LAST, so the
+     * predicate follows the PostgreSQL default instead: nulls sort after all
+     * the other values, that is last in an ascending order and first in a
+     * descending one. So, beyond v: "k > v OR k IS NULL" ascending, "k < v"
+     * descending; and beyond null: nothing ascending, "k IS NOT NULL" descending.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private Predicate createCursorPredicate(CriteriaBuilder criteriaBuilder, List<SortKey> sortKeys, FileMetadataCursor cursor) {
+        List<Object> values = new ArrayList<>(cursor.getKeyValues());
+        values.add(cursor.getId());
+        if (values.size() != sortKeys.size()) {
+            throw new IllegalArgumentException("Cursor does not match order " + cursor.getOrderCriteria());
+        }
+        List<Predicate> alternatives = new ArrayList<>();
+        List<Predicate> equalSoFar = new ArrayList<>();
+        for (int i = 0; i < sortKeys.size(); i++) {
+            Expression expression = sortKeys.get(i).expression();
+            Comparable value = (Comparable) values.get(i);
+            boolean ascending = sortKeys.get(i).ascending();
+            Predicate beyond;
+            if (value == null) {
+                beyond = ascending ? null : criteriaBuilder.isNotNull(expression);
+            } else if (ascending) {
+                beyond = criteriaBuilder.or(criteriaBuilder.greaterThan(expression, value), criteriaBuilder.isNull(expression));
+            } else {
+                beyond = criteriaBuilder.lessThan(expression, value);
+            }
+            if (beyond != null) {
+                List<Predicate> alternative = new ArrayList<>(equalSoFar);
+                alternative.add(beyond);
+                alternatives.add(criteriaBuilder.and(alternative.toArray(new Predicate[]{})));
             }
-            default -> orderList.add(criteriaBuilder.asc(label));
+            equalSoFar.add(value == null ? criteriaBuilder.isNull(expression) : criteriaBuilder.equal(expression, value));
         }
-        return orderList;
+        return criteriaBuilder.or(alternatives.toArray(new Predicate[]{}));
     }
 
     private long getOriginalTabularFilesSize(DatasetVersion datasetVersion, FileSearchCriteria searchCriteria) {
@@ -18,13 +18,18 @@ import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import jakarta.ejb.EJB;
 import jakarta.ejb.EJBException;
 import jakarta.ejb.Stateless;
@@ -906,7 +911,49 @@ public class DatasetVersionServiceBean implements java.io.Serializable {
         return null;
     }
     
-    private void assignDatasetThumbnailByNativeQuery(Long versionId, Long dataFileId) {
+    /**
+     * Batch counterpart of the first step of {@link #getThumbnailByVersionId(Long)}:
+     * looks up, with a single query, thumbnails that have already been generated
+     * for the files of several versions at once (for a page of search results).
+     * Versions that are not in the returned map still need to go through
+     * {@link #getThumbnailByVersionId(Long)}, which may generate one. Unlike
+     * that method, this one does not assign the thumbnails to the datasets;
+     * use {@link #assignDatasetThumbnailByNativeQuery(Long, Long)} for the
+     * ones that end up being used.
+     *
+     * @param versionIds ids of dataset versions
+     * @return the id of the thumbnail file, by version id
+     */
+    public Map<Long, Long> getThumbnailsByVersionIds(Collection<Long> versionIds) {
+        Map<Long, Long> thumbnails = new HashMap<>();
+        if (versionIds == null || versionIds.isEmpty() || FeatureFlags.DISABLE_DATASET_THUMBNAIL_AUTOSELECT.enabled()) {
+            return thumbnails;
+        }
+
+        List<Object[]> results;
+        try {
+            results = em.createNativeQuery("SELECT DISTINCT ON (fm.datasetversion_id) fm.datasetversion_id, df.id "
+                    + "FROM datafile df, filemetadata fm, dvobject o "
+                    + "WHERE fm.datasetversion_id IN (" + versionIds.stream().map(String::valueOf).collect(Collectors.joining(",")) + ") "
+                    + "AND df.id = o.id "
+                    + "AND fm.datafile_id = df.id "
+                    + "AND df.restricted = false "
+                    + "AND df.embargo_id is null "
+                    + "AND df.retention_id is null "
+                    + "AND o.previewImageAvailable = true "
+                    + "ORDER BY fm.datasetversion_id, df.id;").getResultList();
+        } catch (Exception ex) {
+            logger.fine("Failed to look up the thumbnails of versions " + versionIds + ": " + ex.getMessage());
+            return thumbnails;
+        }
+
+        for (Object[] result : results) {
+            thumbnails.put(((Number) result[0]).longValue(), ((Number) result[1]).longValue());
+        }
+        return thumbnails;
+    }
+    
+    public void assignDatasetThumbnailByNativeQuery(Long versionId, Long dataFileId) {
         try {
             em.createNativeQuery("UPDATE dataset SET thumbnailfile_id=" + dataFileId + " WHERE id in (SELECT dataset_id FROM datasetversion WHERE id=" + versionId + ")").executeUpdate();
         } catch (Exception ex) {
@@ -1013,6 +1060,92 @@ public class DatasetVersionServiceBean implements java.io.Serializable {
         }
     }
     
+    /**
+     * Same as {@link #populateDatasetSearchCard(SolrSearchResult)}, for a whole
+     * page of dataset search results at once: the versions are looked up with
+     * a single query, and the thumbnail files assigned to the datasets with
+     * another one.
+     */
+    public void populateDatasetSearchCards(List<SolrSearchResult> solrSearchResults) {
+        List<SolrSearchResult> cards = new ArrayList<>();
+        Set<Long> versionIds = new HashSet<>();
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            if (Long.parseLong(solrSearchResult.getParent().get("id")) == 0) {
+                continue;
+            }
+            if (solrSearchResult.getEntityId() == null || solrSearchResult.getDatasetVersionId() == null) {
+                populateDatasetSearchCard(solrSearchResult);
+                continue;
+            }
+            cards.add(solrSearchResult);
+            versionIds.add(solrSearchResult.getDatasetVersionId());
+        }
+        if (cards.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Object[]> searchResults = new HashMap<>();
+        try {
+            List<Object[]> results = em.createNativeQuery("SELECT t0.ID, t0.VERSIONSTATE, t1.ALIAS, t2.THUMBNAILFILE_ID, t2.USEGENERICTHUMBNAIL, t3.STORAGEIDENTIFIER"
+                    + " FROM DATASETVERSION t0, DATAVERSE t1, DATASET t2, DVOBJECT t3"
+                    + " WHERE t0.ID IN (" + versionIds.stream().map(String::valueOf).collect(Collectors.joining(",")) + ")"
+                    + " AND t2.ID = t0.DATASET_ID"
+                    + " AND t3.ID = t2.ID"
+                    + " AND t1.ID = t3.OWNER_ID").getResultList();
+            for (Object[] result : results) {
+                searchResults.put(((Number) result[0]).longValue(), result);
+            }
+        } catch (Exception ex) {
+            return;
+        }
+
+        Set<Long> thumbnailFileIds = new HashSet<>();
+        for (Object[] searchResult : searchResults.values()) {
+            if (searchResult[3] != null) {
+                thumbnailFileIds.add(((Number) searchResult[3]).longValue());
+            }
+        }
+        Map<Long, DataFile> thumbnailFiles;
+        try {
+            thumbnailFiles = datafileService.findCheapAndEasy(thumbnailFileIds);
+        } catch (Exception ex) {
+            thumbnailFiles = new HashMap<>();
+        }
+
+        for (SolrSearchResult solrSearchResult : cards) {
+            Object[] searchResult = searchResults.get(solrSearchResult.getDatasetVersionId());
+            if (searchResult == null) {
+                continue;
+            }
+
+            if ("DEACCESSIONED".equals(searchResult[1])) {
+                solrSearchResult.setDeaccessionedState(true);
+            }
+
+            if (searchResult[2] != null) {
+                solrSearchResult.setDataverseAlias((String) searchResult[2]);
+            }
+
+            Dataset datasetEntity = new Dataset();
+            GlobalId globalId = PidUtil.parseAsGlobalID(solrSearchResult.getIdentifier());
+            datasetEntity.setProtocol(globalId.getProtocol());
+            datasetEntity.setAuthority(globalId.getAuthority());
+            datasetEntity.setIdentifier(globalId.getIdentifier());
+            if (searchResult[5] != null) {
+                datasetEntity.setStorageIdentifier(searchResult[5].toString());
+            }
+            if (searchResult[3] != null) {
+                // The image file specifically assigned as the "icon" for the dataset:
+                DataFile thumbnailFile = thumbnailFiles.get(((Number) searchResult[3]).longValue());
+                if (thumbnailFile != null) {
+                    datasetEntity.setThumbnailFile(thumbnailFile);
+                }
+            }
+            datasetEntity.setUseGenericThumbnail(searchResult[4] != null && (Boolean) searchResult[4]);
+            solrSearchResult.setEntity(datasetEntity);
+        }
+    }
+    
     /**
      * Return a list of the checksum Strings for files in the specified DatasetVersion
      * 
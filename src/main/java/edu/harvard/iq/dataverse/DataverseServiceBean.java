@@ -27,11 +27,15 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import java.util.Properties;
 
 import edu.harvard.iq.dataverse.validation.JSONDataValidation;
@@ -77,6 +81,9 @@ public class DataverseServiceBean implements java.io.Serializable {
     @EJB
     DatasetServiceBean datasetService;
     
+    @EJB
+    DvObjectServiceBean dvObjectService;
+    
     @EJB
     DataverseLinkingServiceBean dataverseLinkingService;
 
@@ -345,9 +352,19 @@ public class DataverseServiceBean implements java.io.Serializable {
     }
     
     public String getDataverseLogoThumbnailAsBase64ById(Long dvId) {
-     
-        File dataverseLogoFile = getLogoById(dvId);
-        
+        return getDataverseLogoThumbnailAsBase64(getLogoById(dvId));
+    }
+
+    /**
+     * Same as {@link #getDataverseLogoThumbnailAsBase64ById(Long)}, for when
+     * the name of the logo file has already been looked up (with
+     * {@link #findLogoFileNamesByIds(Collection)}).
+     */
+    public String getDataverseLogoThumbnailAsBase64ById(Long dvId, String logoFileName) {
+        return getDataverseLogoThumbnailAsBase64(getLogoFile(dvId, logoFileName));
+    }
+
+    private String getDataverseLogoThumbnailAsBase64(File dataverseLogoFile) {
         if (dataverseLogoFile != null) {
             String logoThumbNailPath;
 
@@ -397,6 +414,47 @@ public class DataverseServiceBean implements java.io.Serializable {
             return null;
         }
         
+        return getLogoFile(id, logoFileName);
+    }
+
+    /**
+     * Looks up the logo file names of several dataverses at once; for
+     * prefetching the logos of a page of search cards.
+     *
+     * @param ids ids of dataverses
+     * @return the logo file names, by dataverse id; dataverses without a logo
+     * are mapped to null
+     */
+    public Map<Long, String> findLogoFileNamesByIds(Collection<Long> ids) {
+        Map<Long, String> logoFileNames = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return logoFileNames;
+        }
+        for (Long id : ids) {
+            logoFileNames.put(id, null);
+        }
+        List<Object[]> results = em.createNativeQuery("SELECT dataverse_id, logo FROM dataversetheme WHERE dataverse_id IN ("
+                + ids.stream().map(String::valueOf).collect(Collectors.joining(",")) + ")").getResultList();
+        for (Object[] result : results) {
+            logoFileNames.put(((Number) result[0]).longValue(), (String) result[1]);
+        }
+        return logoFileNames;
+    }
+
+    /**
+     * Same as {@link #getDataverseLogoThumbnailAsUrl(Long)}, for when the
+     * name of the logo file has already been looked up (with
+     * {@link #findLogoFileNamesByIds(Collection)}).
+     */
+    public String getDataverseLogoThumbnailAsUrl(Long dvId, String logoFileName) {
+        File dataverseLogoFile = getLogoFile(dvId, logoFileName);
+        if (dataverseLogoFile != null && dataverseLogoFile.exists()) {
+            return SystemConfig.getDataverseSiteUrlStatic() + "/api/access/dvCardImage/" + dvId;
+        }
+        return null;
+    }
+
+    private File getLogoFile(Long id, String logoFileName) {
         if (logoFileName != null && !logoFileName.isEmpty()) {
             Properties p = System.getProperties();
             String domainRoot = p.getProperty("com.sun.aas.instanceRoot");
@@ -730,61 +788,72 @@ public class DataverseServiceBean implements java.io.Serializable {
         }
     }
     
-    // function to recursively find ids of all children of a dataverse that 
-    // are also of type dataverse
-    public List<Long> findAllDataverseDataverseChildren(Long dvId) {
-        // get list of Dataverse children
-        List<Long> dataverseChildren = findIdsByOwnerId(dvId);
-        
-        if (dataverseChildren == null) {
-            return dataverseChildren;
-        } else {
-            List<Long> newChildren = new ArrayList<>();
-            for (Long childDvId : dataverseChildren) {
-                newChildren.addAll(findAllDataverseDataverseChildren(childDvId));
+    /**
+     * Same as {@link #populateDvSearchCard(SolrSearchResult)}, for a whole
+     * page of dataverse search results at once, with a single query.
+     */
+    public void populateDvSearchCards(List<SolrSearchResult> solrSearchResults) {
+        Set<Long> dvIds = new HashSet<>();
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            if (solrSearchResult.getEntityId() != null) {
+                dvIds.add(solrSearchResult.getEntityId());
+            }
+        }
+        if (dvIds.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Object[]> searchResults = new HashMap<>();
+        try {
+            List<Object[]> results = em.createNativeQuery("SELECT t0.ID, t0.AFFILIATION, t0.ALIAS, t2.ALIAS FROM DATAVERSE t0"
+                    + " JOIN DVOBJECT t1 ON t0.ID = t1.ID"
+                    + " LEFT JOIN DATAVERSE t2 ON t2.ID = t1.OWNER_ID"
+                    + " WHERE t0.ID IN (" + dvIds.stream().map(String::valueOf).collect(Collectors.joining(",")) + ")").getResultList();
+            for (Object[] result : results) {
+                searchResults.put(((Number) result[0]).longValue(), result);
+            }
+        } catch (Exception ex) {
+            return;
+        }
+
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            Object[] searchResult = searchResults.get(solrSearchResult.getEntityId());
+            if (searchResult == null) {
+                continue;
+            }
+
+            if (searchResult[1] != null) {
+                solrSearchResult.setDataverseAffiliation((String) searchResult[1]);
+            }
+
+            if (searchResult[2] != null) {
+                solrSearchResult.setDataverseAlias((String) searchResult[2]);
+            }
+
+            String parentId = solrSearchResult.getParent().get("id");
+            if (parentId != null && searchResult[3] != null) {
+                solrSearchResult.setDataverseParentAlias((String) searchResult[3]);
             }
-            dataverseChildren.addAll(newChildren);
-            return dataverseChildren;
         }
     }
     
-    // function to recursively find ids of all children of a dataverse that are 
-    // of type dataset
+    // ids of all children of a dataverse, at any depth, that are also of type
+    // dataverse (looked up in the dvobjecttree closure table)
+    public List<Long> findAllDataverseDataverseChildren(Long dvId) {
+        return dvObjectService.findDescendantIds(dvId, DvObject.DType.Dataverse);
+    }
+    
+    // ids of all children of a dataverse, at any depth, that are of type 
+    // dataset (looked up in the dvobjecttree closure table)
     public List<Long> findAllDataverseDatasetChildren(Long dvId) {
-        // get list of Dataverse children
-        List<Long> dataverseChildren = findIdsByOwnerId(dvId);
-        // get list of Dataset children
-        List<Long> datasetChildren = datasetService.findIdsByOwnerId(dvId);
-        
-        if (dataverseChildren == null) {
-            return datasetChildren;
-        } else {
-            for (Long childDvId : dataverseChildren) {
-                datasetChildren.addAll(findAllDataverseDatasetChildren(childDvId));
-            }
-            return datasetChildren;
-        }
+        return dvObjectService.findDescendantIds(dvId, DvObject.DType.Dataset);
     }
     
     public String addRoleAssignmentsToChildren(Dataverse owner, ArrayList<String> rolesToInherit,
             boolean inheritAllRoles) {
-        /*
-         * This query recursively finds all Dataverses that are inside/children of the
-         * specified one. It recursively finds dvobjects of dtype 'Dataverse' whose
-         * owner_id equals an id already in the list and then returns the list of ids
-         * found, excluding the id of the original specified Dataverse.
-         */
-        String qstr = "WITH RECURSIVE path_elements AS ((" + " SELECT id, dtype FROM dvobject WHERE id in ("
-                + owner.getId() + "))" + " UNION\n"
-                + " SELECT o.id, o.dtype FROM path_elements p, dvobject o WHERE o.owner_id = p.id and o.dtype='Dataverse') "
-                + "SELECT id FROM path_elements WHERE id !=" + owner.getId() + ";";
-
-        List<Integer> childIds;
-        try {
-            childIds = em.createNativeQuery(qstr).getResultList();
-        } catch (Exception ex) {
-            childIds = null;
-        }
+        // All the Dataverses that are inside/children of the specified one, at
+        // any depth, excluding the original specified Dataverse:
+        List<Long> childIds = dvObjectService.findDescendantIds(owner.getId(), DvObject.DType.Dataverse);
 
         // Set up to track the set of users/groups that get assigned a role and those
         // that don't
@@ -797,14 +866,13 @@ public class DataverseServiceBean implements java.io.Serializable {
 
         List<Dataverse> children = new ArrayList<Dataverse>();
 
-        for (int i = 0; i < childIds.size(); i++) {
-            Integer childId = childIds.get(i);
-            Dataverse child = find(new Long(childId.longValue()));
+        for (Long childId : childIds) {
+            Dataverse child = find(childId);
             if (child != null) {
                 // Add to the list of Dataverses
                 children.add(child);
                 // Add ids and aliases to the tracking arrays
-                dataverseIds.add(childId.longValue());
+                dataverseIds.add(childId);
                 dataverseAliases.add(child.getAlias());
             }
         }
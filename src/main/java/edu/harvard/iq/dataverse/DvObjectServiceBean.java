@@ -6,6 +6,7 @@ import edu.harvard.iq.dataverse.pidproviders.PidProviderFactoryBean;
 import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -66,6 +67,23 @@ public class DvObjectServiceBean implements java.io.Serializable {
         }
     }
 
+    /**
+     * @param ids ids of dv objects
+     * @return the dv objects, by id; ids that don't exist are left out
+     */
+    public Map<Long, DvObject> findDvObjects(Collection<Long> ids) {
+        Map<Long, DvObject> dvObjects = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return dvObjects;
+        }
+        for (DvObject dvObject : em.createNamedQuery("DvObject.findByIds", DvObject.class)
+                .setParameter("ids", ids)
+                .getResultList()) {
+            dvObjects.put(dvObject.getId(), dvObject);
+        }
+        return dvObjects;
+    }
+
     public List<DvObject> findAll() {
         return em.createNamedQuery("DvObject.findAll", DvObject.class).getResultList();
     }
@@ -392,6 +410,56 @@ public class DvObjectServiceBean implements java.io.Serializable {
         return ret;        
     }
     
+    /**
+     * Finds the ids of all the objects of the specified type below the specified
+     * container, at any depth, in one lookup in the dvobjecttree closure table
+     * (maintained by database triggers on create, move and delete).
+     *
+     * @param ancestorId id of the Dataverse (or Dataset) at the top of the subtree
+     * @param dtype type of the descendants to look up; only Dataverses and
+     * Datasets are indexed in the tree
+     * @return ids of the descendants, top-down; the ancestor itself is not included
+     */
+    public List<Long> findDescendantIds(Long ancestorId, DvObject.DType dtype) {
+        List<Long> ret = new ArrayList<>();
+        if (ancestorId == null) {
+            return ret;
+        }
+        List<Object> results = em.createNativeQuery("SELECT t.descendant_id FROM dvobjecttree t, dvobject o"
+                + " WHERE t.ancestor_id = ?1 AND t.depth > 0 AND o.id = t.descendant_id AND o.dtype = ?2"
+                + " ORDER BY t.depth, t.descendant_id")
+                .setParameter(1, ancestorId)
+                .setParameter(2, dtype.getDType())
+                .getResultList();
+        for (Object result : results) {
+            ret.add(((Number) result).longValue());
+        }
+        return ret;
+    }
+
+    /**
+     * Finds the ids of all the collections above the specified Dataverse or
+     * Dataset in one lookup in the dvobjecttree closure table.
+     *
+     * @param descendantId id of a Dataverse or Dataset
+     * @return ids of the ancestors, ordered from the root down; the object
+     * itself is not included
+     */
+    public List<Long> findAncestorIds(Long descendantId) {
+        List<Long> ret = new ArrayList<>();
+        if (descendantId == null) {
+            return ret;
+        }
+        List<Object> results = em.createNativeQuery("SELECT ancestor_id FROM dvobjecttree"
+                + " WHERE descendant_id = ?1 AND depth > 0 ORDER BY depth DESC")
+                .setParameter(1, descendantId)
+                .getResultList();
+        for (Object result : results) {
+            ret.add(((Number) result).longValue());
+        }
+        return ret;
+    }
+
     public String generateNewIdentifierByStoredProcedure() {
         StoredProcedureQuery query = this.em.createNamedStoredProcedureQuery("Dataset.generateIdentifierFromStoredProcedure");
         query.execute();
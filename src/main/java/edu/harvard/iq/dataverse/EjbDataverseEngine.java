@@ -34,9 +34,12 @@ import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
 import edu.harvard.iq.dataverse.search.savedsearch.SavedSearchServiceBean;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.storageuse.StorageUseServiceBean;
+import edu.harvard.iq.dataverse.metrics.MetricsRollupServiceBean;
+import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.util.ConstraintViolationUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
+import edu.harvard.iq.dataverse.util.file.ZipUploadExtractionServiceBean;
 import edu.harvard.iq.dataverse.workflow.WorkflowServiceBean;
 import java.util.Arrays;
 import java.util.EnumSet;
@@ -186,6 +189,18 @@ public class EjbDataverseEngine {
     @EJB
     StorageUseServiceBean storageUseService; 
     
+    @EJB
+    MetricsRollupServiceBean metricsRollupService;
+    
+    @EJB
+    CitationCacheServiceBean citationCacheService;
+    
+    @EJB
+    OAIRecordServiceBean oaiRecordService;
+    
+    @EJB
+    ZipUploadExtractionServiceBean zipUploadExtractionService;
+    
     @EJB
     EjbDataverseEngineInner innerEngine;
 
@@ -526,6 +541,26 @@ public class EjbDataverseEngine {
                 public StorageUseServiceBean storageUse() {
                     return storageUseService;
                 }
+
+                @Override
+                public MetricsRollupServiceBean metricsRollups() {
+                    return metricsRollupService;
+                }
+
+                @Override
+                public CitationCacheServiceBean citations() {
+                    return citationCacheService;
+                }
+
+                @Override
+                public OAIRecordServiceBean oaiRecords() {
+                    return oaiRecordService;
+                }
+
+                @Override
+                public ZipUploadExtractionServiceBean zipUploadExtraction() {
+                    return zipUploadExtractionService;
+                }
                 
                 @Override
                 public DataverseEngine engine() {
@@ -0,0 +1,86 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.LruCache;
+import java.util.function.LongSupplier;
+import jakarta.json.JsonObject;
+
+/**
+ * The parsed values of external vocabulary terms (see
+ * {@link ExternalVocabularyValue}), by term URI, so that indexing and
+ * displaying a dataset doesn't query and parse the same terms over and over.
+ * <p>
+ * Terms known not to have a value (free text entries, or terms that could not
+ * be retrieved) are cached too, with a null value. Entries expire after a
+ * while, so that values added or updated by other servers are eventually
+ * seen.
+ */
+class ExternalVocabularyValueCache {
+
+    /**
+     * @param value the parsed value, or null if the term has none
+     * @param cachedAt when the entry was cached, in milliseconds
+     */
+    record Entry(JsonObject value, long cachedAt) {
+    }
+
+    private final LruCache<String, Entry> cache = new LruCache<>();
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    /**
+     * @param maxSize the largest number of terms cached; 0 disables the cache
+     * @param ttlMillis how long an entry is used for, in milliseconds
+     */
+    ExternalVocabularyValueCache(long maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, System::currentTimeMillis);
+    }
+
+    ExternalVocabularyValueCache(long maxSize, long ttlMillis, LongSupplier clock) {
+        this.enabled = maxSize > 0 && ttlMillis > 0;
+        if (enabled) {
+            cache.setMaxSize(maxSize);
+        }
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param uri the term URI
+     * @return the cached entry (whose value is null if the term is known not
+     * to have one), or null if the term is not cached or its entry expired
+     */
+    Entry get(String uri) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = cache.get(uri);
+        if (entry != null && clock.getAsLong() - entry.cachedAt() >= ttlMillis) {
+            cache.invalidate(uri);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * @param uri the term URI
+     * @param value the parsed value, or null if the term has none
+     */
+    void put(String uri, JsonObject value) {
+        if (enabled) {
+            cache.put(uri, new Entry(value, clock.getAsLong()));
+        }
+    }
+
+    void invalidate(String uri) {
+        cache.invalidate(uri);
+    }
+
+    void invalidate() {
+        cache.invalidate();
+    }
+}
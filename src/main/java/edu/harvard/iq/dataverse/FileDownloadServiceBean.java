@@ -23,6 +23,7 @@ import edu.harvard.iq.dataverse.util.StringUtil;
 import edu.harvard.iq.dataverse.util.URLTokenUtil;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -77,6 +78,8 @@ public class FileDownloadServiceBean implements java.io.Serializable {
     SettingsServiceBean settingsService;
     @EJB
     MailServiceBean mailService;
+    @EJB
+    CitationCacheServiceBean citationCacheService;
 
     @Inject
     DataverseSession session;
@@ -385,11 +388,9 @@ public class FileDownloadServiceBean implements java.io.Serializable {
 
     public void downloadDatasetCitationXML(DatasetVersion version) {
         // DatasetVersion-level citation: 
-        DataCitation citation=null;
-        citation = new DataCitation(version);
         String fileNameString;
-        fileNameString = "attachment;filename=" + getFileNameFromPid(citation.getPersistentId()) + ".xml";
-        downloadXML(citation, fileNameString);
+        fileNameString = "attachment;filename=" + getFileNameFromPid(version.getDataset().getGlobalId()) + ".xml";
+        downloadCitation(citationCacheService.getCitation(version, CitationCacheServiceBean.Format.ENDNOTE), "text/xml", fileNameString);
     }
 
     public void downloadDatafileCitationXML(FileMetadata fileMetadata) {
@@ -431,12 +432,9 @@ public class FileDownloadServiceBean implements java.io.Serializable {
 
     public void downloadDatasetCitationRIS(DatasetVersion version) {
         // DatasetVersion-level citation: 
-        DataCitation citation=null;
-        citation = new DataCitation(version);
-
         String fileNameString;
-        fileNameString = "attachment;filename=" + getFileNameFromPid(citation.getPersistentId()) + ".ris";
-        downloadRIS(citation, fileNameString);
+        fileNameString = "attachment;filename=" + getFileNameFromPid(version.getDataset().getGlobalId()) + ".ris";
+        downloadCitation(citationCacheService.getCitation(version, CitationCacheServiceBean.Format.RIS), "application/download", fileNameString);
     }
 
     public void downloadDatafileCitationRIS(FileMetadata fileMetadata) {
@@ -486,12 +484,10 @@ public class FileDownloadServiceBean implements java.io.Serializable {
 
     public void downloadDatasetCitationBibtex(DatasetVersion version) {
         // DatasetVersion-level citation: 
-        DataCitation citation=null;
-        citation = new DataCitation(version);
-
         String fileNameString;
-        fileNameString = "inline;filename=" + getFileNameFromPid(citation.getPersistentId()) + ".bib";
-        downloadBibtex(citation, fileNameString);
+        fileNameString = "inline;filename=" + getFileNameFromPid(version.getDataset().getGlobalId()) + ".bib";
+        // text/plain: see downloadBibtex()
+        downloadCitation(citationCacheService.getCitation(version, CitationCacheServiceBean.Format.BIBTEX), "text/plain", fileNameString);
     }
 
     public void downloadDatafileCitationBibtex(FileMetadata fileMetadata) {
@@ -535,6 +531,26 @@ public class FileDownloadServiceBean implements java.io.Serializable {
 
         }
     }
+
+    /**
+     * Writes a citation that has already been rendered, such as the cached
+     * citation of a dataset version.
+     */
+    private void downloadCitation(String citation, String contentType, String fileNameString) {
+        FacesContext ctx = FacesContext.getCurrentInstance();
+        HttpServletResponse response = (HttpServletResponse) ctx.getExternalContext().getResponse();
+        response.setContentType(contentType);
+        response.setHeader("Content-Disposition", fileNameString);
+
+        try {
+            ServletOutputStream out = response.getOutputStream();
+            out.write(citation.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            ctx.responseComplete();
+        } catch (IOException e) {
+
+        }
+    }
     
     public boolean requestAccess(Long fileId) {   
         if (dvRequestService.getDataverseRequest().getAuthenticatedUser() == null){
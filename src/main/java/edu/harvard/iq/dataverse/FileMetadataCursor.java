@@ -0,0 +1,140 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.DatasetVersionFilesServiceBean.FileOrderCriteria;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Position in a list of file metadatas sorted by one of the
+ * {@link FileOrderCriteria}, used for keyset ("seek") pagination in
+ * {@link DatasetVersionFilesServiceBean#getFileMetadatas(DatasetVersion, Integer, FileMetadataCursor, FileSearchCriteria, FileOrderCriteria)}.
+ * <p>
+ * A cursor holds the sort key values and the id of the last file metadata of
+ * a page; the next page is made of the entries that sort after it. Unlike an
+ * offset, this costs the same however deep into the list the page is, and
+ * is not thrown off by files being added or removed between requests.
+ * Key values may be null (a file of unknown size or type, for example);
+ * they are kept as nulls, which sort after everything else.
+ * <p>
+ * To API clients, cursors are opaque strings (see {@link #encode()} and
+ * {@link #decode(String, FileOrderCriteria)}).
+ */
+public class FileMetadataCursor {
+
+    private final FileOrderCriteria orderCriteria;
+    private final List<Object> keyValues;
+    private final long id;
+
+    private FileMetadataCursor(FileOrderCriteria orderCriteria, List<Object> keyValues, long id) {
+        this.orderCriteria = orderCriteria;
+        this.keyValues = Collections.unmodifiableList(keyValues);
+        this.id = id;
+    }
+
+    /**
+     * @param last the last entry of a page
+     * @param orderCriteria the order of the list
+     * @return the cursor for the page that follows {@code last}
+     */
+    public static FileMetadataCursor after(FileMetadata last, FileOrderCriteria orderCriteria) {
+        DataFile dataFile = last.getDataFile();
+        List<Object> keyValues = new ArrayList<>();
+        // The key values must match the sort keys of DatasetVersionFilesServiceBean, in order:
+        switch (orderCriteria) {
+            case Newest, Oldest -> keyValues.add(dataFile.getPublicationDate() != null ? dataFile.getPublicationDate() : dataFile.getCreateDate());
+            // (an unknown size is -1 here, but null in the database)
+            case Size -> keyValues.add(dataFile.getFilesize() < 0 ? null : dataFile.getFilesize());
+            case Type -> {
+                keyValues.add(dataFile.getContentType());
+                keyValues.add(last.getLabel());
+            }
+            default -> keyValues.add(last.getLabel());
+        }
+        return new FileMetadataCursor(orderCriteria, keyValues, last.getId());
+    }
+
+    /**
+     * @param cursor a cursor, as encoded by {@link #encode()}
+     * @param orderCriteria the order the cursor is going to be used with
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor is not valid, or if it
+     * was produced for a different order
+     */
+    public static FileMetadataCursor decode(String cursor, FileOrderCriteria orderCriteria) throws IllegalArgumentException {
+        JsonObject json;
+        try (JsonReader reader = Json.createReader(new StringReader(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)))) {
+            json = reader.readObject();
+        } catch (JsonException | IllegalStateException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+        try {
+            if (!orderCriteria.name().equals(json.getString("order"))) {
+                throw new IllegalArgumentException("Cursor " + cursor + " is not for order " + orderCriteria);
+            }
+            JsonArray keys = json.getJsonArray("keys");
+            List<Object> keyValues = new ArrayList<>();
+            switch (orderCriteria) {
+                case Newest, Oldest -> keyValues.add(keys.isNull(0) ? null : Timestamp.valueOf(keys.getString(0)));
+                case Size -> keyValues.add(keys.isNull(0) ? null : Long.valueOf(keys.getString(0)));
+                case Type -> {
+                    keyValues.add(keys.isNull(0) ? null : keys.getString(0));
+                    keyValues.add(keys.isNull(1) ? null : keys.getString(1));
+                }
+                default -> keyValues.add(keys.isNull(0) ? null : keys.getString(0));
+            }
+            return new FileMetadataCursor(orderCriteria, keyValues, json.getJsonNumber("id").longValueExact());
+        } catch (ClassCastException | NullPointerException | IndexOutOfBoundsException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * @return the cursor as an opaque, URL-safe string
+     */
+    public String encode() {
+        JsonArrayBuilder keys = Json.createArrayBuilder();
+        for (Object keyValue : keyValues) {
+            if (keyValue == null) {
+                keys.addNull();
+            } else {
+                keys.add(keyValue.toString());
+            }
+        }
+        String json = Json.createObjectBuilder()
+                .add("order", orderCriteria.name())
+                .add("keys", keys)
+                .add("id", id)
+                .build().toString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public FileOrderCriteria getOrderCriteria() {
+        return orderCriteria;
+    }
+
+    /**
+     * @return the values of the sort keys of the last entry, in the order
+     * of the keys; any of them may be null
+     */
+    public List<Object> getKeyValues() {
+        return keyValues;
+    }
+
+    /**
+     * @return the id of the last entry, which breaks any ties between the key values
+     */
+    public long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,80 @@
+package edu.harvard.iq.dataverse;
+
+import jakarta.persistence.Persistence;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy, windowed view of the file metadatas of a dataset version, for code
+ * that needs to go through all the files of a version, once, without
+ * materializing {@link DatasetVersion#getFileMetadatas()}.
+ * <p>
+ * The file metadatas are read from the database one window (page) at a time,
+ * in the order of {@link DatasetVersion#getFileMetadatas()}, as the iteration
+ * progresses; only the current window is held by the iterator. When iterated
+ * outside of a transaction (as when streaming an API response), every window
+ * is read in a short transaction of its own and can be garbage collected as
+ * soon as the iteration moves past it.
+ * <p>
+ * If the collection of the version has already been loaded (or the version
+ * has not been saved yet), that collection is iterated instead, since it is
+ * already in memory and may include changes that are not in the database yet.
+ */
+public class FileMetadataWindow implements Iterable<FileMetadata> {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1000;
+
+    private final DatasetVersionFilesServiceBean datasetVersionFilesService;
+    private final DatasetVersion datasetVersion;
+    private final int windowSize;
+
+    public FileMetadataWindow(DatasetVersionFilesServiceBean datasetVersionFilesService, DatasetVersion datasetVersion) {
+        this(datasetVersionFilesService, datasetVersion, DEFAULT_WINDOW_SIZE);
+    }
+
+    public FileMetadataWindow(DatasetVersionFilesServiceBean datasetVersionFilesService, DatasetVersion datasetVersion, int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size can't be less than 1");
+        }
+        this.datasetVersionFilesService = datasetVersionFilesService;
+        this.datasetVersion = datasetVersion;
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public Iterator<FileMetadata> iterator() {
+        if (datasetVersion.getId() == null || isCollectionLoaded()) {
+            return datasetVersion.getFileMetadatas().iterator();
+        }
+        return new WindowIterator();
+    }
+
+    boolean isCollectionLoaded() {
+        return Persistence.getPersistenceUtil().isLoaded(datasetVersion, "fileMetadatas");
+    }
+
+    private class WindowIterator implements Iterator<FileMetadata> {
+        private List<FileMetadata> window;
+        private int position = 0;
+
+        @Override
+        public boolean hasNext() {
+            if (window == null) {
+                window = datasetVersionFilesService.getFileMetadatasAfter(datasetVersion, null, windowSize);
+            } else if (position == window.size() && window.size() == windowSize) {
+                window = datasetVersionFilesService.getFileMetadatasAfter(datasetVersion, window.get(window.size() - 1), windowSize);
+                position = 0;
+            }
+            return position < window.size();
+        }
+
+        @Override
+        public FileMetadata next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return window.get(position++);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.EJBException;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the guestbook responses for file downloads in the background, in
+ * batches, so that saving them does not hold up the downloads themselves.
+ * <p>
+ * Responses are queued by {@link #enqueue(GuestbookResponse)} and written out
+ * by a scheduled worker every {@code dataverse.files.guestbook-recorder.flush-interval}
+ * milliseconds, up to {@code batch-size} responses per transaction. Each
+ * response is written in the same transaction as its custom question
+ * responses, so a response is never saved without its answers, or vice versa.
+ * If the queue is full, the response is written right away instead, by the
+ * caller. Whatever is left in the queue is written out when the application
+ * is shut down.
+ * <p>
+ * Access requests are not handled here; they are still written synchronously,
+ * since the access request records need the saved response.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class GuestbookResponseRecorder {
+    private static final Logger logger = Logger.getLogger(GuestbookResponseRecorder.class.getCanonicalName());
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    @EJB
+    GuestbookResponseServiceBean guestbookResponseService;
+
+    private BlockingQueue<GuestbookResponse> queue;
+    private int batchSize;
+
+    @PostConstruct
+    public void init() {
+        int queueSize = JvmSettings.GUESTBOOK_RECORDER_QUEUE_SIZE.lookupOptional(Integer.class).orElse(10000);
+        batchSize = JvmSettings.GUESTBOOK_RECORDER_BATCH_SIZE.lookupOptional(Integer.class).orElse(500);
+        long flushInterval = JvmSettings.GUESTBOOK_RECORDER_FLUSH_INTERVAL.lookupOptional(Long.class).orElse(1000L);
+
+        queue = new LinkedBlockingQueue<>(Math.max(queueSize, 1));
+        logger.info("Starting the guestbook response recorder; flushing every " + flushInterval + " ms");
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        logger.info("Writing out " + queue.size() + " queued guestbook responses");
+        flush();
+    }
+
+    /**
+     * Queues a guestbook response to be saved. A copy of the response is
+     * queued, so the caller is free to keep reusing the original (as the
+     * multiple file download does, for example).
+     *
+     * @param guestbookResponse the response; its response time is set to now
+     * if it has not been set yet.
+     */
+    public void enqueue(GuestbookResponse guestbookResponse) {
+        GuestbookResponse queued = copyOf(guestbookResponse);
+        if (!queue.offer(queued)) {
+            logger.fine("The guestbook response queue is full; saving the response right away");
+            guestbookResponseService.save(queued);
+        }
+    }
+
+    /**
+     * @return the number of responses waiting to be written.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Writes out everything that is currently queued.
+     */
+    public synchronized void flush() {
+        List<GuestbookResponse> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<GuestbookResponse> batch) {
+        try {
+            guestbookResponseService.saveAll(batch);
+            logger.fine("Saved " + batch.size() + " guestbook responses");
+        } catch (EJBException ejbe) {
+            // One bad response should not cost us the rest of the batch;
+            // retry them one at a time (using fresh copies, since the failed
+            // transaction may have left ids behind on the originals):
+            logger.log(Level.WARNING, "Failed to save a batch of " + batch.size() + " guestbook responses; retrying them individually", ejbe);
+            for (GuestbookResponse guestbookResponse : batch) {
+                try {
+                    guestbookResponseService.save(copyOf(guestbookResponse));
+                } catch (EJBException e) {
+                    logger.warning("Failed to save the guestbook response for file "
+                            + (guestbookResponse.getDataFile() == null ? null : guestbookResponse.getDataFile().getId())
+                            + ": " + e.getLocalizedMessage());
+                }
+            }
+        }
+    }
+
+    static GuestbookResponse copyOf(GuestbookResponse source) {
+        GuestbookResponse copy = new GuestbookResponse(source);
+        copy.setDataFile(source.getDataFile());
+        copy.setEventType(source.getEventType());
+        copy.setResponseTime(source.getResponseTime() == null ? new Date() : source.getResponseTime());
+        return copy;
+    }
+}
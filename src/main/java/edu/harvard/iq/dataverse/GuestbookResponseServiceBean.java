@@ -8,6 +8,7 @@ package edu.harvard.iq.dataverse;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.externaltools.ExternalTool;
+import edu.harvard.iq.dataverse.metrics.MetricsRollupServiceBean;
 import edu.harvard.iq.dataverse.util.StringUtil;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -15,11 +16,14 @@ import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
@@ -45,6 +49,11 @@ public class GuestbookResponseServiceBean {
     @EJB
     DataverseServiceBean dataverseService;
     
+    @EJB
+    MetricsRollupServiceBean metricsRollupService;
+    @EJB
+    GuestbookResponseRecorder guestbookResponseRecorder;
+    
     // The query below is used for retrieving guestbook responses used to download 
     // the collected data, in CSV format, from the manage-guestbooks and 
     // guestbook-results pages. (for entire dataverses, and for the individual 
@@ -899,23 +908,96 @@ public class GuestbookResponseServiceBean {
         return em.find(GuestbookResponse.class, id);
     }
 
+    /**
+     * Records a guestbook response. Downloads (and the other non-access-request
+     * events) are queued and written in the background by the
+     * {@link GuestbookResponseRecorder}; access requests are saved right away.
+     *
+     * @param guestbookResponse the response
+     */
+    public void record(GuestbookResponse guestbookResponse) {
+        if (GuestbookResponse.ACCESS_REQUEST.equals(guestbookResponse.getEventType())) {
+            save(guestbookResponse);
+        } else {
+            guestbookResponseRecorder.enqueue(guestbookResponse);
+        }
+    }
+
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void save(GuestbookResponse guestbookResponse) {
         em.persist(guestbookResponse);
+        metricsRollupService.recordDownload(guestbookResponse);
+    }
+
+    /**
+     * The order the downloadcount rows of a batch of responses are locked in:
+     * by dataset, then by file, the order the downloadcount trigger locks them
+     * in for each response (see V6.4.0.13__downloadcount-lock-order.sql), so
+     * that concurrent transactions take these locks in the same order, and
+     * cannot deadlock.
+     */
+    static final Comparator<GuestbookResponse> INSERT_ORDER = Comparator
+            .comparing((GuestbookResponse r) -> r.getDataset() == null ? null : r.getDataset().getId(), Comparator.nullsFirst(Comparator.<Long>naturalOrder()))
+            .thenComparing(r -> r.getDataFile() == null ? null : r.getDataFile().getId(), Comparator.nullsFirst(Comparator.<Long>naturalOrder()));
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void saveAll(List<GuestbookResponse> guestbookResponses) {
+        List<GuestbookResponse> ordered = new ArrayList<>(guestbookResponses);
+        ordered.sort(INSERT_ORDER);
+        lockDownloadCounts(ordered);
+        for (GuestbookResponse guestbookResponse : ordered) {
+            em.persist(guestbookResponse);
+        }
+        metricsRollupService.recordDownloads(ordered);
     }
     
     
+    /**
+     * Locks the downloadcount rows the responses are going to update, in the
+     * order of the responses, all in one statement (creating the missing
+     * ones); the responses can then be inserted in whatever order the
+     * persistence provider writes them in, without a flush after each one.
+     */
+    private void lockDownloadCounts(List<GuestbookResponse> ordered) {
+        Set<Long> dvObjectIds = new LinkedHashSet<>();
+        for (GuestbookResponse guestbookResponse : ordered) {
+            if (guestbookResponse.getDataset() != null) {
+                dvObjectIds.add(guestbookResponse.getDataset().getId());
+            }
+            if (guestbookResponse.getDataFile() != null) {
+                dvObjectIds.add(guestbookResponse.getDataFile().getId());
+            }
+        }
+        dvObjectIds.remove(null);
+        if (dvObjectIds.isEmpty()) {
+            return;
+        }
+        StringBuilder values = new StringBuilder();
+        int position = 0;
+        for (Long dvObjectId : dvObjectIds) {
+            values.append(position == 0 ? "" : ",").append('(').append(dvObjectId).append(',').append(position++).append(')');
+        }
+        em.createNativeQuery("INSERT INTO downloadcount (dvobject_id, downloadcount)"
+                + " SELECT id, 0 FROM (VALUES " + values + ") AS v(id, position) ORDER BY position"
+                + " ON CONFLICT (dvobject_id) DO UPDATE SET downloadcount = downloadcount.downloadcount")
+                .executeUpdate();
+    }
+
     /*
      * Metrics - download counts from GuestbookResponses: Any GuestbookResponse that
      * is not of eventtype=='AccessRequest' is considered a download. This includes
      * actual 'Download's, downloads of 'Subset's, and use by 'Explore' tools and
      * previewers (where eventtype is the previewer name)
+     * 
+     * The totals per file and per dataset are kept in the downloadcount table
+     * (maintained by a database trigger on guestbookresponse), so they can be
+     * looked up directly. Note that responses still queued in the
+     * GuestbookResponseRecorder are not counted until they are written out.
      */
         
     public Long getDownloadCountByDataFileId(Long dataFileId) {
         // datafile id is null, will return 0
-        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.datafile_id  = " + dataFileId + " and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
-        return (Long) query.getSingleResult();
+        return getDownloadCountByDvObjectId(dataFileId);
     }
     
     public Long getDownloadCountByDatasetId(Long datasetId) {
@@ -924,14 +1006,20 @@ public class GuestbookResponseServiceBean {
     
     public Long getDownloadCountByDatasetId(Long datasetId, LocalDate date) {
         // dataset id is null, will return 0        
-        Query query;
-        if(date != null) {
-            query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId + " and responsetime < '" + date.toString() + "' and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
-        }else {
-            query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId+ " and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
+        if (date == null) {
+            return getDownloadCountByDvObjectId(datasetId);
         }
+        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId + " and responsetime < '" + date.toString() + "' and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
         return (Long) query.getSingleResult();
-    }    
+    }
+
+    private Long getDownloadCountByDvObjectId(Long dvObjectId) {
+        if (dvObjectId == null) {
+            return 0L;
+        }
+        List<?> counts = em.createNativeQuery("select downloadcount from downloadcount where dvobject_id = " + dvObjectId).getResultList();
+        return counts.isEmpty() ? 0L : ((Number) counts.get(0)).longValue();
+    }
 
     public Long getTotalDownloadCount() {
         // dataset id is null, will return 0  
@@ -0,0 +1,229 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.BoundedExecutor;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+
+/**
+ * Generates image and PDF thumbnails in the background, on a bounded number of
+ * the container's threads, so that a page listing a batch of new files doesn't
+ * have to wait for all of their thumbnails to be rendered first.
+ * <p>
+ * New files are queued by the ingest service once they are saved, for all
+ * the standard thumbnail sizes; a request for a thumbnail that is not cached
+ * yet queues it as well, and gets no thumbnail (i.e., the placeholder icon
+ * for the file type) until it has been generated. A file is only queued once
+ * for a given size, however many requests ask for it in the meantime.
+ * <p>
+ * Up to {@code dataverse.files.thumbnails.generation-threads} files are
+ * worked on at a time, and up to {@code queue-size} files wait (see
+ * {@link BoundedExecutor}); when the queue is full, the files are
+ * simply not queued, and will be queued again the next time they are asked
+ * for. With {@code dataverse.files.thumbnails.background-generation} set to
+ * false, thumbnails are generated by the requests that need them, as before.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ThumbnailGenerationQueue {
+    private static final Logger logger = Logger.getLogger(ThumbnailGenerationQueue.class.getCanonicalName());
+
+    /**
+     * The sizes used by the pages and the APIs, all generated for new files.
+     */
+    static final int[] STANDARD_SIZES = {
+        ImageThumbConverter.DEFAULT_CARDIMAGE_SIZE,
+        ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE,
+        ImageThumbConverter.DEFAULT_DATASETLOGO_SIZE,
+        ImageThumbConverter.DEFAULT_PREVIEW_SIZE
+    };
+
+    @Resource
+    ManagedExecutorService managedExecutor;
+
+    @EJB
+    DataFileServiceBean dataFileService;
+
+    private boolean enabled;
+    private BoundedExecutor executor;
+    // "<file id>:<size>" for every thumbnail queued or being generated:
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicLong generatedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        enabled = JvmSettings.THUMBNAILS_BACKGROUND_GENERATION.lookupOptional(Boolean.class).orElse(true);
+        int threads = JvmSettings.THUMBNAILS_GENERATION_THREADS.lookupOptional(Integer.class)
+                .orElse(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        int queueSize = JvmSettings.THUMBNAILS_GENERATION_QUEUE_SIZE.lookupOptional(Integer.class).orElse(10000);
+
+        if (enabled) {
+            logger.info("Starting background thumbnail generation with " + threads + " threads");
+            executor = new BoundedExecutor(managedExecutor, Math.max(threads, 1), Math.max(queueSize, 1));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            logger.info("Stopping background thumbnail generation; " + executor.getQueueSize() + " files were still queued");
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return whether thumbnails are generated in the background; if not,
+     * nothing is ever queued.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the thumbnails of a new file, in all the standard sizes.
+     *
+     * @param file a saved file
+     */
+    public void enqueue(DataFile file) {
+        enqueue(file, STANDARD_SIZES);
+    }
+
+    /**
+     * Queues the thumbnail of a file in the requested size; the standard
+     * sizes are queued along with it, since they are usually asked for next.
+     *
+     * @param file a saved file
+     * @param size
+     * @return whether the thumbnail is going to be generated (it was queued
+     * now, or is already queued)
+     */
+    public boolean enqueue(DataFile file, int size) {
+        int[] sizes = Arrays.copyOf(STANDARD_SIZES, STANDARD_SIZES.length + 1);
+        sizes[STANDARD_SIZES.length] = size;
+        enqueue(file, sizes);
+        return isPending(file.getId(), size);
+    }
+
+    private void enqueue(DataFile file, int[] sizes) {
+        if (!enabled || file == null || file.getId() == null || file.isPreviewImageFail()
+                || !FileUtil.isThumbnailSupported(file)) {
+            return;
+        }
+        Long fileId = file.getId();
+        List<Integer> newSizes = new ArrayList<>(sizes.length);
+        for (int size : sizes) {
+            if (!newSizes.contains(size) && pending.add(key(fileId, size))) {
+                newSizes.add(size);
+            }
+        }
+        if (newSizes.isEmpty()) {
+            return;
+        }
+        try {
+            executor.execute(() -> generate(fileId, newSizes));
+        } catch (RejectedExecutionException ree) {
+            logger.fine("The thumbnail generation queue is full; not queueing file " + fileId);
+            rejectedCount.incrementAndGet();
+            for (int size : newSizes) {
+                pending.remove(key(fileId, size));
+            }
+        }
+    }
+
+    /**
+     * @param fileId
+     * @param size
+     * @return whether the thumbnail of this size is queued or being generated
+     */
+    public boolean isPending(Long fileId, int size) {
+        return fileId != null && pending.contains(key(fileId, size));
+    }
+
+    private void generate(Long fileId, List<Integer> sizes) {
+        try {
+            DataFile file = dataFileService.find(fileId);
+            if (file == null) {
+                return;
+            }
+            boolean generated = true;
+            for (int size : sizes) {
+                if (!ImageThumbConverter.generateThumbnailIfNotCached(file, size)) {
+                    generated = false;
+                    break;
+                }
+            }
+            if (generated) {
+                generatedCount.incrementAndGet();
+            } else {
+                failedCount.incrementAndGet();
+            }
+            // Recorded in the database, so that the file is not queued again
+            // (and the pages can trust the flag from now on):
+            dataFileService.setPreviewImageStatus(fileId, generated);
+        } catch (Exception e) {
+            failedCount.incrementAndGet();
+            logger.log(Level.WARNING, "Failed to generate the thumbnails for file " + fileId, e);
+        } finally {
+            for (int size : sizes) {
+                pending.remove(key(fileId, size));
+            }
+        }
+    }
+
+    private static String key(Long fileId, int size) {
+        return fileId + ":" + size;
+    }
+
+    @Gauge(name = "thumbnail_generation_queue_size", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of files waiting for their thumbnails to be generated")
+    public int getQueueSize() {
+        return executor == null ? 0 : executor.getQueueSize();
+    }
+
+    @Gauge(name = "thumbnail_generation_active", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of files whose thumbnails are being generated")
+    public int getActiveCount() {
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    @Gauge(name = "thumbnail_generation_generated", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of files whose thumbnails were generated in the background")
+    public long getGeneratedCount() {
+        return generatedCount.get();
+    }
+
+    @Gauge(name = "thumbnail_generation_failed", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of files whose thumbnails could not be generated in the background")
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Gauge(name = "thumbnail_generation_rejected", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of files not queued for thumbnail generation because the queue was full")
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
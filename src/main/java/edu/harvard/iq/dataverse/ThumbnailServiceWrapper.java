@@ -15,7 +15,10 @@ import edu.harvard.iq.dataverse.util.SystemConfig;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import jakarta.ejb.EJB;
@@ -48,6 +51,45 @@ public class ThumbnailServiceWrapper implements java.io.Serializable  {
     private Map<Long, String> dvobjectThumbnailsMap = new HashMap<>();
     private Map<Long, DvObject> dvobjectViewMap = new HashMap<>();
     private Map<Long, Boolean> hasThumbMap = new HashMap<>();
+    private Map<Long, Long> autoselectedThumbnailMap = new HashMap<>();
+    private Map<Long, String> dataverseLogoMap = new HashMap<>();
+
+    /**
+     * Looks up, for a whole page of search results at once, what can be
+     * known about their card images without touching the storage: whether
+     * the files have (or can't have) a thumbnail, which already generated
+     * thumbnails can be auto-selected for the datasets, and the logo file
+     * names of the dataverses. The getters for the individual cards then
+     * only have to go to the database for what is left. Call after the
+     * cards have been populated (so that the entities are there).
+     *
+     * @param results the search results on the page
+     */
+    public void prefetchCardImages(List<SolrSearchResult> results) {
+        Set<Long> versionIds = new HashSet<>();
+        Set<Long> dataverseIds = new HashSet<>();
+        for (SolrSearchResult result : results) {
+            if (result.getEntityId() == null) {
+                continue;
+            }
+            if (result.getType().equals("files") && result.getEntity() instanceof DataFile dataFile) {
+                if (dataFile.isPreviewImageAvailable()) {
+                    hasThumbMap.put(dataFile.getId(), true);
+                } else if (dataFile.isPreviewImageFail() || !FileUtil.isThumbnailSupported(dataFile)) {
+                    hasThumbMap.put(dataFile.getId(), false);
+                }
+            } else if (result.getType().equals("datasets") && result.getEntity() instanceof Dataset dataset) {
+                if (!result.isHarvested() && !dataset.isUseGenericThumbnail() && dataset.getThumbnailFile() == null
+                        && result.getDatasetVersionId() != null) {
+                    versionIds.add(result.getDatasetVersionId());
+                }
+            } else if (result.getType().equals("dataverses") && !dataverseLogoMap.containsKey(result.getEntityId())) {
+                dataverseIds.add(result.getEntityId());
+            }
+        }
+        autoselectedThumbnailMap.putAll(datasetVersionService.getThumbnailsByVersionIds(versionIds));
+        dataverseLogoMap.putAll(dataverseService.findLogoFileNamesByIds(dataverseIds));
+    }
 
     public String getFileCardImageAsUrl(SolrSearchResult result) {
         DataFile dataFile = result != null && result.getEntity() != null ? ((DataFile) result.getEntity()) : null;
@@ -206,8 +248,13 @@ public class ThumbnailServiceWrapper implements java.io.Serializable  {
             // If no other logo we attempt to auto-select via the optimized, native
             // query-based method
             // from the DatasetVersionService:
-            if (!hasDatasetLogo && datasetVersionService.getThumbnailByVersionId(versionId) == null) {
-                return null;
+            if (!hasDatasetLogo) {
+                Long autoselectedThumbnailId = autoselectedThumbnailMap.get(versionId);
+                if (autoselectedThumbnailId != null) {
+                    datasetVersionService.assignDatasetThumbnailByNativeQuery(versionId, autoselectedThumbnailId);
+                } else if (datasetVersionService.getThumbnailByVersionId(versionId) == null) {
+                    return null;
+                }
             }
         }
         String url = SystemConfig.getDataverseSiteUrlStatic() + "/api/datasets/" + dataset.getId() + "/logo";
@@ -220,12 +267,18 @@ public class ThumbnailServiceWrapper implements java.io.Serializable  {
     // it's the responsibility of the user - to make sure the search result
     // passed to this method is of the Dataverse type!
     public String getDataverseCardImageAsBase64Url(SolrSearchResult result) {
+        if (dataverseLogoMap.containsKey(result.getEntityId())) {
+            return dataverseService.getDataverseLogoThumbnailAsBase64ById(result.getEntityId(), dataverseLogoMap.get(result.getEntityId()));
+        }
         return dataverseService.getDataverseLogoThumbnailAsBase64ById(result.getEntityId());
     }
 
     // it's the responsibility of the user - to make sure the search result
     // passed to this method is of the Dataverse type!
     public String getDataverseCardImageAsUrl(SolrSearchResult result) {
+        if (dataverseLogoMap.containsKey(result.getEntityId())) {
+            return dataverseService.getDataverseLogoThumbnailAsUrl(result.getEntityId(), dataverseLogoMap.get(result.getEntityId()));
+        }
         return dataverseService.getDataverseLogoThumbnailAsUrl(result.getEntityId());
     }
 
@@ -233,6 +286,8 @@ public class ThumbnailServiceWrapper implements java.io.Serializable  {
         dvobjectThumbnailsMap = new HashMap<>();
         dvobjectViewMap = new HashMap<>();
         hasThumbMap = new HashMap<>();
+        autoselectedThumbnailMap = new HashMap<>();
+        dataverseLogoMap = new HashMap<>();
     }
 
     
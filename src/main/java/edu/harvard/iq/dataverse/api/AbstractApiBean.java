@@ -706,6 +706,17 @@ public abstract class AbstractApiBean {
                 .type(MediaType.APPLICATION_JSON).build();
     }
 
+    protected Response ok( JsonArrayBuilder bld , long totalCount, String nextCursor) {
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("status", ApiConstants.STATUS_OK)
+                .add("totalCount", totalCount);
+        if (nextCursor != null) {
+            response.add("nextCursor", nextCursor);
+        }
+        return Response.ok(response.add("data", bld).build())
+                .type(MediaType.APPLICATION_JSON).build();
+    }
+
     protected Response ok( JsonArray ja ) {
         return Response.ok(Json.createObjectBuilder()
             .add("status", ApiConstants.STATUS_OK)
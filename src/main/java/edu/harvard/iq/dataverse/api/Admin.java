@@ -3,6 +3,7 @@ package edu.harvard.iq.dataverse.api;
 import edu.harvard.iq.dataverse.BannerMessage;
 import edu.harvard.iq.dataverse.BannerMessageServiceBean;
 import edu.harvard.iq.dataverse.BannerMessageText;
+import edu.harvard.iq.dataverse.CitationCacheServiceBean;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DataFileServiceBean;
 import edu.harvard.iq.dataverse.Dataset;
@@ -45,6 +46,9 @@ import edu.harvard.iq.dataverse.confirmemail.ConfirmEmailInitResponse;
 import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.metrics.MetricsRollupServiceBean;
+import edu.harvard.iq.dataverse.fixity.FixityAuditRunner;
+import edu.harvard.iq.dataverse.fixity.FixityAuditServiceBean;
 import edu.harvard.iq.dataverse.engine.command.impl.AbstractSubmitToArchiveCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.PublishDataverseCommand;
 import edu.harvard.iq.dataverse.settings.Setting;
@@ -162,6 +166,14 @@ public class Admin extends AbstractApiBean {
     @EJB
     DvObjectServiceBean dvObjectService;
     @EJB
+    MetricsRollupServiceBean metricsRollupService;
+    @EJB
+    CitationCacheServiceBean citationCacheService;
+    @EJB
+    FixityAuditRunner fixityAuditRunner;
+    @EJB
+    FixityAuditServiceBean fixityAuditService;
+    @EJB
     DatasetVersionServiceBean datasetversionService;
     @Inject
     DataverseRequestServiceBean dvRequestService;
@@ -2125,6 +2137,108 @@ public class Admin extends AbstractApiBean {
         return ok("metric cache " + name + " cleared.");
     }
 
+    @DELETE
+    @Path("/clearCitationCache")
+    public Response clearCitationCache() {
+        int cleared = citationCacheService.clear();
+        return ok("citation cache cleared (" + cleared + " citations).");
+    }
+
+    @POST
+    @Path("/rebuildMetricsRollups")
+    public Response rebuildMetricsRollups() {
+        long counters = metricsRollupService.rebuild();
+        return ok("metric rollups rebuilt (" + counters + " counters).");
+    }
+
+    @POST
+    @Path("/fixity/audits")
+    public Response startFixityAudit() {
+        Long auditId = fixityAuditRunner.start();
+        if (auditId == null) {
+            return error(Status.CONFLICT, "A fixity audit is already running.");
+        }
+        return ok(fixityAuditToJson(fixityAuditService.findAudit(auditId)));
+    }
+
+    @GET
+    @Path("/fixity/audits")
+    public Response listFixityAudits() {
+        JsonArrayBuilder audits = Json.createArrayBuilder();
+        fixityAuditService.findAllAudits().forEach(audit -> audits.add(fixityAuditToJson(audit)));
+        return ok(audits);
+    }
+
+    @GET
+    @Path("/fixity/audits/{id}")
+    public Response getFixityAudit(@PathParam("id") Long auditId) {
+        FixityAuditServiceBean.Audit audit = fixityAuditService.findAudit(auditId);
+        if (audit == null) {
+            return error(Status.NOT_FOUND, "Fixity audit " + auditId + " not found.");
+        }
+        return ok(fixityAuditToJson(audit));
+    }
+
+    @POST
+    @Path("/fixity/audits/{id}/stop")
+    public Response stopFixityAudit(@PathParam("id") Long auditId) {
+        if (!fixityAuditRunner.stop(auditId)) {
+            return error(Status.BAD_REQUEST, "Fixity audit " + auditId + " is not running.");
+        }
+        return ok("Fixity audit " + auditId + " stopping after the batches in progress.");
+    }
+
+    @POST
+    @Path("/fixity/audits/{id}/resume")
+    public Response resumeFixityAudit(@PathParam("id") Long auditId, @QueryParam("force") boolean force) {
+        if (fixityAuditService.findAudit(auditId) == null) {
+            return error(Status.NOT_FOUND, "Fixity audit " + auditId + " not found.");
+        }
+        if (!fixityAuditRunner.resume(auditId, force)) {
+            return error(Status.CONFLICT, "Fixity audit " + auditId + " cannot be resumed: it is not stopped, or another audit is running.");
+        }
+        return ok(fixityAuditToJson(fixityAuditService.findAudit(auditId)));
+    }
+
+    @GET
+    @Path("/fixity/audits/{id}/failures")
+    public Response getFixityAuditFailures(@PathParam("id") Long auditId, @QueryParam("offset") Integer offset, @QueryParam("limit") Integer limit) {
+        if (fixityAuditService.findAudit(auditId) == null) {
+            return error(Status.NOT_FOUND, "Fixity audit " + auditId + " not found.");
+        }
+        JsonArrayBuilder failures = Json.createArrayBuilder();
+        for (FixityAuditServiceBean.Failure failure : fixityAuditService.findFailures(auditId,
+                offset == null ? 0 : Math.max(0, offset), limit == null ? 100 : Math.max(1, limit))) {
+            failures.add(jsonObjectBuilder()
+                    .add("dataFileId", failure.dataFileId())
+                    .add("storageDriver", failure.driverId())
+                    .add("outcome", failure.outcome())
+                    .add("message", failure.message())
+                    .add("checkTime", failure.checkTime()));
+        }
+        return ok(failures);
+    }
+
+    private JsonObjectBuilder fixityAuditToJson(FixityAuditServiceBean.Audit audit) {
+        JsonArrayBuilder stores = Json.createArrayBuilder();
+        for (FixityAuditServiceBean.Store store : fixityAuditService.findStores(audit.id())) {
+            stores.add(jsonObjectBuilder()
+                    .add("storageDriver", store.driverId())
+                    .add("lastDataFileId", store.lastDataFileId())
+                    .add("checked", store.checked())
+                    .add("failed", store.failed())
+                    .add("bytesRead", store.bytesRead())
+                    .add("completed", store.completed()));
+        }
+        return jsonObjectBuilder()
+                .add("id", audit.id())
+                .add("status", audit.status())
+                .add("startTime", audit.startTime())
+                .add("lastUpdateTime", audit.lastUpdateTime())
+                .add("endTime", audit.endTime())
+                .add("stores", stores);
+    }
+
     @GET
 	@AuthRequired
     @Path("/dataverse/{alias}/addRoleAssignmentsToChildren")
@@ -123,6 +123,9 @@ public class Datasets extends AbstractApiBean {
     @EJB
     GlobusServiceBean globusService;
 
+    @EJB
+    CitationCacheServiceBean citationCacheService;
+
     @EJB
     UserNotificationServiceBean userNotificationService;
     
@@ -464,12 +467,18 @@ public class Datasets extends AbstractApiBean {
             }
 
             if (excludeFiles == null ? true : !excludeFiles) {
-                requestedDatasetVersion = datasetversionService.findDeep(requestedDatasetVersion.getId());
+                // The files are streamed, one page at a time, rather than 
+                // serialized all at once; this keeps the memory footprint 
+                // flat for versions with very many files:
+                JsonObject versionWithoutFiles = json(requestedDatasetVersion, null, false, returnOwners).build();
+                FileMetadataWindow files = new FileMetadataWindow(datasetVersionFilesServiceBean, requestedDatasetVersion);
+                StreamingOutput stream = os -> StreamingJsonPrinter.writeDatasetVersionResponse(os, versionWithoutFiles, files);
+                return Response.ok(stream).type(MediaType.APPLICATION_JSON).build();
             }
 
             JsonObjectBuilder jsonBuilder = json(requestedDatasetVersion,
                                                  null, 
-                                                 excludeFiles == null ? true : !excludeFiles, 
+                                                 false, 
                                                  returnOwners);
             return ok(jsonBuilder);
 
@@ -484,6 +493,7 @@ public class Datasets extends AbstractApiBean {
                                     @PathParam("versionId") String versionId,
                                     @QueryParam("limit") Integer limit,
                                     @QueryParam("offset") Integer offset,
+                                    @QueryParam("cursor") String cursor,
                                     @QueryParam("contentType") String contentType,
                                     @QueryParam("accessStatus") String accessStatus,
                                     @QueryParam("categoryName") String categoryName,
@@ -513,8 +523,28 @@ public class Datasets extends AbstractApiBean {
             } catch (IllegalArgumentException e) {
                 return badRequest(BundleUtil.getStringFromBundle("datasets.api.version.files.invalid.access.status", List.of(accessStatus)));
             }
-            return ok(jsonFileMetadatas(datasetVersionFilesServiceBean.getFileMetadatas(datasetVersion, limit, offset, fileSearchCriteria, fileOrderCriteria)),
-                    datasetVersionFilesServiceBean.getFileMetadataCount(datasetVersion, fileSearchCriteria));
+            List<FileMetadata> fileMetadatas;
+            if (cursor != null) {
+                if (offset != null) {
+                    return badRequest(BundleUtil.getStringFromBundle("datasets.api.version.files.cursor.and.offset"));
+                }
+                FileMetadataCursor fileMetadataCursor;
+                try {
+                    fileMetadataCursor = FileMetadataCursor.decode(cursor, fileOrderCriteria);
+                } catch (IllegalArgumentException e) {
+                    return badRequest(BundleUtil.getStringFromBundle("datasets.api.version.files.invalid.cursor", List.of(cursor)));
+                }
+                fileMetadatas = datasetVersionFilesServiceBean.getFileMetadatas(datasetVersion, limit, fileMetadataCursor, fileSearchCriteria, fileOrderCriteria);
+            } else {
+                fileMetadatas = datasetVersionFilesServiceBean.getFileMetadatas(datasetVersion, limit, offset, fileSearchCriteria, fileOrderCriteria);
+            }
+            // A full page may be followed by more; hand out the cursor for the next one:
+            String nextCursor = limit != null && !fileMetadatas.isEmpty() && fileMetadatas.size() == limit
+                    ? FileMetadataCursor.after(fileMetadatas.get(fileMetadatas.size() - 1), fileOrderCriteria).encode()
+                    : null;
+            return ok(jsonFileMetadatas(fileMetadatas),
+                    datasetVersionFilesServiceBean.getFileMetadataCount(datasetVersion, fileSearchCriteria),
+                    nextCursor);
         }, getRequestUser(crc));
     }
 
@@ -4856,9 +4886,9 @@ public class Datasets extends AbstractApiBean {
                                               @Context UriInfo uriInfo,
                                               @Context HttpHeaders headers) {
         boolean checkFilePerms = false;
-        return response(req -> ok(
+        return response(req -> ok(citationCacheService.getCitation(
                 getDatasetVersionOrDie(req, versionId, findDatasetOrDie(datasetId), uriInfo, headers,
-                        includeDeaccessioned, checkFilePerms).getCitation(true, false)),
+                        includeDeaccessioned, checkFilePerms), CitationCacheServiceBean.Format.HTML)),
                 getRequestUser(crc));
     }
 
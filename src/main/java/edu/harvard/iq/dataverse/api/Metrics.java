@@ -14,6 +14,7 @@ import java.util.logging.Logger;
 
 import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
+import jakarta.json.JsonValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.Path;
@@ -66,9 +67,7 @@ public class Metrics extends AbstractApiBean {
         JsonArray jsonArray = MetricsUtil.stringToJsonArray(metricsSvc.returnUnexpiredCacheAllTime(metricName, null, d));
 
         if (null == jsonArray) { // run query and save
-
-            jsonArray = metricsSvc.getDataversesTimeSeries(uriInfo, d);
-            metricsSvc.save(new Metric(metricName, null, null, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, null, null, d, () -> metricsSvc.getDataversesTimeSeries(uriInfo, d));
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -94,9 +93,10 @@ public class Metrics extends AbstractApiBean {
         JsonObject jsonObj = MetricsUtil.stringToJsonObject(metricsSvc.returnUnexpiredCacheMonthly(metricName, sanitizedyyyymm, null, d));
 
         if (null == jsonObj) { // run query and save
-            Long count = metricsSvc.dataversesToMonth(sanitizedyyyymm, d);
-            jsonObj = MetricsUtil.countToJson(count).build();
-            metricsSvc.save(new Metric(metricName, sanitizedyyyymm, null, d, jsonObj.toString()));
+            jsonObj = recompute(metricName, sanitizedyyyymm, null, d, () -> {
+                Long count = metricsSvc.dataversesToMonth(sanitizedyyyymm, d);
+                return MetricsUtil.countToJson(count).build();
+            });
         }
 
         return ok(jsonObj);
@@ -122,9 +122,10 @@ public class Metrics extends AbstractApiBean {
         JsonObject jsonObj = MetricsUtil.stringToJsonObject(metricsSvc.returnUnexpiredCacheDayBased(metricName, String.valueOf(days), null, d));
 
         if (null == jsonObj) { // run query and save
-            Long count = metricsSvc.dataversesPastDays(days, d);
-            jsonObj = MetricsUtil.countToJson(count).build();
-            metricsSvc.save(new Metric(metricName, String.valueOf(days), null, d, jsonObj.toString()));
+            jsonObj = recompute(metricName, String.valueOf(days), null, d, () -> {
+                Long count = metricsSvc.dataversesPastDays(days, d);
+                return MetricsUtil.countToJson(count).build();
+            });
         }
 
         return ok(jsonObj);
@@ -148,8 +149,7 @@ public class Metrics extends AbstractApiBean {
         JsonArray jsonArray = MetricsUtil.stringToJsonArray(metricsSvc.returnUnexpiredCacheAllTime(metricName, null, d));
 
         if (null == jsonArray) { // run query and save
-            jsonArray = MetricsUtil.dataversesByCategoryToJson(metricsSvc.dataversesByCategory(d)).build();
-            metricsSvc.save(new Metric(metricName, null, null, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, null, null, d, () -> MetricsUtil.dataversesByCategoryToJson(metricsSvc.dataversesByCategory(d)).build());
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -175,8 +175,7 @@ public class Metrics extends AbstractApiBean {
         JsonArray jsonArray = MetricsUtil.stringToJsonArray(metricsSvc.returnUnexpiredCacheAllTime(metricName, null, d));
 
         if (null == jsonArray) { // run query and save
-            jsonArray = MetricsUtil.dataversesBySubjectToJson(metricsSvc.dataversesBySubject(d)).build();
-            metricsSvc.save(new Metric(metricName, null, null, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, null, null, d, () -> MetricsUtil.dataversesBySubjectToJson(metricsSvc.dataversesBySubject(d)).build());
         }
 
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
@@ -209,9 +208,7 @@ public class Metrics extends AbstractApiBean {
         JsonArray jsonArray = MetricsUtil.stringToJsonArray(metricsSvc.returnUnexpiredCacheAllTime(metricName, null, d));
 
         if (null == jsonArray) { // run query and save
-
-            jsonArray = metricsSvc.getDatasetsTimeSeries(uriInfo, dataLocation, d);
-            metricsSvc.save(new Metric(metricName, null, null, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, null, null, d, () -> metricsSvc.getDatasetsTimeSeries(uriInfo, dataLocation, d));
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -238,9 +235,10 @@ public class Metrics extends AbstractApiBean {
         JsonObject jsonObj = MetricsUtil.stringToJsonObject(metricsSvc.returnUnexpiredCacheMonthly(metricName, sanitizedyyyymm, validDataLocation, d));
 
         if (null == jsonObj) { // run query and save
-            Long count = metricsSvc.datasetsToMonth(sanitizedyyyymm, validDataLocation, d);
-            jsonObj = MetricsUtil.countToJson(count).build();
-            metricsSvc.save(new Metric(metricName, sanitizedyyyymm, validDataLocation, d, jsonObj.toString()));
+            jsonObj = recompute(metricName, sanitizedyyyymm, validDataLocation, d, () -> {
+                Long count = metricsSvc.datasetsToMonth(sanitizedyyyymm, validDataLocation, d);
+                return MetricsUtil.countToJson(count).build();
+            });
         }
 
         return ok(jsonObj);
@@ -267,9 +265,10 @@ public class Metrics extends AbstractApiBean {
         JsonObject jsonObj = MetricsUtil.stringToJsonObject(metricsSvc.returnUnexpiredCacheDayBased(metricName, String.valueOf(days), validDataLocation, d));
 
         if (null == jsonObj) { // run query and save
-            Long count = metricsSvc.datasetsPastDays(days, validDataLocation, d);
-            jsonObj = MetricsUtil.countToJson(count).build();
-            metricsSvc.save(new Metric(metricName, String.valueOf(days), validDataLocation, d, jsonObj.toString()));
+            jsonObj = recompute(metricName, String.valueOf(days), validDataLocation, d, () -> {
+                Long count = metricsSvc.datasetsPastDays(days, validDataLocation, d);
+                return MetricsUtil.countToJson(count).build();
+            });
         }
 
         return ok(jsonObj);
@@ -302,8 +301,7 @@ public class Metrics extends AbstractApiBean {
         JsonArray jsonArray = MetricsUtil.stringToJsonArray(metricsSvc.returnUnexpiredCacheMonthly(metricName, sanitizedyyyymm, validDataLocation, d));
 
         if (null == jsonArray) { // run query and save
-            jsonArray = MetricsUtil.datasetsBySubjectToJson(metricsSvc.datasetsBySubjectToMonth(sanitizedyyyymm, validDataLocation, d)).build();
-            metricsSvc.save(new Metric(metricName, sanitizedyyyymm, validDataLocation, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, sanitizedyyyymm, validDataLocation, d, () -> MetricsUtil.datasetsBySubjectToJson(metricsSvc.datasetsBySubjectToMonth(sanitizedyyyymm, validDataLocation, d)).build());
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -334,9 +332,7 @@ public class Metrics extends AbstractApiBean {
         JsonArray jsonArray = MetricsUtil.stringToJsonArray(metricsSvc.returnUnexpiredCacheAllTime(metricName, null, d));
 
         if (null == jsonArray) { // run query and save
-
-            jsonArray = metricsSvc.filesTimeSeries(d);
-            metricsSvc.save(new Metric(metricName, null, null, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, null, null, d, () -> metricsSvc.filesTimeSeries(d));
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -363,11 +359,12 @@ public class Metrics extends AbstractApiBean {
         JsonObject jsonObj = MetricsUtil.stringToJsonObject(metricsSvc.returnUnexpiredCacheMonthly(metricName, sanitizedyyyymm, null, d));
         logger.fine("Returned");
         if (null == jsonObj) { // run query and save
-            logger.fine("Getting filesToMonth : " + sanitizedyyyymm + " dvId=" + ((d==null) ? "not sent" : d.getId()));
-            Long count = metricsSvc.filesToMonth(sanitizedyyyymm, d);
-            logger.fine("count = " + count);
-            jsonObj = MetricsUtil.countToJson(count).build();
-            metricsSvc.save(new Metric(metricName, sanitizedyyyymm, null, d, jsonObj.toString()));
+            jsonObj = recompute(metricName, sanitizedyyyymm, null, d, () -> {
+                logger.fine("Getting filesToMonth : " + sanitizedyyyymm + " dvId=" + ((d==null) ? "not sent" : d.getId()));
+                Long count = metricsSvc.filesToMonth(sanitizedyyyymm, d);
+                logger.fine("count = " + count);
+                return MetricsUtil.countToJson(count).build();
+            });
         }
 
         return ok(jsonObj);
@@ -393,9 +390,10 @@ public class Metrics extends AbstractApiBean {
         JsonObject jsonObj = MetricsUtil.stringToJsonObject(metricsSvc.returnUnexpiredCacheDayBased(metricName, String.valueOf(days), null, d));
 
         if (null == jsonObj) { // run query and save
-            Long count = metricsSvc.filesPastDays(days, d);
-            jsonObj = MetricsUtil.countToJson(count).build();
-            metricsSvc.save(new Metric(metricName, String.valueOf(days), null, d, jsonObj.toString()));
+            jsonObj = recompute(metricName, String.valueOf(days), null, d, () -> {
+                Long count = metricsSvc.filesPastDays(days, d);
+                return MetricsUtil.countToJson(count).build();
+            });
         }
 
         return ok(jsonObj);
@@ -418,8 +416,7 @@ public class Metrics extends AbstractApiBean {
 
         if (null == jsonArray) { // run query and save
             // Only handling published right now
-            jsonArray = metricsSvc.filesByTypeTimeSeries(d, true);
-            metricsSvc.save(new Metric(metricName, null, null, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, null, null, d, () -> metricsSvc.filesByTypeTimeSeries(d, true));
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -444,8 +441,7 @@ public class Metrics extends AbstractApiBean {
         JsonArray jsonArray = MetricsUtil.stringToJsonArray(metricsSvc.returnUnexpiredCacheAllTime(metricName, null, d));
 
         if (null == jsonArray) { // run query and save
-            jsonArray = metricsSvc.filesByType(d);
-            metricsSvc.save(new Metric(metricName, null, null, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, null, null, d, () -> metricsSvc.filesByType(d));
         }
 
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
@@ -479,8 +475,7 @@ public class Metrics extends AbstractApiBean {
 
         if (null == jsonArray) { // run query and save
             // Only handling published right now
-            jsonArray = metricsSvc.downloadsTimeSeries(d);
-            metricsSvc.save(new Metric(metricName, null, null, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, null, null, d, () -> metricsSvc.downloadsTimeSeries(d));
         }
 
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
@@ -507,14 +502,14 @@ public class Metrics extends AbstractApiBean {
         JsonObject jsonObj = MetricsUtil.stringToJsonObject(metricsSvc.returnUnexpiredCacheMonthly(metricName, sanitizedyyyymm, null, d));
 
         if (null == jsonObj) { // run query and save
-            Long count;
             try {
-                count = metricsSvc.downloadsToMonth(sanitizedyyyymm, d);
+                jsonObj = recompute(metricName, sanitizedyyyymm, null, d, () -> {
+                    Long count = metricsSvc.downloadsToMonth(sanitizedyyyymm, d);
+                    return MetricsUtil.countToJson(count).build();
+                });
             } catch (ParseException e) {
                 return error(BAD_REQUEST, "Unable to parse supplied date: " + e.getLocalizedMessage());
             }
-            jsonObj = MetricsUtil.countToJson(count).build();
-            metricsSvc.save(new Metric(metricName, sanitizedyyyymm, null, d, jsonObj.toString()));
         }
 
         return ok(jsonObj);
@@ -539,9 +534,10 @@ public class Metrics extends AbstractApiBean {
         JsonObject jsonObj = MetricsUtil.stringToJsonObject(metricsSvc.returnUnexpiredCacheDayBased(metricName, String.valueOf(days), null, d));
 
         if (null == jsonObj) { // run query and save
-            Long count = metricsSvc.downloadsPastDays(days, d);
-            jsonObj = MetricsUtil.countToJson(count).build();
-            metricsSvc.save(new Metric(metricName, String.valueOf(days), null, d, jsonObj.toString()));
+            jsonObj = recompute(metricName, String.valueOf(days), null, d, () -> {
+                Long count = metricsSvc.downloadsPastDays(days, d);
+                return MetricsUtil.countToJson(count).build();
+            });
         }
 
         return ok(jsonObj);
@@ -570,14 +566,14 @@ public class Metrics extends AbstractApiBean {
         JsonObject jsonObj = MetricsUtil.stringToJsonObject(metricsSvc.returnUnexpiredCacheMonthly(metricName, sanitizedyyyymm, null, null));
 
         if (null == jsonObj) { // run query and save
-            Long count;
             try {
-                count = metricsSvc.accountsToMonth(sanitizedyyyymm);
+                jsonObj = recompute(metricName, sanitizedyyyymm, null, null, () -> {
+                    Long count = metricsSvc.accountsToMonth(sanitizedyyyymm);
+                    return MetricsUtil.countToJson(count).build();
+                });
             } catch (ParseException e) {
                 return error(BAD_REQUEST, "Unable to parse supplied date: " + e.getLocalizedMessage());
             }
-            jsonObj = MetricsUtil.countToJson(count).build();
-            metricsSvc.save(new Metric(metricName, sanitizedyyyymm, null, null, jsonObj.toString()));
         }
 
         return ok(jsonObj);
@@ -602,9 +598,10 @@ public class Metrics extends AbstractApiBean {
         JsonObject jsonObj = MetricsUtil.stringToJsonObject(metricsSvc.returnUnexpiredCacheDayBased(metricName, String.valueOf(days), null, null));
 
         if (null == jsonObj) { // run query and save
-            Long count = metricsSvc.accountsPastDays(days);
-            jsonObj = MetricsUtil.countToJson(count).build();
-            metricsSvc.save(new Metric(metricName, String.valueOf(days), null, null, jsonObj.toString()));
+            jsonObj = recompute(metricName, String.valueOf(days), null, null, () -> {
+                Long count = metricsSvc.accountsPastDays(days);
+                return MetricsUtil.countToJson(count).build();
+            });
         }
 
         return ok(jsonObj);
@@ -626,8 +623,7 @@ public class Metrics extends AbstractApiBean {
 
         if (null == jsonArray) { // run query and save
             // Only handling published right now
-            jsonArray = metricsSvc.accountsTimeSeries();
-            metricsSvc.save(new Metric(metricName, null, null, null, jsonArray.toString()));
+            jsonArray = recompute(metricName, null, null, null, () -> metricsSvc.accountsTimeSeries());
         }
 
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
@@ -650,7 +646,7 @@ public class Metrics extends AbstractApiBean {
     @Produces("text/csv, application/json")
     public Response getMakeDataCountMetricTimeSeries(@Context Request req, @Context UriInfo uriInfo, @PathParam("metric") String metricSupplied, @QueryParam("country") String country, @QueryParam("parentAlias") String parentAlias) {
         Dataverse d = findDataverseOrDieIfNotFound(parentAlias);
-        MakeDataCountUtil.MetricType metricType = null;
+        MakeDataCountUtil.MetricType metricType;
         try {
             errorIfUnrecongizedQueryParamPassed(uriInfo, new String[] { "parentAlias", "country" });
         } catch (IllegalArgumentException ia) {
@@ -667,8 +663,7 @@ public class Metrics extends AbstractApiBean {
 
         if (null == jsonArray) { // run query and save
             // Only handling published right now
-            jsonArray = metricsSvc.mdcMetricTimeSeries(metricType, country, d);
-            metricsSvc.save(new Metric(metricName, null, null, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, null, null, d, () -> metricsSvc.mdcMetricTimeSeries(metricType, country, d));
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -679,9 +674,9 @@ public class Metrics extends AbstractApiBean {
 
     @GET
     @Path("makeDataCount/{metric}/toMonth/{yyyymm}")
-    public Response getMakeDataCountMetricToMonth(@Context UriInfo uriInfo, @PathParam("metric") String metricSupplied, @PathParam("yyyymm") String yyyymm, @QueryParam("country") String country, @QueryParam("parentAlias") String parentAlias) {
+    public Response getMakeDataCountMetricToMonth(@Context UriInfo uriInfo, @PathParam("metric") String metricSupplied, @PathParam("yyyymm") String yyyymm, @QueryParam("country") String countrySupplied, @QueryParam("parentAlias") String parentAlias) {
         Dataverse d = findDataverseOrDieIfNotFound(parentAlias);
-        MakeDataCountUtil.MetricType metricType = null;
+        MakeDataCountUtil.MetricType metricType;
         try {
             errorIfUnrecongizedQueryParamPassed(uriInfo, new String[] { "parentAlias", "country" });
         } catch (IllegalArgumentException ia) {
@@ -692,25 +687,18 @@ public class Metrics extends AbstractApiBean {
         } catch (IllegalArgumentException ex) {
             return error(Response.Status.BAD_REQUEST, ex.getMessage());
         }
-        if (country != null) {
-            country = country.toLowerCase();
-
-            if (!MakeDataCountUtil.isValidCountryCode(country)) {
-                return error(Response.Status.BAD_REQUEST, "Country must be one of the ISO 1366 Country Codes");
-            }
+        String country = (countrySupplied == null) ? null : countrySupplied.toLowerCase();
+        if (country != null && !MakeDataCountUtil.isValidCountryCode(country)) {
+            return error(Response.Status.BAD_REQUEST, "Country must be one of the ISO 1366 Country Codes");
         }
         String metricName = "MDC-" + metricType.toString() + ((country == null) ? "" : "-" + country);
 
-        String sanitizedyyyymm = null;
-        if (yyyymm != null) {
-            sanitizedyyyymm = MetricsUtil.sanitizeYearMonthUserInput(yyyymm);
-        }
+        String sanitizedyyyymm = (yyyymm == null) ? null : MetricsUtil.sanitizeYearMonthUserInput(yyyymm);
 
         JsonObject jsonObj = MetricsUtil.stringToJsonObject(metricsSvc.returnUnexpiredCacheMonthly(metricName, sanitizedyyyymm, null, d));
 
         if (null == jsonObj) { // run query and save
-            jsonObj = metricsSvc.getMDCDatasetMetrics(metricType, sanitizedyyyymm, country, d);
-            metricsSvc.save(new Metric(metricName, sanitizedyyyymm, null, d, jsonObj.toString()));
+            jsonObj = recompute(metricName, sanitizedyyyymm, null, d, () -> metricsSvc.getMDCDatasetMetrics(metricType, sanitizedyyyymm, country, d));
         }
 
         return ok(jsonObj);
@@ -741,8 +729,7 @@ public class Metrics extends AbstractApiBean {
         JsonArray jsonArr = MetricsUtil.stringToJsonArray(metricsSvc.returnUnexpiredCacheMonthly(metricName, sanitizedyyyymm, null, d));
 
         if (null == jsonArr) { // run query and save
-            jsonArr = metricsSvc.fileDownloads(sanitizedyyyymm, d, false);
-            metricsSvc.save(new Metric(metricName, sanitizedyyyymm, null, d, jsonArr.toString()));
+            jsonArr = recompute(metricName, sanitizedyyyymm, null, d, () -> metricsSvc.fileDownloads(sanitizedyyyymm, d, false));
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -767,8 +754,7 @@ public class Metrics extends AbstractApiBean {
 
         if (null == jsonArr) { // run query and save
             // Only handling published right now
-            jsonArr = metricsSvc.fileDownloadsTimeSeries(d, false);
-            metricsSvc.save(new Metric(metricName, null, null, d, jsonArr.toString()));
+            jsonArr = recompute(metricName, null, null, d, () -> metricsSvc.fileDownloadsTimeSeries(d, false));
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -800,8 +786,7 @@ public class Metrics extends AbstractApiBean {
 
         if (null == jsonArray) { // run query and save
             // Only handling published right now
-            jsonArray = metricsSvc.uniqueDownloadsTimeSeries(d);
-            metricsSvc.save(new Metric(metricName, null, null, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, null, null, d, () -> metricsSvc.uniqueDownloadsTimeSeries(d));
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -828,8 +813,7 @@ public class Metrics extends AbstractApiBean {
         JsonArray jsonArray = MetricsUtil.stringToJsonArray(metricsSvc.returnUnexpiredCacheMonthly(metricName, sanitizedyyyymm, null, d));
 
         if (null == jsonArray) { // run query and save
-            jsonArray = metricsSvc.uniqueDatasetDownloads(sanitizedyyyymm, d);
-            metricsSvc.save(new Metric(metricName, sanitizedyyyymm, null, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, sanitizedyyyymm, null, d, () -> metricsSvc.uniqueDatasetDownloads(sanitizedyyyymm, d));
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -863,8 +847,7 @@ public class Metrics extends AbstractApiBean {
         JsonArray jsonArr = MetricsUtil.stringToJsonArray(metricsSvc.returnUnexpiredCacheMonthly(metricName, sanitizedyyyymm, null, d));
 
         if (null == jsonArr) { // run query and save
-            jsonArr = metricsSvc.fileDownloads(sanitizedyyyymm, d, true);
-            metricsSvc.save(new Metric(metricName, sanitizedyyyymm, null, d, jsonArr.toString()));
+            jsonArr = recompute(metricName, sanitizedyyyymm, null, d, () -> metricsSvc.fileDownloads(sanitizedyyyymm, d, true));
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -889,8 +872,7 @@ public class Metrics extends AbstractApiBean {
 
         if (null == jsonArray) { // run query and save
             // Only handling published right now
-            jsonArray = metricsSvc.fileDownloadsTimeSeries(d, true);
-            metricsSvc.save(new Metric(metricName, null, null, d, jsonArray.toString()));
+            jsonArray = recompute(metricName, null, null, d, () -> metricsSvc.fileDownloadsTimeSeries(d, true));
         }
         MediaType requestedType = getVariant(req, MediaType.valueOf(FileUtil.MIME_TYPE_CSV), MediaType.APPLICATION_JSON_TYPE);
         if ((requestedType != null) && (requestedType.equals(MediaType.APPLICATION_JSON_TYPE))) {
@@ -922,12 +904,32 @@ public class Metrics extends AbstractApiBean {
 
         JsonObject jsonObj = MetricsUtil.stringToJsonObject(metricsSvc.returnUnexpiredCacheMonthly(metricName, sanitizedyyyymm, null, d));
         if (null == jsonObj) { // run query and save
-            jsonObj = metricsSvc.getDataverseTree(d, sanitizedyyyymm, DatasetVersion.VersionState.RELEASED);
-            metricsSvc.save(new Metric(metricName, sanitizedyyyymm, null, d, jsonObj.toString()));
+            jsonObj = recompute(metricName, sanitizedyyyymm, null, d, () -> metricsSvc.getDataverseTree(d, sanitizedyyyymm, DatasetVersion.VersionState.RELEASED));
         }
         return ok(jsonObj);
     }
 
+    // A metric query; some of them throw a ParseException on a bad date
+    @FunctionalInterface
+    private interface MetricQuery<T extends JsonValue, E extends Exception> {
+        T run() throws E;
+    }
+
+    // Runs the query for an expired metric (after one of the returnUnexpiredCache
+    // methods returned null), saves the result, and only then hands it to any
+    // concurrent callers waiting for it; if the query or the save fails, they
+    // are told to run the query themselves.
+    private <T extends JsonValue, E extends Exception> T recompute(String metricName, String dayString, String dataLocation, Dataverse d, MetricQuery<T, E> query) throws E {
+        try {
+            T value = query.run();
+            metricsSvc.save(new Metric(metricName, dayString, dataLocation, d, value.toString()));
+            metricsSvc.completeRecompute(metricName, dayString, dataLocation, d, value.toString());
+            return value;
+        } finally {
+            metricsSvc.releaseRecompute(metricName, dayString, dataLocation, d);
+        }
+    }
+
     private void errorIfUnrecongizedQueryParamPassed(UriInfo uriDetails, String[] allowedQueryParams) throws IllegalArgumentException {
         for (String theKey : uriDetails.getQueryParameters().keySet()) {
             if (!Arrays.stream(allowedQueryParams).anyMatch(theKey::equals)) {
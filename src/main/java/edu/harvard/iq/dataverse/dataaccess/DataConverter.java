@@ -40,6 +40,7 @@ import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 import edu.harvard.iq.dataverse.util.FileUtil;
+import edu.harvard.iq.dataverse.util.SingleFlight;
 import edu.harvard.iq.dataverse.rserve.*;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -75,6 +76,9 @@ public class DataConverter {
     public static String FILE_TYPE_RDATA = "RData";
     
     public static String SERVICE_REQUEST_CONVERT = "convert";
+
+    // Format conversions in progress, by file id and format:
+    private static final SingleFlight<String, File> formatConversions = new SingleFlight<>();
     
     
     public static StorageIO<DataFile> performFormatConversion(DataFile file, StorageIO<DataFile> storageIO, String formatRequested, String formatType) {
@@ -102,39 +106,27 @@ public class DataConverter {
             convertedFileStream = null;
         }
 
-        // If not cached, run the conversion:
+        // If not cached, run the conversion (or wait for the one already
+        // running for the same file and format, and use its result):
         if (convertedFileStream == null) {
 
-            File tabFile = downloadFromStorageIO(storageIO);
-
-            if (tabFile == null) {
+            File formatConvertedFile;
+            try {
+                formatConvertedFile = convertAndCache(file, storageIO, formatRequested);
+            } catch (Exception ex) {
+                logger.log(Level.WARNING, "Failed to convert " + file.getStorageIdentifier() + " to " + formatRequested, ex);
                 return null;
             }
 
-            if (tabFile.length() > 0) {
-                File formatConvertedFile = runFormatConversion(file, tabFile, formatRequested);
-
-                // cache the result for future use:
-                if (formatConvertedFile != null && formatConvertedFile.exists()) {
-
-                    try {
-                        storageIO.savePathAsAux(Paths.get(formatConvertedFile.getAbsolutePath()), formatRequested);
-
-                    } catch (IOException ex) {
-                        logger.warning("failed to save cached format " + formatRequested + " for " + file.getStorageIdentifier());
-                        // We'll assume that this is a non-fatal condition.
-                    }
-
-                    // re-open the generated file:
-                    try {
-                        convertedFileStream = new FileInputStream(formatConvertedFile);
-                        convertedFileSize = formatConvertedFile.length();
-                    } catch (FileNotFoundException ioex) {
-                        logger.warning("Failed to open generated format " + formatRequested + " for " + file.getStorageIdentifier());
-                        return null;
-                    }
+            if (formatConvertedFile != null) {
+                // open the generated file:
+                try {
+                    convertedFileStream = new FileInputStream(formatConvertedFile);
+                    convertedFileSize = formatConvertedFile.length();
+                } catch (FileNotFoundException ioex) {
+                    logger.warning("Failed to open generated format " + formatRequested + " for " + file.getStorageIdentifier());
+                    return null;
                 }
-
             }
         }
 
@@ -163,6 +155,67 @@ public class DataConverter {
         return null;
     }
 
+    /**
+     * Generates the requested format of a tabular file ahead of time, so that
+     * it is already cached when the first user asks for it. Does nothing if
+     * the format is cached already.
+     *
+     * @param file an ingested tabular file
+     * @param formatRequested the format, as in {@link #performFormatConversion(DataFile, StorageIO, String, String)}
+     * @return true if the format is now cached
+     */
+    public static boolean pregenerateFormat(DataFile file, String formatRequested) {
+        if (!file.isTabularData() || FILE_TYPE_TAB.equals(formatRequested)) {
+            return false;
+        }
+        try {
+            StorageIO<DataFile> storageIO = file.getStorageIO();
+            storageIO.open();
+            if (storageIO.isAuxObjectCached(formatRequested)) {
+                return true;
+            }
+            return convertAndCache(file, storageIO, formatRequested) != null
+                    && storageIO.isAuxObjectCached(formatRequested);
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Failed to pregenerate format " + formatRequested + " for " + file.getStorageIdentifier(), ex);
+            return false;
+        }
+    }
+
+    /**
+     * Runs the conversion of the file to the requested format, and saves the
+     * result as an auxiliary object of the file for future use. Concurrent
+     * requests for the same conversion (as when several users download a
+     * popular file for the first time) share a single conversion, run by the
+     * first of them.
+     *
+     * @return the converted file, or null if the conversion failed
+     */
+    private static File convertAndCache(DataFile file, StorageIO<DataFile> storageIO, String formatRequested) throws Exception {
+        return formatConversions.execute(file.getId() + ":" + formatRequested, () -> {
+            File tabFile = downloadFromStorageIO(storageIO);
+
+            if (tabFile == null || tabFile.length() == 0) {
+                return null;
+            }
+
+            File formatConvertedFile = runFormatConversion(file, tabFile, formatRequested);
+            if (formatConvertedFile == null || !formatConvertedFile.exists()) {
+                return null;
+            }
+
+            // cache the result for future use:
+            try {
+                storageIO.savePathAsAux(Paths.get(formatConvertedFile.getAbsolutePath()), formatRequested);
+
+            } catch (IOException ex) {
+                logger.warning("failed to save cached format " + formatRequested + " for " + file.getStorageIdentifier());
+                // We'll assume that this is a non-fatal condition.
+            }
+            return formatConvertedFile;
+        });
+    }
+
     public static File downloadFromStorageIO(StorageIO<DataFile> storageIO) {
         if (storageIO.isLocalFile()){
             try {
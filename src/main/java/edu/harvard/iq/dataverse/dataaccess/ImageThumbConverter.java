@@ -32,10 +32,12 @@ import java.awt.image.BufferedImage;
 
 import javax.imageio.ImageIO;
 import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DataFileServiceBean;
+import edu.harvard.iq.dataverse.ThumbnailGenerationQueue;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.ByteArrayOutputStream;
@@ -70,6 +72,8 @@ public class ImageThumbConverter {
 
     private static final Logger logger = Logger.getLogger(ImageThumbConverter.class.getCanonicalName());
 
+    private static volatile ThumbnailGenerationQueue generationQueue;
+
     public ImageThumbConverter() {
     }
 
@@ -125,6 +129,54 @@ public class ImageThumbConverter {
     }
 
     private static boolean generateThumbnail(DataFile file, StorageIO<DataFile> storageIO, int size) {
+        // If thumbnails are generated in the background, the requests that
+        // need this one don't wait for it; they get the placeholder icon
+        // until it's been generated:
+        if (!file.isPreviewImageFail() && file.getId() != null) {
+            ThumbnailGenerationQueue generationQueue = getGenerationQueue();
+            if (generationQueue != null && generationQueue.isEnabled() && generationQueue.enqueue(file, size)) {
+                logger.fine("Queued thumbnail generation, file id: " + file.getId() + ", size " + size);
+                return false;
+            }
+        }
+        return generateThumbnailNow(file, storageIO, size);
+    }
+
+    /**
+     * Generates the thumbnail of the requested size, unless it is already
+     * cached; used by the background generation.
+     *
+     * @param file
+     * @param size
+     * @return whether the thumbnail is now available
+     */
+    public static boolean generateThumbnailIfNotCached(DataFile file, int size) {
+        try {
+            StorageIO<DataFile> storageIO = file.getStorageIO();
+            if (isThumbnailCached(storageIO, size)) {
+                return true;
+            }
+            return generateThumbnailNow(file, storageIO, size);
+        } catch (IOException ioEx) {
+            logger.fine("Could not open StorageIO on the datafile " + file.getId() + ": " + ioEx.getMessage());
+            return false;
+        }
+    }
+
+    private static ThumbnailGenerationQueue getGenerationQueue() {
+        if (generationQueue == null) {
+            try {
+                generationQueue = CDI.current().select(ThumbnailGenerationQueue.class).get();
+            } catch (Exception e) {
+                // Not running in the application server (e.g., in a unit test);
+                // thumbnails are generated right away:
+                logger.fine("Thumbnail generation queue not available: " + e.getMessage());
+            }
+        }
+        return generationQueue;
+    }
+
+    private static boolean generateThumbnailNow(DataFile file, StorageIO<DataFile> storageIO, int size) {
         logger.fine((file.isPreviewImageFail() ? "Not trying" : "Trying") + " to generate thumbnail, file id: " + file.getId());
         boolean thumbnailGenerated = false;
         // Don't try to generate if there have been failures:
@@ -331,11 +383,11 @@ public class ImageThumbConverter {
         BufferedImage fullSizeImage;
         boolean thumbnailGenerated = false;
 
-        try {
-            logger.fine("attempting to read the image file with ImageIO.read(InputStream), " + storageIO.getDataFile().getStorageIdentifier());
-            fullSizeImage = ImageIO.read(inputStream);
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            logger.fine("attempting to read the image file with ImageIO, " + storageIO.getDataFile().getStorageIdentifier());
+            fullSizeImage = imageInputStream == null ? null : new ThumbnailImageDecoder().read(imageInputStream, size);
         } catch (Exception ioex) {
-            logger.warning("Caught exception attempting to read the image file with ImageIO.read(InputStream)");
+            logger.warning("Caught exception attempting to read the image file with ImageIO: " + ioex.getMessage());
             return false;
         }
 
@@ -618,8 +670,11 @@ public class ImageThumbConverter {
         }
 
         try {
-            logger.fine("attempting to read the image file " + fileLocation + " with ImageIO.read()");
-            BufferedImage fullSizeImage = ImageIO.read(new File(fileLocation));
+            logger.fine("attempting to read the image file " + fileLocation + " with ImageIO");
+            BufferedImage fullSizeImage;
+            try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(new File(fileLocation))) {
+                fullSizeImage = imageInputStream == null ? null : new ThumbnailImageDecoder().read(imageInputStream, size);
+            }
 
             if (fullSizeImage == null) {
                 logger.warning("could not read image with ImageIO.read()");
@@ -25,12 +25,14 @@ import com.amazonaws.services.s3.model.DeleteObjectTaggingRequest;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
 import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ResponseHeaderOverrides;
+import com.amazonaws.services.s3.model.SSEAlgorithm;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.amazonaws.services.s3.transfer.TransferManager;
@@ -59,6 +61,7 @@ import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -102,6 +105,9 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
     static final String PAYLOAD_SIGNING = "payload-signing";
     static final String CHUNKED_ENCODING = "chunked-encoding";
     static final String PROFILE = "profile";
+    static final String CHECKSUM_MODE_HEADER = "x-amz-checksum-mode";
+    static final String CHECKSUM_SHA1_HEADER = "x-amz-checksum-sha1";
+    static final String CHECKSUM_SHA256_HEADER = "x-amz-checksum-sha256";
     
     private boolean mainDriver = true;
 
@@ -1439,6 +1445,77 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         }
         return objectMetadata.getContentLength();
     }
+
+    @Override
+    public String retrieveChecksumFromMedia(DataFile.ChecksumType checksumType) throws IOException {
+        key = getMainFileKey();
+        GetObjectMetadataRequest request = new GetObjectMetadataRequest(bucketName, key);
+        // Asks for the additional (SHA) checksums as well, if the object was
+        // uploaded with one
+        request.putCustomRequestHeader(CHECKSUM_MODE_HEADER, "ENABLED");
+        ObjectMetadata objectMetadata = null;
+        try {
+            objectMetadata = s3.getObjectMetadata(request);
+        } catch (SdkClientException sce) {
+            throw new IOException("Cannot get S3 object " + key + " (" + sce.getMessage() + ")");
+        }
+        return getChecksum(objectMetadata, checksumType);
+    }
+
+    @Override
+    public boolean isRangeReadSupported() {
+        return true;
+    }
+
+    @Override
+    public InputStream getRangeInputStream(long offset, long length) throws IOException {
+        key = getMainFileKey();
+        try {
+            return s3.getObject(new GetObjectRequest(bucketName, key).withRange(offset, offset + length - 1)).getObjectContent();
+        } catch (SdkClientException sce) {
+            throw new IOException("Cannot get S3 object " + key + " (" + sce.getMessage() + ")");
+        }
+    }
+
+    /**
+     * @return the checksum of the whole object from its metadata, as a hex
+     * string, or null if there is none of this type. The ETag is the MD5 of
+     * the object only if it was uploaded in a single part, and not encrypted
+     * with KMS or with a customer key; the SHA checksums of objects uploaded
+     * in parts are composite checksums (of the checksums of the parts), and
+     * can't be used either.
+     */
+    static String getChecksum(ObjectMetadata objectMetadata, DataFile.ChecksumType checksumType) {
+        String value;
+        switch (checksumType) {
+            case MD5:
+                String eTag = objectMetadata.getETag();
+                String sseAlgorithm = objectMetadata.getSSEAlgorithm();
+                if (eTag == null || objectMetadata.getSSECustomerAlgorithm() != null
+                        || (sseAlgorithm != null && !SSEAlgorithm.AES256.getAlgorithm().equals(sseAlgorithm))) {
+                    return null;
+                }
+                eTag = eTag.replace("\"", "");
+                return eTag.matches("[0-9a-fA-F]{32}") ? eTag.toLowerCase() : null;
+            case SHA1:
+                value = (String) objectMetadata.getRawMetadataValue(CHECKSUM_SHA1_HEADER);
+                break;
+            case SHA256:
+                value = (String) objectMetadata.getRawMetadataValue(CHECKSUM_SHA256_HEADER);
+                break;
+            default:
+                return null;
+        }
+        if (value == null || value.contains("-")) {
+            return null;
+        }
+        try {
+            return FileUtil.checksumDigestToString(Base64.getDecoder().decode(value));
+        } catch (IllegalArgumentException iae) {
+            logger.fine("Unexpected checksum value: " + value);
+            return null;
+        }
+    }
     
     public static String getNewIdentifier(String driverId) {
         return driverId + DataAccess.SEPARATOR + getConfigParamForDriver(driverId, BUCKET_NAME) + ":" + FileUtil.generateStorageIdentifier();
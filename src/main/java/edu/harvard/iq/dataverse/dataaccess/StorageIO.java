@@ -652,7 +652,45 @@ public abstract class StorageIO<T extends DvObject> {
      * @throws IOException 
      */
     public abstract long retrieveSizeFromMedia() throws IOException;
-    
+
+    /**
+     * A storage-type-specific mechanism for retrieving the checksum of a file
+     * as recorded by the storage itself, without reading the file. Intended for
+     * registering files that were transferred directly to the storage (e.g. by
+     * Globus), so that they don't have to be read back to calculate their
+     * checksums.
+     *
+     * @param checksumType the type of checksum wanted
+     * @return the checksum, as a hex string; or null, if the storage has no
+     * checksum of this type for the file (the default)
+     * @throws IOException
+     */
+    public String retrieveChecksumFromMedia(DataFile.ChecksumType checksumType) throws IOException {
+        return null;
+    }
+
+    /**
+     * Whether {@link #getRangeInputStream(long, long)} is supported, i.e.
+     * whether separate parts of the main file can be read at the same time.
+     */
+    public boolean isRangeReadSupported() {
+        return false;
+    }
+
+    /**
+     * Opens a new stream reading a part of the main file, independently of
+     * the stream returned by {@link #getInputStream()}; several of them can be
+     * open at the same time.
+     *
+     * @param offset the position of the first byte to read
+     * @param length the number of bytes to read
+     * @return a stream of these bytes, to be closed by the caller
+     * @throws IOException
+     */
+    public InputStream getRangeInputStream(long offset, long length) throws IOException {
+        throw new UnsupportedDataAccessOperationException("Reading ranges is not supported by this driver.");
+    }
+
     
     /* Convenience methods to get a driver-specific parameter
      * 
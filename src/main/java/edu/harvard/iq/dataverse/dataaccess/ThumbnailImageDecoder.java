@@ -0,0 +1,135 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes images for thumbnail generation, reading only the pixels needed
+ * for the thumbnail: the image is subsampled while it is decoded (see
+ * {@link ImageReadParam#setSourceSubsampling(int, int, int, int)}), to about
+ * twice the size of the thumbnail, so a 100 megapixel scan takes a few
+ * hundred kilobytes of heap rather than a few hundred megabytes.
+ * <p>
+ * The memory needed for the decoded pixels is also reserved from a budget
+ * shared by all the threads generating thumbnails
+ * ({@code dataverse.files.thumbnails.decode-memory}, in megabytes): a
+ * thumbnail that doesn't fit in what is left of the budget waits for the
+ * others to be done with theirs, and an image that would not fit in the
+ * whole budget (one that cannot be subsampled, for example) is refused.
+ */
+public class ThumbnailImageDecoder {
+
+    private static final Logger logger = Logger.getLogger(ThumbnailImageDecoder.class.getCanonicalName());
+
+    /**
+     * The decoded image is kept at least this many times larger than the
+     * thumbnail, so that the final rescaling still has pixels to average.
+     */
+    static final int OVERSAMPLING = 2;
+
+    /**
+     * Worst case, for images with 16 bits per sample and an alpha channel.
+     */
+    private static final int BYTES_PER_PIXEL = 8;
+
+    private static final long BUDGET_WAIT_SECONDS = 60;
+
+    private static Semaphore sharedBudget;
+    private static int sharedBudgetKilobytes;
+
+    private final Semaphore budget;
+    private final int budgetKilobytes;
+
+    public ThumbnailImageDecoder() {
+        this(getSharedBudget(), sharedBudgetKilobytes);
+    }
+
+    /**
+     * @param budget the memory budget, one permit per kilobyte
+     * @param budgetKilobytes the size of the whole budget, which is more than
+     * what is left of it whenever other decoders are using theirs
+     */
+    ThumbnailImageDecoder(Semaphore budget, int budgetKilobytes) {
+        this.budget = budget;
+        this.budgetKilobytes = budgetKilobytes;
+    }
+
+    private static synchronized Semaphore getSharedBudget() {
+        if (sharedBudget == null) {
+            int megabytes = JvmSettings.THUMBNAILS_DECODE_MEMORY.lookupOptional(Integer.class).orElse(256);
+            sharedBudgetKilobytes = Math.max(megabytes, 1) * 1024;
+            sharedBudget = new Semaphore(sharedBudgetKilobytes);
+        }
+        return sharedBudget;
+    }
+
+    /**
+     * @param width the width of the full size image
+     * @param height the height of the full size image
+     * @param size the size of the thumbnail (its larger dimension)
+     * @return the subsampling factor to use in both directions
+     */
+    static int getSubsamplingFactor(int width, int height, int size) {
+        return Math.max(1, Math.max(width, height) / (size * OVERSAMPLING));
+    }
+
+    /**
+     * Decodes the (first) image in the stream, subsampled for a thumbnail of
+     * the given size.
+     *
+     * @param input the image; it is not closed
+     * @param size the size of the thumbnail (its larger dimension)
+     * @return the decoded image, or null if no reader can decode it
+     * @throws IOException if the image could not be decoded, or is too large
+     * for the memory budget
+     */
+    public BufferedImage read(ImageInputStream input, int size) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            int factor = getSubsamplingFactor(width, height, size);
+
+            long decodedWidth = (width + factor - 1) / factor;
+            long decodedHeight = (height + factor - 1) / factor;
+            int kilobytes = (int) Math.min(Integer.MAX_VALUE, (decodedWidth * decodedHeight * BYTES_PER_PIXEL + 1023) / 1024);
+            if (kilobytes > budgetKilobytes) {
+                throw new IOException("Image of " + width + "x" + height + " pixels is too large to make a thumbnail of ("
+                        + kilobytes + " KB needed, " + budgetKilobytes + " KB allowed)");
+            }
+            logger.fine("decoding " + width + "x" + height + " image, subsampled by " + factor + " (" + kilobytes + " KB)");
+
+            try {
+                if (!budget.tryAcquire(kilobytes, BUDGET_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new IOException("Timed out waiting for memory to decode a " + width + "x" + height + " image");
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for memory to decode an image", ie);
+            }
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(factor, factor, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                budget.release(kilobytes);
+            }
+        } finally {
+            reader.dispose();
+        }
+    }
+}
@@ -27,6 +27,7 @@ import edu.harvard.iq.dataverse.engine.command.impl.RestrictFileCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.UpdateDatasetVersionCommand;
 import edu.harvard.iq.dataverse.ingest.IngestServiceBean;
 import edu.harvard.iq.dataverse.util.BundleUtil;
+import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.util.file.CreateDataFileResult;
 import edu.harvard.iq.dataverse.util.json.JsonPrinter;
@@ -38,6 +39,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -1503,6 +1505,11 @@ public class AddReplaceFileHelper{
             return false;
         }
 
+        return checkWorkingVersionConstraints();
+    }
+
+    private boolean checkWorkingVersionConstraints(){
+
         // -----------------------------------------------------------
         // Iterate through checking for constraint violations
         //  Gather all error messages
@@ -2052,87 +2059,109 @@ public class AddReplaceFileHelper{
 
 
             if (filesJson != null) {
-                totalNumberofFiles = filesJson.getValuesAs(JsonObject.class).size();
-                workingVersion = dataset.getOrCreateEditVersion();
-                clone = workingVersion.cloneDatasetVersion();
-                for (JsonObject fileJson : filesJson.getValuesAs(JsonObject.class)) {
+                List<JsonObject> filesJsonList = filesJson.getValuesAs(JsonObject.class);
+                totalNumberofFiles = filesJsonList.size();
+
+                // The checks that do not depend on the individual files are
+                // run once for the whole batch; if they fail, all the files
+                // fail with the same error:
+                initErrorHandling();
+                multifile = true;
+                this.currentOperation = FILE_ADD_OPERATION;
+                String batchErrorMessage = null;
+                if (step_001_loadDataset(dataset) && step_010_VerifyUserAndPermissions()) {
+                    workingVersion = dataset.getOrCreateEditVersion();
+                    clone = workingVersion.cloneDatasetVersion();
+                    checkWorkingVersionConstraints();
+                }
+                if (hasError()) {
+                    batchErrorMessage = getHttpErrorCode().toString() + ":" + getErrorMessagesAsString("\n");
+                }
 
-                    OptionalFileParams optionalFileParams = null;
+                // -----------------------------------------------------------
+                // Create the new files; the duplicate check uses an index of
+                // the checksums in the version, that the new files are added
+                // to as they are created
+                // -----------------------------------------------------------
+                List<AddFilesEntry> entries = new ArrayList<>(totalNumberofFiles);
+                Map<String, DataFile> checksumIndex = batchErrorMessage == null ? DuplicateFileChecker.getChecksumIndex(workingVersion) : null;
+                ChecksumType defaultChecksumType = batchErrorMessage == null ? systemConfig.getFileFixityChecksumAlgorithm() : null;
+                for (JsonObject fileJson : filesJsonList) {
+                    AddFilesEntry entry = new AddFilesEntry(fileJson);
+                    entries.add(entry);
                     try {
-                        optionalFileParams = new OptionalFileParams(fileJson.toString());
-
-                        String newFilename = null;
-                        String newFileContentType = null;
-                        String newStorageIdentifier = null;
-                        if (optionalFileParams.hasStorageIdentifier()) {
-                            newStorageIdentifier = optionalFileParams.getStorageIdentifier();
-                            newStorageIdentifier = DataAccess.expandStorageIdentifierIfNeeded(newStorageIdentifier);
-                            if(!DataAccess.uploadToDatasetAllowed(dataset,  newStorageIdentifier)) {
-                                addErrorSevere("Dataset store configuration does not allow provided storageIdentifier.");
-                            }
-                            if (optionalFileParams.hasFileName()) {
-                                newFilename = optionalFileParams.getFileName();
-                                if (optionalFileParams.hasMimetype()) {
-                                    newFileContentType = optionalFileParams.getMimeType();
-                                }
-                            }
-
-                            msgt("ADD!  = " + newFilename);
-
-                            runAddFileByDataset(dataset, newFilename, newFileContentType, newStorageIdentifier, null,
-                                    optionalFileParams, true);
-                            if (hasError()) {
-                                JsonObjectBuilder fileoutput = Json.createObjectBuilder()
-                                        .add("storageIdentifier", newStorageIdentifier)
-                                        .add("errorMessage", getHttpErrorCode().toString() +":"+ getErrorMessagesAsString("\n"))
-                                        .add("fileDetails", fileJson);
-                                jarr.add(fileoutput);
-                            } else {
-                                JsonObject successresult = getSuccessResultAsJsonObjectBuilder().build();
-                                String duplicateWarning = getDuplicateFileWarning();
-
-                                if (duplicateWarning != null && !duplicateWarning.isEmpty()) {
-                                    JsonObjectBuilder fileoutput = Json.createObjectBuilder()
-                                            .add("storageIdentifier", newStorageIdentifier)
-                                            .add("warningMessage", getDuplicateFileWarning())
-                                            .add("fileDetails", successresult.getJsonArray("files").getJsonObject(0));
-                                    jarr.add(fileoutput);
-                                } else {
-                                    JsonObjectBuilder fileoutput = Json.createObjectBuilder()
-                                            .add("storageIdentifier", newStorageIdentifier)
-                                            .add("successMessage", "Added successfully to the dataset")
-                                            .add("fileDetails", successresult.getJsonArray("files").getJsonObject(0));
-                                    jarr.add(fileoutput);
-                                }
-                            successNumberofFiles = successNumberofFiles + 1;
-                            }
-                        } else {
-                            JsonObjectBuilder fileoutput = Json.createObjectBuilder()
+                        OptionalFileParams optionalFileParams = new OptionalFileParams(fileJson.toString());
+                        if (!optionalFileParams.hasStorageIdentifier()) {
+                            entry.output = Json.createObjectBuilder()
                                     .add("errorMessage", "You must provide a storageidentifier, filename, and mimetype.")
                                     .add("fileDetails", fileJson);
-
-                            jarr.add(fileoutput);
+                            continue;
                         }
-
+                        entry.storageIdentifier = DataAccess.expandStorageIdentifierIfNeeded(optionalFileParams.getStorageIdentifier());
+                        if (batchErrorMessage != null) {
+                            entry.fail(batchErrorMessage);
+                            continue;
+                        }
+                        createNewFile(entry, optionalFileParams, checksumIndex, defaultChecksumType);
                     } catch (DataFileTagException ex) {
                         logger.log(Level.SEVERE, null, ex);
-                        JsonObjectBuilder fileoutput = Json.createObjectBuilder()
+                        entry.output = Json.createObjectBuilder()
                                 .add("errorCode", Response.Status.BAD_REQUEST.getStatusCode())
                                 .add("message", ex.getMessage())
                                 .add("fileDetails", fileJson);
-                        jarr.add(fileoutput);
-
                     }
-                    catch (NoFilesException ex) {
-                        logger.log(Level.SEVERE, null, ex);
-                        JsonObjectBuilder fileoutput = Json.createObjectBuilder()
-                                .add("errorCode", Response.Status.BAD_REQUEST.getStatusCode())
-                                .add("message", BundleUtil.getStringFromBundle("NoFileException!  Serious Error! See administrator!"))
-                                .add("fileDetails", fileJson);
-                        jarr.add(fileoutput);
+                }// End of creating files
+
+                // -----------------------------------------------------------
+                // Add the new files to the version, in (at most) two calls
+                // to the ingest service - one per value of tabIngest
+                // -----------------------------------------------------------
+                newlyAddedFiles = new ArrayList<>();
+                newlyAddedFileMetadatas = new ArrayList<>();
+                for (boolean tabIngest : new boolean[]{true, false}) {
+                    List<AddFilesEntry> group = new ArrayList<>();
+                    List<DataFile> newFiles = new ArrayList<>();
+                    for (AddFilesEntry entry : entries) {
+                        if (entry.dataFile != null && entry.tabIngest == tabIngest) {
+                            group.add(entry);
+                            newFiles.add(entry.dataFile);
+                        }
                     }
+                    if (newFiles.isEmpty()) {
+                        continue;
+                    }
+                    // New files have no ids yet, and DataFile.equals() compares
+                    // ids; the files saved are matched by identity:
+                    Set<DataFile> savedFiles = Collections.newSetFromMap(new IdentityHashMap<>());
+                    savedFiles.addAll(ingestService.saveAndAddFilesToDataset(workingVersion, newFiles, null, tabIngest));
+                    for (AddFilesEntry entry : group) {
+                        if (!savedFiles.contains(entry.dataFile)) {
+                            entry.fail(Response.Status.BAD_REQUEST.toString() + ":" + "Failed to save the content of the uploaded file.");
+                        }
+                    }
+                }
 
-                }// End of adding files
+                for (AddFilesEntry entry : entries) {
+                    if (entry.dataFile != null) {
+                        JsonObject fileDetails = JsonPrinter.jsonDataFileList(List.of(entry.dataFile)).build()
+                                .getJsonArray("files").getJsonObject(0);
+                        if (entry.duplicateWarning != null) {
+                            entry.output = Json.createObjectBuilder()
+                                    .add("storageIdentifier", entry.storageIdentifier)
+                                    .add("warningMessage", entry.duplicateWarning)
+                                    .add("fileDetails", fileDetails);
+                        } else {
+                            entry.output = Json.createObjectBuilder()
+                                    .add("storageIdentifier", entry.storageIdentifier)
+                                    .add("successMessage", "Added successfully to the dataset")
+                                    .add("fileDetails", fileDetails);
+                        }
+                        newlyAddedFiles.add(entry.dataFile);
+                        newlyAddedFileMetadatas.add(entry.dataFile.getFileMetadata());
+                        successNumberofFiles = successNumberofFiles + 1;
+                    }
+                    jarr.add(entry.output);
+                }
 
                 DatasetLock eipLock = dataset.getLockFor(DatasetLock.Reason.EditInProgress);
                 if (eipLock == null) {
@@ -2141,19 +2170,23 @@ public class AddReplaceFileHelper{
                     datasetService.removeDatasetLocks(dataset, DatasetLock.Reason.EditInProgress);
                     logger.log(Level.FINE, "Removed EditInProgress lock");
                 }
-                
-                try {
-                    Command<Dataset> cmd = new UpdateDatasetVersionCommand(dataset, dvRequest, clone);
-                    ((UpdateDatasetVersionCommand) cmd).setValidateLenient(true);
-                    commandEngine.submit(cmd);
-                } catch (CommandException ex) {
-                    return error(Response.Status.INTERNAL_SERVER_ERROR, "CommandException updating DatasetVersion from addFiles job: " + ex.getMessage());
-                }
 
-                dataset = datasetService.find(dataset.getId());
+                if (successNumberofFiles > 0) {
+                    // A single update of the version saves all the new files
+                    // (and reindexes the dataset once):
+                    try {
+                        Command<Dataset> cmd = new UpdateDatasetVersionCommand(dataset, dvRequest, clone);
+                        ((UpdateDatasetVersionCommand) cmd).setValidateLenient(true);
+                        commandEngine.submit(cmd);
+                    } catch (CommandException ex) {
+                        return error(Response.Status.INTERNAL_SERVER_ERROR, "CommandException updating DatasetVersion from addFiles job: " + ex.getMessage());
+                    }
 
-                //ingest job
-                ingestService.startIngestJobsForDataset(dataset, (AuthenticatedUser) authUser);
+                    dataset = datasetService.find(dataset.getId());
+
+                    //ingest job
+                    ingestService.startIngestJobsForDataset(dataset, (AuthenticatedUser) authUser);
+                }
 
             }
         }
@@ -2175,6 +2208,87 @@ public class AddReplaceFileHelper{
                 .add("status", ApiConstants.STATUS_OK)
                 .add("data", Json.createObjectBuilder().add("Files", jarr).add("Result", result)).build() ).build();
     }
+
+    /**
+     * Creates the DataFile for one entry of {@link #addFiles(String, Dataset, User)};
+     * the same checks as for a single direct upload (see {@link CreateNewDataFilesCommand}),
+     * without going through the command engine for each file.
+     * On failure, the error is recorded in the entry.
+     */
+    private void createNewFile(AddFilesEntry entry, OptionalFileParams optionalFileParams,
+            Map<String, DataFile> checksumIndex, ChecksumType defaultChecksumType) throws DataFileTagException {
+        String badRequest = Response.Status.BAD_REQUEST.toString() + ":";
+
+        if (!DataAccess.uploadToDatasetAllowed(dataset, entry.storageIdentifier)) {
+            entry.fail(badRequest + "Dataset store configuration does not allow provided storageIdentifier.");
+            return;
+        }
+        if (!optionalFileParams.hasFileName()) {
+            entry.fail(badRequest + getBundleErr("filename_undetermined"));
+            return;
+        }
+        if (!optionalFileParams.hasMimetype()) {
+            entry.fail(badRequest + getBundleErr("file_content_type_undetermined"));
+            return;
+        }
+        String fileName = optionalFileParams.getFileName();
+        String contentType = FileUtil.determineDirectUploadFileType(fileName, optionalFileParams.getMimeType());
+
+        ChecksumType checksumType = defaultChecksumType;
+        String checksum = null;
+        if (optionalFileParams.hasCheckSum()) {
+            checksumType = optionalFileParams.getCheckSumType();
+            checksum = optionalFileParams.getCheckSum();
+        }
+        DataFile dataFile = FileUtil.createSingleDataFile(workingVersion, null, entry.storageIdentifier, fileName, contentType, checksumType, checksum);
+        if (dataFile == null) {
+            entry.fail(badRequest + getBundleErr("initial_file_list_empty"));
+            return;
+        }
+
+        optionalFileParams.addOptionalParams(dataFile);
+        boolean restrict = optionalFileParams.getRestriction();
+        if (restrict != dataFile.getFileMetadata().isRestricted()) {
+            try {
+                commandEngine.submit(new RestrictFileCommand(dataFile, dvRequest, restrict));
+            } catch (CommandException ex) {
+                entry.fail(badRequest + ex.getMessage());
+                return;
+            }
+        }
+
+        if (DuplicateFileChecker.isDuplicate(checksumIndex, dataFile.getFileMetadata())) {
+            entry.duplicateWarning = BundleUtil.getStringFromBundle("file.addreplace.warning.duplicate_file",
+                    Arrays.asList(dataFile.getFileMetadata().getLabel()));
+            logger.fine(entry.duplicateWarning);
+        }
+        entry.dataFile = dataFile;
+        entry.tabIngest = optionalFileParams.getTabIngest();
+    }
+
+    /**
+     * The state of one of the files of an {@link #addFiles(String, Dataset, User)} call.
+     */
+    private static class AddFilesEntry {
+        private final JsonObject fileJson;
+        private String storageIdentifier;
+        private DataFile dataFile;
+        private boolean tabIngest = true;
+        private String duplicateWarning;
+        private JsonObjectBuilder output;
+
+        AddFilesEntry(JsonObject fileJson) {
+            this.fileJson = fileJson;
+        }
+
+        void fail(String errorMessage) {
+            dataFile = null;
+            output = Json.createObjectBuilder()
+                    .add("storageIdentifier", storageIdentifier)
+                    .add("errorMessage", errorMessage)
+                    .add("fileDetails", fileJson);
+        }
+    }
     
     /**
      * Replace multiple files with prepositioned replacements as listed in the
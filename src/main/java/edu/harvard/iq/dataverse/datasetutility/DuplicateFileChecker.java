@@ -175,5 +175,53 @@ public class DuplicateFileChecker {
        // return checkSumMap.get(selectedCheckSum) != null; // && checkSumMap.get(selectedCheckSum).intValue() > 1;
             
     }
+
+    /**
+     * Indexes the files of the version by checksum, for
+     * {@link #isDuplicate(Map, FileMetadata)}; so that the files of a large
+     * batch can be checked without going through all the files of the
+     * version for each one of them.
+     *
+     * @param workingVersion
+     * @return the first file of the version with each checksum
+     */
+    public static Map<String, DataFile> getChecksumIndex(DatasetVersion workingVersion) {
+        if (workingVersion == null){
+            throw new NullPointerException("datasetVersion cannot be null");
+        }
+        Map<String, DataFile> checksumIndex = new HashMap<>();
+        for (FileMetadata fm : workingVersion.getFileMetadatas()) {
+            String checkSum = fm.getDataFile().getChecksumValue();
+            if (checkSum != null) {
+                checksumIndex.putIfAbsent(checkSum, fm.getDataFile());
+            }
+        }
+        return checksumIndex;
+    }
+
+    /**
+     * Same check as {@link #isDuplicateOriginalWay(DatasetVersion, FileMetadata)},
+     * against the index built by {@link #getChecksumIndex(DatasetVersion)}.
+     * The checksum of the file is added to the index, so that the files that
+     * follow it in the same batch are checked against it too.
+     *
+     * @param checksumIndex
+     * @param fileMetadata
+     * @return
+     */
+    public static boolean isDuplicate(Map<String, DataFile> checksumIndex, FileMetadata fileMetadata) {
+        String selectedCheckSum = fileMetadata.getDataFile().getChecksumValue();
+        if (selectedCheckSum == null) {
+            return false;
+        }
+        DataFile existingFile = checksumIndex.putIfAbsent(selectedCheckSum, fileMetadata.getDataFile());
+        if (existingFile == null) {
+            return false;
+        }
+        List<String> args = Arrays.asList(existingFile.getDisplayName());
+        String inLineMessage = BundleUtil.getStringFromBundle("dataset.file.inline.message", args);
+        fileMetadata.getDataFile().setDuplicateFilename(inLineMessage);
+        return true;
+    }
     
 }
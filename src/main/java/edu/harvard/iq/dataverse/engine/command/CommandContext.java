@@ -3,6 +3,7 @@ package edu.harvard.iq.dataverse.engine.command;
 import edu.harvard.iq.dataverse.DataFileServiceBean;
 import edu.harvard.iq.dataverse.DatasetFieldServiceBean;
 import edu.harvard.iq.dataverse.DatasetLinkingServiceBean;
+import edu.harvard.iq.dataverse.CitationCacheServiceBean;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.DatasetVersionServiceBean;
 import edu.harvard.iq.dataverse.DataverseFacetServiceBean;
@@ -39,7 +40,10 @@ import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
 import edu.harvard.iq.dataverse.search.savedsearch.SavedSearchServiceBean;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.storageuse.StorageUseServiceBean;
+import edu.harvard.iq.dataverse.metrics.MetricsRollupServiceBean;
+import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
 import edu.harvard.iq.dataverse.util.SystemConfig;
+import edu.harvard.iq.dataverse.util.file.ZipUploadExtractionServiceBean;
 import edu.harvard.iq.dataverse.workflow.WorkflowServiceBean;
 import java.util.Stack;
 import jakarta.persistence.EntityManager;
@@ -121,6 +125,14 @@ public interface CommandContext {
     
     public StorageUseServiceBean storageUse();
 
+    public MetricsRollupServiceBean metricsRollups();
+
+    public CitationCacheServiceBean citations();
+
+    public OAIRecordServiceBean oaiRecords();
+
+    public ZipUploadExtractionServiceBean zipUploadExtraction();
+
     public SystemConfig systemConfig();
 
     public PrivateUrlServiceBean privateUrl();
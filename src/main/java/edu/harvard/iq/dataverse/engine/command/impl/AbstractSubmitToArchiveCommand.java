@@ -4,6 +4,7 @@ import edu.harvard.iq.dataverse.DataCitation;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.FileMetadata;
 import edu.harvard.iq.dataverse.SettingsWrapper;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.ApiToken;
@@ -14,12 +15,14 @@ import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.pidproviders.doi.datacite.DOIDataCiteRegisterService;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.bagit.BagGenerator;
 import edu.harvard.iq.dataverse.util.bagit.OREMap;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.security.DigestInputStream;
@@ -27,6 +30,10 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
 
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
 @RequiredPermissions(Permission.PublishDataset)
 public abstract class AbstractSubmitToArchiveCommand extends AbstractCommand<DatasetVersion> {
 
@@ -34,7 +41,6 @@ public abstract class AbstractSubmitToArchiveCommand extends AbstractCommand<Dat
     private final Map<String, String> requestedSettings = new HashMap<String, String>();
     protected boolean success=false;
     private static final Logger logger = Logger.getLogger(AbstractSubmitToArchiveCommand.class.getName());
-    private static final int MAX_ZIP_WAIT = 20000;
     private static final int DEFAULT_THREADS = 2;
     
     public AbstractSubmitToArchiveCommand(DataverseRequest aRequest, DatasetVersion version) {
@@ -104,17 +110,73 @@ public abstract class AbstractSubmitToArchiveCommand extends AbstractCommand<Dat
                 dv.getDataset());
     }
 
+    /**
+     * Generates the bag for this version straight into the given stream, e.g.
+     * a {@link edu.harvard.iq.dataverse.util.bagit.MultipartUploadOutputStream}
+     * or a channel to the archive, so that no temporary copy of the bag is
+     * needed.
+     * 
+     * @return whether the bag was generated successfully
+     */
+    protected boolean generateBag(DatasetVersion dv, String dataciteXml, ApiToken token, OutputStream out)
+            throws Exception {
+        BagGenerator bagger = new BagGenerator(new OREMap(dv, false), dataciteXml);
+        bagger.setNumConnections(getNumberOfBagGeneratorThreads());
+        bagger.setAuthenticationKey(token.getTokenString());
+        return bagger.generateBag(out);
+    }
+
+    /**
+     * @return the size of the parts of the bag, in bytes, for archivers that
+     *         upload it in parts
+     */
+    protected int getUploadPartSize() {
+        return JvmSettings.BAGIT_UPLOAD_PART_SIZE.lookupOptional(Integer.class).orElse(64) * 1024 * 1024;
+    }
+
+    /**
+     * @return the number of parts of the bag that can be uploaded at once (and
+     *         held in memory, along with the one being generated)
+     */
+    protected int getUploadPartsInFlight() {
+        return JvmSettings.BAGIT_UPLOAD_PARTS_IN_FLIGHT.lookupOptional(Integer.class).orElse(4);
+    }
+
+    /**
+     * @return the managed executor of the container, which uploads the parts
+     *         of the bag for archivers that upload it in parts
+     * @throws NamingException
+     */
+    protected ManagedExecutorService getUploadExecutor() throws NamingException {
+        return InitialContext.doLookup("java:comp/DefaultManagedExecutorService");
+    }
+
+    /**
+     * @return the total size of the files in this version, as an estimate of
+     *         the size of its bag
+     */
+    protected long getEstimatedBagSize(DatasetVersion dv) {
+        long size = 0;
+        for (FileMetadata fmd : dv.getFileMetadatas()) {
+            size += fmd.getDataFile().getFilesize();
+        }
+        return size;
+    }
+
+    /**
+     * Generates the bag in a new thread, writing into the given pipe, for
+     * archivers that can only read the bag from an InputStream. The pipe is
+     * connected before the thread starts, so the bag can be read from it
+     * right away.
+     */
     public Thread startBagThread(DatasetVersion dv, PipedInputStream in, DigestInputStream digestInputStream2,
             String dataciteXml, ApiToken token) throws IOException, InterruptedException {
+        PipedOutputStream pipe = new PipedOutputStream(in);
         Thread bagThread = new Thread(new Runnable() {
             public void run() {
-                try (PipedOutputStream out = new PipedOutputStream(in)) {
+                try (PipedOutputStream out = pipe) {
                     // Generate bag
-                    BagGenerator bagger = new BagGenerator(new OREMap(dv, false), dataciteXml);
-                    bagger.setNumConnections(getNumberOfBagGeneratorThreads());
-                    bagger.setAuthenticationKey(token.getTokenString());
-                    bagger.generateBag(out);
-                    success = true;
+                    success = generateBag(dv, dataciteXml, token, out);
                 } catch (Exception e) {
                     logger.severe("Error creating bag: " + e.getMessage());
                     // TODO Auto-generated catch block
@@ -129,44 +191,6 @@ public abstract class AbstractSubmitToArchiveCommand extends AbstractCommand<Dat
             }
         });
         bagThread.start();
-        /*
-         * The following loop handles two issues. First, with no delay, the
-         * bucket.create() call below can get started before the piped streams are set
-         * up, causing a failure (seen when triggered in a PostPublishDataset workflow).
-         * A minimal initial wait, e.g. until some bytes are available, would address
-         * this. Second, the BagGenerator class, due to it's use of parallel streaming
-         * creation of the zip file, has the characteristic that it makes a few bytes
-         * available - from setting up the directory structure for the zip file -
-         * significantly earlier than it is ready to stream file content (e.g. for
-         * thousands of files and GB of content). If, for these large datasets,
-         * the transfer is started as soon as bytes are available, the call can
-         * timeout before the bytes for all the zipped files are available. To manage
-         * this, the loop waits until 90K bytes are available, larger than any expected
-         * dir structure for the zip and implying that the main zipped content is
-         * available, or until the thread terminates, with all of its content written to
-         * the pipe. (Note the PipedInputStream buffer is set at 100K above - I didn't
-         * want to test whether that means that exactly 100K bytes will be available()
-         * for large datasets or not, so the test below is at 90K.)
-         * 
-         * An additional sanity check limits the wait to 20K (MAX_ZIP_WAIT) seconds. The BagGenerator
-         * has been used to archive >120K files, 2K directories, and ~600GB files on the
-         * SEAD project (streaming content to disk rather than over an internet
-         * connection) which would take longer than 20K seconds (even 10+ hours) and might
-         * produce an initial set of bytes for directories > 90K. If Dataverse ever
-         * needs to support datasets of this size, the numbers here would need to be
-         * increased, and/or a change in how archives are sent to google (e.g. as
-         * multiple blobs that get aggregated) would be required.
-         */
-        int i = 0;
-        while (digestInputStream2.available() <= 90000 && i < MAX_ZIP_WAIT && bagThread.isAlive()) {
-            Thread.sleep(1000);
-            logger.fine("avail: " + digestInputStream2.available() + " : " + bagThread.getState().toString());
-            i++;
-        }
-        logger.fine("Bag: transfer started, i=" + i + ", avail = " + digestInputStream2.available());
-        if(i==MAX_ZIP_WAIT) {
-            throw new IOException("Stream not available");
-        }
         return bagThread;
     }
 
@@ -21,7 +21,6 @@ import edu.harvard.iq.dataverse.util.FileUtil;
 import static edu.harvard.iq.dataverse.util.FileUtil.MIME_TYPE_UNDETERMINED_DEFAULT;
 import static edu.harvard.iq.dataverse.util.FileUtil.createIngestFailureReport;
 import static edu.harvard.iq.dataverse.util.FileUtil.determineFileType;
-import static edu.harvard.iq.dataverse.util.FileUtil.determineFileTypeByNameAndExtension;
 import static edu.harvard.iq.dataverse.util.FileUtil.getFilesTempDirectory;
 import static edu.harvard.iq.dataverse.util.FileUtil.saveInputStreamInTempFile;
 import static edu.harvard.iq.dataverse.util.FileUtil.useRecognizedType;
@@ -30,6 +29,8 @@ import edu.harvard.iq.dataverse.util.StringUtil;
 import edu.harvard.iq.dataverse.util.file.BagItFileHandler;
 import edu.harvard.iq.dataverse.util.file.BagItFileHandlerFactory;
 import edu.harvard.iq.dataverse.util.file.CreateDataFileResult;
+import edu.harvard.iq.dataverse.util.file.UploadedFileCopy;
+import edu.harvard.iq.dataverse.util.file.ZipUploadExtractor;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -38,11 +39,10 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -53,10 +53,8 @@ import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 import jakarta.enterprise.inject.spi.CDI;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang3.StringUtils;
 
 /**
  *
@@ -137,6 +135,9 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
         String finalType = null;
         File newFile = null;    // this File will be used for a single-file, local (non-direct) upload
         long fileSize = -1; 
+        // the checksum and the leading bytes of the uploaded file, obtained
+        // while saving it, so that we don't have to read it again:
+        UploadedFileCopy uploadedCopy = null;
 
 
         if (newStorageIdentifier == null) {
@@ -148,7 +149,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                     // temp files will always be stored on the local filesystem.
                     // -- L.A. Jul. 2014
                     logger.fine("Will attempt to save the file as: " + tempFile.toString());
-                    Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                    uploadedCopy = UploadedFileCopy.save(inputStream, tempFile, newCheckSumType);
                 } catch (IOException ioex) {
                     throw new CommandExecutionException("Failed to save the upload as a temp file (temp disk space?)", ioex, this);
                 }
@@ -157,7 +158,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                 // (note that "no size limit set" = "unlimited")
                 // (also note, that if this is a zip file, we'll be checking
                 // the size limit for each of the individual unpacked files)
-                fileSize = tempFile.toFile().length();
+                fileSize = uploadedCopy.getSize();
                 if (fileSizeLimit != null && fileSize > fileSizeLimit) {
                     try {
                         tempFile.toFile().delete();
@@ -184,7 +185,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
             String recognizedType = null;
 
             try {
-                recognizedType = determineFileType(tempFile.toFile(), fileName);
+                recognizedType = determineFileType(tempFile.toFile(), fileName, uploadedCopy.getHeader());
                 logger.fine("File utility recognized the file as " + recognizedType);
                 if (recognizedType != null && !recognizedType.equals("")) {
                     if (useRecognizedType(suppliedContentType, recognizedType)) {
@@ -261,8 +262,6 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
             } else if (finalType.equals("application/zip")) {
 
                 ZipFile zipFile = null;
-                ZipInputStream unZippedIn = null;
-                ZipEntry zipEntry = null;
 
                 int fileNumberLimit = ctxt.systemConfig().getZipUploadFilesLimit();
                 Long combinedUnzippedFileSize = 0L;
@@ -273,7 +272,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                 	TODO: (?)
                 	We may want to investigate somehow letting the user specify 
                 	the charset for the filenames in the zip file...
-                    - otherwise, ZipInputStream bails out if it encounteres a file 
+                    - otherwise, ZipFile bails out if it encounteres a file 
                 	name that's not valid in the current charest (i.e., UTF-8, in 
                     our case). It would be a bit trickier than what we're doing for 
                     SPSS tabular ingests - with the lang. encoding pulldown menu - 
@@ -297,6 +296,8 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                      * give up right away, without doing any unpacking. 
                      * This should be a fairly inexpensive operation, we just need
                      * to read the directory at the end of the file. 
+                     * The same ZipFile, and the directory already read, are 
+                     * then used to unpack the entries. 
                      */
                     
                     if (charset != null) {
@@ -323,8 +324,21 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                      * that are files.
                      */
 
-                    for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
-                        ZipEntry entry = entries.nextElement();
+                    List<? extends ZipEntry> zipEntries;
+                    try {
+                        zipEntries = Collections.list(zipFile.entries());
+                    } catch (IllegalArgumentException iaex) {
+                        // Note:
+                        // this is what happens if the file name of an
+                        // entry is not valid in the current CharSet.
+                        // -- L.A.
+                        warningMessage = "Failed to unpack Zip file. (Unknown Character Set used in a file name?) Saving the file as is.";
+                        logger.warning(warningMessage);
+                        throw new IOException();
+                    }
+
+                    List<ZipEntry> unpackableEntries = new ArrayList<>();
+                    for (ZipEntry entry : zipEntries) {
                         logger.fine("inside first zip pass; this entry: "+entry.getName());
                         if (!entry.isDirectory()) {
                             String shortName = entry.getName().replaceFirst("^.*[\\/]", "");
@@ -333,6 +347,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                             // start with "._") 
                             if (!shortName.startsWith("._") && !shortName.startsWith(".DS_Store") && !"".equals(shortName)) {
                                 numberOfUnpackableFiles++;
+                                unpackableEntries.add(entry);
                                 if (numberOfUnpackableFiles > fileNumberLimit) {
                                     logger.warning("Zip upload - too many files in the zip to process individually.");
                                     warningMessage = "The number of files in the zip archive is over the limit (" + fileNumberLimit
@@ -366,113 +381,51 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                     }
                     
                     // OK we're still here - that means we can proceed unzipping. 
-                    
-                    // Close the ZipFile, re-open as ZipInputStream: 
-                    zipFile.close(); 
+                    // The entries are unpacked (and their types determined) 
+                    // concurrently; the sizes and the quota are checked again, 
+                    // against what is actually unpacked:
+                    ZipUploadExtractor extractor = ctxt.zipUploadExtraction().getExtractor(ctxt.systemConfig().getFileFixityChecksumAlgorithm(), fileSizeLimit, storageQuotaLimit);
+                    List<ZipUploadExtractor.ExtractedEntry> extractedEntries;
+                    try {
+                        extractedEntries = extractor.extract(zipFile, unpackableEntries);
+                    } catch (FileExceedsStorageQuotaException fesqx) {
+                        throw new CommandExecutionException(fesqx.getMessage(), fesqx, this);
+                    }
                     // reset:
                     combinedUnzippedFileSize = 0L;
 
-                    if (charset != null) {
-                        unZippedIn = new ZipInputStream(new FileInputStream(tempFile.toFile()), charset);
-                    } else {
-                        unZippedIn = new ZipInputStream(new FileInputStream(tempFile.toFile()));
-                    }
-
-                    while (true) {
-                        try {
-                            zipEntry = unZippedIn.getNextEntry();
-                        } catch (IllegalArgumentException iaex) {
-                            // Note:
-                            // ZipInputStream documentation doesn't even mention that
-                            // getNextEntry() throws an IllegalArgumentException!
-                            // but that's what happens if the file name of the next
-                            // entry is not valid in the current CharSet.
-                            // -- L.A.
-                            warningMessage = "Failed to unpack Zip file. (Unknown Character Set used in a file name?) Saving the file as is.";
-                            logger.warning(warningMessage);
-                            throw new IOException();
-                        }
-
-                        if (zipEntry == null) {
-                            break;
-                        }
-                        // Note that some zip entries may be directories - we
-                        // simply skip them:
-
-                        if (!zipEntry.isDirectory()) {
-                            if (datafiles.size() > fileNumberLimit) {
-                                logger.warning("Zip upload - too many files.");
-                                warningMessage = "The number of files in the zip archive is over the limit (" + fileNumberLimit
-                                        + "); please upload a zip archive with fewer files, if you want them to be ingested "
-                                        + "as individual DataFiles.";
-                                throw new IOException();
+                    for (ZipUploadExtractor.ExtractedEntry extracted : extractedEntries) {
+                        String fileEntryName = extracted.entry().getName();
+                        logger.fine("ZipEntry, file: " + fileEntryName);
+                        String shortName = fileEntryName.replaceFirst("^.*[\\/]", "");
+
+                        DataFile datafile = FileUtil.createSingleDataFile(version, null, extracted.storageIdentifier(), shortName,
+                                MIME_TYPE_UNDETERMINED_DEFAULT,
+                                extracted.copy().getChecksumType(), extracted.copy().getChecksum(), false);
+
+                        if (!fileEntryName.equals(shortName)) {
+                            // If the filename looks like a hierarchical folder name (i.e., contains slashes and backslashes),
+                            // we'll extract the directory name; then subject it to some "aggressive sanitizing" - strip all 
+                            // the leading, trailing and duplicate slashes; then replace all the characters that 
+                            // don't pass our validation rules.
+                            String directoryName = fileEntryName.replaceFirst("[\\\\/][\\\\/]*[^\\\\/]*$", "");
+                            directoryName = StringUtil.sanitizeFileDirectory(directoryName, true);
+                            // if (!"".equals(directoryName)) {
+                            if (!StringUtil.isEmpty(directoryName)) {
+                                logger.fine("setting the directory label to " + directoryName);
+                                datafile.getFileMetadata().setDirectoryLabel(directoryName);
                             }
+                        }
 
-                            String fileEntryName = zipEntry.getName();
-                            logger.fine("ZipEntry, file: " + fileEntryName);
-
-                            if (fileEntryName != null && !fileEntryName.equals("")) {
-
-                                String shortName = fileEntryName.replaceFirst("^.*[\\/]", "");
-
-                                // Check if it's a "fake" file - a zip archive entry
-                                // created for a MacOS X filesystem element: (these
-                                // start with "._")
-                                if (!shortName.startsWith("._") && !shortName.startsWith(".DS_Store") && !"".equals(shortName)) {
-                                    // OK, this seems like an OK file entry - we'll try
-                                    // to read it and create a DataFile with it:
-
-                                    String storageIdentifier = FileUtil.generateStorageIdentifier();
-                                    File unzippedFile = new File(getFilesTempDirectory() + "/" + storageIdentifier);
-                                    Files.copy(unZippedIn, unzippedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                                    // No need to check the size of this unpacked file against the size limit, 
-                                    // since we've already checked for that in the first pass.
-                                    
-                                    DataFile datafile = FileUtil.createSingleDataFile(version, null, storageIdentifier, shortName,
-                                            MIME_TYPE_UNDETERMINED_DEFAULT,
-                                            ctxt.systemConfig().getFileFixityChecksumAlgorithm(), null, false);
-                                    
-                                    if (!fileEntryName.equals(shortName)) {
-                                        // If the filename looks like a hierarchical folder name (i.e., contains slashes and backslashes),
-                                        // we'll extract the directory name; then subject it to some "aggressive sanitizing" - strip all 
-                                        // the leading, trailing and duplicate slashes; then replace all the characters that 
-                                        // don't pass our validation rules.
-                                        String directoryName = fileEntryName.replaceFirst("[\\\\/][\\\\/]*[^\\\\/]*$", "");
-                                        directoryName = StringUtil.sanitizeFileDirectory(directoryName, true);
-                                        // if (!"".equals(directoryName)) {
-                                        if (!StringUtil.isEmpty(directoryName)) {
-                                            logger.fine("setting the directory label to " + directoryName);
-                                            datafile.getFileMetadata().setDirectoryLabel(directoryName);
-                                        }
-                                    }
-
-                                    if (datafile != null) {
-                                        // We have created this datafile with the mime type "unknown";
-                                        // Now that we have it saved in a temporary location,
-                                        // let's try and determine its real type:
-
-                                        String tempFileName = getFilesTempDirectory() + "/" + datafile.getStorageIdentifier();
-
-                                        try {
-                                            recognizedType = determineFileType(unzippedFile, shortName);
-                                            // null the File explicitly, to release any open FDs:
-                                            unzippedFile = null;
-                                            logger.fine("File utility recognized unzipped file as " + recognizedType);
-                                            if (recognizedType != null && !recognizedType.equals("")) {
-                                                datafile.setContentType(recognizedType);
-                                            }
-                                        } catch (Exception ex) {
-                                            logger.warning("Failed to run the file utility mime type check on file " + fileName);
-                                        }
-
-                                        datafiles.add(datafile);
-                                        combinedUnzippedFileSize += datafile.getFilesize();
-                                    }
-                                }
-                            }
+                        // We have created this datafile with the mime type "unknown";
+                        // the extractor has already tried to determine its real type:
+                        recognizedType = extracted.contentType();
+                        if (recognizedType != null && !recognizedType.equals("")) {
+                            datafile.setContentType(recognizedType);
                         }
-                        unZippedIn.closeEntry();
 
+                        datafiles.add(datafile);
+                        combinedUnzippedFileSize += extracted.copy().getSize();
                     }
 
                 } catch (IOException ioex) {
@@ -500,11 +453,6 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                             zipFile.close();
                         } catch (Exception zEx) {}
                     }
-                    if (unZippedIn != null) {
-                        try {
-                            unZippedIn.close();
-                        } catch (Exception zEx) {}
-                    }
                 }
                 if (!datafiles.isEmpty()) {
                     // remove the uploaded zip file:
@@ -660,16 +608,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                 }
             }
             
-            // Default to suppliedContentType if set or the overall undetermined default if a contenttype isn't supplied
-            finalType = StringUtils.isBlank(suppliedContentType) ? FileUtil.MIME_TYPE_UNDETERMINED_DEFAULT : suppliedContentType;
-            String type = determineFileTypeByNameAndExtension(fileName);
-            if (!StringUtils.isBlank(type)) {
-                //Use rules for deciding when to trust browser supplied type
-                if (useRecognizedType(finalType, type)) {
-                    finalType = type;
-                }
-                logger.fine("Supplied type: " + suppliedContentType + ", finalType: " + finalType);
-            }
+            finalType = FileUtil.determineDirectUploadFileType(fileName, suppliedContentType);
             
             
         }
@@ -699,7 +638,9 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
             throw new CommandExecutionException(MessageFormat.format(BundleUtil.getStringFromBundle("file.addreplace.error.quota_exceeded"), bytesToHumanReadable(fileSize), bytesToHumanReadable(storageQuotaLimit)), this);
         } 
         
-        DataFile datafile = FileUtil.createSingleDataFile(version, newFile, newStorageIdentifier, fileName, finalType, newCheckSumType, newCheckSum);
+        // If the file is saved as uploaded, we already have its checksum:
+        String checksum = newCheckSum != null ? newCheckSum : (uploadedCopy != null ? uploadedCopy.getChecksum() : null);
+        DataFile datafile = FileUtil.createSingleDataFile(version, newFile, newStorageIdentifier, fileName, finalType, newCheckSumType, checksum);
 
         if (datafile != null) {
 
@@ -220,6 +220,15 @@ public class CuratePublishedDatasetVersionCommand extends AbstractDatasetCommand
         boolean retVal = true;
         Dataset d = (Dataset) r;
         
+        // The released version has changed in place:
+        try {
+            ctxt.citations().invalidate(d);
+            ctxt.citations().cacheCitations(d.getReleasedVersion());
+        } catch (Exception ex) {
+            // Not fatal either; the stale citations are not used, as the
+            // version has a new update time
+            logger.log(Level.WARNING, "Curate Published DatasetVersion: exception while caching citations:{0}", ex.getMessage());
+        }
         ctxt.index().asyncIndexDataset(d, true);
         
         // And the exported metadata files
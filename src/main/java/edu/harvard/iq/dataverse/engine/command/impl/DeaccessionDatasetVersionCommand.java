@@ -49,6 +49,8 @@ public class DeaccessionDatasetVersionCommand extends AbstractCommand<DatasetVer
     public DatasetVersion execute(CommandContext ctxt) throws CommandException {
         Dataset ds = theVersion.getDataset();        
 
+        // the version no longer counts in the metrics:
+        ctxt.metricsRollups().recordDatasetReleases(ds, false);
         theVersion.setVersionState(DatasetVersion.VersionState.DEACCESSIONED);
         /* We do not want to delete the identifier if the dataset is completely deaccessioned
         
@@ -71,6 +73,8 @@ public class DeaccessionDatasetVersionCommand extends AbstractCommand<DatasetVer
             }
         }*/
         DatasetVersion managed = ctxt.em().merge(theVersion);
+        ctxt.em().flush();
+        ctxt.metricsRollups().recordDatasetReleases(managed.getDataset(), true);
         
         boolean doNormalSolrDocCleanUp = true;
 
@@ -106,7 +110,9 @@ public class DeaccessionDatasetVersionCommand extends AbstractCommand<DatasetVer
         DatasetVersion version = (DatasetVersion) r;
         Dataset dataset = version.getDataset();
 
+        ctxt.citations().invalidate(dataset);
         ctxt.index().asyncIndexDataset(dataset, true);
+        ctxt.oaiRecords().queueOaiRecordsUpdate(dataset);
         return retVal;
     }
 
@@ -66,6 +66,8 @@ public class DestroyDatasetCommand extends AbstractVoidCommand {
                 this,  Collections.singleton(Permission.DeleteDatasetDraft), doomed);                
         }
         Dataset managedDoomed = ctxt.em().merge(doomed);
+        // (while its versions and downloads are still there to be counted)
+        ctxt.metricsRollups().recordDatasetDestroyed(managedDoomed);
         
         // If there is a dedicated thumbnail DataFile, it needs to be reset
         // explicitly, or we'll get a constraint violation when deleting:
@@ -128,6 +130,9 @@ public class DestroyDatasetCommand extends AbstractVoidCommand {
         String solrIdOfDeaccessionedDatasetVersion = IndexServiceBean.solrDocIdentifierDataset + managedDoomed.getId() + IndexServiceBean.deaccessionedSuffix;
         datasetAndFileSolrIdsToDelete.add(solrIdOfDeaccessionedDatasetVersion);
         
+        // the OAI records of the dataset will have to be marked as deleted:
+        ctxt.oaiRecords().queueOaiRecordsUpdate(managedDoomed);
+
         // dataset
         ctxt.em().remove(managedDoomed);
 
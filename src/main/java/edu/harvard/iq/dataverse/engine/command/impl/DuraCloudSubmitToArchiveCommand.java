@@ -10,9 +10,9 @@ import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
 import edu.harvard.iq.dataverse.workflow.step.Failure;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
@@ -108,40 +108,16 @@ public class DuraCloudSubmitToArchiveCommand extends AbstractSubmitToArchiveComm
                     String dataciteXml = getDataCiteXml(dv);
 
                     MessageDigest messageDigest = MessageDigest.getInstance("MD5");
-                    try (PipedInputStream dataciteIn = new PipedInputStream();
-                            DigestInputStream digestInputStream = new DigestInputStream(dataciteIn, messageDigest)) {
+                    try (DigestInputStream digestInputStream = new DigestInputStream(
+                            new ByteArrayInputStream(dataciteXml.getBytes(StandardCharsets.UTF_8)), messageDigest)) {
                         // Add datacite.xml file
-
-                        Thread dcThread = new Thread(new Runnable() {
-                            public void run() {
-                                try (PipedOutputStream dataciteOut = new PipedOutputStream(dataciteIn)) {
-
-                                    dataciteOut.write(dataciteXml.getBytes(StandardCharsets.UTF_8));
-                                    dataciteOut.close();
-                                    success=true;
-                                } catch (Exception e) {
-                                    logger.severe("Error creating datacite.xml: " + e.getMessage());
-                                    // TODO Auto-generated catch block
-                                    e.printStackTrace();
-                                }
-                            }
-                        }); 
-                        dcThread.start();
-                        // Have seen Pipe Closed errors for other archivers when used as a workflow
-                        // without this delay loop
-                        int i = 0;
-                        while (digestInputStream.available() <= 0 && i < 100) {
-                            Thread.sleep(10);
-                            i++;
-                        }
                         String checksum = store.addContent(spaceName, baseFileName + "_datacite.xml", digestInputStream,
                                 -1l, null, null, null);
                         logger.fine("Content: datacite.xml added with checksum: " + checksum);
-                        dcThread.join();
                         String localchecksum = Hex.encodeHexString(digestInputStream.getMessageDigest().digest());
-                        if (!success || !checksum.equals(localchecksum)) {
+                        if (!checksum.equals(localchecksum)) {
                             logger.severe("Failure on " + baseFileName);
-                            logger.severe(success ? checksum + " not equal to " + localchecksum : "failed to transfer to DuraCloud");
+                            logger.severe(checksum + " not equal to " + localchecksum);
                             try {
                                 store.deleteContent(spaceName, baseFileName + "_datacite.xml");
                             } catch (ContentStoreException cse) {
@@ -158,6 +134,8 @@ public class DuraCloudSubmitToArchiveCommand extends AbstractSubmitToArchiveComm
                         // Add BagIt ZIP file
                         // Although DuraCloud uses SHA-256 internally, it's API uses MD5 to verify the
                         // transfer
+                        // DuraCloud only reads content from an InputStream, so the bag is
+                        // generated in another thread, writing into a pipe
 
                         messageDigest = MessageDigest.getInstance("MD5");
                         try (PipedInputStream in = new PipedInputStream(100000);
@@ -6,6 +6,7 @@ import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetField;
 import edu.harvard.iq.dataverse.DatasetFieldConstant;
 import edu.harvard.iq.dataverse.DatasetLock;
+import edu.harvard.iq.dataverse.DatasetVersion;
 import static edu.harvard.iq.dataverse.DatasetVersion.VersionState.*;
 import edu.harvard.iq.dataverse.DatasetVersionUser;
 import edu.harvard.iq.dataverse.Dataverse;
@@ -116,7 +117,8 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
         }
                 
         // is this the first publication of the dataset?
-        if (theDataset.getPublicationDate() == null) {
+        boolean firstPublication = theDataset.getPublicationDate() == null;
+        if (firstPublication) {
             theDataset.setReleaseUser((AuthenticatedUser) getUser());
         
             theDataset.setPublicationDate(new Timestamp(new Date().getTime()));
@@ -211,6 +213,12 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
         
 	if (theDataset.getLatestVersion().getVersionState() != RELEASED) {
             // some imported datasets may already be released.
+            // Update the metrics counters (before the new version becomes 
+            // the released one, so that we can still see the previous one):
+            DatasetVersion previouslyReleased = theDataset.getReleasedVersion();
+            long fileCountDelta = theDataset.getLatestVersion().getFileMetadatas().size()
+                    - (previouslyReleased == null ? 0 : previouslyReleased.getFileMetadatas().size());
+            ctxt.metricsRollups().recordDatasetPublished(theDataset, theDataset.getLatestVersion(), firstPublication, fileCountDelta);
 	        theDataset.getLatestVersion().setVersionState(RELEASED);
             if (!datasetExternallyReleased) {
                 publicizeExternalIdentifier(theDataset, ctxt);
@@ -296,8 +304,18 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
             // ... but it is important to only update the export time stamp if the 
             // export was indeed successful.
         }
+
+        try {
+            // Before indexing, which uses them
+            ctxt.citations().cacheCitations(dataset.getReleasedVersion());
+        } catch (Exception e) {
+            // not fatal; they will be rendered when first needed
+            logger.warning("Failure to cache the citations of dataset " + dataset.getId() + ": " + e.getMessage());
+        }
         ctxt.index().asyncIndexDataset(dataset, true);
         
+        ctxt.oaiRecords().queueOaiRecordsUpdate(dataset);
+        
         return retVal;
     }
 
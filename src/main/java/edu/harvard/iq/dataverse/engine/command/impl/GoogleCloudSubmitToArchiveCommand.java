@@ -1,7 +1,9 @@
 package edu.harvard.iq.dataverse.engine.command.impl;
 
 import com.google.auth.oauth2.ServiceAccountCredentials;
+import com.google.cloud.WriteChannel;
 import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobInfo;
 import com.google.cloud.storage.Bucket;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageException;
@@ -17,16 +19,18 @@ import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.workflow.step.Failure;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 
 import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -73,42 +77,17 @@ public class GoogleCloudSubmitToArchiveCommand extends AbstractSubmitToArchiveCo
 
                     String dataciteXml = getDataCiteXml(dv);
                     MessageDigest messageDigest = MessageDigest.getInstance("MD5");
-                    try (PipedInputStream dataciteIn = new PipedInputStream();
-                            DigestInputStream digestInputStream = new DigestInputStream(dataciteIn, messageDigest)) {
+                    try (DigestInputStream digestInputStream = new DigestInputStream(
+                            new ByteArrayInputStream(dataciteXml.getBytes(StandardCharsets.UTF_8)), messageDigest)) {
                         // Add datacite.xml file
-
-                        Thread dcThread = new Thread(new Runnable() {
-                            public void run() {
-                                try (PipedOutputStream dataciteOut = new PipedOutputStream(dataciteIn)) {
-
-                                    dataciteOut.write(dataciteXml.getBytes(StandardCharsets.UTF_8));
-                                    dataciteOut.close();
-                                    success = true;
-                                } catch (Exception e) {
-                                    logger.severe("Error creating datacite.xml: " + e.getMessage());
-                                    // TODO Auto-generated catch block
-                                    e.printStackTrace();
-                                    // throw new RuntimeException("Error creating datacite.xml: " + e.getMessage());
-                                }
-                            }
-                        });
-                        dcThread.start();
-                        // Have seen Pipe Closed errors for other archivers when used as a workflow
-                        // without this delay loop
-                        int i = 0;
-                        while (digestInputStream.available() <= 0 && i < 100) {
-                            Thread.sleep(10);
-                            i++;
-                        }
                         Blob dcXml = bucket.create(spaceName + "/datacite.v" + dv.getFriendlyVersionNumber() + ".xml", digestInputStream, "text/xml", Bucket.BlobWriteOption.doesNotExist());
 
-                        dcThread.join();
                         String checksum = dcXml.getMd5ToHexString();
                         logger.fine("Content: datacite.xml added with checksum: " + checksum);
                         String localchecksum = Hex.encodeHexString(digestInputStream.getMessageDigest().digest());
-                        if (!success || !checksum.equals(localchecksum)) {
+                        if (!checksum.equals(localchecksum)) {
                             logger.severe("Failure on " + spaceName);
-                            logger.severe(success ? checksum + " not equal to " + localchecksum : "datacite.xml transfer did not succeed");
+                            logger.severe(checksum + " not equal to " + localchecksum);
                             try {
                                 dcXml.delete(Blob.BlobSourceOption.generationMatch());
                             } catch (StorageException se) {
@@ -119,37 +98,45 @@ public class GoogleCloudSubmitToArchiveCommand extends AbstractSubmitToArchiveCo
                         }
 
                         // Store BagIt file
-                        success = false;
                         String fileName = spaceName + ".v" + dv.getFriendlyVersionNumber() + ".zip";
+                        BlobInfo bagInfo = BlobInfo.newBuilder(bucketName, spaceName + "/" + fileName)
+                                .setContentType("application/zip").build();
 
                         // Add BagIt ZIP file
-                        // Google uses MD5 as one way to verify the
+                        // The bag is generated straight into a resumable upload,
+                        // sent in chunks of the upload part size. The upload is
+                        // only finalized, by closing the channel, if the bag is
+                        // complete. Google uses MD5 as one way to verify the
                         // transfer
                         messageDigest = MessageDigest.getInstance("MD5");
-                        try (PipedInputStream in = new PipedInputStream(100000);
-                                DigestInputStream digestInputStream2 = new DigestInputStream(in, messageDigest)) {
-                            Thread bagThread = startBagThread(dv, in, digestInputStream2, dataciteXml, token);
-                            Blob bag = bucket.create(spaceName + "/" + fileName, digestInputStream2, "application/zip",
-                                    Bucket.BlobWriteOption.doesNotExist());
-                            if (bag.getSize() == 0) {
-                                throw new IOException("Empty Bag");
-                            }
-                            bagThread.join();
-
-                            checksum = bag.getMd5ToHexString();
-                            logger.fine("Bag: " + fileName + " added with checksum: " + checksum);
-                            localchecksum = Hex.encodeHexString(digestInputStream2.getMessageDigest().digest());
-                            if (!success || !checksum.equals(localchecksum)) {
-                                logger.severe(success ? checksum + " not equal to " + localchecksum
-                                        : "bag transfer did not succeed");
-                                try {
-                                    bag.delete(Blob.BlobSourceOption.generationMatch());
-                                } catch (StorageException se) {
-                                    logger.warning(se.getMessage());
-                                }
-                                return new Failure("Error in transferring Zip file to GoogleCloud",
-                                        "GoogleCloud Submission Failure: incomplete archive transfer");
+                        WriteChannel writer = storage.writer(bagInfo, Storage.BlobWriteOption.doesNotExist());
+                        writer.setChunkSize(getUploadPartSize());
+                        DigestOutputStream out = new DigestOutputStream(
+                                CloseShieldOutputStream.wrap(Channels.newOutputStream(writer)), messageDigest);
+                        if (!generateBag(dv, dataciteXml, token, out)) {
+                            logger.severe("Bag generation failed for " + fileName);
+                            return new Failure("Error in generating Bag",
+                                    "GoogleCloud Submission Failure: archive file not created");
+                        }
+                        out.flush();
+                        writer.close();
+                        Blob bag = storage.get(bagInfo.getBlobId());
+                        if (bag == null || bag.getSize() == 0) {
+                            throw new IOException("Empty Bag");
+                        }
+
+                        checksum = bag.getMd5ToHexString();
+                        logger.fine("Bag: " + fileName + " added with checksum: " + checksum);
+                        localchecksum = Hex.encodeHexString(out.getMessageDigest().digest());
+                        if (!checksum.equals(localchecksum)) {
+                            logger.severe(checksum + " not equal to " + localchecksum);
+                            try {
+                                bag.delete(Blob.BlobSourceOption.generationMatch());
+                            } catch (StorageException se) {
+                                logger.warning(se.getMessage());
                             }
+                            return new Failure("Error in transferring Zip file to GoogleCloud",
+                                    "GoogleCloud Submission Failure: incomplete archive transfer");
                         }
 
                         logger.fine("GoogleCloud Submission step: Content Transferred");
@@ -8,8 +8,6 @@ import edu.harvard.iq.dataverse.authorization.users.ApiToken;
 import edu.harvard.iq.dataverse.engine.command.Command;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
-import edu.harvard.iq.dataverse.util.bagit.BagGenerator;
-import edu.harvard.iq.dataverse.util.bagit.OREMap;
 import edu.harvard.iq.dataverse.workflow.step.Failure;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 
@@ -20,8 +18,10 @@ import java.util.logging.Logger;
 import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
 
 import org.apache.commons.io.FileUtils;
 
@@ -29,6 +29,7 @@ import org.apache.commons.io.FileUtils;
 public class LocalSubmitToArchiveCommand extends AbstractSubmitToArchiveCommand implements Command<DatasetVersion> {
 
     private static final Logger logger = Logger.getLogger(LocalSubmitToArchiveCommand.class.getName());
+    private static final int BUFFER_SIZE = 1024 * 1024;
 
     public LocalSubmitToArchiveCommand(DataverseRequest aRequest, DatasetVersion version) {
         super(aRequest, version);
@@ -61,17 +62,20 @@ public class LocalSubmitToArchiveCommand extends AbstractSubmitToArchiveCommand
                 FileUtils.writeStringToFile(
                         new File(localPath + "/" + spaceName + "-datacite.v" + dv.getFriendlyVersionNumber() + ".xml"),
                         dataciteXml, StandardCharsets.UTF_8);
-                BagGenerator bagger = new BagGenerator(new OREMap(dv, false), dataciteXml);
-                bagger.setNumConnections(getNumberOfBagGeneratorThreads());
-                bagger.setAuthenticationKey(token.getTokenString());
                 zipName = localPath + "/" + spaceName + "v" + dv.getFriendlyVersionNumber() + ".zip";
-                //ToDo: generateBag(File f, true) seems to do the same thing (with a .tmp extension) - since we don't have to use a stream here, could probably just reuse the existing code? 
-                bagger.generateBag(new FileOutputStream(zipName + ".partial"));
+                // The bag is streamed straight into its final location, and
+                // only renamed once it is complete
+                boolean bagGenerated;
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(zipName + ".partial"), BUFFER_SIZE)) {
+                    bagGenerated = generateBag(dv, dataciteXml, token, out);
+                }
 
                 File srcFile = new File(zipName + ".partial");
                 File destFile = new File(zipName);
 
-                if (srcFile.renameTo(destFile)) {
+                if (!bagGenerated) {
+                    logger.warning("Failed to generate the bag in " + zipName + ".partial");
+                } else if (srcFile.renameTo(destFile)) {
                     logger.fine("Localhost Submission step: Content Transferred");
                     statusObject.add(DatasetVersion.ARCHIVAL_STATUS, DatasetVersion.ARCHIVAL_STATUS_SUCCESS);
                     statusObject.add(DatasetVersion.ARCHIVAL_STATUS_MESSAGE, "file://" + zipName);
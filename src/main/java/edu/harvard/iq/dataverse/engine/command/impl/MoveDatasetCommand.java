@@ -147,8 +147,13 @@ public class MoveDatasetCommand extends AbstractVoidCommand {
         }
 
         // OK, move
+        ctxt.metricsRollups().recordDatasetMoved(moved, moved.getOwner(), destination);
         moved.setOwner(destination);
         ctxt.em().merge(moved);
+        // the dataset may now belong in different OAI sets:
+        ctxt.oaiRecords().queueOaiRecordsUpdate(moved);
+        // and its citations may list other fields:
+        ctxt.citations().invalidate(moved);
 
         boolean doNormalSolrDocCleanUp = true;
         ctxt.index().asyncIndexDataset(moved, doNormalSolrDocCleanUp);
@@ -70,6 +70,7 @@ public class PublishDataverseCommand extends AbstractCommand<Dataverse> {
         dataverse.setPublicationDate(new Timestamp(new Date().getTime()));
         dataverse.setReleaseUser((AuthenticatedUser) getUser());
         Dataverse savedDataverse = ctxt.dataverses().save(dataverse);
+        ctxt.metricsRollups().recordDataversePublished(savedDataverse);
         
         return savedDataverse;
 
@@ -7,15 +7,12 @@ import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.ApiToken;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
-import edu.harvard.iq.dataverse.util.bagit.BagGenerator;
-import edu.harvard.iq.dataverse.util.bagit.OREMap;
+import edu.harvard.iq.dataverse.util.bagit.S3MultipartUploadOutputStream;
 import edu.harvard.iq.dataverse.util.json.JsonUtil;
 import edu.harvard.iq.dataverse.workflow.step.Failure;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 
 import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -102,47 +99,41 @@ public class S3SubmitToArchiveCommand extends AbstractSubmitToArchiveCommand {
                         String fileName = getFileName(spaceName, dv);
                         
                         String bagKey = spaceName + "/" + fileName + ".zip";
-                        // Add BagIt ZIP file
-                        // Google uses MD5 as one way to verify the
-                        // transfer
-
-                        // Generate bag
-                        BagGenerator bagger = new BagGenerator(new OREMap(dv, false), dataciteXml);
-                        bagger.setAuthenticationKey(token.getTokenString());
-                        if (bagger.generateBag(fileName, false)) {
-                            File bagFile = bagger.getBagFile(fileName);
-
-                            try (FileInputStream in = new FileInputStream(bagFile)) {
-                                om = new ObjectMetadata();
-                                om.setContentLength(bagFile.length());
-
-                                tm.upload(new PutObjectRequest(bucketName, bagKey, in, om)).waitForCompletion();
-                                om = s3.getObjectMetadata(bucketName, bagKey);
-
-                                if (om == null) {
-                                    logger.severe("Error sending file to S3: " + fileName);
-                                    return new Failure("Error in transferring Bag file to S3",
-                                            "S3 Submission Failure: incomplete transfer");
-                                }
-                            } catch (RuntimeException rte) {
-                                logger.severe("Error creating Bag during S3 archiving: " + rte.getMessage());
+                        // Generate bag, straight into a multipart upload
+                        int partSize = S3MultipartUploadOutputStream.getPartSize(getEstimatedBagSize(dv),
+                                getUploadPartSize());
+                        S3MultipartUploadOutputStream out = new S3MultipartUploadOutputStream(s3, bucketName,
+                                bagKey, partSize, getUploadPartsInFlight(), getUploadExecutor());
+                        try {
+                            // The upload is completed when the bag generator closes
+                            // the stream, i.e. only if the bag is complete
+                            if (!generateBag(dv, dataciteXml, token, out)) {
+                                out.cancel();
                                 return new Failure("Error in generating Bag",
                                         "S3 Submission Failure: archive file not created");
                             }
+                            out.close();
+                        } catch (Exception e) {
+                            out.cancel();
+                            logger.severe("Error creating Bag during S3 archiving: " + e.getMessage());
+                            return new Failure("Error in transferring Bag file to S3",
+                                    "S3 Submission Failure: incomplete transfer");
+                        }
+                        om = s3.getObjectMetadata(bucketName, bagKey);
+                        if (om == null) {
+                            logger.severe("Error sending file to S3: " + fileName);
+                            return new Failure("Error in transferring Bag file to S3",
+                                    "S3 Submission Failure: incomplete transfer");
+                        }
+                        logger.fine("S3 Submission step: Content Transferred");
 
-                            logger.fine("S3 Submission step: Content Transferred");
-
-                            // Document the location of dataset archival copy location (actually the URL
-                            // where you can
-                            // view it as an admin)
+                        // Document the location of dataset archival copy location (actually the URL
+                        // where you can
+                        // view it as an admin)
 
-                            // Unsigned URL - gives location but not access without creds
-                            statusObject.add(DatasetVersion.ARCHIVAL_STATUS, DatasetVersion.ARCHIVAL_STATUS_SUCCESS);
-                            statusObject.add(DatasetVersion.ARCHIVAL_STATUS_MESSAGE, s3.getUrl(bucketName, bagKey).toString());
-                        } else {
-                            logger.warning("Could not write local Bag file " + fileName);
-                            return new Failure("S3 Archiver fail writing temp local bag");
-                        }
+                        // Unsigned URL - gives location but not access without creds
+                        statusObject.add(DatasetVersion.ARCHIVAL_STATUS, DatasetVersion.ARCHIVAL_STATUS_SUCCESS);
+                        statusObject.add(DatasetVersion.ARCHIVAL_STATUS_MESSAGE, s3.getUrl(bucketName, bagKey).toString());
 
                     }
                 } else {
@@ -49,6 +49,8 @@ public class SetDatasetCitationDateCommand extends AbstractCommand<Dataset>{
         boolean retVal = true;
         Dataset dataset = (Dataset) r;
 
+        // The date is part of the citations of all the versions
+        ctxt.citations().invalidate(dataset);
         ctxt.index().asyncIndexDataset(dataset, false);
 
         return retVal;
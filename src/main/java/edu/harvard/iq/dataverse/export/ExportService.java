@@ -133,57 +133,15 @@ public class ExportService {
 
         InputStream exportInputStream = getCachedExportFormat(dataset, formatName);
 
-        // The DDI export is limited for restricted and actively embargoed files (no
-        // data/file description sections).and when an embargo ends, we need to refresh
-        // this export.
-        boolean clearCachedExport = false;
-        if (formatName.equals(DDIExporter.PROVIDER_NAME) && (exportInputStream != null)) {
-            // We want ddi and there was a cached version
-            LocalDate exportLocalDate = null;
-            Date lastExportDate = dataset.getLastExportTime();
-            // if lastExportDate == null, assume it's not set because were exporting for the
-            // first time now (e.g. during publish) and therefore no changes are needed
-            if (lastExportDate != null) {
-                exportLocalDate = lastExportDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-                logger.fine("Last export date: " + exportLocalDate.toString());
-                // Track which embargoes we've already checked
-                Set<Long> embargoIds = new HashSet<Long>();
-                // Check for all files in the latest released version
-                for (FileMetadata fm : dataset.getLatestVersionForCopy().getFileMetadatas()) {
-                    // ToDo? This loop is necessary because we have not stored the date when the
-                    // next embargo in this datasetversion will end. If we knew that (another
-                    // dataset/datasetversion column), we could make
-                    // one check that nextembargoEnd exists and is after the last export and before
-                    // now versus scanning through files until we potentially find such an embargo.
-                    Embargo e = fm.getDataFile().getEmbargo();
-                    if (e != null) {
-                        logger.fine("Datafile:  " + fm.getDataFile().getId());
-                        logger.fine("Embargo end date: " + e.getFormattedDateAvailable());
-                    }
-                    if (e != null && !embargoIds.contains(e.getId()) && e.getDateAvailable().isAfter(exportLocalDate)
-                            && e.getDateAvailable().isBefore(LocalDate.now())) {
-                        logger.fine("Request that the ddi export be cleared.");
-                        // The file has been embargoed and the embargo ended after the last export and
-                        // before the current date, so we need to remove the cached DDI export and make
-                        // it refresh
-                        clearCachedExport = true;
-                        break;
-                    } else if (e != null) {
-                        logger.fine("adding embargo to checked list: " + e.getId());
-                        embargoIds.add(e.getId());
-                    }
-                }
-            }
-            if (clearCachedExport) {
-                try {
-                    exportInputStream.close();
-                    clearCachedExport(dataset, formatName);
-                } catch (Exception ex) {
-                    logger.warning("Failure deleting DDI export format for dataset id: " + dataset.getId()
-                            + " after embargo expiration: " + ex.getLocalizedMessage());
-                } finally {
-                    exportInputStream = null;
-                }
+        if (exportInputStream != null && isCachedExportOutdated(dataset, formatName)) {
+            try {
+                exportInputStream.close();
+                clearCachedExport(dataset, formatName);
+            } catch (Exception ex) {
+                logger.warning("Failure deleting DDI export format for dataset id: " + dataset.getId()
+                        + " after embargo expiration: " + ex.getLocalizedMessage());
+            } finally {
+                exportInputStream = null;
             }
         }
 
@@ -207,6 +165,80 @@ public class ExportService {
 
     }
 
+    /**
+     * Whether the cached export of the dataset in this format has to be
+     * regenerated, even though it exists.
+     * <p>
+     * The DDI export is limited for restricted and actively embargoed files (no
+     * data/file description sections); so when an embargo ends, we need to
+     * refresh this export.
+     *
+     * @param dataset the dataset
+     * @param formatName the export format
+     * @return true if the cached export is out of date
+     */
+    public boolean isCachedExportOutdated(Dataset dataset, String formatName) {
+        if (!formatName.equals(DDIExporter.PROVIDER_NAME)) {
+            return false;
+        }
+        Date lastExportDate = dataset.getLastExportTime();
+        // if lastExportDate == null, assume it's not set because were exporting for the
+        // first time now (e.g. during publish) and therefore no changes are needed
+        if (lastExportDate == null) {
+            return false;
+        }
+        LocalDate exportLocalDate = lastExportDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        logger.fine("Last export date: " + exportLocalDate.toString());
+        // Track which embargoes we've already checked
+        Set<Long> embargoIds = new HashSet<Long>();
+        // Check for all files in the latest released version
+        for (FileMetadata fm : dataset.getLatestVersionForCopy().getFileMetadatas()) {
+            // ToDo? This loop is necessary because we have not stored the date when the
+            // next embargo in this datasetversion will end. If we knew that (another
+            // dataset/datasetversion column), we could make
+            // one check that nextembargoEnd exists and is after the last export and before
+            // now versus scanning through files until we potentially find such an embargo.
+            Embargo e = fm.getDataFile().getEmbargo();
+            if (e != null) {
+                logger.fine("Datafile:  " + fm.getDataFile().getId());
+                logger.fine("Embargo end date: " + e.getFormattedDateAvailable());
+            }
+            if (e != null && !embargoIds.contains(e.getId()) && e.getDateAvailable().isAfter(exportLocalDate)
+                    && e.getDateAvailable().isBefore(LocalDate.now())) {
+                logger.fine("Request that the ddi export be cleared.");
+                // The file has been embargoed and the embargo ended after the last export and
+                // before the current date, so we need to remove the cached DDI export and make
+                // it refresh
+                return true;
+            } else if (e != null) {
+                logger.fine("adding embargo to checked list: " + e.getId());
+                embargoIds.add(e.getId());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads a cached export into memory, without attempting to generate it if
+     * it isn't there. Only talks to the storage, so, unlike the other methods
+     * here, it is safe to call outside of the request thread (to read the
+     * exports of several datasets concurrently, for example), with a
+     * StorageIO opened beforehand.
+     *
+     * @param storageIO the StorageIO of the dataset
+     * @param formatName the export format
+     * @return the cached export, or null if there is none
+     * @throws IOException if it could not be read
+     */
+    public static byte[] readCachedExport(StorageIO<Dataset> storageIO, String formatName) throws IOException {
+        try (InputStream cachedExportInputStream = storageIO.getAuxFileAsInputStream("export_" + formatName + ".cached")) {
+            if (cachedExportInputStream == null) {
+                return null;
+            }
+            return IOUtils.toByteArray(cachedExportInputStream);
+        }
+    }
+
     public String getExportAsString(Dataset dataset, String formatName) {
         InputStream inputStream = null;
         InputStreamReader inp = null;
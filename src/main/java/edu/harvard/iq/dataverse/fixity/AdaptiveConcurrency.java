@@ -0,0 +1,76 @@
+package edu.harvard.iq.dataverse.fixity;
+
+/**
+ * The number of files of a store a fixity audit reads at the same time,
+ * adjusted after each batch so that the audit uses the capacity the store
+ * can spare and backs off when the store slows down: it is increased by one
+ * while the files are read as fast as before, and halved as soon as they are
+ * read at less than half that rate (additive increase, multiplicative
+ * decrease).
+ * <p>
+ * The rate is that of each reader - the bytes read over the time spent
+ * reading them, added up over the files - so it drops when the store, or
+ * the network, is shared by more readers than it can serve, whether they are
+ * the audit's or those of the users. Each file counts for
+ * {@link #FILE_OVERHEAD_BYTES} more bytes, so that batches of small files,
+ * where most of the time goes into opening them, are measured too. The rate
+ * to compare with is the best one seen, slowly forgotten, so that the audit
+ * recovers after a busy period rather than staying at a single reader.
+ */
+class AdaptiveConcurrency {
+
+    /**
+     * What opening a file is counted as, in bytes read.
+     */
+    static final long FILE_OVERHEAD_BYTES = 64 * 1024;
+
+    /**
+     * The fraction of the best rate below which the number of readers is
+     * halved.
+     */
+    static final double SLOWDOWN_THRESHOLD = 0.5;
+
+    /**
+     * How much of the best rate is kept from one batch to the next.
+     */
+    static final double BASELINE_DECAY = 0.95;
+
+    private final int max;
+    private int limit;
+    private double baseline;
+
+    /**
+     * @param max the largest number of files read at the same time; the
+     * audit starts with one
+     */
+    AdaptiveConcurrency(int max) {
+        this.max = Math.max(1, max);
+        this.limit = 1;
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Adjusts the number of readers after a batch.
+     *
+     * @param files the number of files read
+     * @param bytes the number of bytes read
+     * @param readMillis the time spent reading them, added up over the files
+     * @return the new number of readers
+     */
+    synchronized int update(int files, long bytes, long readMillis) {
+        if (files == 0) {
+            return limit;
+        }
+        double rate = (double) (bytes + files * FILE_OVERHEAD_BYTES) / Math.max(1, readMillis);
+        baseline = Math.max(rate, baseline * BASELINE_DECAY);
+        if (rate < baseline * SLOWDOWN_THRESHOLD) {
+            limit = Math.max(1, limit / 2);
+        } else if (limit < max) {
+            limit++;
+        }
+        return limit;
+    }
+}
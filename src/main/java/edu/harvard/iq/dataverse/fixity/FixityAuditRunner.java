@@ -0,0 +1,274 @@
+package edu.harvard.iq.dataverse.fixity;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.BoundedExecutor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs fixity audits: recalculates the checksums of all the (local) data
+ * files and records the ones that do not match, could not be read, or have
+ * no checksum to compare with.
+ * <p>
+ * The files of each storage driver are checked by a task of their own, in
+ * batches of {@code dataverse.files.fixity.batch-size} files, in id order.
+ * Within a batch, up to {@code dataverse.files.<id>.checksum-concurrency}
+ * files are read at the same time, on the container's threads (see
+ * {@link BoundedExecutor}); how many exactly is adjusted from one
+ * batch to the next by {@link AdaptiveConcurrency}, starting from one, so
+ * that the audit backs off when the store slows down. Very large files are
+ * read in parallel parts, where the store supports it (see
+ * {@link FixityChecker}).
+ * <p>
+ * The progress is recorded after every batch (see
+ * {@link FixityAuditServiceBean}), and the state of the audit is checked
+ * before the next one: an audit stopped through the API, on any server,
+ * stops after the batch in progress, and can be resumed later from there.
+ * One audit runs at a time.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class FixityAuditRunner {
+    private static final Logger logger = Logger.getLogger(FixityAuditRunner.class.getCanonicalName());
+
+    /**
+     * The number of parts of a large file read ahead of the one being
+     * digested.
+     */
+    static final int PARTS_AHEAD = 4;
+
+    @Resource
+    ManagedExecutorService managedExecutor;
+
+    @EJB
+    FixityAuditServiceBean auditService;
+
+    private int batchSize;
+    private long rangedReadThreshold;
+    private int rangeSize;
+    private BoundedExecutor rangeExecutor;
+
+    // The audit running on this server, if any:
+    private Long runningAuditId;
+    private final List<Future<?>> storeAudits = new ArrayList<>();
+    private volatile boolean shuttingDown;
+
+    @PostConstruct
+    public void init() {
+        batchSize = Math.max(1, JvmSettings.FIXITY_BATCH_SIZE.lookupOptional(Integer.class).orElse(200));
+        rangedReadThreshold = JvmSettings.FIXITY_RANGED_READ_THRESHOLD.lookupOptional(Long.class).orElse(1024L * 1024 * 1024);
+        rangeSize = Math.max(1, JvmSettings.FIXITY_RANGE_SIZE.lookupOptional(Integer.class).orElse(8 * 1024 * 1024));
+        int rangeThreads = Math.max(1, JvmSettings.FIXITY_RANGE_THREADS.lookupOptional(Integer.class).orElse(8));
+        rangeExecutor = new BoundedExecutor(managedExecutor, rangeThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        Long auditId;
+        synchronized (this) {
+            auditId = runningAuditId;
+            storeAudits.forEach(audit -> audit.cancel(true));
+        }
+        if (auditId != null) {
+            // To be resumed after the restart
+            auditService.finishAudit(auditId, FixityAuditServiceBean.STATUS_STOPPED);
+        }
+        if (rangeExecutor != null) {
+            rangeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts a new audit of the files of all the storage drivers that
+     * Dataverse can read from.
+     *
+     * @return the id of the new audit, or null if an audit is already running
+     */
+    public synchronized Long start() {
+        if (runningAuditId != null) {
+            return null;
+        }
+        List<String> driverIds = new ArrayList<>();
+        for (String driverId : new TreeSet<>(DataAccess.getStorageDriverLabels().values())) {
+            if (StorageIO.isDataverseAccessible(driverId)) {
+                driverIds.add(driverId);
+            }
+        }
+        Long auditId = auditService.createAudit(driverIds);
+        if (auditId != null) {
+            run(auditId);
+        }
+        return auditId;
+    }
+
+    /**
+     * Resumes a stopped audit, from the last batch of files recorded.
+     *
+     * @param force whether to resume the audit even though it is recorded as
+     * running - as it is when the server that was running it went down
+     * without stopping it
+     * @return false if the audit cannot be resumed (another audit is running,
+     * or it is not stopped)
+     */
+    public synchronized boolean resume(Long auditId, boolean force) {
+        if (runningAuditId != null || !auditService.resumeAudit(auditId, force)) {
+            return false;
+        }
+        run(auditId);
+        return true;
+    }
+
+    /**
+     * Stops a running audit, on whichever server it is running: the
+     * stores being checked stop after their current batch.
+     *
+     * @return false if the audit is not running
+     */
+    public boolean stop(Long auditId) {
+        if (!auditService.findRunningAuditIds().contains(auditId)) {
+            return false;
+        }
+        auditService.finishAudit(auditId, FixityAuditServiceBean.STATUS_STOPPED);
+        return true;
+    }
+
+    private void run(Long auditId) {
+        List<FixityAuditServiceBean.Store> stores = new ArrayList<>();
+        auditService.findStores(auditId).stream().filter(s -> !s.completed()).forEach(stores::add);
+        if (stores.isEmpty()) {
+            auditService.finishAudit(auditId, FixityAuditServiceBean.STATUS_COMPLETED);
+            return;
+        }
+        logger.info("Running fixity audit " + auditId + " of storage drivers " + stores.stream().map(FixityAuditServiceBean.Store::driverId).toList());
+        runningAuditId = auditId;
+        AtomicInteger remaining = new AtomicInteger(stores.size());
+        for (FixityAuditServiceBean.Store store : stores) {
+            storeAudits.add(managedExecutor.submit(() -> {
+                try {
+                    auditStore(auditId, store);
+                } catch (Exception e) {
+                    // Left as it is, to be resumed
+                    logger.log(Level.WARNING, "Fixity audit " + auditId + " of storage driver " + store.driverId() + " failed", e);
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        finished(auditId);
+                    }
+                }
+            }));
+        }
+    }
+
+    private synchronized void finished(Long auditId) {
+        if (!shuttingDown && auditService.findStores(auditId).stream().allMatch(FixityAuditServiceBean.Store::completed)) {
+            auditService.finishAudit(auditId, FixityAuditServiceBean.STATUS_COMPLETED);
+            logger.info("Fixity audit " + auditId + " completed");
+        } else {
+            // Stopped, or a store failed: either way, it can be resumed
+            auditService.finishAudit(auditId, FixityAuditServiceBean.STATUS_STOPPED);
+            logger.info("Fixity audit " + auditId + " stopped");
+        }
+        runningAuditId = null;
+        storeAudits.clear();
+    }
+
+    private boolean isRunning(Long auditId) {
+        return !shuttingDown && !Thread.currentThread().isInterrupted()
+                && auditService.findRunningAuditIds().contains(auditId);
+    }
+
+    private void auditStore(Long auditId, FixityAuditServiceBean.Store store) {
+        String driverId = store.driverId();
+        // Files from before there were several drivers have no driver prefix
+        boolean includeUnprefixed = driverId.equals(DataAccess.DEFAULT_STORAGE_DRIVER_IDENTIFIER);
+        int maxConcurrency = Math.max(1, JvmSettings.CHECKSUM_CONCURRENCY.lookupOptional(Integer.class, driverId).orElse(4));
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(maxConcurrency);
+        FixityChecker checker = new FixityChecker(rangedReadThreshold, rangeSize, PARTS_AHEAD, rangeExecutor);
+        BoundedExecutor readers = new BoundedExecutor(managedExecutor, maxConcurrency);
+
+        long lastId = store.lastDataFileId();
+        try {
+            while (isRunning(auditId)) {
+                List<DataFile> dataFiles = auditService.findDataFiles(driverId, includeUnprefixed, lastId, batchSize);
+                if (dataFiles.isEmpty()) {
+                    auditService.completeStore(auditId, driverId);
+                    logger.info("Fixity audit " + auditId + ": all the files of storage driver " + driverId + " checked");
+                    return;
+                }
+
+                List<FixityChecker.Result> results = checkBatch(dataFiles, checker, readers, concurrency.getLimit());
+                List<FixityAuditServiceBean.Failure> failures = new ArrayList<>();
+                long bytesRead = 0;
+                long readMillis = 0;
+                for (FixityChecker.Result result : results) {
+                    bytesRead += result.bytesRead();
+                    readMillis += result.readMillis();
+                    if (result.outcome() != FixityChecker.Outcome.VALID) {
+                        logger.fine("Fixity audit " + auditId + ": file " + result.dataFile().getId() + " " + result.outcome().label() + ": " + result.message());
+                        failures.add(new FixityAuditServiceBean.Failure(result.dataFile().getId(), driverId,
+                                result.outcome().label(), result.message(), null));
+                    }
+                }
+                lastId = dataFiles.get(dataFiles.size() - 1).getId();
+                auditService.recordBatch(auditId, driverId, lastId, dataFiles.size(), bytesRead, failures);
+                int limit = concurrency.update(dataFiles.size(), bytesRead, readMillis);
+                logger.fine("Fixity audit " + auditId + ": " + driverId + " checked up to file " + lastId + ", now reading " + limit + " files at a time");
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks a batch of files, with at most {@code limit} of them being read
+     * at the same time.
+     *
+     * @return the results, in the order of the files
+     */
+    private List<FixityChecker.Result> checkBatch(List<DataFile> dataFiles, FixityChecker checker,
+            ExecutorService readers, int limit) {
+        Semaphore permits = new Semaphore(limit);
+        List<CompletableFuture<FixityChecker.Result>> futures = new ArrayList<>();
+        try {
+            for (DataFile dataFile : dataFiles) {
+                permits.acquire();
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return checker.check(dataFile);
+                    } finally {
+                        permits.release();
+                    }
+                }, readers));
+            }
+            List<FixityChecker.Result> results = new ArrayList<>();
+            for (CompletableFuture<FixityChecker.Result> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new CompletionException("Interrupted while checking a batch", e);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package edu.harvard.iq.dataverse.fixity;
+
+import edu.harvard.iq.dataverse.DataFile;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Keeps the state of the fixity audits in the fixityaudit,
+ * fixityauditstore and fixityauditfailure tables: for each audit, for each
+ * storage driver, the id of the last file checked and the running totals,
+ * along with the files that failed the check.
+ * <p>
+ * The files of a driver are checked in id order, in batches; a batch is
+ * recorded, cursor and failures together, with
+ * {@link #recordBatch(Long, String, long, int, long, List)}, so an audit that
+ * is stopped, or interrupted by a restart, can be resumed from the last batch
+ * recorded, without checking (or counting) any file twice.
+ * <p>
+ * Every method that changes the state runs in a transaction of its own, so
+ * the progress is visible from the API (and to the other nodes of a cluster)
+ * as it is made.
+ */
+@Stateless
+public class FixityAuditServiceBean {
+
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_STOPPED = "stopped";
+    public static final String STATUS_COMPLETED = "completed";
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    private EntityManager em;
+
+    public record Audit(Long id, String status, Timestamp startTime, Timestamp lastUpdateTime, Timestamp endTime) {
+    }
+
+    public record Store(String driverId, long lastDataFileId, long checked, long failed, long bytesRead, boolean completed) {
+    }
+
+    public record Failure(Long dataFileId, String driverId, String outcome, String message, Timestamp checkTime) {
+    }
+
+    /**
+     * Creates a new audit, in the running state, of the files of the given
+     * storage drivers.
+     *
+     * @return the id of the audit, or null if another audit is running
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Long createAudit(List<String> driverIds) {
+        if (!findRunningAuditIds().isEmpty()) {
+            return null;
+        }
+        Long auditId = ((Number) em.createNativeQuery("INSERT INTO fixityaudit (status, starttime, lastupdatetime)"
+                + " VALUES (?1, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) RETURNING id")
+                .setParameter(1, STATUS_RUNNING)
+                .getSingleResult()).longValue();
+        for (String driverId : driverIds) {
+            em.createNativeQuery("INSERT INTO fixityauditstore (fixityaudit_id, storagedriver) VALUES (?1, ?2)")
+                    .setParameter(1, auditId)
+                    .setParameter(2, driverId)
+                    .executeUpdate();
+        }
+        return auditId;
+    }
+
+    /**
+     * Puts a stopped audit back in the running state. Only one server gets to
+     * do so, and only if no other audit is running.
+     *
+     * @param force whether to resume the audit even if it is in the running
+     * state, as it is left when the server running it goes down without
+     * stopping it
+     * @return whether the audit can be resumed by the caller
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public boolean resumeAudit(Long auditId, boolean force) {
+        List<Long> running = findRunningAuditIds();
+        if (!running.isEmpty() && !(force && running.equals(List.of(auditId)))) {
+            return false;
+        }
+        return em.createNativeQuery("UPDATE fixityaudit SET status = ?2, lastupdatetime = CURRENT_TIMESTAMP, endtime = NULL"
+                + " WHERE id = ?1 AND (status = ?3 OR (?4 AND status = ?2))")
+                .setParameter(1, auditId)
+                .setParameter(2, STATUS_RUNNING)
+                .setParameter(3, STATUS_STOPPED)
+                .setParameter(4, force)
+                .executeUpdate() > 0;
+    }
+
+    /**
+     * Records the end of a running audit, as stopped or completed.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void finishAudit(Long auditId, String status) {
+        em.createNativeQuery("UPDATE fixityaudit SET status = ?2, lastupdatetime = CURRENT_TIMESTAMP,"
+                + " endtime = CASE WHEN ?2 = ?3 THEN CURRENT_TIMESTAMP END"
+                + " WHERE id = ?1 AND status = ?4")
+                .setParameter(1, auditId)
+                .setParameter(2, status)
+                .setParameter(3, STATUS_COMPLETED)
+                .setParameter(4, STATUS_RUNNING)
+                .executeUpdate();
+    }
+
+    /**
+     * Records a batch of checked files of a driver: moves the cursor of the
+     * driver past the last of them, adds them to the totals and saves the
+     * ones that failed. A file that failed again, in a resumed audit, replaces
+     * its earlier failure.
+     *
+     * @param lastDataFileId the id of the last file of the batch
+     * @param checked the number of files in the batch
+     * @param bytesRead the number of bytes read to check them
+     * @param failures the files that failed the check
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void recordBatch(Long auditId, String driverId, long lastDataFileId, int checked, long bytesRead, List<Failure> failures) {
+        for (Failure failure : failures) {
+            em.createNativeQuery("INSERT INTO fixityauditfailure (fixityaudit_id, datafile_id, storagedriver, outcome, message, checktime)"
+                    + " VALUES (?1, ?2, ?3, ?4, ?5, CURRENT_TIMESTAMP)"
+                    + " ON CONFLICT (fixityaudit_id, datafile_id)"
+                    + " DO UPDATE SET outcome = EXCLUDED.outcome, message = EXCLUDED.message, checktime = EXCLUDED.checktime")
+                    .setParameter(1, auditId)
+                    .setParameter(2, failure.dataFileId())
+                    .setParameter(3, driverId)
+                    .setParameter(4, failure.outcome())
+                    .setParameter(5, failure.message())
+                    .executeUpdate();
+        }
+        em.createNativeQuery("UPDATE fixityauditstore SET lastdatafile_id = GREATEST(lastdatafile_id, ?3),"
+                + " checked = checked + ?4, failed = failed + ?5, bytesread = bytesread + ?6"
+                + " WHERE fixityaudit_id = ?1 AND storagedriver = ?2")
+                .setParameter(1, auditId)
+                .setParameter(2, driverId)
+                .setParameter(3, lastDataFileId)
+                .setParameter(4, checked)
+                .setParameter(5, failures.size())
+                .setParameter(6, bytesRead)
+                .executeUpdate();
+        touchAudit(auditId);
+    }
+
+    /**
+     * Records that all the files of a driver have been checked.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void completeStore(Long auditId, String driverId) {
+        em.createNativeQuery("UPDATE fixityauditstore SET completed = true WHERE fixityaudit_id = ?1 AND storagedriver = ?2")
+                .setParameter(1, auditId)
+                .setParameter(2, driverId)
+                .executeUpdate();
+        touchAudit(auditId);
+    }
+
+    private void touchAudit(Long auditId) {
+        em.createNativeQuery("UPDATE fixityaudit SET lastupdatetime = CURRENT_TIMESTAMP WHERE id = ?1")
+                .setParameter(1, auditId)
+                .executeUpdate();
+    }
+
+    public List<Long> findRunningAuditIds() {
+        List<Long> ids = new ArrayList<>();
+        for (Object id : em.createNativeQuery("SELECT id FROM fixityaudit WHERE status = ?1 ORDER BY id")
+                .setParameter(1, STATUS_RUNNING)
+                .getResultList()) {
+            ids.add(((Number) id).longValue());
+        }
+        return ids;
+    }
+
+    public Audit findAudit(Long auditId) {
+        List<Audit> audits = toAudits(em.createNativeQuery("SELECT id, status, starttime, lastupdatetime, endtime FROM fixityaudit WHERE id = ?1")
+                .setParameter(1, auditId)
+                .getResultList());
+        return audits.isEmpty() ? null : audits.get(0);
+    }
+
+    public List<Audit> findAllAudits() {
+        return toAudits(em.createNativeQuery("SELECT id, status, starttime, lastupdatetime, endtime FROM fixityaudit ORDER BY id DESC")
+                .getResultList());
+    }
+
+    private List<Audit> toAudits(List<?> rows) {
+        List<Audit> audits = new ArrayList<>();
+        for (Object result : rows) {
+            Object[] row = (Object[]) result;
+            audits.add(new Audit(((Number) row[0]).longValue(), (String) row[1], (Timestamp) row[2], (Timestamp) row[3], (Timestamp) row[4]));
+        }
+        return audits;
+    }
+
+    public List<Store> findStores(Long auditId) {
+        List<Store> stores = new ArrayList<>();
+        for (Object result : em.createNativeQuery("SELECT storagedriver, lastdatafile_id, checked, failed, bytesread, completed"
+                + " FROM fixityauditstore WHERE fixityaudit_id = ?1 ORDER BY storagedriver")
+                .setParameter(1, auditId)
+                .getResultList()) {
+            Object[] row = (Object[]) result;
+            stores.add(new Store((String) row[0], ((Number) row[1]).longValue(), ((Number) row[2]).longValue(),
+                    ((Number) row[3]).longValue(), ((Number) row[4]).longValue(), (Boolean) row[5]));
+        }
+        return stores;
+    }
+
+    public List<Failure> findFailures(Long auditId, int offset, int limit) {
+        List<Failure> failures = new ArrayList<>();
+        for (Object result : em.createNativeQuery("SELECT datafile_id, storagedriver, outcome, message, checktime"
+                + " FROM fixityauditfailure WHERE fixityaudit_id = ?1 ORDER BY datafile_id OFFSET ?2 LIMIT ?3")
+                .setParameter(1, auditId)
+                .setParameter(2, offset)
+                .setParameter(3, limit)
+                .getResultList()) {
+            Object[] row = (Object[]) result;
+            failures.add(new Failure(((Number) row[0]).longValue(), (String) row[1], (String) row[2], (String) row[3], (Timestamp) row[4]));
+        }
+        return failures;
+    }
+
+    /**
+     * Finds the next batch of files of a storage driver to check: the local
+     * (not harvested) files stored with the driver, in id order.
+     *
+     * @param includeUnprefixed whether to include the files whose storage
+     * identifier has no driver prefix, which predate the support for several
+     * drivers and are stored with the default one
+     * @param afterId the id of the last file checked
+     */
+    public List<DataFile> findDataFiles(String driverId, boolean includeUnprefixed, long afterId, int maxResults) {
+        return em.createQuery("SELECT o FROM DataFile o WHERE o.id > :afterId AND o.owner.harvestedFrom IS NULL"
+                + " AND (o.storageIdentifier LIKE :prefix"
+                + (includeUnprefixed ? " OR o.storageIdentifier NOT LIKE '%://%')" : ")")
+                + " ORDER BY o.id", DataFile.class)
+                .setParameter("afterId", afterId)
+                .setParameter("prefix", driverId + "://%")
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+}
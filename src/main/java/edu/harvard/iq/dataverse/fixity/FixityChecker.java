@@ -0,0 +1,157 @@
+package edu.harvard.iq.dataverse.fixity;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Checks the fixity of one file at a time: reads the file from storage (the
+ * saved original, for an ingested tabular file), calculates its checksum and
+ * compares it with the one in the database. Nothing is changed, whatever the
+ * outcome.
+ * <p>
+ * Files of {@code rangedReadThreshold} bytes or more, on stores that support
+ * it (see {@link StorageIO#isRangeReadSupported()}), are read in parts of
+ * {@code partSize} bytes, with up to {@code partsAhead} parts being read at
+ * the same time, on the {@code rangeExecutor}, while the earlier ones are
+ * digested, in order.
+ */
+class FixityChecker {
+
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    enum Outcome {
+        VALID, INVALID, UNREADABLE, NOCHECKSUM;
+
+        /**
+         * @return the outcome as recorded in the database
+         */
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * @param bytesRead the number of bytes read to check the file
+     * @param readMillis the time it took to read them
+     */
+    record Result(DataFile dataFile, Outcome outcome, String message, long bytesRead, long readMillis) {
+    }
+
+    private final long rangedReadThreshold;
+    private final int partSize;
+    private final int partsAhead;
+    private final ExecutorService rangeExecutor;
+
+    FixityChecker(long rangedReadThreshold, int partSize, int partsAhead, ExecutorService rangeExecutor) {
+        this.rangedReadThreshold = rangedReadThreshold;
+        this.partSize = Math.max(1, partSize);
+        this.partsAhead = Math.max(1, partsAhead);
+        this.rangeExecutor = rangeExecutor;
+    }
+
+    Result check(DataFile dataFile) {
+        ChecksumType checksumType = dataFile.getChecksumType();
+        String expected = dataFile.getChecksumValue();
+        if (checksumType == null || expected == null || expected.isEmpty()) {
+            return new Result(dataFile, Outcome.NOCHECKSUM, "No checksum to compare with", 0, 0);
+        }
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(checksumType.toString());
+        } catch (NoSuchAlgorithmException e) {
+            return new Result(dataFile, Outcome.NOCHECKSUM, "Unsupported checksum type " + checksumType, 0, 0);
+        }
+
+        long start = System.currentTimeMillis();
+        long bytesRead;
+        try {
+            StorageIO<DataFile> storage = dataFile.getStorageIO();
+            storage.open(DataAccessOption.READ_ACCESS);
+            if (!dataFile.isTabularData() && storage.isRangeReadSupported() && storage.getSize() >= rangedReadThreshold) {
+                bytesRead = digestRanges(storage, storage.getSize(), md);
+            } else {
+                // If this is an ingested tabular file, its checksum is that
+                // of the preserved original
+                try (InputStream in = dataFile.isTabularData()
+                        ? storage.getAuxFileAsInputStream(FileUtil.SAVED_ORIGINAL_FILENAME_EXTENSION)
+                        : storage.getInputStream()) {
+                    bytesRead = digest(in, md);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return new Result(dataFile, Outcome.UNREADABLE, e.getMessage(), 0, System.currentTimeMillis() - start);
+        }
+        long readMillis = System.currentTimeMillis() - start;
+
+        String calculated = FileUtil.checksumDigestToString(md.digest());
+        if (!calculated.equals(expected)) {
+            return new Result(dataFile, Outcome.INVALID,
+                    "Calculated " + checksumType + " " + calculated + ", expected " + expected, bytesRead, readMillis);
+        }
+        return new Result(dataFile, Outcome.VALID, null, bytesRead, readMillis);
+    }
+
+    static long digest(InputStream in, MessageDigest md) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            md.update(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    long digestRanges(StorageIO<?> storage, long size, MessageDigest md) throws IOException {
+        Deque<Future<byte[]>> parts = new ArrayDeque<>();
+        long next = 0;
+        long total = 0;
+        try {
+            while (next < size || !parts.isEmpty()) {
+                while (next < size && parts.size() < partsAhead) {
+                    long offset = next;
+                    int length = (int) Math.min(partSize, size - offset);
+                    parts.add(rangeExecutor.submit(() -> readRange(storage, offset, length)));
+                    next += length;
+                }
+                byte[] part = parts.removeFirst().get();
+                md.update(part);
+                total += part.length;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the file");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            parts.forEach(part -> part.cancel(true));
+        }
+        return total;
+    }
+
+    static byte[] readRange(StorageIO<?> storage, long offset, int length) throws IOException {
+        try (InputStream in = storage.getRangeInputStream(offset, length)) {
+            byte[] part = in.readNBytes(length);
+            if (part.length != length) {
+                throw new IOException("Read " + part.length + " bytes at offset " + offset + ", expected " + length);
+            }
+            return part;
+        }
+    }
+}
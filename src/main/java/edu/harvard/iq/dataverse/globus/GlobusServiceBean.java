@@ -37,15 +37,11 @@ import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import org.apache.commons.codec.binary.StringUtils;
 import org.primefaces.PrimeFaces;
@@ -59,13 +55,11 @@ import edu.harvard.iq.dataverse.authorization.users.PrivateUrlUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.GlobusAccessibleStore;
-import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.datasetutility.AddReplaceFileHelper;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.ingest.IngestServiceBean;
 import edu.harvard.iq.dataverse.privateurl.PrivateUrl;
 import edu.harvard.iq.dataverse.privateurl.PrivateUrlServiceBean;
-import edu.harvard.iq.dataverse.settings.FeatureFlags;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.FileUtil;
@@ -113,10 +107,17 @@ public class GlobusServiceBean implements java.io.Serializable {
     SystemConfig systemConfig;
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
+    @EJB
+    ChecksumServiceBean checksumService;
 
     private static final Logger logger = Logger.getLogger(GlobusServiceBean.class.getCanonicalName());
     private static final SimpleDateFormat logFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss");
 
+    /**
+     * The largest number of tasks looked up in one call to the Globus API
+     */
+    static final int TASK_LIST_BATCH_SIZE = 100;
+
     private String getRuleId(GlobusEndpoint endpoint, String principal, String permissions)
             throws MalformedURLException {
 
@@ -432,6 +433,56 @@ public class GlobusServiceBean implements java.io.Serializable {
         return task;
     }
 
+    /**
+     * Looks up the states of several tasks at once, with as few calls to the
+     * Globus API as possible (one per {@value #TASK_LIST_BATCH_SIZE} tasks).
+     * 
+     * @param accessToken  - an access token with permission to monitor all the tasks
+     * @param taskIds      - the Globus task ids
+     * @param globusLogger - the logger to use; the class logger if null
+     * @return the states of the tasks that were found, by task id; the tasks that
+     *         could not be looked up are missing
+     */
+    public Map<String, GlobusTaskState> getTasks(String accessToken, List<String> taskIds, Logger globusLogger) {
+
+        Logger myLogger = globusLogger != null ? globusLogger : logger;
+        Map<String, GlobusTaskState> tasks = new HashMap<>();
+
+        for (int i = 0; i < taskIds.size(); i += TASK_LIST_BATCH_SIZE) {
+            List<String> batch = taskIds.subList(i, Math.min(i + TASK_LIST_BATCH_SIZE, taskIds.size()));
+            URL url;
+            try {
+                url = new URL("https://transfer.api.globusonline.org/v0.10/endpoint_manager/task_list?filter_task_id="
+                        + String.join(",", batch) + "&limit=" + batch.size());
+            } catch (MalformedURLException mue) {
+                myLogger.warning("Malformed URL exception when trying to list Globus tasks: " + mue.getMessage());
+                continue;
+            }
+
+            MakeRequestResponse result = makeRequest(url, "Bearer", accessToken, "GET", null);
+
+            if (result.status != 200 || result.jsonResponse == null) {
+                myLogger.warning("Cannot list the tasks " + String.join(",", batch) + " : Reason :   "
+                        + result.jsonResponse);
+                continue;
+            }
+            try {
+                JsonArray data = JsonUtil.getJsonObject(result.jsonResponse).getJsonArray("DATA");
+                if (data != null) {
+                    for (JsonObject taskJson : data.getValuesAs(JsonObject.class)) {
+                        GlobusTaskState task = parseJson(taskJson.toString(), GlobusTaskState.class, false);
+                        if (task != null && task.getTask_id() != null) {
+                            tasks.put(task.getTask_id(), task);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                myLogger.warning("Unexpected response when listing Globus tasks: " + e.getMessage());
+            }
+        }
+        return tasks;
+    }
+
     /**
      * Globus call to get an access token for the user using the long-term token we
      * hold.
@@ -720,52 +771,25 @@ public class GlobusServiceBean implements java.io.Serializable {
             }
         }
         
-        // Wait before first check
-        Thread.sleep(5000);
-        
-        if (FeatureFlags.GLOBUS_USE_EXPERIMENTAL_ASYNC_FRAMEWORK.enabled()) {
-            
-            // Save the task information in the database so that the Globus monitoring
-            // service can continue checking on its progress.
-            
-            GlobusTaskInProgress taskInProgress = new GlobusTaskInProgress(taskIdentifier, GlobusTaskInProgress.TaskType.UPLOAD, dataset, endpoint.getClientToken(), authUser, ruleId, new Timestamp(startDate.getTime()));
-            em.persist(taskInProgress);
-            
-            // Save the metadata entries that define the files that are being uploaded
-            // in the database. These entries will be used once/if the uploads
-            // completes successfully to add the files to the dataset. 
+        // Save the task information in the database so that the Globus monitoring
+        // service can check on its progress (see TaskMonitoringServiceBean);
+        // no thread is kept waiting for the transfer to finish.
 
-            for (JsonObject fileJsonObject : filesJsonArray.getValuesAs(JsonObject.class)) {
-                ExternalFileUploadInProgress fileUploadRecord = new ExternalFileUploadInProgress(taskIdentifier, fileJsonObject.toString());
+        GlobusTaskInProgress taskInProgress = new GlobusTaskInProgress(taskIdentifier, GlobusTaskInProgress.TaskType.UPLOAD, dataset, endpoint.getClientToken(), authUser, ruleId, new Timestamp(startDate.getTime()));
+        em.persist(taskInProgress);
 
-                em.persist(fileUploadRecord);
-            }
-            
-            if (fileHandler != null) {
-                fileHandler.close();
-            }
+        // Save the metadata entries that define the files that are being uploaded
+        // in the database. These entries will be used once/if the uploads
+        // completes successfully to add the files to the dataset. 
 
-            // return and forget
-            return;
+        for (JsonObject fileJsonObject : filesJsonArray.getValuesAs(JsonObject.class)) {
+            ExternalFileUploadInProgress fileUploadRecord = new ExternalFileUploadInProgress(taskIdentifier, fileJsonObject.toString());
+
+            em.persist(fileUploadRecord);
         }
-        
-        
-        // the old implementation that relies on looping continuosly, 
-        // sleeping-then-checking the task status repeatedly:
-        
-        // globus task status check
-        // (the following method performs continuous looped checks of the remote
-        // Globus API, monitoring it for as long as it takes for the task to 
-        // finish one way or another!)
-        taskState = globusStatusCheck(endpoint, taskIdentifier, globusLogger);
-        // @todo null check, or make sure it's never null
-        String taskStatus = GlobusUtil.getTaskStatus(taskState);
 
-        boolean taskSuccess = GlobusUtil.isTaskCompleted(taskState);
-        
-        processCompletedUploadTask(dataset, filesJsonArray, authUser, ruleId, globusLogger, taskSuccess, taskStatus);
-        
         if (fileHandler != null) {
+            globusLogger.removeHandler(fileHandler);
             fileHandler.close();
         }
     }
@@ -773,9 +797,8 @@ public class GlobusServiceBean implements java.io.Serializable {
      * As the name suggests, the method completes and finalizes an upload task, 
      * whether it completed successfully or failed. (In the latter case, it 
      * simply sends a failure notification and does some cleanup). 
-     * The method is called in both task monitoring scenarios: the old method, 
-     * that relies on continuous looping, and the new, implemented on the basis
-     * of timer-like monitoring from a dedicated monitoring Singleton service.
+     * The method is called by the task monitoring service, once the task is 
+     * found to be completed.
      * @param dataset           the dataset
      * @param filesJsonArray    JsonArray containing files metadata entries as passed to /addGlobusFiles
      * @param authUser          the user that should be be performing the addFiles call 
@@ -855,13 +878,7 @@ public class GlobusServiceBean implements java.io.Serializable {
         }
         
         if (!taskSuccess) {
-            String comment; 
-            if (taskStatus != null) {
-                comment = "Reason : " + taskStatus.split("#")[1] + "<br> Short Description : "
-                        + taskStatus.split("#")[2];
-            } else {
-                comment = "No further information available";
-            }
+            String comment = getTaskFailureComment(taskStatus);
             
             myLogger.info("Globus Upload task failed ");
             userNotificationService.sendNotification((AuthenticatedUser) authUser, new Timestamp(new Date().getTime()),
@@ -946,6 +963,14 @@ public class GlobusServiceBean implements java.io.Serializable {
         logger.fine("Val: " + JsonUtil.prettyPrint(newfilesJsonArray.getJsonObject(0)));
         JsonArrayBuilder addFilesJsonData = Json.createArrayBuilder();
 
+        // The calculated details, by file id (each entry is a single-key object)
+        Map<String, JsonObject> newfileJsonObjects = new HashMap<>();
+        for (JsonObject newfileJsonObject : newfilesJsonArray.getValuesAs(JsonObject.class)) {
+            for (String key : newfileJsonObject.keySet()) {
+                newfileJsonObjects.putIfAbsent(key, newfileJsonObject.getJsonObject(key));
+            }
+        }
+
         for (JsonObject fileJsonObject : filesJsonArray.getValuesAs(JsonObject.class)) {
 
             countAll++;
@@ -958,17 +983,14 @@ public class GlobusServiceBean implements java.io.Serializable {
             }
             String fileId = bits[bits.length - 1];
 
-            List<JsonObject> newfileJsonObject = IntStream.range(0, newfilesJsonArray.size())
-                    .mapToObj(index -> ((JsonObject) newfilesJsonArray.get(index)).getJsonObject(fileId))
-                    .filter(Objects::nonNull).collect(Collectors.toList());
+            JsonObject newfileJsonObject = newfileJsonObjects.get(fileId);
             if (newfileJsonObject != null) {
-                logger.fine("List Size: " + newfileJsonObject.size());
-                // if (!newfileJsonObject.get(0).getString("hash").equalsIgnoreCase("null")) {
+                // if (!newfileJsonObject.getString("hash").equalsIgnoreCase("null")) {
                 JsonPatch path = Json.createPatchBuilder()
-                        .add("/md5Hash", newfileJsonObject.get(0).getString("hash")).build();
+                        .add("/md5Hash", newfileJsonObject.getString("hash")).build();
                 fileJsonObject = path.apply(fileJsonObject);
                 path = Json.createPatchBuilder()
-                        .add("/mimeType", newfileJsonObject.get(0).getString("mime")).build();
+                        .add("/mimeType", newfileJsonObject.getString("mime")).build();
                 fileJsonObject = path.apply(fileJsonObject);
                 addFilesJsonData.add(fileJsonObject);
                 countSuccess++;
@@ -1026,9 +1048,6 @@ public class GlobusServiceBean implements java.io.Serializable {
                 this.systemConfig
         );
                 
-        // The old code had 2 sec. of sleep, so ...
-        Thread.sleep(2000);
-
         Response addFilesResponse = addFileHelper.addFiles(newjsonData, dataset, authUser);
 
         if (addFilesResponse == null) {
@@ -1095,7 +1114,8 @@ public class GlobusServiceBean implements java.io.Serializable {
     @Asynchronous
     public void globusDownload(String jsonData, Dataset dataset, User authUser) throws MalformedURLException {
 
-        String logTimestamp = logFormatter.format(new Date());
+        Date startDate = new Date();
+        String logTimestamp = logFormatter.format(startDate);
         Logger globusLogger = Logger.getLogger(
                 "edu.harvard.iq.dataverse.upload.client.DatasetServiceBean." + "GlobusDownload" + logTimestamp);
 
@@ -1152,84 +1172,91 @@ public class GlobusServiceBean implements java.io.Serializable {
             // out?)
             logger.warning("ruleId not found for taskId: " + taskIdentifier);
         }
-        task = globusStatusCheck(endpoint, taskIdentifier, globusLogger);
-        // @todo null check?
-        String taskStatus = GlobusUtil.getTaskStatus(task);
+
+        // Save the task information in the database so that the Globus monitoring
+        // service can check on its progress, and delete the rule and notify the
+        // user once it is done (see TaskMonitoringServiceBean)
+        GlobusTaskInProgress taskInProgress = new GlobusTaskInProgress(taskIdentifier,
+                GlobusTaskInProgress.TaskType.DOWNLOAD, dataset, endpoint.getClientToken(),
+                authUser instanceof AuthenticatedUser ? (AuthenticatedUser) authUser : null, ruleId,
+                new Timestamp(startDate.getTime()));
+        em.persist(taskInProgress);
+
+        globusLogger.removeHandler(fileHandler);
+        fileHandler.close();
+    }
+
+    /**
+     * Completes a download task, whether it completed successfully or failed:
+     * deletes the permission that gave access to the files and notifies the
+     * user. 
+     * @param dataset           the dataset
+     * @param authUser          the user who started the download, or null if 
+     *                          it was not an authenticated user
+     * @param ruleId            Globus rule/permission id associated with the task, if known
+     * @param globusLogger      the Logger; if null, the main logger of the service bean will be used
+     * @param taskState         the state of the completed task, as reported by the Globus API
+     */
+    private void processCompletedDownloadTask(Dataset dataset,
+            AuthenticatedUser authUser,
+            String ruleId,
+            Logger globusLogger,
+            GlobusTaskState taskState) {
+
+        Logger myLogger = globusLogger == null ? logger : globusLogger;
+        String taskStatus = GlobusUtil.getTaskStatus(taskState);
 
         // Transfer is done (success or failure) so delete the rule
         if (ruleId != null) {
             logger.fine("Deleting: rule: " + ruleId);
-            deletePermission(ruleId, dataset, globusLogger);
+            deletePermission(ruleId, dataset, myLogger);
         }
 
-        if (taskStatus.startsWith("FAILED") || taskStatus.startsWith("INACTIVE")) {
-            String comment = "Reason : " + taskStatus.split("#")[1] + "<br> Short Description : "
-                    + taskStatus.split("#")[2];
-            if (authUser != null && authUser instanceof AuthenticatedUser) {
-                userNotificationService.sendNotification((AuthenticatedUser) authUser, new Timestamp(new Date().getTime()),
+        if (!GlobusUtil.isTaskSucceeded(taskState)) {
+            String comment = getTaskFailureComment(taskStatus);
+            if (authUser != null) {
+                userNotificationService.sendNotification(authUser, new Timestamp(new Date().getTime()),
                         UserNotification.Type.GLOBUSDOWNLOADCOMPLETEDWITHERRORS, dataset.getId(), comment, true);
             }
             
-            globusLogger.info("Globus task failed during download process: "+comment);
-        } else if (authUser != null && authUser instanceof AuthenticatedUser) {
+            myLogger.info("Globus task failed during download process: "+comment);
+        } else if (authUser != null) {
         
-            boolean taskSkippedFiles = (task.getSkip_source_errors() == null) ? false : task.getSkip_source_errors();
+            boolean taskSkippedFiles = (taskState.getSkip_source_errors() == null) ? false : taskState.getSkip_source_errors();
             if (!taskSkippedFiles) {
-                userNotificationService.sendNotification((AuthenticatedUser) authUser,
+                userNotificationService.sendNotification(authUser,
                         new Timestamp(new Date().getTime()), UserNotification.Type.GLOBUSDOWNLOADCOMPLETED,
                         dataset.getId());
             } else {
-                userNotificationService.sendNotification((AuthenticatedUser) authUser,
+                userNotificationService.sendNotification(authUser,
                         new Timestamp(new Date().getTime()), UserNotification.Type.GLOBUSDOWNLOADCOMPLETEDWITHERRORS,
                         dataset.getId(), "");
             }
         }
     }
 
-    Executor executor = Executors.newFixedThreadPool(10);
-
-    private GlobusTaskState globusStatusCheck(GlobusEndpoint endpoint, String taskId, Logger globusLogger)
-            throws MalformedURLException {
-        boolean taskCompleted = false;
-        GlobusTaskState task = null;
-        int pollingInterval = SystemConfig.getIntLimitFromStringOrDefault(
-                settingsSvc.getValueForKey(SettingsServiceBean.Key.GlobusPollingInterval), 50);
-        do {
-            try {
-                globusLogger.info("checking globus transfer task   " + taskId);
-                Thread.sleep(pollingInterval * 1000);
-                // Call the (centralized) Globus API to check on the task state/status:
-                task = getTask(endpoint.getClientToken(), taskId, globusLogger);
-                taskCompleted = GlobusUtil.isTaskCompleted(task);
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
-
-        } while (!taskCompleted);
-
-        globusLogger.info("globus transfer task completed successfully");
-        return task;
+    private static String getTaskFailureComment(String taskStatus) {
+        if (taskStatus != null && taskStatus.split("#").length > 2) {
+            return "Reason : " + taskStatus.split("#")[1] + "<br> Short Description : "
+                    + taskStatus.split("#")[2];
+        }
+        return "No further information available";
     }
-    
-    public JsonObject calculateMissingMetadataFields(List<String> inputList, Logger globusLogger)
-            throws InterruptedException, ExecutionException, IOException {
-
-        List<CompletableFuture<FileDetailsHolder>> hashvalueCompletableFutures = inputList.stream()
-                .map(iD -> calculateDetailsAsync(iD, globusLogger)).collect(Collectors.toList());
-
-        CompletableFuture<Void> allFutures = CompletableFuture
-                .allOf(hashvalueCompletableFutures.toArray(new CompletableFuture[hashvalueCompletableFutures.size()]));
 
-        CompletableFuture<List<FileDetailsHolder>> allCompletableFuture = allFutures.thenApply(future -> {
-            return hashvalueCompletableFutures.stream().map(completableFuture -> completableFuture.join())
-                    .collect(Collectors.toList());
-        });
+    public JsonObject calculateMissingMetadataFields(List<String> inputList, Logger globusLogger)
+            throws InterruptedException, IOException {
 
-        CompletableFuture<?> completableFuture = allCompletableFuture.thenApply(files -> {
-            return files.stream().map(d -> json(d)).collect(toJsonArray());
-        });
+        // The checksums are calculated by the shared checksum service, which
+        // limits how many files are read at a time, and takes the checksums
+        // from the storage where it can
+        List<String> fullPaths = inputList.stream().map(iD -> iD.split("IDsplit")[1]).collect(Collectors.toList());
+        List<ChecksumServiceBean.Checksum> checksums = checksumService.calculateChecksums(fullPaths,
+                DataFile.ChecksumType.MD5, globusLogger);
 
-        JsonArrayBuilder filesObject = (JsonArrayBuilder) completableFuture.get();
+        JsonArrayBuilder filesObject = Json.createArrayBuilder();
+        for (int i = 0; i < inputList.size(); i++) {
+            filesObject.add(json(calculateDetails(inputList.get(i), checksums.get(i).value(), globusLogger)));
+        }
 
         JsonObject output = Json.createObjectBuilder().add("files", filesObject).build();
 
@@ -1237,70 +1264,18 @@ public class GlobusServiceBean implements java.io.Serializable {
 
     }
 
-    private CompletableFuture<FileDetailsHolder> calculateDetailsAsync(String id, Logger globusLogger) {
-
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            try {
-                return (calculateDetails(id, globusLogger));
-            } catch (InterruptedException | IOException e) {
-                e.printStackTrace();
-            }
-            return null;
-        }, executor).exceptionally(ex -> {
-            return null;
-        });
-    }
-
-    private FileDetailsHolder calculateDetails(String id, Logger globusLogger)
-            throws InterruptedException, IOException {
-        int count = 0;
-        String checksumVal = "";
-        InputStream in = null;
+    private FileDetailsHolder calculateDetails(String id, String checksumVal, Logger globusLogger) {
         String fileId = id.split("IDsplit")[0];
         String fullPath = id.split("IDsplit")[1];
         String fileName = id.split("IDsplit")[2];
 
-        // ToDo: what if the file does not exist in s3
-        // (L.A.) - good question. maybe it should call .open and .exists() here? 
-        //          otherwise, there doesn't seem to be any diagnostics as to which 
-        //          files uploaded successfully and which failed (?)
-        //          ... however, any partially successful upload cases should be 
+        // (L.A.) - any partially successful upload cases should be 
         //          properly handled later, during the .addFiles() call - only 
         //          the files that actually exists in storage remotely will be 
         //          added to the dataset permanently then. 
-        // ToDo: what if checksum calculation failed
-        // (L.A.) - this appears to have been addressed - by using "Not available in Dataverse"
-        //          in place of a checksum. 
-
-        String storageDriverId = DataAccess.getDriverIdAndStorageLocation(fullPath)[0];
-
-        if (StorageIO.isDataverseAccessible(storageDriverId)) {
-            do {
-                try {
-                    StorageIO<DvObject> dataFileStorageIO = DataAccess.getDirectStorageIO(fullPath);
-                        in = dataFileStorageIO.getInputStream();
-                    checksumVal = FileUtil.calculateChecksum(in, DataFile.ChecksumType.MD5);
-                    count = 3;
-                } catch (IOException ioex) {
-                    count = 3;
-                    logger.fine(ioex.getMessage());
-                    globusLogger.info(
-                            "DataFile (fullPath " + fullPath + ") does not appear to be accessible within Dataverse: ");
-                } catch (Exception ex) {
-                    count = count + 1;
-                    ex.printStackTrace();
-                    logger.info(ex.getMessage());
-                    Thread.sleep(5000);
-                }
-            } while (count < 3);
-        }
-
-        if (checksumVal.length() == 0) {
+        if (checksumVal == null || checksumVal.length() == 0) {
+            globusLogger.info(
+                    "DataFile (fullPath " + fullPath + ") does not appear to be accessible within Dataverse: ");
             checksumVal = "Not available in Dataverse";
         }
 
@@ -1308,8 +1283,6 @@ public class GlobusServiceBean implements java.io.Serializable {
         globusLogger.info(" File Name " + fileName + "  File Details " + fileId + " checksum = " + checksumVal
                 + " mimeType = " + mimeType);
         return new FileDetailsHolder(fileId, checksumVal, mimeType);
-        // getBytes(in)+"" );
-        // calculatemime(fileName));
     }
 
     public String calculatemime(String fileName) throws InterruptedException {
@@ -1427,29 +1400,112 @@ public class GlobusServiceBean implements java.io.Serializable {
         }
     }
     
-    public List<GlobusTaskInProgress> findAllOngoingTasks() {
-        return em.createQuery("select object(o) from GlobusTaskInProgress as o order by o.startTime", GlobusTaskInProgress.class).getResultList();
+    /**
+     * @param claimedBefore the tasks claimed before this time are included,
+     * as their processing has been abandoned
+     * @return the tasks that are not being processed by a server
+     */
+    public List<GlobusTaskInProgress> findAllOngoingTasks(Date claimedBefore) {
+        return em.createQuery("select object(o) from GlobusTaskInProgress as o where o.claimTime is null or o.claimTime < :claimedBefore order by o.startTime", GlobusTaskInProgress.class)
+                .setParameter("claimedBefore", new Timestamp(claimedBefore.getTime()))
+                .getResultList();
     }
     
+    /**
+     * Takes a task off the list of ongoing tasks, once it has been processed.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void deleteTask(GlobusTaskInProgress task) {
-        GlobusTaskInProgress mergedTask = em.merge(task);
-        em.remove(mergedTask);
+        em.createQuery("delete from GlobusTaskInProgress o where o.id = :id")
+                .setParameter("id", task.getId())
+                .executeUpdate();
+    }
+    
+    /**
+     * Claims a completed task before it is processed, so that it is only 
+     * processed by one server, even if more than one server is monitoring the
+     * tasks. The task stays on the list until {@link #deleteTask} is called,
+     * once it has been processed; if that never happens (because the server
+     * went down, for example), it is claimed again once the claim is old 
+     * enough.
+     * @param task
+     * @param claimedBefore the task is also claimed if it was claimed before
+     * this time, as its processing has been abandoned
+     * @return true if the task was claimed; false if another server already has
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public boolean claimTask(GlobusTaskInProgress task, Date claimedBefore) {
+        Timestamp claimTime = new Timestamp(new Date().getTime());
+        boolean claimed = em.createQuery("update GlobusTaskInProgress o set o.claimTime = :claimTime where o.id = :id"
+                + " and (o.claimTime is null or o.claimTime < :claimedBefore)")
+                .setParameter("claimTime", claimTime)
+                .setParameter("id", task.getId())
+                .setParameter("claimedBefore", new Timestamp(claimedBefore.getTime()))
+                .executeUpdate() > 0;
+        if (claimed) {
+            task.setClaimTime(claimTime);
+        }
+        return claimed;
+    }
+    
+    /**
+     * Drops the claim on a task that could not be processed, so that it is
+     * tried again on the next monitoring run.
+     * @param task
+     * @param failedChecks the number of consecutive failed checks of the task,
+     * including this one
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void releaseTask(GlobusTaskInProgress task, int failedChecks) {
+        em.createQuery("update GlobusTaskInProgress o set o.claimTime = null, o.failedChecks = :failedChecks where o.id = :id")
+                .setParameter("failedChecks", failedChecks)
+                .setParameter("id", task.getId())
+                .executeUpdate();
+        task.setClaimTime(null);
+        task.setFailedChecks(failedChecks);
+    }
+    
+    /**
+     * Saves the states of the ongoing tasks, as found by a monitoring run: the
+     * tasks whose status or number of failed checks changed are updated, and
+     * all of them are marked as checked. (With bulk updates, rather than merges,
+     * so that a task completed by another server in the meantime isn't 
+     * recreated.)
+     * @param checkedTasks  the tasks that were checked
+     * @param changedTasks  those whose state changed
+     * @param checkTime     when they were checked
+     */
+    public void updateTaskStates(List<GlobusTaskInProgress> checkedTasks, List<GlobusTaskInProgress> changedTasks, Timestamp checkTime) {
+        for (GlobusTaskInProgress task : changedTasks) {
+            em.createQuery("update GlobusTaskInProgress o set o.status = :status, o.failedChecks = :failedChecks where o.id = :id")
+                    .setParameter("status", task.getStatus())
+                    .setParameter("failedChecks", task.getFailedChecks())
+                    .setParameter("id", task.getId())
+                    .executeUpdate();
+        }
+        List<Long> ids = checkedTasks.stream().map(GlobusTaskInProgress::getId).collect(Collectors.toList());
+        for (int i = 0; i < ids.size(); i += TASK_LIST_BATCH_SIZE) {
+            em.createQuery("update GlobusTaskInProgress o set o.lastCheckTime = :checkTime where o.id in :ids")
+                    .setParameter("checkTime", checkTime)
+                    .setParameter("ids", ids.subList(i, Math.min(i + TASK_LIST_BATCH_SIZE, ids.size())))
+                    .executeUpdate();
+        }
     }
     
     public List<ExternalFileUploadInProgress> findExternalUploadsByTaskId(String taskId) {
         return em.createNamedQuery("ExternalFileUploadInProgress.findByTaskId").setParameter("taskId", taskId).getResultList();    
     }
     
-    public void processCompletedTask(GlobusTaskInProgress globusTask, boolean taskSuccess, String taskStatus, Logger taskLogger) {
+    public void processCompletedTask(GlobusTaskInProgress globusTask, GlobusTaskState taskState, Logger taskLogger) {
         String ruleId = globusTask.getRuleId();
         Dataset dataset = globusTask.getDataset();
         AuthenticatedUser authUser = globusTask.getLocalUser();
-        if (authUser == null) {
-            // @todo log error message; do nothing 
-            return;
-        }
 
         if (GlobusTaskInProgress.TaskType.UPLOAD.equals(globusTask.getTaskType())) {
+            if (authUser == null) {
+                // @todo log error message; do nothing 
+                return;
+            }
             List<ExternalFileUploadInProgress> fileUploadsInProgress = findExternalUploadsByTaskId(globusTask.getTaskId());
 
             if (fileUploadsInProgress == null || fileUploadsInProgress.size() < 1) {
@@ -1468,9 +1524,10 @@ public class GlobusServiceBean implements java.io.Serializable {
 
             JsonArray filesJsonArray = filesJsonArrayBuilder.build();
 
-            processCompletedUploadTask(dataset, filesJsonArray, authUser, ruleId, taskLogger, taskSuccess, taskStatus);
+            processCompletedUploadTask(dataset, filesJsonArray, authUser, ruleId, taskLogger, 
+                    GlobusUtil.isTaskSucceeded(taskState), GlobusUtil.getTaskStatus(taskState));
         } else {
-            // @todo eventually, extend this async. framework to handle Glonus downloads as well
+            processCompletedDownloadTask(dataset, authUser, ruleId, taskLogger, taskState);
         }
 
     }
@@ -86,7 +86,12 @@ public class GlobusTaskInProgress implements Serializable {
     @JoinColumn
     private AuthenticatedUser user;
     
-    @Column(nullable=false)
+    /**
+     * The Globus permission (rule) that gives access to the files; deleted
+     * when the task is done. May be null for downloads, if the rule could not
+     * be found when the task was registered.
+     */
+    @Column
     private String ruleId;
     
     @JoinColumn(nullable = false)
@@ -96,6 +101,34 @@ public class GlobusTaskInProgress implements Serializable {
     @Column
     private Timestamp startTime;
     
+    /**
+     * The status of the task, as last reported by the Globus API
+     */
+    @Column
+    private String status;
+    
+    /**
+     * When the status of the task was last checked
+     */
+    @Column
+    private Timestamp lastCheckTime;
+    
+    /**
+     * The number of consecutive checks that failed to retrieve the task from
+     * the Globus API; the task is given up on after a few
+     */
+    @Column
+    private int failedChecks;
+    
+    /**
+     * When a server claimed the completed task, to process it; null if it
+     * hasn't been claimed. The record is only deleted once the task has been
+     * processed, and a claim that is old enough is taken to have been
+     * abandoned.
+     */
+    @Column
+    private Timestamp claimTime;
+    
     public GlobusTaskInProgress() {
     }
 
@@ -173,6 +206,38 @@ public class GlobusTaskInProgress implements Serializable {
     public void setStartTime(Timestamp startTime) {
         this.startTime = startTime;
     }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Timestamp getLastCheckTime() {
+        return lastCheckTime;
+    }
+
+    public void setLastCheckTime(Timestamp lastCheckTime) {
+        this.lastCheckTime = lastCheckTime;
+    }
+
+    public int getFailedChecks() {
+        return failedChecks;
+    }
+
+    public void setFailedChecks(int failedChecks) {
+        this.failedChecks = failedChecks;
+    }
+
+    public Timestamp getClaimTime() {
+        return claimTime;
+    }
+
+    public void setClaimTime(Timestamp claimTime) {
+        this.claimTime = claimTime;
+    }
     
     @Override
     public int hashCode() {
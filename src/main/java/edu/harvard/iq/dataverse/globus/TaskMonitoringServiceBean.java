@@ -4,6 +4,7 @@ import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Singleton;
@@ -11,48 +12,85 @@ import jakarta.ejb.Startup;
 import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
 import java.io.File;
 import java.io.IOException;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.FileHandler;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * 
+ *
  * This Singleton monitors ongoing Globus tasks by checking with the centralized
- * Globus API on the status of all the registered ongoing tasks. 
+ * Globus API on the status of all the registered ongoing tasks.
  * When a successful completion of a task is detected, the service triggers
  * the execution of the associated tasks (for example, finalizing adding datafiles
- * to the dataset on completion of a remote Globus upload). When a task fails or 
- * terminates abnormally, a message is logged and the task record is deleted 
- * from the database. 
- * 
+ * to the dataset on completion of a remote Globus upload). When a task fails or
+ * terminates abnormally, a message is logged and the task record is deleted
+ * from the database.
+ * <p>
+ * All the uploads and downloads are monitored here, from a single scheduled
+ * task, so no thread waits on a transfer while it is in progress. The tasks
+ * are looked up in batches (see {@link GlobusServiceBean#getTasks}), and their
+ * last known state is kept in their {@link GlobusTaskInProgress} records.
+ *
  * @author landreev
  */
 @Singleton
 @Startup
 public class TaskMonitoringServiceBean {
     private static final Logger logger = Logger.getLogger("edu.harvard.iq.dataverse.globus.TaskMonitoringServiceBean");
-    
+
     @Resource
     ManagedScheduledExecutorService scheduler;
-    
+
     @EJB
     SystemConfig systemConfig;
     @EJB
     SettingsServiceBean settingsSvc;
-    @EJB 
+    @EJB
     GlobusServiceBean globusService;
-    
+
     private static final SimpleDateFormat logFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss");
-    
+
+    /**
+     * The number of consecutive checks in which a task may fail to be found
+     * in the Globus API (because of a network error, for example) before it is
+     * considered failed.
+     */
+    static final int MAX_FAILED_CHECKS = 3;
+
+    /**
+     * How long a completed task may stay claimed by a server before its
+     * processing is taken to have been abandoned (because the server went
+     * down, for example) and it is claimed again.
+     */
+    static final long CLAIM_TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    /**
+     * The loggers of the ongoing tasks, with their log files, kept open from
+     * one monitoring run to the next; by task record id.
+     */
+    private final Map<Long, TaskLog> taskLogs = new ConcurrentHashMap<>();
+
+    private record TaskLog(Logger logger, FileHandler handler) {
+    }
+
     @PostConstruct
     public void init() {
-        if (JvmSettings.GLOBUS_TASK_MONITORING_SERVER.lookupOptional(Boolean.class).orElse(false)) {
+        if (JvmSettings.GLOBUS_TASK_MONITORING_SERVER.lookupOptional(Boolean.class).orElse(true)) {
             logger.info("Starting Globus task monitoring service");
             int pollingInterval = SystemConfig.getIntLimitFromStringOrDefault(
-                settingsSvc.getValueForKey(SettingsServiceBean.Key.GlobusPollingInterval), 600);
+                settingsSvc.getValueForKey(SettingsServiceBean.Key.GlobusPollingInterval), 50);
             this.scheduler.scheduleWithFixedDelay(this::checkOngoingTasks,
                     0, pollingInterval,
                     TimeUnit.SECONDS);
@@ -60,72 +98,150 @@ public class TaskMonitoringServiceBean {
             logger.info("Skipping Globus task monitor initialization");
         }
     }
-    
+
+    @PreDestroy
+    public void closeTaskLogs() {
+        taskLogs.keySet().forEach(this::closeTaskLog);
+    }
+
     /**
-     * This method will be executed on a timer-like schedule, continuously 
-     * monitoring all the ongoing external Globus tasks (transfers). 
+     * This method will be executed on a timer-like schedule, continuously
+     * monitoring all the ongoing external Globus tasks (transfers).
      */
     public void checkOngoingTasks() {
         logger.fine("Performing a scheduled external Globus task check");
-        List<GlobusTaskInProgress> tasks = globusService.findAllOngoingTasks();
-
-        tasks.forEach(t -> {
-            FileHandler taskLogHandler = getTaskLogHandler(t);
-            Logger taskLogger = getTaskLogger(t, taskLogHandler);
-            
-            GlobusTaskState retrieved = globusService.getTask(t.getGlobusToken(), t.getTaskId(), taskLogger);
-            if (GlobusUtil.isTaskCompleted(retrieved)) {
-                // Do our thing, finalize adding the files to the dataset
-                globusService.processCompletedTask(t, GlobusUtil.isTaskSucceeded(retrieved), GlobusUtil.getTaskStatus(retrieved), taskLogger);
-                // Whether it finished successfully, or failed in the process, 
-                // there's no need to keep monitoring this task, so we can 
-                // delete it.
-                //globusService.deleteExternalUploadRecords(t.getTaskId());
+        try {
+            Date claimedBefore = new Date(new Date().getTime() - CLAIM_TIMEOUT_MILLIS);
+            List<GlobusTaskInProgress> tasks = globusService.findAllOngoingTasks(claimedBefore);
+
+            // Tasks that are no longer there were completed by another server
+            Set<Long> ongoingIds = new HashSet<>();
+            tasks.forEach(t -> ongoingIds.add(t.getId()));
+            new ArrayList<>(taskLogs.keySet()).stream().filter(id -> !ongoingIds.contains(id)).forEach(this::closeTaskLog);
+
+            // The tasks are looked up together, in batches, with the token of
+            // the endpoint they use
+            Map<String, List<GlobusTaskInProgress>> tasksByToken = new LinkedHashMap<>();
+            tasks.forEach(t -> tasksByToken.computeIfAbsent(t.getGlobusToken(), k -> new ArrayList<>()).add(t));
+
+            List<GlobusTaskInProgress> checkedTasks = new ArrayList<>();
+            List<GlobusTaskInProgress> changedTasks = new ArrayList<>();
+            for (Map.Entry<String, List<GlobusTaskInProgress>> entry : tasksByToken.entrySet()) {
+                List<String> taskIds = new ArrayList<>();
+                entry.getValue().forEach(t -> taskIds.add(t.getTaskId()));
+                Map<String, GlobusTaskState> retrievedTasks = globusService.getTasks(entry.getKey(), taskIds, null);
+
+                for (GlobusTaskInProgress t : entry.getValue()) {
+                    try {
+                        checkTask(t, retrievedTasks.get(t.getTaskId()), claimedBefore, checkedTasks, changedTasks);
+                    } catch (Exception e) {
+                        logger.log(Level.WARNING, "Failed to check on Globus task " + t.getTaskId(), e);
+                    }
+                }
+            }
+
+            if (!checkedTasks.isEmpty()) {
+                globusService.updateTaskStates(checkedTasks, changedTasks, new Timestamp(new Date().getTime()));
+            }
+        } catch (Exception e) {
+            // An exception would stop the scheduled runs altogether
+            logger.log(Level.WARNING, "Globus task check failed", e);
+        }
+    }
+
+    private void checkTask(GlobusTaskInProgress t, GlobusTaskState retrieved, Date claimedBefore, List<GlobusTaskInProgress> checkedTasks, List<GlobusTaskInProgress> changedTasks) {
+        Logger taskLogger = getTaskLogger(t);
+
+        if (retrieved == null) {
+            // Not in the batch; try on its own
+            retrieved = globusService.getTask(t.getGlobusToken(), t.getTaskId(), taskLogger);
+        }
+        if (retrieved == null && t.getFailedChecks() + 1 < MAX_FAILED_CHECKS) {
+            // Possibly a temporary problem; try again on the next run
+            t.setFailedChecks(t.getFailedChecks() + 1);
+            checkedTasks.add(t);
+            changedTasks.add(t);
+            return;
+        }
+
+        if (GlobusUtil.isTaskCompleted(retrieved)) {
+            // Whether it finished successfully, or failed in the process,
+            // there's no need to keep monitoring this task. It is claimed
+            // first - by only one server, if there are several - and only
+            // taken off the list once it has been processed
+            if (globusService.claimTask(t, claimedBefore)) {
+                try {
+                    // Do our thing, finalize adding the files to the dataset
+                    globusService.processCompletedTask(t, retrieved, taskLogger);
+                } catch (RuntimeException e) {
+                    if (t.getFailedChecks() + 1 < MAX_FAILED_CHECKS) {
+                        logger.log(Level.WARNING, "Failed to process completed Globus task " + t.getTaskId() + "; will try again", e);
+                        globusService.releaseTask(t, t.getFailedChecks() + 1);
+                        return;
+                    }
+                    logger.log(Level.SEVERE, "Failed to process completed Globus task " + t.getTaskId() + "; giving up", e);
+                }
                 globusService.deleteTask(t);
             }
-            
-            if (taskLogHandler != null) {
-                // @todo it should be prudent to cache these loggers and handlers 
-                // between monitoring runs (should be fairly easy to do)
-                taskLogHandler.close();
+            closeTaskLog(t.getId());
+        } else {
+            checkedTasks.add(t);
+            if (t.getFailedChecks() != 0 || !Objects.equals(t.getStatus(), retrieved.getStatus())) {
+                t.setFailedChecks(0);
+                t.setStatus(retrieved.getStatus());
+                changedTasks.add(t);
             }
-        });
+        }
     }
-    
-    private FileHandler getTaskLogHandler(GlobusTaskInProgress task) {
-        if (task == null) {
-            return null; 
+
+    /**
+     * @return the logger writing to the log file of the task, the same one
+     * from one monitoring run to the next; or null if the log file cannot be
+     * opened
+     */
+    private Logger getTaskLogger(GlobusTaskInProgress task) {
+        TaskLog taskLog = taskLogs.get(task.getId());
+        if (taskLog == null) {
+            taskLog = openTaskLog(task);
+            if (taskLog == null) {
+                return null;
+            }
+            taskLogs.put(task.getId(), taskLog);
         }
-        
+        return taskLog.logger();
+    }
+
+    private TaskLog openTaskLog(GlobusTaskInProgress task) {
         Date startDate = new Date(task.getStartTime().getTime());
         String logTimeStamp = logFormatter.format(startDate);
-        
-        String logFileName = System.getProperty("com.sun.aas.instanceRoot") + File.separator + "logs" + File.separator + "globusUpload_" + task.getDataset().getId() + "_" + logTimeStamp
+
+        boolean download = GlobusTaskInProgress.TaskType.DOWNLOAD.equals(task.getTaskType());
+        // The same log file as the one the task was started with
+        String logFileName = System.getProperty("com.sun.aas.instanceRoot") + File.separator + "logs" + File.separator
+                + (download ? "globusDownload_id_" : "globusUpload_") + task.getDataset().getId() + "_" + logTimeStamp
                 + ".log";
         FileHandler fileHandler;
         try {
-            fileHandler = new FileHandler(logFileName);
+            fileHandler = new FileHandler(logFileName, true);
         } catch (IOException | SecurityException ex) {
-            // @todo log this error somehow?
-            fileHandler = null;
-        }
-        return fileHandler;
-    }
-    
-    private Logger getTaskLogger(GlobusTaskInProgress task, FileHandler logFileHandler) {
-        if (logFileHandler == null) {
+            logger.fine("Cannot open the log file of Globus task " + task.getTaskId() + ": " + ex.getMessage());
             return null;
         }
-        Date startDate = new Date(task.getStartTime().getTime());
-        String logTimeStamp = logFormatter.format(startDate);
-        
+
         Logger taskLogger = Logger.getLogger(
-                "edu.harvard.iq.dataverse.upload.client.DatasetServiceBean." + "GlobusUpload" + logTimeStamp);
-            taskLogger.setUseParentHandlers(false);
-       
-        taskLogger.addHandler(logFileHandler);
-        
-        return taskLogger;        
+                "edu.harvard.iq.dataverse.upload.client.DatasetServiceBean." + (download ? "GlobusDownload" : "GlobusUpload") + logTimeStamp);
+        taskLogger.setUseParentHandlers(false);
+        taskLogger.addHandler(fileHandler);
+
+        return new TaskLog(taskLogger, fileHandler);
+    }
+
+    private void closeTaskLog(Long taskId) {
+        TaskLog taskLog = taskLogs.remove(taskId);
+        if (taskLog != null) {
+            taskLog.logger().removeHandler(taskLog.handler());
+            taskLog.handler().close();
+        }
     }
-    
+
 }
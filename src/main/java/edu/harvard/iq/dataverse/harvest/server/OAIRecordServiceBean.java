@@ -8,11 +8,16 @@ package edu.harvard.iq.dataverse.harvest.server;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.GlobalId;
 import edu.harvard.iq.dataverse.export.ExportService;
+import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import io.gdcc.spi.export.ExportException;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
+import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -20,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
@@ -51,6 +57,9 @@ public class OAIRecordServiceBean implements java.io.Serializable {
     EntityManager em;   
     
     private static final Logger logger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean");
+
+    // maximum number of ids in the IN (...) clause of a query
+    private static final int QUERY_CHUNK_SIZE = 1000;
     
     /**
      * Updates the OAI records for the set specified
@@ -71,16 +80,22 @@ public class OAIRecordServiceBean implements java.io.Serializable {
     public void updateOaiRecords(String setName, List<Long> datasetIds, Date updateTime, boolean doExport, boolean confirmed, Logger setUpdateLogger) {
         // create Map of OaiRecords
         List<OAIRecord> oaiRecords = findOaiRecordsBySetName(setName);
-        Map<String, OAIRecord> recordMap = new HashMap<>();
-        if (oaiRecords != null) {
-            for (OAIRecord record : oaiRecords) {
-                // look for duplicates here? delete?
-                recordMap.put(record.getGlobalId(), record);
-            }
-        } else {
+        if (oaiRecords == null) {
             setUpdateLogger.fine("Null returned - no records found.");
         }
+        updateOaiRecords(setName, datasetIds, toRecordMap(oaiRecords), updateTime, doExport, confirmed, setUpdateLogger);
+    }
 
+    /**
+     * Same as {@link #updateOaiRecords(String, List, Date, boolean, boolean, Logger)},
+     * but only reconciles the datasets against the records passed in; records
+     * of the set that are not in the map are left alone. For updating only
+     * the part of a set that has changed.
+     *
+     * @param recordMap the existing records of the set that may need to be
+     * updated, by global id; the records of any datasets on the list must be in there
+     */
+    public void updateOaiRecords(String setName, List<Long> datasetIds, Map<String, OAIRecord> recordMap, Date updateTime, boolean doExport, boolean confirmed, Logger setUpdateLogger) {
         if (!recordMap.isEmpty()) {
             setUpdateLogger.fine("Found " + recordMap.size() + " existing records");
         } else {
@@ -101,28 +116,9 @@ public class OAIRecordServiceBean implements java.io.Serializable {
                     // dataset has been exported since the last time it was 
                     // published, and try to export if not.
                     if (doExport) {
-                        // OK, it looks like we can't rely on .getPublicationDate() - 
-                        // as it is essentially the *first publication* date; 
-                        // and we are interested in the *last*
-
-                        DatasetVersion releasedVersion = dataset.getReleasedVersion();
-                        Date publicationDate = releasedVersion == null ? null : releasedVersion.getReleaseTime();
-
-                        if (publicationDate != null
-                                && (dataset.getLastExportTime() == null
-                                || dataset.getLastExportTime().before(publicationDate))) {
-
-                            setUpdateLogger.fine("Attempting to run export on dataset " + dataset.getGlobalId().asString());
-                            exportAllFormats(dataset);
-                        }
-                        
-                        // TODO: should probably bail if the export attempt has failed! -- L.A. 4.9.2
+                        exportIfOutdated(dataset, setUpdateLogger);
                     }
 
-                    setUpdateLogger.fine("\"last exported\" timestamp: " + dataset.getLastExportTime());
-                    em.refresh(dataset);
-                    setUpdateLogger.fine("\"last exported\" timestamp, after db refresh: " + dataset.getLastExportTime());
-
                     updateOaiRecordForDataset(dataset, setName, recordMap, setUpdateLogger);
                 }
             }
@@ -135,6 +131,240 @@ public class OAIRecordServiceBean implements java.io.Serializable {
         
     }
     
+    private void exportIfOutdated(Dataset dataset, Logger setUpdateLogger) {
+        // OK, it looks like we can't rely on .getPublicationDate() - 
+        // as it is essentially the *first publication* date; 
+        // and we are interested in the *last*
+
+        DatasetVersion releasedVersion = dataset.getReleasedVersion();
+        Date publicationDate = releasedVersion == null ? null : releasedVersion.getReleaseTime();
+
+        if (publicationDate != null
+                && (dataset.getLastExportTime() == null
+                || dataset.getLastExportTime().before(publicationDate))) {
+
+            setUpdateLogger.fine("Attempting to run export on dataset " + dataset.getGlobalId().asString());
+            exportAllFormats(dataset);
+        }
+        
+        // TODO: should probably bail if the export attempt has failed! -- L.A. 4.9.2
+
+        setUpdateLogger.fine("\"last exported\" timestamp: " + dataset.getLastExportTime());
+        em.refresh(dataset);
+        setUpdateLogger.fine("\"last exported\" timestamp, after db refresh: " + dataset.getLastExportTime());
+    }
+
+    private static Map<String, OAIRecord> toRecordMap(List<OAIRecord> oaiRecords) {
+        Map<String, OAIRecord> recordMap = new HashMap<>();
+        if (oaiRecords != null) {
+            for (OAIRecord record : oaiRecords) {
+                // look for duplicates here? delete?
+                recordMap.put(record.getGlobalId(), record);
+            }
+        }
+        return recordMap;
+    }
+
+    /**
+     * Brings the OAI records of one dataset up to date, in all the sets, after
+     * it has been published, deaccessioned, moved or destroyed; rather than
+     * re-exporting the sets in full.
+     *
+     * @param globalId the global id of the dataset
+     * @param dataset the dataset; null if it no longer exists
+     * @param setMembership for each set (by name), whether the dataset
+     * belongs in it
+     * @param updateTime time stamp
+     * @param setUpdateLogger dedicated Logger
+     */
+    public void updateOaiRecordsForDataset(String globalId, Dataset dataset, Map<String, Boolean> setMembership, Date updateTime, Logger setUpdateLogger) {
+        List<OAIRecord> oaiRecords = findOaiRecordsByGlobalId(globalId);
+        if (dataset == null) {
+            if (oaiRecords != null) {
+                markOaiRecordsAsRemoved(oaiRecords, updateTime, true, setUpdateLogger);
+            }
+            return;
+        }
+
+        boolean exportChecked = false;
+        for (Map.Entry<String, Boolean> membership : setMembership.entrySet()) {
+            String setName = membership.getKey();
+            Map<String, OAIRecord> recordMap = new HashMap<>();
+            if (oaiRecords != null) {
+                for (OAIRecord record : oaiRecords) {
+                    if (setName.equals(record.getSetName() == null ? "" : record.getSetName())) {
+                        recordMap.put(record.getGlobalId(), record);
+                    }
+                }
+            }
+
+            if (membership.getValue() && dataset.getReleasedVersion() != null && !dataset.isDeaccessioned()) {
+                if (!exportChecked) {
+                    exportIfOutdated(dataset, setUpdateLogger);
+                    exportChecked = true;
+                }
+                updateOaiRecordForDataset(dataset, setName, recordMap, setUpdateLogger);
+            }
+            // anything left in the map should be marked as removed
+            // (after double-checking, as with a full update of the set):
+            markOaiRecordsAsRemoved(recordMap.values(), updateTime, false, setUpdateLogger);
+        }
+    }
+
+    /**
+     * Records that the OAI records of the dataset need to be updated, when
+     * the OAI sets are updated incrementally (see {@code dataverse.oai.server.incremental-sets}).
+     * Does nothing otherwise.
+     *
+     * @param dataset a dataset that has been published, deaccessioned, moved
+     * or is about to be destroyed
+     */
+    public void queueOaiRecordsUpdate(Dataset dataset) {
+        if (!JvmSettings.OAI_SERVER_INCREMENTAL_SETS.lookupOptional(Boolean.class).orElse(false)
+                || dataset.getId() == null || dataset.getGlobalId() == null) {
+            return;
+        }
+        // A dataset queued again while it is being processed has to be
+        // processed again, so the claim on it is dropped:
+        em.createNativeQuery("INSERT INTO oaisetupdate (dataset_id, globalid, requesttime) VALUES (?1, ?2, ?3)"
+                + " ON CONFLICT (dataset_id) DO UPDATE SET globalid = EXCLUDED.globalid, requesttime = EXCLUDED.requesttime, claimtime = NULL")
+                .setParameter(1, dataset.getId())
+                .setParameter(2, dataset.getGlobalId().asString())
+                .setParameter(3, new Timestamp(new Date().getTime()))
+                .executeUpdate();
+    }
+
+    /**
+     * A dataset queued by {@link #queueOaiRecordsUpdate(Dataset)}.
+     *
+     * @param requestTime when it was (last) queued
+     */
+    public record QueuedUpdate(Long datasetId, String globalId, Date requestTime) {
+    }
+
+    /**
+     * Claims the datasets queued by {@link #queueOaiRecordsUpdate(Dataset)},
+     * so that no other node processes them as well. They stay on the queue
+     * until {@link #removeQueuedOaiRecordsUpdate(QueuedUpdate)} is called,
+     * once their records have been updated; if that never happens, they are
+     * claimed again once the claim is old enough.
+     *
+     * @param queuedBefore only the datasets queued before this time (so that
+     * the search index has had the time to catch up with the changes)
+     * @param claimedBefore also the datasets claimed before this time, whose
+     * processing has been abandoned
+     * @return the datasets claimed
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public List<QueuedUpdate> claimQueuedOaiRecordsUpdates(Date queuedBefore, Date claimedBefore) {
+        List<Object[]> results = em.createNativeQuery("UPDATE oaisetupdate SET claimtime = ?3"
+                + " WHERE requesttime < ?1 AND (claimtime IS NULL OR claimtime < ?2)"
+                + " RETURNING dataset_id, globalid, requesttime")
+                .setParameter(1, new Timestamp(queuedBefore.getTime()))
+                .setParameter(2, new Timestamp(claimedBefore.getTime()))
+                .setParameter(3, new Timestamp(new Date().getTime()))
+                .getResultList();
+        List<QueuedUpdate> claimed = new ArrayList<>();
+        for (Object[] result : results) {
+            claimed.add(new QueuedUpdate(((Number) result[0]).longValue(), (String) result[1], (Date) result[2]));
+        }
+        return claimed;
+    }
+
+    /**
+     * Takes a dataset off the queue, in the transaction that updated its
+     * records; unless it was queued again in the meantime.
+     */
+    public void removeQueuedOaiRecordsUpdate(QueuedUpdate update) {
+        em.createNativeQuery("DELETE FROM oaisetupdate WHERE dataset_id = ?1 AND requesttime = ?2")
+                .setParameter(1, update.datasetId())
+                .setParameter(2, new Timestamp(update.requestTime().getTime()))
+                .executeUpdate();
+    }
+
+    /**
+     * Drops the claim on a dataset whose records could not be updated, so
+     * that it is tried again on the next run.
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public void releaseQueuedOaiRecordsUpdate(QueuedUpdate update) {
+        em.createNativeQuery("UPDATE oaisetupdate SET claimtime = NULL WHERE dataset_id = ?1 AND requesttime = ?2")
+                .setParameter(1, update.datasetId())
+                .setParameter(2, new Timestamp(update.requestTime().getTime()))
+                .executeUpdate();
+    }
+
+    /**
+     * The state of an OAI record, as far as deciding whether it is out of
+     * date is concerned.
+     */
+    public record RecordState(boolean removed, Date lastUpdateTime) {
+    }
+
+    /**
+     * The global id of a dataset, and the time it was last exported (null if
+     * it never was).
+     */
+    public record ExportTime(String globalId, Date lastExportTime) {
+    }
+
+    /**
+     * A summary of the records of a set, for spotting the ones that are
+     * out of date without loading them all.
+     *
+     * @return the state of each record, by global id
+     */
+    public Map<String, RecordState> findOaiRecordStatesBySetName(String setName) {
+        List<Object[]> results = em.createNativeQuery("SELECT globalid, removed, lastupdatetime FROM oairecord WHERE setname = ?1")
+                .setParameter(1, setName == null ? "" : setName)
+                .getResultList();
+        Map<String, RecordState> states = new HashMap<>();
+        for (Object[] result : results) {
+            states.put((String) result[0], new RecordState(Boolean.TRUE.equals(result[1]), (Date) result[2]));
+        }
+        return states;
+    }
+
+    /**
+     * The global ids and the last export times of datasets, without loading
+     * the datasets. Datasets without a released version are left out; those
+     * that have one but have never been exported (because the export failed
+     * when they were published, for example) are not.
+     *
+     * @return the global id and the last export time of each dataset, by id
+     */
+    public Map<Long, ExportTime> findExportTimesByDatasetIds(List<Long> datasetIds) {
+        Map<Long, ExportTime> exportTimes = new HashMap<>();
+        for (int i = 0; i < datasetIds.size(); i += QUERY_CHUNK_SIZE) {
+            String idList = datasetIds.subList(i, Math.min(i + QUERY_CHUNK_SIZE, datasetIds.size())).stream()
+                    .map(String::valueOf).collect(Collectors.joining(","));
+            List<Object[]> results = em.createNativeQuery("SELECT o.id, o.protocol, o.authority, o.identifier, d.lastexporttime"
+                    + " FROM dvobject o, dataset d WHERE d.id = o.id AND o.id IN (" + idList + ")"
+                    + " AND EXISTS (SELECT 1 FROM datasetversion v WHERE v.dataset_id = d.id AND v.versionstate = 'RELEASED')")
+                    .getResultList();
+            for (Object[] result : results) {
+                GlobalId globalId = PidUtil.parseAsGlobalID((String) result[1], (String) result[2], (String) result[3]);
+                if (globalId != null) {
+                    exportTimes.put(((Number) result[0]).longValue(), new ExportTime(globalId.asString(), (Date) result[4]));
+                }
+            }
+        }
+        return exportTimes;
+    }
+
+    /**
+     * @return the records of the set for these datasets, by global id
+     */
+    public Map<String, OAIRecord> findOaiRecordsBySetNameAndGlobalIds(String setName, Collection<String> globalIds) {
+        Map<String, OAIRecord> recordMap = new HashMap<>();
+        List<String> globalIdList = new ArrayList<>(globalIds);
+        for (int i = 0; i < globalIdList.size(); i += QUERY_CHUNK_SIZE) {
+            recordMap.putAll(toRecordMap(findOaiRecordsBySetName(setName, null, null, false,
+                    globalIdList.subList(i, Math.min(i + QUERY_CHUNK_SIZE, globalIdList.size())), 0, -1)));
+        }
+        return recordMap;
+    }
+    
     // This method updates -  creates/refreshes/un-marks-as-deleted - one OAI 
     // record at a time. It does so inside its own transaction, to ensure that 
     // the changes take place immediately. (except the method is called from 
@@ -315,27 +545,95 @@ public class OAIRecordServiceBean implements java.io.Serializable {
     }
     
     public List<OAIRecord> findOaiRecordsBySetName(String setName, Instant from, Instant until, boolean excludeSet) {
-                
-        if (setName == null) {
-            setName = "";
+        return findOaiRecordsBySetName(setName, from, until, excludeSet, null, 0, -1);
+    }
+
+    /**
+     * One page of the records in a set, for serving a ListRecords or
+     * ListIdentifiers request: only the records on the page are read from
+     * the database, rather than the whole set.
+     *
+     * @param setName the set ("" for the default set)
+     * @param from only records updated at or after this time, if not null
+     * @param until only records updated at or before this time, if not null
+     * @param offset number of records to skip
+     * @param limit maximum number of records to return
+     * @return the records, ordered by global id; or null if the lookup failed
+     */
+    public List<OAIRecord> findOaiRecordsBySetName(String setName, Instant from, Instant until, int offset, int limit) {
+        return findOaiRecordsBySetName(setName, from, until, false, null, offset, limit);
+    }
+
+    /**
+     * The records of the given datasets in the sets <i>other</i> than this one;
+     * for listing all the sets a record belongs to, in the headers of a page
+     * of records of this set.
+     *
+     * @param setName the set ("" for the default set)
+     * @param globalIds the global ids of the records on the page
+     * @param from only records updated at or after this time, if not null
+     * @param until only records updated at or before this time, if not null
+     * @return the records, ordered by global id; or null if the lookup failed
+     */
+    public List<OAIRecord> findOaiRecordsNotInThisSet(String setName, Collection<String> globalIds, Instant from, Instant until) {
+        if (globalIds == null || globalIds.isEmpty()) {
+            return new ArrayList<>();
         }
+        return findOaiRecordsBySetName(setName, from, until, true, globalIds, 0, -1);
+    }
+
+    /**
+     * @return the number of records in the set, as would be returned by
+     * {@link #findOaiRecordsBySetName(String, Instant, Instant)}
+     */
+    public long countOaiRecordsBySetName(String setName, Instant from, Instant until) {
+        TypedQuery<Long> query = em.createQuery("SELECT count(h) from OAIRecord h where h.id is not null"
+                + getSetNameClause(false, null, from, until), Long.class);
+        setSetNameParameters(query, setName, null, from, until);
+        return query.getSingleResult();
+    }
+
+    private List<OAIRecord> findOaiRecordsBySetName(String setName, Instant from, Instant until, boolean excludeSet, Collection<String> globalIds, int offset, int limit) {
+        String queryString = "SELECT object(h) from OAIRecord h where h.id is not null"
+                + getSetNameClause(excludeSet, globalIds, from, until)
+                + " order by h.globalId";
+
+        logger.fine("Query: "+queryString);
         
-        String queryString = "SELECT object(h) from OAIRecord h where h.id is not null";
+        TypedQuery<OAIRecord> query = em.createQuery(queryString, OAIRecord.class);
+        setSetNameParameters(query, setName, globalIds, from, until);
+        if (offset > 0) {
+            query.setFirstResult(offset);
+        }
+        if (limit >= 0) {
+            query.setMaxResults(limit);
+        }
+                
+        try {
+            return query.getResultList();      
+        } catch (Exception ex) {
+            logger.fine("Caught exception; returning null.");
+            return null;
+        }
+    }
+
+    private String getSetNameClause(boolean excludeSet, Collection<String> globalIds, Instant from, Instant until) {
+        String clause;
         if (excludeSet) {
-            queryString += " and h.setName is not null and h.setName != '' and h.setName != :setName";
+            clause = " and h.setName is not null and h.setName != '' and h.setName != :setName";
         } else {
-            queryString += " and h.setName = :setName";
+            clause = " and h.setName = :setName";
         }
-        
-        queryString += from != null ? " and h.lastUpdateTime >= :from" : "";
-        queryString += until != null ? " and h.lastUpdateTime<=:until" : "";
-        queryString += " order by h.globalId";
+        clause += globalIds != null ? " and h.globalId in :globalIds" : "";
+        clause += from != null ? " and h.lastUpdateTime >= :from" : "";
+        clause += until != null ? " and h.lastUpdateTime<=:until" : "";
+        return clause;
+    }
 
-        logger.fine("Query: "+queryString);
-        
-        TypedQuery<OAIRecord> query = em.createQuery(queryString, OAIRecord.class);
-        if (setName != null) { 
-            query.setParameter("setName",setName); 
+    private void setSetNameParameters(TypedQuery<?> query, String setName, Collection<String> globalIds, Instant from, Instant until) {
+        query.setParameter("setName", setName == null ? "" : setName);
+        if (globalIds != null) {
+            query.setParameter("globalIds", globalIds);
         }
         // TODO: review and phase out the use of java.util.Date throughout this service.
         
@@ -347,13 +645,6 @@ public class OAIRecordServiceBean implements java.io.Serializable {
             Date untilDate = Date.from(until);
             query.setParameter("until",untilDate,TemporalType.TIMESTAMP); 
         }
-                
-        try {
-            return query.getResultList();      
-        } catch (Exception ex) {
-            logger.fine("Caught exception; returning null.");
-            return null;
-        }
     }
     
     // This method is to only get the records NOT marked as "deleted":
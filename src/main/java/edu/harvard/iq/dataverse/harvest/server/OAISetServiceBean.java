@@ -1,24 +1,31 @@
 package edu.harvard.iq.dataverse.harvest.server;
 
+import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.search.SearchConstants;
 import edu.harvard.iq.dataverse.search.SearchFields;
 import edu.harvard.iq.dataverse.search.SearchUtil;
 import edu.harvard.iq.dataverse.search.SolrClientService;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jakarta.ejb.Asynchronous;
 import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
 import jakarta.ejb.TransactionAttributeType;
@@ -58,8 +65,21 @@ public class OAISetServiceBean implements java.io.Serializable {
     @EJB
     SolrClientService solrClientService;
     
+    // this bean, through the container, for the methods that need a
+    // transaction of their own
+    @EJB
+    OAISetServiceBean self;
+    
     private static final Logger logger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.server.OAISetServiceBean");
     
+    // how long a dataset queued for an update of its OAI records waits, so
+    // that it has been reindexed by the time its records are updated
+    private static final long QUEUE_DELAY_MILLIS = 60 * 1000;
+    
+    // how long a dataset claimed for an update of its OAI records can take,
+    // before it is taken to have been abandoned (by a node that went down)
+    private static final long CLAIM_TIMEOUT_MILLIS = 60 * 60 * 1000;
+    
     private static final SimpleDateFormat logFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss");
     
     public OAISet find(Object pk) {
@@ -221,10 +241,17 @@ public class OAISetServiceBean implements java.io.Serializable {
         }
         
         List<OAISet> allSets = findAll();
+        boolean incremental = JvmSettings.OAI_SERVER_INCREMENTAL_SETS.lookupOptional(Boolean.class).orElse(false);
         
         if (allSets != null) {
             for (OAISet set : allSets) {
-                exportOaiSet(set, exportLogger);
+                if (incremental) {
+                    // The changes have been applied as they happened; only 
+                    // look for anything that may have been missed:
+                    reconcileOaiSet(set, exportLogger);
+                } else {
+                    exportOaiSet(set, exportLogger);
+                }
             }
         }
         
@@ -235,6 +262,191 @@ public class OAISetServiceBean implements java.io.Serializable {
         }
     }
         
+    /**
+     * A cheap version of {@link #exportOaiSet(OAISet, Logger)}, for when the
+     * sets are being updated incrementally, as datasets are published,
+     * deaccessioned, moved or destroyed: the datasets in the set, and the
+     * records of the set, are only compared by their global ids and time
+     * stamps; and only the datasets whose records are out of date (new in
+     * the set, exported since their record was last updated, or no longer in
+     * the set) are looked up and updated.
+     */
+    public void reconcileOaiSet(OAISet oaiSet, Logger exportLogger) {
+        OAISet managedSet = find(oaiSet.getId());
+        if (managedSet == null || managedSet.isDeleteInProgress()) {
+            return;
+        }
+
+        List<Long> datasetIds;
+        boolean databaseLookup = false; // As opposed to a search engine lookup
+        try {
+            if (!managedSet.isDefaultSet()) {
+                datasetIds = expandSetQuery(managedSet.getDefinition());
+            } else {
+                datasetIds = datasetService.findAllLocalDatasetIds();
+                databaseLookup = true;
+            }
+        } catch (OaiSetException ose) {
+            exportLogger.warning("Failed to expand the definition of set " + managedSet.getSpec() + "; skipping it.");
+            return;
+        }
+
+        Map<String, OAIRecordServiceBean.RecordState> recordStates = oaiRecordService.findOaiRecordStatesBySetName(managedSet.getSpec());
+        Map<Long, OAIRecordServiceBean.ExportTime> exportTimes = oaiRecordService.findExportTimesByDatasetIds(datasetIds);
+        OutdatedRecords outdated = findOutdatedRecords(recordStates, exportTimes);
+
+        exportLogger.info("set " + managedSet.getSpec() + ": " + datasetIds.size() + " datasets, "
+                + recordStates.size() + " records; " + outdated.globalIds().size() + " records out of date.");
+        if (!outdated.globalIds().isEmpty()) {
+            oaiRecordService.updateOaiRecords(managedSet.getSpec(), outdated.datasetIds(),
+                    oaiRecordService.findOaiRecordsBySetNameAndGlobalIds(managedSet.getSpec(), outdated.globalIds()),
+                    new Date(), true, databaseLookup, exportLogger);
+        }
+    }
+
+    /**
+     * The records of a set that are out of date.
+     *
+     * @param datasetIds the datasets in the set whose records have to be
+     * created or updated (and that may have to be exported first)
+     * @param globalIds the global ids of those datasets, and of the records
+     * of datasets that are no longer in the set
+     */
+    record OutdatedRecords(List<Long> datasetIds, Set<String> globalIds) {
+    }
+
+    /**
+     * @param recordStates the records of the set, by global id
+     * @param exportTimes the datasets in the set, by id
+     * @return the datasets that are new in the set, that have been exported
+     * since their record was last updated, or that have never been exported;
+     * and the records of the set that are not removed yet although their
+     * dataset is no longer in the set
+     */
+    static OutdatedRecords findOutdatedRecords(Map<String, OAIRecordServiceBean.RecordState> recordStates,
+            Map<Long, OAIRecordServiceBean.ExportTime> exportTimes) {
+        List<Long> outdatedDatasetIds = new ArrayList<>();
+        Set<String> outdatedGlobalIds = new HashSet<>();
+        Set<String> globalIdsInSet = new HashSet<>();
+        for (Map.Entry<Long, OAIRecordServiceBean.ExportTime> exportTime : exportTimes.entrySet()) {
+            String globalId = exportTime.getValue().globalId();
+            Date lastExportTime = exportTime.getValue().lastExportTime();
+            globalIdsInSet.add(globalId);
+            OAIRecordServiceBean.RecordState recordState = recordStates.get(globalId);
+            if (lastExportTime == null || recordState == null || recordState.lastUpdateTime() == null
+                    || lastExportTime.after(recordState.lastUpdateTime())) {
+                outdatedDatasetIds.add(exportTime.getKey());
+                outdatedGlobalIds.add(globalId);
+            }
+        }
+        for (Map.Entry<String, OAIRecordServiceBean.RecordState> recordState : recordStates.entrySet()) {
+            if (!recordState.getValue().removed() && !globalIdsInSet.contains(recordState.getKey())) {
+                outdatedGlobalIds.add(recordState.getKey());
+            }
+        }
+        return new OutdatedRecords(outdatedDatasetIds, outdatedGlobalIds);
+    }
+
+    /**
+     * Applies the changes to the OAI records of the datasets that have been
+     * queued with {@link OAIRecordServiceBean#queueOaiRecordsUpdate(edu.harvard.iq.dataverse.Dataset)},
+     * when the OAI sets are updated incrementally. Each dataset is updated in
+     * a transaction of its own, so that a dataset that fails doesn't hold
+     * back the others.
+     */
+    @Schedule(minute = "*/5", hour = "*", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void updateQueuedDatasets() {
+        if (!JvmSettings.OAI_SERVER_INCREMENTAL_SETS.lookupOptional(Boolean.class).orElse(false)) {
+            return;
+        }
+        // Datasets are reindexed asynchronously after they are published etc.,
+        // so give the search index the time to catch up; the membership in 
+        // the named sets is looked up there:
+        long now = System.currentTimeMillis();
+        List<OAIRecordServiceBean.QueuedUpdate> queued = oaiRecordService.claimQueuedOaiRecordsUpdates(
+                new Date(now - QUEUE_DELAY_MILLIS), new Date(now - CLAIM_TIMEOUT_MILLIS));
+        if (queued.isEmpty()) {
+            return;
+        }
+        logger.fine("updating the OAI records of " + queued.size() + " datasets");
+
+        List<OAISet> allSets = findAll();
+        for (OAIRecordServiceBean.QueuedUpdate update : queued) {
+            boolean done = false;
+            try {
+                done = self.updateQueuedDataset(update, allSets);
+            } catch (Exception e) {
+                logger.warning("Failed to update the OAI records of dataset " + update.datasetId() + ": " + e.getMessage());
+            }
+            if (!done) {
+                try {
+                    oaiRecordService.releaseQueuedOaiRecordsUpdate(update);
+                } catch (Exception e) {
+                    // it will be claimed again once the claim has timed out
+                    logger.warning("Failed to put dataset " + update.datasetId() + " back on the OAI update queue: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the OAI records of a queued dataset, and takes it off the
+     * queue, in the same transaction.
+     *
+     * @return false if the dataset was left on the queue, because one of the
+     * sets could not be checked
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public boolean updateQueuedDataset(OAIRecordServiceBean.QueuedUpdate update, List<OAISet> allSets) {
+        Dataset dataset = datasetService.find(update.datasetId());
+        Map<String, Boolean> setMembership = new HashMap<>();
+        boolean membershipKnown = true;
+        if (dataset != null && allSets != null) {
+            for (OAISet oaiSet : allSets) {
+                if (oaiSet.isDeleteInProgress()) {
+                    continue;
+                }
+                if (oaiSet.isDefaultSet()) {
+                    setMembership.put(oaiSet.getSpec(), !dataset.isHarvested());
+                } else {
+                    try {
+                        setMembership.put(oaiSet.getSpec(), isInSet(oaiSet.getDefinition(), dataset.getId()));
+                    } catch (OaiSetException ose) {
+                        logger.warning("Failed to check whether dataset " + dataset.getId() + " is in set " + oaiSet.getSpec() + ": " + ose.getMessage());
+                        membershipKnown = false;
+                    }
+                }
+            }
+        }
+        oaiRecordService.updateOaiRecordsForDataset(update.globalId(), dataset, setMembership, new Date(), logger);
+        // Left on the queue if a set could not be checked, so that
+        // it is checked again on the next run:
+        if (membershipKnown) {
+            oaiRecordService.removeQueuedOaiRecordsUpdate(update);
+        }
+        return membershipKnown;
+    }
+
+    /**
+     * @return whether the search query of a set finds the dataset
+     */
+    public boolean isInSet(String query, Long datasetId) throws OaiSetException {
+        if (query == null || !(query.indexOf(':') > 0)) {
+            throw new OaiSetException("Invalid search query.");
+        }
+        SolrQuery solrQuery = new SolrQuery();
+        solrQuery.setQuery(addQueryRestrictions(query) + " AND " + SearchFields.ENTITY_ID + ":" + datasetId);
+        solrQuery.setRows(0);
+        try {
+            return solrClientService.getSolrClient().query(solrQuery).getResults().getNumFound() > 0;
+        } catch (RemoteSolrException ex) {
+            throw new OaiSetException("Search Syntax Error: " + ex.getLocalizedMessage());
+        } catch (SolrServerException | IOException ex) {
+            throw new OaiSetException("Internal Dataverse Search Engine Error");
+        }
+    }
+        
     public int validateDefinitionQuery(String query) throws OaiSetException {
         
         List<Long> resultIds = expandSetQuery(query);
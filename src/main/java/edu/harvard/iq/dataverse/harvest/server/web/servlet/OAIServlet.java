@@ -42,7 +42,9 @@ import org.apache.commons.lang3.StringUtils;
 import java.io.IOException;
 import java.util.Optional;
 import java.util.logging.Logger;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.inject.Inject;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import jakarta.mail.internet.InternetAddress;
@@ -90,6 +92,17 @@ public class OAIServlet extends HttpServlet {
     @ConfigProperty(name = "dataverse.oai.server.maxrecords", defaultValue="10")
     private Integer maxListRecords;
     
+    @Inject
+    @ConfigProperty(name = "dataverse.oai.server.prefetch-threads", defaultValue="8")
+    private Integer prefetchThreads;
+    
+    @Resource
+    private ManagedExecutorService executorService;
+    
+    @Inject
+    @ConfigProperty(name = "dataverse.oai.server.export-cache-size", defaultValue="64")
+    private Integer exportCacheSizeMb;
+    
     private static final Logger logger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.server.web.servlet.OAIServlet");
     // If we are going to stick with this solution - of providing a minimalist 
     // xml record containing a link to the proprietary json metadata API for 
@@ -115,7 +128,7 @@ public class OAIServlet extends HttpServlet {
     
     private Context xoaiContext;
     private SetRepository setRepository;
-    private ItemRepository itemRepository;
+    private DataverseXoaiItemRepository itemRepository;
     private RepositoryConfiguration repositoryConfiguration;
     private Repository xoaiRepository;
     private DataProvider dataProvider;
@@ -130,7 +143,8 @@ public class OAIServlet extends HttpServlet {
         }
         
         setRepository = new DataverseXoaiSetRepository(setService);
-        itemRepository = new DataverseXoaiItemRepository(recordService, datasetService, SystemConfig.getDataverseSiteUrlStatic());
+        itemRepository = new DataverseXoaiItemRepository(recordService, datasetService, SystemConfig.getDataverseSiteUrlStatic(),
+                executorService, prefetchThreads, exportCacheSizeMb * 1024L * 1024L);
 
         repositoryConfiguration = createRepositoryConfiguration(); 
                                 
@@ -140,7 +154,7 @@ public class OAIServlet extends HttpServlet {
         
         dataProvider = new DataProvider(getXoaiContext(), getXoaiRepository());
     }
-    
+
     private Context createContext() {
         
         Context context = new Context();
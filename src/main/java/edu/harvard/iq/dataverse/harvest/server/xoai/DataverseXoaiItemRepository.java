@@ -20,11 +20,21 @@ import io.gdcc.xoai.dataprovider.repository.ResultsPage;
 import io.gdcc.xoai.model.oaipmh.ResumptionToken;
 import io.gdcc.xoai.model.oaipmh.results.record.Metadata;
 import io.gdcc.xoai.xml.EchoElement;
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Logger;
 
 /**
@@ -41,11 +51,35 @@ public class DataverseXoaiItemRepository implements ItemRepository {
     private final OAIRecordServiceBean recordService;
     private final DatasetServiceBean datasetService;
     private final String serverUrl; 
+    
+    // For ListRecords, the pre-generated exports of the datasets on the page
+    // are read from the storage concurrently, on the container's executor,
+    // rather than one at a time (on S3, that's one GET per record); no more
+    // than the permits of the semaphore at a time, for all the requests:
+    private final ExecutorService prefetchExecutor;
+    private final Semaphore prefetchPermits;
+    private final ExportDocumentCache exportCache;
 
     public DataverseXoaiItemRepository (OAIRecordServiceBean recordService, DatasetServiceBean datasetService, String serverUrl) {
+        this(recordService, datasetService, serverUrl, null, 1, 0);
+    }
+
+    /**
+     * @param prefetchExecutor the (managed) executor the exports are read
+     * from the storage on, when serving a page of records; if null, they are
+     * read one at a time
+     * @param prefetchThreads number of exports read from the storage at the
+     * same time
+     * @param exportCacheBytes size of the in-memory cache of the most recently
+     * served exports; 0 disables the cache
+     */
+    public DataverseXoaiItemRepository (OAIRecordServiceBean recordService, DatasetServiceBean datasetService, String serverUrl, ExecutorService prefetchExecutor, int prefetchThreads, long exportCacheBytes) {
         this.recordService = recordService;
         this.datasetService = datasetService;
         this.serverUrl = serverUrl; 
+        this.prefetchExecutor = prefetchExecutor;
+        this.prefetchPermits = new Semaphore(Math.max(prefetchThreads, 1));
+        this.exportCache = new ExportDocumentCache(exportCacheBytes);
     }
     
     @Override
@@ -83,7 +117,7 @@ public class DataverseXoaiItemRepository implements ItemRepository {
             for (OAIRecord oaiRecord : oaiRecords) {
                 if (xoaiItem == null) {
                     xoaiItem = new DataverseXoaiItem(oaiRecord); 
-                    xoaiItem = addMetadata(xoaiItem, metadataFormat);
+                    addMetadata(List.of(xoaiItem), metadataFormat);
                 } else {
                     // Adding extra set specs to the XOAI Item, if this oaiRecord
                     // is part of multiple sets:
@@ -133,25 +167,34 @@ public class DataverseXoaiItemRepository implements ItemRepository {
                 + ", from=" + from
                 + ", until=" + until);
 
-        List<OAIRecord> oaiRecords = recordService.findOaiRecordsBySetName(setSpec, from, until);
+        // Only the records on the requested page are read from the database,
+        // so that a harvesting client working its way through a large set with
+        // resumption tokens doesn't cause the whole set to be read every time:
+        long total;
+        List<OAIRecord> oaiRecords;
+        try {
+            total = recordService.countOaiRecordsBySetName(setSpec, from, until);
+            oaiRecords = offset < total ? recordService.findOaiRecordsBySetName(setSpec, from, until, offset, maxResponseLength) : null;
+        } catch (Exception ex) {
+            logger.warning("Failed to look up the records of set " + setSpec + ": " + ex.getMessage());
+            total = 0;
+            oaiRecords = null;
+        }
         
         List<DataverseXoaiItem> xoaiItems = new ArrayList<>();
 
         if (oaiRecords != null && !oaiRecords.isEmpty()) {
-            logger.fine("total " + oaiRecords.size() + " records returned");
+            logger.fine("total " + total + " records, " + oaiRecords.size() + " returned");
             
-            for (int i = offset; i < offset + maxResponseLength && i < oaiRecords.size(); i++) {
-                OAIRecord record = oaiRecords.get(i);
-                DataverseXoaiItem xoaiItem = new DataverseXoaiItem(record);
-                
-                if (fullItems) {
-                    // If we are cooking "full" Items (for the ListRecords verb),
-                    // add the metadata to the item object (if not a deleted
-                    // record, if available, etc.):
-                    xoaiItem = addMetadata(xoaiItem, metadataFormat);
-                }
-                
-                xoaiItems.add(xoaiItem);
+            for (OAIRecord record : oaiRecords) {
+                xoaiItems.add(new DataverseXoaiItem(record));
+            }
+            
+            if (fullItems) {
+                // If we are cooking "full" Items (for the ListRecords verb),
+                // add the metadata to the item objects (if not deleted
+                // records, if available, etc.):
+                addMetadata(xoaiItems, metadataFormat);
             }
             
             // Run a second pass, looking for records in this set that occur
@@ -159,21 +202,25 @@ public class DataverseXoaiItemRepository implements ItemRepository {
             // formatted output in the header:
             addExtraSets(xoaiItems, setSpec, from, until);
             
-            hasMore = offset + maxResponseLength < oaiRecords.size();
+            hasMore = offset + maxResponseLength < total;
             
-            ResultsPage<DataverseXoaiItem> result = new ResultsPage(resumptionToken, hasMore, xoaiItems, oaiRecords.size());
+            ResultsPage<DataverseXoaiItem> result = new ResultsPage(resumptionToken, hasMore, xoaiItems, (int) total);
             logger.fine("returning result with " + xoaiItems.size() + " items.");
             return result;
         }
 
-        return new ResultsPage(resumptionToken, false, xoaiItems, 0);
+        return new ResultsPage(resumptionToken, false, xoaiItems, (int) total);
     }
     
     private void addExtraSets(Object xoaiItemsList, String setSpec, Instant from, Instant until) {
         
         List<DataverseXoaiItem> xoaiItems = (List<DataverseXoaiItem>)xoaiItemsList;
         
-        List<OAIRecord> oaiRecords = recordService.findOaiRecordsNotInThisSet(setSpec, from, until);
+        List<String> globalIds = new ArrayList<>();
+        for (DataverseXoaiItem xoaiItem : xoaiItems) {
+            globalIds.add(xoaiItem.getIdentifier());
+        }
+        List<OAIRecord> oaiRecords = recordService.findOaiRecordsNotInThisSet(setSpec, globalIds, from, until);
         
         if (oaiRecords == null || oaiRecords.isEmpty()) {
             return;
@@ -200,43 +247,115 @@ public class DataverseXoaiItemRepository implements ItemRepository {
         }
     }
     
-    private DataverseXoaiItem addMetadata(DataverseXoaiItem xoaiItem, MetadataFormat metadataFormat) {
-        // This may be a "deleted" record - i.e., a oaiRecord kept in 
-        // the OAI set for a dataset that's no longer in this Dataverse. 
-        // (it serves to tell the remote client to delete it from their 
-        // holdings too). 
-        // If this is the case here, there's nothing we need to do for this item.
-        // If not, if it's a live record, let's try to look up the dataset and 
-        // open the pre-generated metadata stream.
-
-        if (!xoaiItem.isDeleted()) {
+    private void addMetadata(List<DataverseXoaiItem> xoaiItems, MetadataFormat metadataFormat) {
+        String metadataPrefix = metadataFormat.getPrefix();
+        Map<DataverseXoaiItem, Future<byte[]>> prefetched = new HashMap<>();
+        
+        for (DataverseXoaiItem xoaiItem : xoaiItems) {
+            // This may be a "deleted" record - i.e., a oaiRecord kept in 
+            // the OAI set for a dataset that's no longer in this Dataverse. 
+            // (it serves to tell the remote client to delete it from their 
+            // holdings too). 
+            // If this is the case here, there's nothing we need to do for this item.
+            // If not, if it's a live record, let's try to look up the dataset and 
+            // start reading the pre-generated metadata.
+            if (xoaiItem.isDeleted()) {
+                continue;
+            }
             Dataset dataset = datasetService.findByGlobalId(xoaiItem.getIdentifier());
-            if (dataset != null) {
-                try {
-                    Metadata metadata = getDatasetMetadata(dataset, metadataFormat.getPrefix());
-                    xoaiItem.withDataset(dataset).withMetadata(metadata);
-                } catch (IOException ex) {
-                    // This is not supposed to happen in normal operations; 
-                    // since by design only the datasets for which the metadata
-                    // records have been pre-generated ("exported") should be 
-                    // served as "OAI Record". But, things happen. If for one
-                    // reason or another that cached metadata file is no longer there, 
-                    // we are not going to serve any metadata for this oaiRecord, 
-                    // BUT we are going to include it marked as "deleted"
-                    // (because skipping it could potentially mess up the
-                    // counts and offsets, in a resumption token scenario.
-                    xoaiItem.getOaiRecord().setRemoved(true);
-                }
-            } else {
+            if (dataset == null) {
                 // If dataset (somehow) no longer exists (again, this is 
                 // not supposed to happen), we will serve the oaiRecord, 
                 // marked as "deleted" and without any metadata. 
                 // We can't just skip it, because that could mess up the
                 // counts and offsets, in a resumption token scenario.
                 xoaiItem.getOaiRecord().setRemoved(true);
+                continue;
+            }
+            xoaiItem.withDataset(dataset);
+            
+            if (prefetchExecutor != null && !"dataverse_json".equals(metadataPrefix)
+                    && exportCache.get(dataset.getId(), metadataPrefix, dataset.getLastExportTime()) == null) {
+                try {
+                    StorageIO<Dataset> storageIO = DataAccess.getStorageIO(dataset);
+                    prefetched.put(xoaiItem, prefetch(storageIO, metadataPrefix));
+                } catch (IOException | RejectedExecutionException ex) {
+                    // we'll try again below, the usual way
+                    logger.fine("Failed to start reading the export of dataset " + dataset.getId() + ": " + ex.getMessage());
+                } catch (InterruptedException ex) {
+                    // read below, the usual way, as well
+                    Thread.currentThread().interrupt();
+                }
             }
         }
-        return xoaiItem;
+        
+        for (DataverseXoaiItem xoaiItem : xoaiItems) {
+            Dataset dataset = xoaiItem.getDataset();
+            if (xoaiItem.isDeleted() || dataset == null) {
+                continue;
+            }
+            try {
+                Metadata metadata = null;
+                if (!"dataverse_json".equals(metadataPrefix)) {
+                    byte[] document = exportCache.get(dataset.getId(), metadataPrefix, dataset.getLastExportTime());
+                    if (document == null && prefetched.containsKey(xoaiItem)) {
+                        document = getPrefetched(prefetched.get(xoaiItem));
+                    }
+                    if (document != null && !ExportService.getInstance().isCachedExportOutdated(dataset, metadataPrefix)) {
+                        exportCache.put(dataset.getId(), metadataPrefix, dataset.getLastExportTime(), document);
+                        metadata = Metadata.copyFromStream(new ByteArrayInputStream(document));
+                    }
+                }
+                if (metadata == null) {
+                    // Not cached, outdated, or not pre-generated after all:
+                    metadata = getDatasetMetadata(dataset, metadataPrefix);
+                }
+                xoaiItem.withMetadata(metadata);
+            } catch (IOException ex) {
+                // This is not supposed to happen in normal operations; 
+                // since by design only the datasets for which the metadata
+                // records have been pre-generated ("exported") should be 
+                // served as "OAI Record". But, things happen. If for one
+                // reason or another that cached metadata file is no longer there, 
+                // we are not going to serve any metadata for this oaiRecord, 
+                // BUT we are going to include it marked as "deleted"
+                // (because skipping it could potentially mess up the
+                // counts and offsets, in a resumption token scenario.
+                xoaiItem.getOaiRecord().setRemoved(true);
+            }
+        }
+    }
+    
+    /**
+     * Starts reading a pre-generated export, once fewer than the maximum
+     * number of exports are being read.
+     */
+    private Future<byte[]> prefetch(StorageIO<Dataset> storageIO, String metadataPrefix) throws InterruptedException {
+        prefetchPermits.acquire();
+        try {
+            return prefetchExecutor.submit(() -> {
+                try {
+                    return ExportService.readCachedExport(storageIO, metadataPrefix);
+                } finally {
+                    prefetchPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            prefetchPermits.release();
+            throw ex;
+        }
+    }
+    
+    private byte[] getPrefetched(Future<byte[]> prefetched) {
+        try {
+            return prefetched.get();
+        } catch (ExecutionException ex) {
+            logger.fine("Failed to read a cached export: " + ex.getCause());
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
     }
     
     private Metadata getDatasetMetadata(Dataset dataset, String metadataPrefix) throws ExportException, IOException {
@@ -0,0 +1,78 @@
+package edu.harvard.iq.dataverse.harvest.server.xoai;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of the export documents most recently served by the OAI server,
+ * bounded by the total size of the documents in it, so that harvesting clients
+ * (that often request the same pages again, after a timeout for example) don't
+ * have to wait for the exports to be read from the storage every time.
+ * <p>
+ * The documents are keyed by dataset, format and the time of the last export
+ * of the dataset; so a document is never served once the dataset has been
+ * re-exported, and simply ages out of the cache. The least recently used
+ * documents are evicted first.
+ */
+public class ExportDocumentCache {
+
+    private record Key(Long datasetId, String formatName, long lastExportTime) {
+    }
+
+    private final long maxBytes;
+    private long bytes = 0;
+    private final LinkedHashMap<Key, byte[]> documents = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param maxBytes the maximum total size of the documents in the cache;
+     * 0 disables caching
+     */
+    public ExportDocumentCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cached document, or null if it is not in the cache
+     */
+    public synchronized byte[] get(Long datasetId, String formatName, Date lastExportTime) {
+        if (lastExportTime == null) {
+            return null;
+        }
+        return documents.get(new Key(datasetId, formatName, lastExportTime.getTime()));
+    }
+
+    /**
+     * Adds a document to the cache, evicting the least recently used ones if
+     * needed to make room. Documents larger than the whole cache are not
+     * cached.
+     */
+    public synchronized void put(Long datasetId, String formatName, Date lastExportTime, byte[] document) {
+        if (lastExportTime == null || document.length > maxBytes) {
+            return;
+        }
+        byte[] previous = documents.put(new Key(datasetId, formatName, lastExportTime.getTime()), document);
+        bytes += document.length - (previous == null ? 0 : previous.length);
+
+        Iterator<Map.Entry<Key, byte[]>> eldest = documents.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return the total size of the documents in the cache
+     */
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of documents in the cache
+     */
+    public synchronized int getCount() {
+        return documents.size();
+    }
+}
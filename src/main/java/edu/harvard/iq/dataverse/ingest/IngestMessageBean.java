@@ -23,11 +23,14 @@ package edu.harvard.iq.dataverse.ingest;
 import edu.harvard.iq.dataverse.*;
 import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 
 import java.sql.Timestamp;
 import java.time.Instant;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import jakarta.ejb.ActivationConfigProperty;
 import jakarta.ejb.EJB;
@@ -60,6 +63,7 @@ public class IngestMessageBean implements MessageListener {
     @EJB IngestServiceBean ingestService;
     @EJB UserNotificationServiceBean userNotificationService;
     @EJB AuthenticationServiceBean authenticationServiceBean;
+    @EJB IngestProgressServiceBean ingestProgressService;
 
    
     public IngestMessageBean() {
@@ -68,13 +72,41 @@ public class IngestMessageBean implements MessageListener {
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void onMessage(Message message) {
         IngestMessage ingestMessage = null;
-
-        AuthenticatedUser authenticatedUser = null;
+        int retries;
         
         try {
             ObjectMessage om = (ObjectMessage) message;
             ingestMessage = (IngestMessage) om.getObject();
+            retries = IngestServiceBean.getIngestRetries(message);
+        } catch (JMSException ex) {
+            ex.printStackTrace(); // error in getting object from message; can't send e-mail
+            return;
+        }
+
+        // Every message is normally a single file; many of them, of the same
+        // dataset and of others, may be ingested at the same time, here and
+        // on other nodes, up to the configured caps. When they are all taken,
+        // the message is put back on the queue, to be tried again later - the
+        // more times it has been put back, the later.
+        int maxPerDataset = JvmSettings.INGEST_MAX_CONCURRENT_FILES_PER_DATASET.lookupOptional(Integer.class).orElse(4);
+        int maxGlobal = JvmSettings.INGEST_MAX_CONCURRENT_FILES.lookupOptional(Integer.class).orElse(8);
+        long slotLease = JvmSettings.INGEST_SLOT_LEASE.lookupOptional(Long.class).orElse(21600L);
+        IngestProgressServiceBean.Start start = ingestProgressService.tryStart(ingestMessage.getDatasetId(),
+                Math.max(maxPerDataset, 1), Math.max(maxGlobal, 1), Math.max(slotLease, 1));
+        if (!start.go()) {
+            long retryDelay = retryDelay(retries,
+                    JvmSettings.INGEST_RETRY_DELAY.lookupOptional(Long.class).orElse(5000L),
+                    JvmSettings.INGEST_MAX_RETRY_DELAY.lookupOptional(Long.class).orElse(300000L));
+            if (ingestService.requeueIngestMessage(ingestMessage, retryDelay, retries + 1)) {
+                logger.fine("No ingest slot available for dataset " + ingestMessage.getDatasetId() + "; requeued for " + retryDelay + " ms");
+                return;
+            }
+            logger.warning("No ingest slot available for dataset " + ingestMessage.getDatasetId() + ", and failed to requeue; ingesting anyway");
+        }
+
+        List<Long> failedFileIds = new ArrayList<>();
 
+        try {
             // if the lock was removed while an ingest was queued, ratake the lock
             // The "if" is the first thing that addDatasetLock method does.
             // It has some complexity and would result in the code duplication if repeated here.
@@ -86,100 +118,126 @@ public class IngestMessageBean implements MessageListener {
                     ingestMessage.getAuthenticatedUserId(),
                     ingestMessage.getInfo());
 
-            authenticatedUser = authenticationServiceBean.findByID(ingestMessage.getAuthenticatedUserId());
+            for (Long datafile_id : ingestMessage.getFileIds()) {
+                if (!ingestFile(ingestMessage, datafile_id)) {
+                    failedFileIds.add(datafile_id);
+                }
+            }
+        } finally {
+            finishIngest(ingestMessage, start.slotId(), failedFileIds);
+        }
+    }
+
+    /**
+     * @return how long to wait, in milliseconds, before trying again a work
+     * unit already put back {@code retries} times: {@code delay}, doubled
+     * with every retry, up to {@code maxDelay}
+     */
+    static long retryDelay(int retries, long delay, long maxDelay) {
+        delay = Math.max(delay, 1);
+        maxDelay = Math.max(maxDelay, delay);
+        return retries >= Long.numberOfLeadingZeros(delay) - 1 ? maxDelay : Math.min(delay << retries, maxDelay);
+    }
 
-            Iterator<Long> iter = ingestMessage.getFileIds().iterator();
-            Long datafile_id = null;
+    /**
+     * @return false if the ingest failed
+     */
+    private boolean ingestFile(IngestMessage ingestMessage, Long datafile_id) {
+        logger.fine("Start ingest job;");
+        try {
 
-            boolean ingestWithErrors = false;
+            if (ingestService.ingestAsTabular(datafile_id)) {
+                //Thread.sleep(10000);
+                logger.fine("Finished ingest job;");
+                ingestService.pregenerateFormats(datafile_id);
+                return true;
+            } else {
+                logger.warning("Error occurred during ingest job for file id " + datafile_id + "!");
+                return false;
+            }
+
+        } catch (Exception ex) {
+            //ex.printStackTrace();
+            // TODO: 
+            // this solution is working - but it would be cleaner to instead
+            // make sure that all the exceptions are interrupted and appropriate
+            // action taken still on the ingest service side. 
+            // -- L.A. Aug. 13 2014; 
+            logger.info("Unknown exception occurred  during ingest (supressed stack trace); re-setting ingest status.");
+            logger.fine("looking up datafile for id " + datafile_id);
+            DataFile datafile = datafileService.find(datafile_id);
+            if (datafile != null) {
+
+                datafile.SetIngestProblem();
+                IngestReport errorReport = new IngestReport();
+                errorReport.setFailure();
+                if (ex.getMessage() != null) {
+                    errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.detail.message") + ex.getMessage());
+                } else {
+                    errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.message"));
+                }
+                errorReport.setDataFile(datafile);
+                datafile.setIngestReport(errorReport);
+                datafile.setDataTables(null);
 
+                logger.info("trying to save datafile and the failed ingest report, id=" + datafile_id);
+                datafile = datafileService.save(datafile);
+
+                if (ingestMessage.getDatasetId() != null) {
+                    ingestService.sendFailNotification(ingestMessage.getDatasetId());
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Releases the ingest slot of the message; if it was the last file of the
+     * dataset, also removes the Ingest lock and sends the summary notification.
+     */
+    private void finishIngest(IngestMessage ingestMessage, Long slotId, List<Long> failedFileIds) {
+        IngestProgressServiceBean.Completion completion;
+        try {
+            completion = ingestProgressService.finish(ingestMessage.getDatasetId(), ingestMessage.getFileIds().size(), slotId, failedFileIds);
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Failed to record the end of the ingest of files " + ingestMessage.getFileIds()
+                    + " of dataset " + ingestMessage.getDatasetId(), ex);
+            return;
+        }
+        if (!completion.last()) {
+            return;
+        }
+
+        try {
+            // We used to list the successfully ingested files in the "success"
+            // and "mixed success and failure" emails. Now we never list successfully
+            // ingested files, only the ones that failed.
             StringBuilder sbIngestedFiles = new StringBuilder();
             sbIngestedFiles.append("<ul>");
-            
-            while (iter.hasNext()) {
-                datafile_id = iter.next();
-
-                logger.fine("Start ingest job;");
-                try {
-
-                    DataFile datafile = datafileService.find(datafile_id);
-
-                    if (ingestService.ingestAsTabular(datafile_id)) {
-                        //Thread.sleep(10000);
-                        logger.fine("Finished ingest job;");
-                        // We used to list the successfully ingested files in the "success"
-                        // and "mixed success and failure" emails. Now we never list successfully
-                        // ingested files so this line is commented out.
-                        // sbIngestedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
-                    } else {
-                        logger.warning("Error occurred during ingest job for file id " + datafile_id + "!");
-                        sbIngestedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
-                        ingestWithErrors = true;
-                    }
-
-                } catch (Exception ex) {
-                    //ex.printStackTrace();
-                    // TODO: 
-                    // this solution is working - but it would be cleaner to instead
-                    // make sure that all the exceptions are interrupted and appropriate
-                    // action taken still on the ingest service side. 
-                    // -- L.A. Aug. 13 2014; 
-                    logger.info("Unknown exception occurred  during ingest (supressed stack trace); re-setting ingest status.");
-                    if (datafile_id != null) {
-                        logger.fine("looking up datafile for id " + datafile_id);
-                        DataFile datafile = datafileService.find(datafile_id);
-                        if (datafile != null) {
-
-                            ingestWithErrors = true;
-
-                            sbIngestedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
-
-                            datafile.SetIngestProblem();
-                            IngestReport errorReport = new IngestReport();
-                            errorReport.setFailure();
-                            if (ex.getMessage() != null) {
-                                errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.detail.message") + ex.getMessage());
-                            } else {
-                                errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.message"));
-                            }
-                            errorReport.setDataFile(datafile);
-                            datafile.setIngestReport(errorReport);
-                            datafile.setDataTables(null);
-
-                            logger.info("trying to save datafile and the failed ingest report, id=" + datafile_id);
-                            datafile = datafileService.save(datafile);
-
-                            if (ingestMessage.getDatasetId() != null) {
-                                //logger.info("attempting to remove dataset lock for dataset " + dataset.getId());
-                                //datasetService.removeDatasetLock(dataset.getId());
-                                ingestService.sendFailNotification(ingestMessage.getDatasetId());
-                            }
-                        }
-                    }
+            for (Long failedFileId : completion.failedFileIds()) {
+                DataFile datafile = datafileService.find(failedFileId);
+                if (datafile != null) {
+                    sbIngestedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
                 }
             }
-
             sbIngestedFiles.append("</ul>");
 
+            Long userId = completion.userId() != null ? completion.userId() : ingestMessage.getAuthenticatedUserId();
+            AuthenticatedUser authenticatedUser = authenticationServiceBean.findByID(userId);
+
             userNotificationService.sendNotification(
                     authenticatedUser,
                     Timestamp.from(Instant.now()),
-                    !ingestWithErrors ? UserNotification.Type.INGESTCOMPLETED : UserNotification.Type.INGESTCOMPLETEDWITHERRORS,
+                    completion.failedFileIds().isEmpty() ? UserNotification.Type.INGESTCOMPLETED : UserNotification.Type.INGESTCOMPLETEDWITHERRORS,
                     ingestMessage.getDatasetId(),
                     sbIngestedFiles.toString(),
                     true
             );
-
-
-        } catch (JMSException ex) {
-            ex.printStackTrace(); // error in getting object from message; can't send e-mail
-
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Failed to send the ingest notification for dataset " + ingestMessage.getDatasetId(), ex);
         } finally {
             // when we're done, go ahead and remove the lock
             try {
-                // Remove the dataset lock: 
-                // (note that the assumption here is that all of the datafiles
-                // packed into this IngestMessage belong to the same dataset) 
                 Dataset dataset = datasetService.find(ingestMessage.getDatasetId());
                 if (dataset != null && dataset.getId() != null) {
                     datasetService.removeDatasetLocks(dataset, DatasetLock.Reason.Ingest);
@@ -189,6 +247,4 @@ public class IngestMessageBean implements MessageListener {
             }
         }
     }
- 
-    
 }
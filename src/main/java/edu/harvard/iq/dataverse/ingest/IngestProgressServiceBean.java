@@ -0,0 +1,268 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Keeps track, in the ingestprogress table, of the tabular ingest of the files
+ * of each dataset, now that the files are ingested as separate work units,
+ * concurrently, and possibly on different nodes of a cluster.
+ * <p>
+ * {@link #addFiles(Long, Long, int)} is called when files are queued;
+ * {@link #tryStart(Long, int, int, long)} before a work unit starts, to enforce
+ * the per-dataset and the global caps on the number of files being ingested
+ * at the same time, by claiming one of the slots recorded in the ingestslot
+ * table; and {@link #finish(Long, int, Long, List)} when it is done. The
+ * work unit that finishes the last file of the dataset is told so, and is
+ * responsible for releasing the Ingest lock and notifying the user.
+ * <p>
+ * Every method runs in a transaction of its own, so the counters are visible
+ * to the other work units as soon as they change.
+ */
+@Stateless
+public class IngestProgressServiceBean {
+
+    private static final Logger logger = Logger.getLogger(IngestProgressServiceBean.class.getCanonicalName());
+
+    /**
+     * Key of the PostgreSQL advisory lock that serializes the allocation of
+     * ingest slots across the cluster (an arbitrary constant, "ingest" in ASCII).
+     */
+    private static final long SLOT_LOCK_KEY = 0x696e67657374L;
+
+    /**
+     * The server instance the slots claimed here are recorded as held by, so
+     * that they can be freed when it is restarted: dataverse.ingest.instance-id
+     * if set, otherwise the host name followed by the name of the Payara
+     * instance, as several instances may run on the same host.
+     */
+    static final String INSTANCE_ID = instanceId();
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+
+    /**
+     * Outcome of a finished work unit.
+     *
+     * @param last whether this was the last work unit of the dataset
+     * @param userId the user to notify once the dataset is done
+     * @param failedFileIds the files of the dataset that failed to ingest
+     * (all of them so far, if {@code last})
+     */
+    public record Completion(boolean last, Long userId, List<Long> failedFileIds) {
+    }
+
+    /**
+     * Outcome of a claim of an ingest slot.
+     *
+     * @param go whether the work unit can go ahead
+     * @param slotId the slot claimed for the work unit, to release with
+     * {@link #finish(Long, int, Long, List)}; null if it has to wait, or if
+     * it goes ahead without one
+     */
+    public record Start(boolean go, Long slotId) {
+    }
+
+    /**
+     * Records that {@code count} more files of the dataset have been queued
+     * for ingest.
+     *
+     * @param datasetId the dataset
+     * @param userId the user who started the ingest; the first user of a
+     * series of overlapping ingests is the one notified when they are all done
+     * @param count number of files queued
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void addFiles(Long datasetId, Long userId, int count) {
+        em.createNativeQuery("INSERT INTO ingestprogress (dataset_id, authenticateduser_id, remaining)"
+                + " VALUES (?1, ?2, ?3)"
+                + " ON CONFLICT (dataset_id)"
+                + " DO UPDATE SET remaining = ingestprogress.remaining + EXCLUDED.remaining")
+                .setParameter(1, datasetId)
+                .setParameter(2, userId)
+                .setParameter(3, count)
+                .executeUpdate();
+    }
+
+    /**
+     * Takes back files that were counted by {@link #addFiles(Long, Long, int)}
+     * but could not be queued after all.
+     *
+     * @param datasetId the dataset
+     * @param count number of files that were not queued
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void removeFiles(Long datasetId, int count) {
+        em.createNativeQuery("UPDATE ingestprogress SET remaining = GREATEST(remaining - ?2, 0) WHERE dataset_id = ?1")
+                .setParameter(1, datasetId)
+                .setParameter(2, count)
+                .executeUpdate();
+        em.createNativeQuery("DELETE FROM ingestprogress WHERE dataset_id = ?1 AND remaining = 0"
+                + " AND NOT EXISTS (SELECT 1 FROM ingestslot WHERE dataset_id = ?1)")
+                .setParameter(1, datasetId)
+                .executeUpdate();
+    }
+
+    /**
+     * Claims one of the ingest slots for a work unit of the dataset, unless
+     * {@code maxPerDataset} files of that dataset, or {@code maxGlobal} files
+     * altogether, are already being ingested. A successful claim must be
+     * followed by {@link #finish(Long, int, Long, List)}.
+     * <p>
+     * Slots claimed more than {@code leaseSeconds} ago are taken to have been
+     * leaked by a work unit that never finished, and are freed first. (So are
+     * those of a server that is restarted, by {@link #releaseLocalSlots()}.)
+     *
+     * @param datasetId the dataset
+     * @param maxPerDataset cap on the files of one dataset ingested at once
+     * @param maxGlobal cap on the files ingested at once, across all datasets
+     * and nodes
+     * @param leaseSeconds how long a slot is held, at most
+     * @return whether the work unit has to wait for a slot to free up, and
+     * the slot it claimed if it doesn't. A work unit can also go ahead without
+     * a slot when the dataset is not being tracked, as is the case for work
+     * units queued by an older version of the application.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Start tryStart(Long datasetId, int maxPerDataset, int maxGlobal, long leaseSeconds) {
+        // Held until the end of the transaction, so that two work units
+        // can't both see the last free slot:
+        em.createNativeQuery("SELECT pg_advisory_xact_lock(?1)")
+                .setParameter(1, SLOT_LOCK_KEY)
+                .getResultList();
+        int expired = em.createNativeQuery("DELETE FROM ingestslot WHERE started < CURRENT_TIMESTAMP - ?1 * INTERVAL '1 second'")
+                .setParameter(1, leaseSeconds)
+                .executeUpdate();
+        if (expired > 0) {
+            logger.warning("Freed " + expired + " ingest slot(s) held for more than " + leaseSeconds + " seconds");
+        }
+
+        if (em.createNativeQuery("SELECT dataset_id FROM ingestprogress WHERE dataset_id = ?1")
+                .setParameter(1, datasetId)
+                .getResultList().isEmpty()) {
+            return new Start(true, null);
+        }
+        Object[] running = (Object[]) em.createNativeQuery("SELECT COUNT(*) FILTER (WHERE dataset_id = ?1), COUNT(*) FROM ingestslot")
+                .setParameter(1, datasetId)
+                .getSingleResult();
+        if (((Number) running[0]).intValue() >= maxPerDataset || ((Number) running[1]).intValue() >= maxGlobal) {
+            return new Start(false, null);
+        }
+        Long slotId = ((Number) em.createNativeQuery("INSERT INTO ingestslot (dataset_id, owner, started)"
+                + " VALUES (?1, ?2, CURRENT_TIMESTAMP) RETURNING id")
+                .setParameter(1, datasetId)
+                .setParameter(2, INSTANCE_ID)
+                .getSingleResult()).longValue();
+        return new Start(true, slotId);
+    }
+
+    /**
+     * Frees the slots claimed on this server. Called when it starts up, when
+     * none of them can still be in use: the work units that held them died
+     * with the server, or with the application, before they could finish.
+     *
+     * @return number of slots freed
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int releaseLocalSlots() {
+        return em.createNativeQuery("DELETE FROM ingestslot WHERE owner = ?1")
+                .setParameter(1, INSTANCE_ID)
+                .executeUpdate();
+    }
+
+    /**
+     * Records that a work unit of the dataset is done, and releases its slot.
+     *
+     * @param datasetId the dataset
+     * @param fileCount number of files in the work unit
+     * @param slotId the slot claimed by the work unit with
+     * {@link #tryStart(Long, int, int, long)}, if any
+     * @param failedFileIds the files of the work unit that failed to ingest
+     * @return whether this was the last work unit of the dataset, and, if so,
+     * the user to notify and all the files that failed. For a dataset that is
+     * not being tracked, every work unit is reported as the last one, with
+     * its own failures only.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Completion finish(Long datasetId, int fileCount, Long slotId, List<Long> failedFileIds) {
+        if (slotId != null) {
+            em.createNativeQuery("DELETE FROM ingestslot WHERE id = ?1")
+                    .setParameter(1, slotId)
+                    .executeUpdate();
+        }
+        String failed = failedFileIds.isEmpty() ? null : joinIds(failedFileIds);
+        int updated = em.createNativeQuery("UPDATE ingestprogress"
+                + " SET remaining = GREATEST(remaining - ?2, 0),"
+                + " failed = CONCAT_WS(',', failed, CAST(?3 AS text))"
+                + " WHERE dataset_id = ?1")
+                .setParameter(1, datasetId)
+                .setParameter(2, fileCount)
+                .setParameter(3, failed)
+                .executeUpdate();
+        if (updated == 0) {
+            logger.fine("Ingest of dataset " + datasetId + " is not being tracked");
+            return new Completion(true, null, failedFileIds);
+        }
+
+        // The row stays locked by the update above until we commit, so
+        // nobody else can finish (or add) files of this dataset in between:
+        Object[] row = (Object[]) em.createNativeQuery("SELECT remaining, authenticateduser_id, failed FROM ingestprogress WHERE dataset_id = ?1")
+                .setParameter(1, datasetId)
+                .getSingleResult();
+        if (((Number) row[0]).intValue() > 0) {
+            return new Completion(false, null, List.of());
+        }
+        em.createNativeQuery("DELETE FROM ingestprogress WHERE dataset_id = ?1")
+                .setParameter(1, datasetId)
+                .executeUpdate();
+        Long userId = row[1] == null ? null : ((Number) row[1]).longValue();
+        return new Completion(true, userId, parseIds((String) row[2]));
+    }
+
+    private static String instanceId() {
+        String configured = JvmSettings.INGEST_INSTANCE_ID.lookupOptional().orElse("");
+        if (!configured.isBlank()) {
+            return configured.trim();
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getCanonicalHostName();
+        } catch (UnknownHostException ex) {
+            logger.warning("Unable to determine the host name; ingest slots are recorded as held by localhost");
+            host = "localhost";
+        }
+        return host + "/" + System.getProperty("com.sun.aas.instanceName", "server");
+    }
+
+    static String joinIds(List<Long> ids) {
+        StringBuilder sb = new StringBuilder();
+        for (Long id : ids) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(id);
+        }
+        return sb.toString();
+    }
+
+    static List<Long> parseIds(String ids) {
+        List<Long> result = new ArrayList<>();
+        if (ids != null) {
+            for (String id : ids.split(",")) {
+                if (!id.isBlank()) {
+                    result.add(Long.valueOf(id.trim()));
+                }
+            }
+        }
+        return result;
+    }
+}
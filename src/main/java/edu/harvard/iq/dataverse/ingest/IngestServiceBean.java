@@ -41,9 +41,11 @@ import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.FileMetadata;
 import edu.harvard.iq.dataverse.MetadataBlock;
+import edu.harvard.iq.dataverse.ThumbnailGenerationQueue;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
+import edu.harvard.iq.dataverse.dataaccess.DataConverter;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.dataaccess.S3AccessIO;
@@ -109,6 +111,7 @@ import java.util.Set;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.ListIterator;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.Hashtable;
 import java.util.Optional;
@@ -141,6 +144,11 @@ import ucar.nc2.NetcdfFiles;
 @Named
 public class IngestServiceBean {
     private static final Logger logger = Logger.getLogger(IngestServiceBean.class.getCanonicalName());
+    /**
+     * JMS property of a requeued ingest message: how many times it has been
+     * put back on the queue.
+     */
+    private static final String INGEST_RETRIES_PROPERTY = "ingestRetries";
     @EJB
     VariableServiceBean variableService;
     @EJB 
@@ -155,6 +163,10 @@ public class IngestServiceBean {
     StorageUseServiceBean storageUseService; 
     @EJB
     SystemConfig systemConfig;
+    @EJB
+    IngestProgressServiceBean ingestProgressService;
+    @EJB
+    ThumbnailGenerationQueue thumbnailGenerationQueue;
 
     @Resource(lookup = "java:app/jms/queue/ingest")
     Queue queue;
@@ -603,6 +615,10 @@ public class IngestServiceBean {
                 // we make sure that the roles assignment added at create is flushed
                 dataFile = fileService.find(dataFile.getId());
                 scheduledFiles.add(dataFile);
+            } else if (!dataFile.isReleased() && !dataFile.isPreviewImageAvailable() && !dataFile.isPreviewImageFail()) {
+                // A new file; its thumbnails are generated in the background
+                // right away, rather than by the first page that shows it:
+                thumbnailGenerationQueue.enqueue(dataFile);
             }
         }
 
@@ -611,7 +627,6 @@ public class IngestServiceBean {
     
     public String startIngestJobs(Long datasetId, List<DataFile> dataFiles, AuthenticatedUser user) {
 
-        IngestMessage ingestMessage = null;
         StringBuilder sb = new StringBuilder();
 
         List<DataFile> scheduledFiles = new ArrayList<>();
@@ -668,50 +683,101 @@ public class IngestServiceBean {
                 }
             });
 
-            ingestMessage = new IngestMessage(user.getId());
+            // Every file is a work unit of its own, so that the files can be
+            // ingested concurrently, by the whole MDB pool and on any node;
+            // the last one to finish releases the lock and notifies the user.
+            List<IngestMessage> ingestMessages = new ArrayList<>(count);
             for (int i = 0; i < count; i++) {
+                IngestMessage ingestMessage = new IngestMessage(user.getId());
                 ingestMessage.addFileId(scheduledFilesArray[i].getId());
+                ingestMessage.setDatasetId(datasetId);
+                ingestMessage.setInfo(info);
+                ingestMessages.add(ingestMessage);
             }
-            ingestMessage.setDatasetId(datasetId);
-            ingestMessage.setInfo(info);
 
-            QueueConnection conn = null;
-            QueueSession session = null;
-            QueueSender sender = null;
+            ingestProgressService.addFiles(datasetId, user.getId(), count);
+            int sent = queueIngestMessages(ingestMessages, 0, 0);
+            if (sent < count) {
+                ingestProgressService.removeFiles(datasetId, count - sent);
+                sb.append("Failed to queue the (re)ingest job for " + (count - sent) + " DataFile(s) (JMS Exception)");
+            }
+        }
+        
+        return sb.toString();
+    }
 
-            try {
-                conn = factory.createQueueConnection();
-                session = conn.createQueueSession(false, 0);
-                sender = session.createSender(queue);
+    /**
+     * Puts an ingest work unit back on the queue, to be picked up again after
+     * the specified delay (used when all the ingest slots are taken).
+     *
+     * @param retries the number of times the work unit has been put back so
+     * far, this one included; read back with {@link #getIngestRetries(Message)}
+     * @return true if the message was queued
+     */
+    public boolean requeueIngestMessage(IngestMessage ingestMessage, long deliveryDelay, int retries) {
+        return queueIngestMessages(List.of(ingestMessage), deliveryDelay, retries) == 1;
+    }
 
-                Message queueMessage = session.createObjectMessage(ingestMessage);
+    /**
+     * @return the number of times the work unit of the message was put back
+     * on the queue by {@link #requeueIngestMessage(IngestMessage, long, int)}
+     */
+    public static int getIngestRetries(Message message) throws JMSException {
+        return message.propertyExists(INGEST_RETRIES_PROPERTY) ? message.getIntProperty(INGEST_RETRIES_PROPERTY) : 0;
+    }
 
+    /**
+     * Sends the messages to the ingest queue, in order, in one session.
+     *
+     * @param deliveryDelay milliseconds to wait before the messages can be
+     * delivered, or 0 to deliver them right away
+     * @param retries the number of times the messages have been requeued
+     * @return the number of messages sent; less than the number of messages
+     * if sending failed part way through
+     */
+    private int queueIngestMessages(List<IngestMessage> ingestMessages, long deliveryDelay, int retries) {
+        int sent = 0;
+        QueueConnection conn = null;
+        QueueSession session = null;
+        QueueSender sender = null;
+
+        try {
+            conn = factory.createQueueConnection();
+            session = conn.createQueueSession(false, 0);
+            sender = session.createSender(queue);
+            if (deliveryDelay > 0) {
+                sender.setDeliveryDelay(deliveryDelay);
+            }
+
+            for (IngestMessage ingestMessage : ingestMessages) {
+                Message queueMessage = session.createObjectMessage(ingestMessage);
+                if (retries > 0) {
+                    queueMessage.setIntProperty(INGEST_RETRIES_PROPERTY, retries);
+                }
                 sender.send(queueMessage);
+                sent++;
+            }
 
-            } catch (JMSException ex) {
-                ex.printStackTrace();
-                logger.warning("Caught exception trying to close connections after starting a (re)ingest job in the JMS queue! Stack trace below.");
-                sb.append("Failed to queue the (re)ingest job for DataFile (JMS Exception)" + (ex.getMessage() != null ? ex.getMessage() : ""));
-            } finally {
-                try {
+        } catch (JMSException ex) {
+            logger.log(Level.WARNING, "Caught exception trying to queue a (re)ingest job in the JMS queue!", ex);
+        } finally {
+            try {
 
-                    if (sender != null) {
-                        sender.close();
-                    }
-                    if (session != null) {
-                        session.close();
-                    }
-                    if (conn != null) {
-                        conn.close();
-                    }
-                } catch (Exception ex) {
-                    logger.warning("Caught exception trying to close connections after starting a (re)ingest job in the JMS queue! Stack trace below.");
-                    ex.printStackTrace();
+                if (sender != null) {
+                    sender.close();
+                }
+                if (session != null) {
+                    session.close();
+                }
+                if (conn != null) {
+                    conn.close();
                 }
+            } catch (Exception ex) {
+                logger.warning("Caught exception trying to close connections after starting a (re)ingest job in the JMS queue! Stack trace below.");
+                ex.printStackTrace();
             }
         }
-        
-        return sb.toString();
+        return sent;
     }
 
     public void produceSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
@@ -2095,6 +2161,28 @@ public class IngestServiceBean {
         }
     }
     
+    // This method generates the download formats listed in the 
+    // dataverse.ingest.pregenerate-formats setting (for example, RData) for a 
+    // newly ingested tabular file, so that they are already cached by the time 
+    // the first users ask for them. 
+    // Note the @Asynchronous attribute - the ingest does not wait for this. 
+    @Asynchronous
+    public void pregenerateFormats(Long datafileId) {
+        String[] formats = JvmSettings.INGEST_PREGENERATE_FORMATS.lookupOptional(String[].class).orElse(new String[0]);
+        if (formats.length == 0) {
+            return;
+        }
+        DataFile dataFile = fileService.find(datafileId);
+        if (dataFile == null || !dataFile.isTabularData()) {
+            return;
+        }
+        for (String format : formats) {
+            if (DataConverter.pregenerateFormat(dataFile, format.trim())) {
+                logger.fine("Pregenerated format " + format + " for datafile " + datafileId);
+            }
+        }
+    }
+
     // This method takes a list of file ids, checks the format type of the ingested 
     // original, and attempts to fix it if it's missing. 
     // Note the @Asynchronous attribute - this allows us to just kick off and run this 
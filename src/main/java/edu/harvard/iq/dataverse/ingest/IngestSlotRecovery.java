@@ -0,0 +1,39 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+/**
+ * Frees, when the application starts, the ingest slots left behind by the
+ * work units that were running on this server when it was last stopped or
+ * redeployed, so that they don't count against the caps on the number of
+ * files ingested at once. See {@link IngestProgressServiceBean}.
+ */
+@Singleton
+@Startup
+@DependsOn("StartupFlywayMigrator")
+public class IngestSlotRecovery {
+
+    private static final Logger logger = Logger.getLogger(IngestSlotRecovery.class.getCanonicalName());
+
+    @EJB
+    IngestProgressServiceBean ingestProgressService;
+
+    @PostConstruct
+    public void releaseLeakedSlots() {
+        try {
+            int released = ingestProgressService.releaseLocalSlots();
+            if (released > 0) {
+                logger.info("Freed " + released + " ingest slot(s) left behind on " + IngestProgressServiceBean.INSTANCE_ID);
+            }
+        } catch (Exception ex) {
+            // They will expire eventually
+            logger.log(Level.WARNING, "Failed to free the ingest slots left behind on " + IngestProgressServiceBean.INSTANCE_ID, ex);
+        }
+    }
+}
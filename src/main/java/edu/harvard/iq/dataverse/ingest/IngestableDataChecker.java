@@ -149,7 +149,7 @@ public class IngestableDataChecker implements java.io.Serializable {
      *
      *
      */
-    public String testSAVformat(MappedByteBuffer buff) {
+    public String testSAVformat(ByteBuffer buff) {
         String result = null;
         buff.rewind();
         boolean DEBUG = false;
@@ -192,7 +192,7 @@ public class IngestableDataChecker implements java.io.Serializable {
      * test this byte buffer against STATA DTA spec
      *
      */
-    public String testDTAformat(MappedByteBuffer buff) {
+    public String testDTAformat(ByteBuffer buff) {
         String result = null;
         buff.rewind();
         boolean DEBUG = false;
@@ -311,7 +311,7 @@ public class IngestableDataChecker implements java.io.Serializable {
      * test this byte buffer against SAS Transport(XPT) spec
      *
      */
-    public String testXPTformat(MappedByteBuffer buff) {
+    public String testXPTformat(ByteBuffer buff) {
         String result = null;
         buff.rewind();
         boolean DEBUG = false;
@@ -359,7 +359,7 @@ public class IngestableDataChecker implements java.io.Serializable {
      * test this byte buffer against SPSS Portable (POR) spec
      *
      */
-    public String testPORformat(MappedByteBuffer buff) {
+    public String testPORformat(ByteBuffer buff) {
         String result = null;
         buff.rewind();
         boolean DEBUG = false;
@@ -525,7 +525,7 @@ public class IngestableDataChecker implements java.io.Serializable {
      * test this byte buffer against R data file
      *
      */
-    public String testRDAformat(MappedByteBuffer buff) {
+    public String testRDAformat(ByteBuffer buff) {
         String result = null;
         buff.rewind();
         
@@ -607,7 +607,6 @@ public class IngestableDataChecker implements java.io.Serializable {
 
     // public instance methods ------------------------------------------------
     public String detectTabularDataFormat(File fh) {
-        boolean DEBUG = false;
         String readableFormatType = null;
         FileChannel srcChannel = null;
         FileInputStream inp = null;
@@ -624,55 +623,7 @@ public class IngestableDataChecker implements java.io.Serializable {
             
             //this.printHexDump(buff, "hex dump of the byte-buffer");
 
-            buff.rewind();
-            dbgLog.fine("before the for loop");
-            for (String fmt : this.getTestFormatSet()) {
-                
-                // get a test method
-                Method mthd = testMethods.get(fmt);
-                //dbgLog.info("mthd: " + mthd.getName());
-
-                try {
-                    // invoke this method
-                    Object retobj = mthd.invoke(this, buff);
-                    String result = (String) retobj;
-
-                    if (result != null) {
-                        dbgLog.fine("result for (" + fmt + ")=" + result);
-                        if (DEBUG) {
-                            out.println("result for (" + fmt + ")=" + result);
-                        }
-                        if (readableFileTypes.contains(result)) {
-                            readableFormatType = result;
-                        }
-                        dbgLog.fine("readableFormatType=" + readableFormatType);
-                    } else {
-                        dbgLog.fine("null was returned for " + fmt + " test");
-                        if (DEBUG) {
-                            out.println("null was returned for " + fmt + " test");
-                        }
-                    }
-                } catch (InvocationTargetException e) {
-                    Throwable cause = e.getCause();
-                    // added null check because of "homemade.zip" from https://redmine.hmdc.harvard.edu/issues/3273
-                    if (cause.getMessage() != null) {
-                        err.format(cause.getMessage());
-                        e.printStackTrace();
-                    } else {
-                        dbgLog.info("cause.getMessage() was null for " + e);
-                        e.printStackTrace();
-                    }
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                } catch (BufferUnderflowException e){
-                    dbgLog.info("BufferUnderflowException " + e);
-                    e.printStackTrace();
-                }
-                
-                if (readableFormatType != null) {
-                    break;
-                }
-            }
+            readableFormatType = detectTabularDataFormat(buff);
             
             // help garbage-collect the mapped buffer sooner, to avoid the jvm  
             // holding onto the underlying file unnecessarily:
@@ -691,6 +642,76 @@ public class IngestableDataChecker implements java.io.Serializable {
         return readableFormatType;
     }
 
+    /**
+     * Same as {@link #detectTabularDataFormat(File)}, but using the leading
+     * bytes of the file, when they have already been read (while the file was
+     * being uploaded, for example), instead of reading them from the file.
+     *
+     * @param header the first bytes of the file; all the checks only look at
+     * the first 500 bytes at most
+     */
+    public String detectTabularDataFormat(byte[] header) {
+        int buffer_size = Math.min(header.length, DEFAULT_BUFFER_SIZE);
+        return detectTabularDataFormat(ByteBuffer.wrap(Arrays.copyOf(header, buffer_size)));
+    }
+
+    private String detectTabularDataFormat(ByteBuffer buff) {
+        boolean DEBUG = false;
+        String readableFormatType = null;
+
+        buff.rewind();
+        dbgLog.fine("before the for loop");
+        for (String fmt : this.getTestFormatSet()) {
+            
+            // get a test method
+            Method mthd = testMethods.get(fmt);
+            //dbgLog.info("mthd: " + mthd.getName());
+
+            try {
+                // invoke this method
+                Object retobj = mthd.invoke(this, buff);
+                String result = (String) retobj;
+
+                if (result != null) {
+                    dbgLog.fine("result for (" + fmt + ")=" + result);
+                    if (DEBUG) {
+                        out.println("result for (" + fmt + ")=" + result);
+                    }
+                    if (readableFileTypes.contains(result)) {
+                        readableFormatType = result;
+                    }
+                    dbgLog.fine("readableFormatType=" + readableFormatType);
+                } else {
+                    dbgLog.fine("null was returned for " + fmt + " test");
+                    if (DEBUG) {
+                        out.println("null was returned for " + fmt + " test");
+                    }
+                }
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                // added null check because of "homemade.zip" from https://redmine.hmdc.harvard.edu/issues/3273
+                if (cause.getMessage() != null) {
+                    err.format(cause.getMessage());
+                    e.printStackTrace();
+                } else {
+                    dbgLog.info("cause.getMessage() was null for " + e);
+                    e.printStackTrace();
+                }
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            } catch (BufferUnderflowException e){
+                dbgLog.info("BufferUnderflowException " + e);
+                e.printStackTrace();
+            }
+            
+            if (readableFormatType != null) {
+                break;
+            }
+        }
+
+        return readableFormatType;
+    }
+
     /**
      * identify the first 5 bytes
      *
@@ -737,7 +758,7 @@ public class IngestableDataChecker implements java.io.Serializable {
         return BUFFER_SIZE;
     }
 
-    private int getGzipBufferSize(MappedByteBuffer buff) {
+    private int getGzipBufferSize(ByteBuffer buff) {
         int GZIP_BUFFER_SIZE = 120;
         /*
         note:
@@ -758,7 +779,7 @@ public class IngestableDataChecker implements java.io.Serializable {
      * dump the data buffer in HEX
      *
      */
-    public void printHexDump(MappedByteBuffer buff, String hdr) {
+    public void printHexDump(ByteBuffer buff, String hdr) {
         int counter = 0;
         if (hdr != null) {
             out.println(hdr);
@@ -0,0 +1,288 @@
+package edu.harvard.iq.dataverse.metrics;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.GuestbookResponse;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+/**
+ * Maintains the daily, per-collection counters in the metricrollup table
+ * and answers the count-based metrics from them.
+ * <p>
+ * The counters are incremented as the events happen: when collections and
+ * datasets are published, and when files are downloaded. Totals for a
+ * collection and everything under it are a single sum over the rows of its
+ * subtree, looked up in the dvobjecttree closure table; so, unlike the
+ * queries in {@link MetricsServiceBean}, none of these ever scan dvobject,
+ * datasetversion, filemetadata or guestbookresponse.
+ * <p>
+ * The counters are keyed by collection; for datasets, files and downloads
+ * that is the collection the dataset lives in. When a dataset is moved,
+ * deaccessioned or destroyed, its share of the counters is recalculated the
+ * same way {@link #rebuild()} would (see {@link #adjustDataset}).
+ * {@link #rebuild()} recalculates everything from scratch, to reconcile any
+ * other drift.
+ */
+@Stateless
+public class MetricsRollupServiceBean implements Serializable {
+
+    private static final Logger logger = Logger.getLogger(MetricsRollupServiceBean.class.getCanonicalName());
+
+    public static final String DATAVERSES = "dataverses";
+    public static final String DATASETS = "datasets";
+    public static final String FILES = "files";
+    public static final String DOWNLOADS = "downloads";
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    private EntityManager em;
+
+    /**
+     * Adds {@code delta} to the counter of the specified metric, for the
+     * specified collection and day.
+     *
+     * @param metricName one of the metric names defined above
+     * @param collectionId database id of the collection
+     * @param date day of the event
+     * @param delta value to add (may be negative)
+     */
+    public void increment(String metricName, Long collectionId, Date date, long delta) {
+        if (collectionId == null || delta == 0) {
+            return;
+        }
+        em.createNativeQuery("INSERT INTO metricrollup (metricname, collection_id, eventdate, eventcount)"
+                + " VALUES (?1, ?2, ?3, ?4)"
+                + " ON CONFLICT (metricname, collection_id, eventdate)"
+                + " DO UPDATE SET eventcount = metricrollup.eventcount + EXCLUDED.eventcount")
+                .setParameter(1, metricName)
+                .setParameter(2, collectionId)
+                .setParameter(3, new java.sql.Date((date == null ? new Date() : date).getTime()))
+                .setParameter(4, delta)
+                .executeUpdate();
+    }
+
+    public void recordDataversePublished(Dataverse dataverse) {
+        increment(DATAVERSES, dataverse.getId(), dataverse.getPublicationDate(), 1);
+    }
+
+    /**
+     * @param dataset the dataset being published
+     * @param version the version being released
+     * @param firstPublication whether this is the first release of the dataset
+     * @param fileCountDelta number of files in this version, minus the number
+     * of files in the previously released version
+     */
+    public void recordDatasetPublished(Dataset dataset, DatasetVersion version, boolean firstPublication, long fileCountDelta) {
+        if (dataset.isHarvested() || dataset.getOwner() == null) {
+            return;
+        }
+        Long collectionId = dataset.getOwner().getId();
+        if (firstPublication) {
+            increment(DATASETS, collectionId, version.getReleaseTime(), 1);
+        }
+        increment(FILES, collectionId, version.getReleaseTime(), fileCountDelta);
+    }
+
+    public void recordDownload(GuestbookResponse guestbookResponse) {
+        recordDownloads(List.of(guestbookResponse));
+    }
+
+    /**
+     * Same as {@link #recordDownload(GuestbookResponse)}, for a batch of
+     * responses; with one counter update per collection and day, in the
+     * order of both (so that concurrent batches lock the counters in the
+     * same order).
+     */
+    public void recordDownloads(List<GuestbookResponse> guestbookResponses) {
+        Map<Long, Map<LocalDate, Long>> counts = new TreeMap<>();
+        for (GuestbookResponse guestbookResponse : guestbookResponses) {
+            if (GuestbookResponse.ACCESS_REQUEST.equals(guestbookResponse.getEventType())
+                    || guestbookResponse.getDataset() == null
+                    || guestbookResponse.getDataset().getOwner() == null) {
+                continue;
+            }
+            Date responseTime = guestbookResponse.getResponseTime() == null ? new Date() : guestbookResponse.getResponseTime();
+            LocalDate day = responseTime.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+            counts.computeIfAbsent(guestbookResponse.getDataset().getOwner().getId(), k -> new TreeMap<>())
+                    .merge(day, 1L, Long::sum);
+        }
+        counts.forEach((collectionId, days) -> days.forEach((day, count)
+                -> increment(DOWNLOADS, collectionId, Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant()), count)));
+    }
+
+    /**
+     * To be called before the dataset is moved from one collection to another
+     * (or after; the share of the counters of the dataset does not depend on
+     * its owner).
+     */
+    public void recordDatasetMoved(Dataset dataset, Dataverse origin, Dataverse destination) {
+        adjustDataset(dataset, origin.getId(), -1, true);
+        adjustDataset(dataset, destination.getId(), 1, true);
+    }
+
+    /**
+     * To be called around a change to the released versions of a dataset
+     * other than a publication, such as a deaccession: before the change,
+     * with {@code added} false, and once it has been flushed to the database,
+     * with {@code added} true.
+     */
+    public void recordDatasetReleases(Dataset dataset, boolean added) {
+        adjustDataset(dataset, dataset.getOwner().getId(), added ? 1 : -1, false);
+    }
+
+    /**
+     * To be called before anything of the dataset is removed from the database.
+     */
+    public void recordDatasetDestroyed(Dataset dataset) {
+        adjustDataset(dataset, dataset.getOwner().getId(), -1, true);
+    }
+
+    /**
+     * Adds the share of the dataset, as it is in the database - its first
+     * release and the changes in its number of files with each release, and
+     * optionally its downloads - to the counters of a collection; or takes it
+     * away, with a negative {@code sign}. This is calculated the same way as in
+     * rebuildmetricrollups(), see V6.4.0.2__metricrollup.sql.
+     */
+    private void adjustDataset(Dataset dataset, Long collectionId, int sign, boolean withDownloads) {
+        if (dataset.getId() == null || collectionId == null) {
+            return;
+        }
+        String downloads = !withDownloads ? "" : " UNION ALL"
+                + " SELECT 'downloads', responsedate, COUNT(*)"
+                + " FROM (SELECT COALESCE(CAST(responsetime AS date),"
+                + " (SELECT CAST(date_trunc('month', MIN(responsetime)) - interval '1 month' AS date) FROM guestbookresponse)) AS responsedate"
+                + " FROM guestbookresponse"
+                + " WHERE dataset_id = ?1 AND eventtype != '" + GuestbookResponse.ACCESS_REQUEST + "') responses"
+                + " GROUP BY responsedate";
+        em.createNativeQuery("INSERT INTO metricrollup (metricname, collection_id, eventdate, eventcount)"
+                + " SELECT metricname, ?2, eventdate, ?3 * eventcount FROM ("
+                + " SELECT 'datasets' AS metricname, CAST(MIN(datasetversion.releasetime) AS date) AS eventdate, CAST(1 AS bigint) AS eventcount"
+                + " FROM datasetversion JOIN dataset ON dataset.id = datasetversion.dataset_id"
+                + " WHERE datasetversion.dataset_id = ?1"
+                + " AND datasetversion.versionstate = 'RELEASED' AND datasetversion.releasetime IS NOT NULL"
+                + " AND dataset.harvestingclient_id IS NULL"
+                + " HAVING COUNT(*) > 0"
+                + " UNION ALL"
+                + " SELECT 'files', releasedate, CAST(SUM(delta) AS bigint)"
+                + " FROM (SELECT CAST(datasetversion.releasetime AS date) AS releasedate,"
+                + " COUNT(filemetadata.id) - COALESCE(LAG(COUNT(filemetadata.id)) OVER ("
+                + " ORDER BY datasetversion.versionnumber, datasetversion.minorversionnumber), 0) AS delta"
+                + " FROM datasetversion JOIN dataset ON dataset.id = datasetversion.dataset_id"
+                + " LEFT JOIN filemetadata ON filemetadata.datasetversion_id = datasetversion.id"
+                + " WHERE datasetversion.dataset_id = ?1"
+                + " AND datasetversion.versionstate = 'RELEASED' AND datasetversion.releasetime IS NOT NULL"
+                + " AND dataset.harvestingclient_id IS NULL"
+                + " GROUP BY datasetversion.id, datasetversion.versionnumber, datasetversion.minorversionnumber, datasetversion.releasetime) deltas"
+                + " GROUP BY releasedate HAVING SUM(delta) != 0"
+                + downloads
+                + ") contributions"
+                + " WHERE eventdate IS NOT NULL"
+                + " ON CONFLICT (metricname, collection_id, eventdate)"
+                + " DO UPDATE SET eventcount = metricrollup.eventcount + EXCLUDED.eventcount")
+                .setParameter(1, dataset.getId())
+                .setParameter(2, collectionId)
+                .setParameter(3, sign)
+                .executeUpdate();
+    }
+
+    /**
+     * @return whether there are any counters for the metric; if not (say,
+     * because they have been dropped for a rebuild), the metric is
+     * calculated the old way.
+     */
+    public boolean isPopulated(String metricName) {
+        return (Boolean) em.createNativeQuery("SELECT EXISTS (SELECT 1 FROM metricrollup WHERE metricname = ?1)")
+                .setParameter(1, metricName)
+                .getSingleResult();
+    }
+
+    /**
+     * @param metricName the metric
+     * @param yyyymm Month in YYYY-MM format.
+     * @param d the collection at the top of the subtree, or null for the whole installation
+     * @param includeSelf whether the counters of {@code d} itself should be included
+     * @return the total up to, and including, the specified month
+     */
+    public long toMonth(String metricName, String yyyymm, Dataverse d, boolean includeSelf) {
+        Query query = em.createNativeQuery(""
+                + "select cast(coalesce(sum(eventcount), 0) as bigint)\n"
+                + "from metricrollup\n"
+                + "where metricname = '" + metricName + "'\n"
+                + "and eventdate < to_date('" + yyyymm + "','YYYY-MM') + interval '1 month'\n"
+                + getSubtreeClause(d, includeSelf) + ";");
+        logger.log(Level.FINE, "Metric rollup query: {0}", query);
+        return ((Number) query.getSingleResult()).longValue();
+    }
+
+    /**
+     * @param metricName the metric
+     * @param days number of days, including today
+     * @param d the collection at the top of the subtree, or null for the whole installation
+     * @param includeSelf whether the counters of {@code d} itself should be included
+     * @return the total over the specified number of past days
+     */
+    public long pastDays(String metricName, int days, Dataverse d, boolean includeSelf) {
+        Query query = em.createNativeQuery(""
+                + "select cast(coalesce(sum(eventcount), 0) as bigint)\n"
+                + "from metricrollup\n"
+                + "where metricname = '" + metricName + "'\n"
+                + "and eventdate >= current_date - " + days + "\n"
+                + getSubtreeClause(d, includeSelf) + ";");
+        logger.log(Level.FINE, "Metric rollup query: {0}", query);
+        return ((Number) query.getSingleResult()).longValue();
+    }
+
+    /**
+     * @param metricName the metric
+     * @param d the collection at the top of the subtree, or null for the whole installation
+     * @param includeSelf whether the counters of {@code d} itself should be included
+     * @return (YYYY-MM, count) pairs, in the form expected by {@link MetricsUtil#timeSeriesToJson(List)}
+     */
+    public List<Object[]> monthlyCounts(String metricName, Dataverse d, boolean includeSelf) {
+        Query query = em.createNativeQuery(""
+                + "select to_char(eventdate, 'YYYY-MM') as date, cast(sum(eventcount) as bigint)\n"
+                + "from metricrollup\n"
+                + "where metricname = '" + metricName + "'\n"
+                + getSubtreeClause(d, includeSelf)
+                + "group by to_char(eventdate, 'YYYY-MM') order by to_char(eventdate, 'YYYY-MM');");
+        logger.log(Level.FINE, "Metric rollup query: {0}", query);
+        return query.getResultList();
+    }
+
+    /**
+     * Recalculates all the counters from scratch.
+     *
+     * @return number of counter rows
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public long rebuild() {
+        logger.info("Rebuilding the metric rollups");
+        long rows = ((Number) em.createNativeQuery("SELECT rebuildmetricrollups();").getSingleResult()).longValue();
+        logger.info("Rebuilt the metric rollups; " + rows + " counters");
+        return rows;
+    }
+
+    private String getSubtreeClause(Dataverse d, boolean includeSelf) {
+        if (d == null) {
+            return "";
+        }
+        return "and collection_id in (select descendant_id from dvobjecttree where ancestor_id = " + d.getId()
+                + (includeSelf ? "" : " and depth > 0") + ")\n";
+    }
+}
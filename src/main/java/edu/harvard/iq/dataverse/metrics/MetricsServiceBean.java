@@ -5,6 +5,7 @@ import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.GuestbookResponse;
 import edu.harvard.iq.dataverse.Metric;
 import edu.harvard.iq.dataverse.makedatacount.MakeDataCountUtil.MetricType;
+import edu.harvard.iq.dataverse.util.SingleFlight;
 
 import static edu.harvard.iq.dataverse.metrics.MetricsUtil.*;
 import edu.harvard.iq.dataverse.util.SystemConfig;
@@ -20,7 +21,10 @@ import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jakarta.ejb.EJB;
@@ -44,15 +48,29 @@ public class MetricsServiceBean implements Serializable {
 
     private static final SimpleDateFormat yyyymmFormat = new SimpleDateFormat(MetricsUtil.YEAR_AND_MONTH_PATTERN);
 
+    // How long concurrent callers wait for somebody else's recalculation of an
+    // expired metric, before giving up and running the query themselves:
+    private static final long RECOMPUTE_WAIT_SECONDS = 60;
+    private static final SingleFlight<String, String> recomputes = new SingleFlight<>(TimeUnit.SECONDS.toMillis(RECOMPUTE_WAIT_SECONDS));
+    // The recalculations the current thread was asked to do, and has not
+    // saved yet (see releaseRecompute):
+    private static final ThreadLocal<Set<String>> leading = ThreadLocal.withInitial(HashSet::new);
+
     @PersistenceContext(unitName = "VDCNet-ejbPU")
-    private EntityManager em;
+    EntityManager em;
     @EJB
     SystemConfig systemConfig;
+    @EJB
+    MetricsRollupServiceBean rollups;
 
     /** Dataverses */
 
 
     public JsonArray getDataversesTimeSeries(UriInfo uriInfo, Dataverse d) {
+        List<Object[]> counts = rollups.monthlyCounts(MetricsRollupServiceBean.DATAVERSES, d, true);
+        if (!counts.isEmpty()) {
+            return MetricsUtil.timeSeriesToJson(counts);
+        }
         Query query = em.createNativeQuery(""
                 + "select distinct to_char(date_trunc('month', dvobject.publicationdate),'YYYY-MM') as month, count(date_trunc('month', dvobject.publicationdate))\n"
                 + "from dataverse\n"
@@ -70,6 +88,10 @@ public class MetricsServiceBean implements Serializable {
      * @param d
      */
     public long dataversesToMonth(String yyyymm, Dataverse d) {
+        if (rollups.isPopulated(MetricsRollupServiceBean.DATAVERSES)) {
+            // (the parent dataverse itself is not counted)
+            return rollups.toMonth(MetricsRollupServiceBean.DATAVERSES, yyyymm, d, false);
+        }
         Query query = em.createNativeQuery(""
                 + "select count(dvobject.id)\n"
                 + "from dataverse\n"
@@ -84,6 +106,9 @@ public class MetricsServiceBean implements Serializable {
     }
 
     public long dataversesPastDays(int days, Dataverse d) {
+        if (rollups.isPopulated(MetricsRollupServiceBean.DATAVERSES)) {
+            return rollups.pastDays(MetricsRollupServiceBean.DATAVERSES, days, d, false);
+        }
         Query query = em.createNativeQuery(""
                 + "select count(dvobject.id)\n"
                 + "from dataverse\n"
@@ -131,6 +156,13 @@ public class MetricsServiceBean implements Serializable {
 
 
     public JsonArray getDatasetsTimeSeries(UriInfo uriInfo, String dataLocation, Dataverse d) {
+        // Only the local datasets are counted in the rollups:
+        if (DATA_LOCATION_LOCAL.equals(dataLocation)) {
+            List<Object[]> counts = rollups.monthlyCounts(MetricsRollupServiceBean.DATASETS, d, true);
+            if (!counts.isEmpty()) {
+                return MetricsUtil.timeSeriesToJson(counts);
+            }
+        }
         Query query = em.createNativeQuery(
                 "select distinct date, count(dataset_id)\n"
                 + "from (\n"
@@ -156,6 +188,10 @@ public class MetricsServiceBean implements Serializable {
      * @param d
      */
     public long datasetsToMonth(String yyyymm, String dataLocation, Dataverse d) {
+        // Only the local datasets are counted in the rollups:
+        if (DATA_LOCATION_LOCAL.equals(dataLocation) && rollups.isPopulated(MetricsRollupServiceBean.DATASETS)) {
+            return rollups.toMonth(MetricsRollupServiceBean.DATASETS, yyyymm, d, true);
+        }
         String dataLocationLine = "(date_trunc('month', releasetime) <=  to_date('" + yyyymm + "','YYYY-MM') and dataset.harvestingclient_id IS NULL)\n";
 
         if (!DATA_LOCATION_LOCAL.equals(dataLocation)) { // Default api state is DATA_LOCATION_LOCAL
@@ -258,6 +294,8 @@ public class MetricsServiceBean implements Serializable {
     }
 
     public long datasetsPastDays(int days, String dataLocation, Dataverse d) {
+        // (not answered from the rollups: these count the datasets with any
+        // release in the past days, the rollups only their first releases)
         String dataLocationLine = "(releasetime > current_date - interval '" + days + "' day and dataset.harvestingclient_id IS NULL)\n";
 
         if (!DATA_LOCATION_LOCAL.equals(dataLocation)) { // Default api state is DATA_LOCATION_LOCAL
@@ -296,6 +334,8 @@ public class MetricsServiceBean implements Serializable {
      * @param d
      */
     public JsonArray filesTimeSeries(Dataverse d) {
+        // (not answered from the rollups, which hold the net change in the
+        // number of files with each release, not the files added)
         Query query = em.createNativeQuery(
                 "select distinct date, count(id)\n"
                         + "from (\n"
@@ -318,6 +358,12 @@ public class MetricsServiceBean implements Serializable {
      * @param d
      */
     public long filesToMonth(String yyyymm, Dataverse d) {
+        if (rollups.isPopulated(MetricsRollupServiceBean.FILES)) {
+            // The rollups hold the change in the number of files with each release,
+            // so the sum up to the month is the number of files in the latest
+            // released versions as of that month:
+            return rollups.toMonth(MetricsRollupServiceBean.FILES, yyyymm, d, true);
+        }
         Query query = em.createNativeQuery(""
                 + "select count(*)\n"
                 + "from filemetadata\n"
@@ -341,6 +387,8 @@ public class MetricsServiceBean implements Serializable {
     }
 
     public long filesPastDays(int days, Dataverse d) {
+        // (not answered from the rollups: these count the files in the
+        // datasets released in the past days, not the change in their number)
         Query query = em.createNativeQuery(""
                 + "select count(*)\n"
                 + "from filemetadata\n"
@@ -411,6 +459,10 @@ public class MetricsServiceBean implements Serializable {
 
     public JsonArray downloadsTimeSeries(Dataverse d) {
         // ToDo - published only?
+        List<Object[]> counts = rollups.monthlyCounts(MetricsRollupServiceBean.DOWNLOADS, d, true);
+        if (!counts.isEmpty()) {
+            return MetricsUtil.timeSeriesToJson(counts);
+        }
         Query earlyDateQuery = em.createNativeQuery(""
                 + "select responsetime from guestbookresponse\n"
                 + "ORDER BY responsetime LIMIT 1;");
@@ -441,6 +493,11 @@ public class MetricsServiceBean implements Serializable {
      */
     public long downloadsToMonth(String yyyymm, Dataverse d) throws ParseException {
         // ToDo - published only?
+        if (rollups.isPopulated(MetricsRollupServiceBean.DOWNLOADS)) {
+            // (historic downloads without a date are counted in the month prior
+            // to the first dated one, see V6.4.0.2__metricrollup.sql)
+            return rollups.toMonth(MetricsRollupServiceBean.DOWNLOADS, yyyymm, d, true);
+        }
         Query earlyDateQuery = em.createNativeQuery(""
                 + "select responsetime from guestbookresponse\n"
                + "ORDER BY responsetime LIMIT 1;"
@@ -476,6 +533,9 @@ public class MetricsServiceBean implements Serializable {
 
     public long downloadsPastDays(int days, Dataverse d) {
         // ToDo - published only?
+        if (rollups.isPopulated(MetricsRollupServiceBean.DOWNLOADS)) {
+            return rollups.pastDays(MetricsRollupServiceBean.DOWNLOADS, days, d, true);
+        }
         Query query = em.createNativeQuery(""
                 + "select count(id)\n"
                 + "from guestbookresponse\n"
@@ -659,7 +719,7 @@ public class MetricsServiceBean implements Serializable {
         if (!doWeQueryAgainDayBased(queriedMetric)) {
             return queriedMetric.getValueJson();
         }
-        return null;
+        return awaitConcurrentRecompute(metricName, dataLocation, days, d);
     }
 
     public String returnUnexpiredCacheMonthly(String metricName, String yyyymm, String dataLocation, Dataverse d) {
@@ -668,7 +728,7 @@ public class MetricsServiceBean implements Serializable {
         if (!doWeQueryAgainMonthly(queriedMetric)) {
             return queriedMetric.getValueJson();
         }
-        return null;
+        return awaitConcurrentRecompute(metricName, dataLocation, yyyymm, d);
     }
 
     public String returnUnexpiredCacheAllTime(String metricName, String dataLocation, Dataverse d) {
@@ -677,7 +737,56 @@ public class MetricsServiceBean implements Serializable {
         if (!doWeQueryAgainAllTime(queriedMetric)) {
             return queriedMetric.getValueJson();
         }
-        return null;
+        return awaitConcurrentRecompute(metricName, dataLocation, null, d);
+    }
+
+    /**
+     * Makes sure that only one caller at a time recalculates an expired metric:
+     * the first one gets null (meaning "run the query, and save the result");
+     * any concurrent callers wait for that result to be saved, and get it
+     * from {@link #completeRecompute}, instead of running the same query again.
+     * The first caller must call {@link #releaseRecompute} when done, whether
+     * it saved the result or not.
+     */
+    private String awaitConcurrentRecompute(String metricName, String dataLocation, String dayString, Dataverse d) {
+        String key = getRecomputeKey(metricName, dataLocation, dayString, d);
+        if (recomputes.tryLead(key)) {
+            leading.get().add(key);
+            return null;
+        }
+        logger.fine("Waiting for a concurrent recalculation of metric " + key);
+        return recomputes.awaitResult(key, RECOMPUTE_WAIT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * To be called by whoever got null from one of the returnUnexpiredCache
+     * methods, once the new value has been saved (that is, after
+     * {@link #save(Metric)} has returned, and its transaction committed): the
+     * concurrent callers waiting for it are handed the value.
+     */
+    public void completeRecompute(String metricName, String dayString, String dataLocation, Dataverse d, String valueJson) {
+        String key = getRecomputeKey(metricName, dataLocation, dayString, d);
+        if (leading.get().remove(key)) {
+            recomputes.complete(key, valueJson);
+        }
+    }
+
+    /**
+     * To be called, in a finally block, by whoever got null from one of the
+     * returnUnexpiredCache methods: if the metric was not saved (because the
+     * query failed, for example), the concurrent callers waiting for it are
+     * told to run the query themselves, rather than wait for the full
+     * {@value #RECOMPUTE_WAIT_SECONDS} seconds.
+     */
+    public void releaseRecompute(String metricName, String dayString, String dataLocation, Dataverse d) {
+        String key = getRecomputeKey(metricName, dataLocation, dayString, d);
+        if (leading.get().remove(key)) {
+            recomputes.abandon(key);
+        }
+    }
+
+    private static String getRecomputeKey(String metricName, String dataLocation, String dayString, Dataverse d) {
+        return metricName + ":" + dataLocation + ":" + dayString + ":" + (d == null ? "" : d.getId());
     }
 
     // For day based metrics we check to see if the metric has been pulled today
@@ -818,26 +927,19 @@ public class MetricsServiceBean implements Serializable {
     private List<Integer> getChildrenIdsRecursively(Long dvId, String dtype, DatasetVersion.VersionState versionState) {
 
         //Intended to be called only with dvId != null
-        String sql = "WITH RECURSIVE querytree AS (\n"
-                + "     SELECT id, dtype, owner_id, publicationdate\n"
-                + "     FROM dvobject\n"
-                + "     WHERE id = " + dvId + "\n"
-                + "     UNION ALL\n"
-                + "     SELECT e.id, e.dtype, e.owner_id, e.publicationdate\n"
-                + "     FROM dvobject e\n"
-                + "     INNER JOIN querytree qtree ON qtree.id = e.owner_id\n"
-                + ")\n"
-                + "SELECT id\n"
-                + "FROM querytree\n"
-                + "where dtype='" + dtype + "' and owner_id is not null\n";
+        String sql = "SELECT o.id\n"
+                + "FROM dvobjecttree t, dvobject o\n"
+                + "WHERE t.ancestor_id = " + dvId + "\n"
+                + "and o.id = t.descendant_id\n"
+                + "and o.dtype='" + dtype + "' and o.owner_id is not null\n";
         //TODO: DEACCESSIONED datasets still have a publication date - should check versionstate explicitly?
         if (versionState != null) {
             switch (versionState) {
             case RELEASED:
-                sql += "and publicationdate is not null\n";
+                sql += "and o.publicationdate is not null\n";
                 break;
             case DRAFT:
-                sql += "and publicationdate is null\n";
+                sql += "and o.publicationdate is null\n";
                 break;
             }
         }
@@ -885,32 +987,25 @@ public class MetricsServiceBean implements Serializable {
     }
 
     private List<Object[]> getDataversesChildrenRecursively(Dataverse d, String yyyymm, DatasetVersion.VersionState versionState) {
-        String sql = "WITH RECURSIVE querytree AS (\n"
-                + "     SELECT id, dtype, owner_id, publicationdate, 0 as depth\n"
-                + "     FROM dvobject\n"
-                + "     WHERE id =" + ((d == null) ? "1" : d.getId() + " \n")
-                + "     UNION ALL\n"
-                + "     SELECT e.id, e.dtype, e.owner_id, e.publicationdate, depth+ 1\n"
-                + "     FROM dvobject e\n"
-                + "     INNER JOIN querytree qtree ON qtree.id = e.owner_id\n"
-                + ")\n"
-                + "SELECT qt.id, depth, dv.alias, dv.name, coalesce(qt.owner_id,0) as ownerId\n"
-                + "FROM querytree qt, dataverse dv\n"
-                + "where dtype='Dataverse'\n"
+        String sql = "SELECT qt.id, t.depth, dv.alias, dv.name, coalesce(qt.owner_id,0) as ownerId\n"
+                + "FROM dvobjecttree t, dvobject qt, dataverse dv\n"
+                + "where t.ancestor_id = " + ((d == null) ? "1" : d.getId()) + "\n"
+                + "and qt.id = t.descendant_id\n"
+                + "and qt.dtype='Dataverse'\n"
                 + "and qt.id=dv.id\n";
 
         //TODO: DEACCESSIONED datasets still have a publication date - should check versionstate explicitly?
         if (versionState != null) {
             switch (versionState) {
             case RELEASED:
-                sql += " and date_trunc('month', publicationdate) <=  to_date('" + yyyymm + "','YYYY-MM')\n";
+                sql += " and date_trunc('month', qt.publicationdate) <=  to_date('" + yyyymm + "','YYYY-MM')\n";
                 break;
             case DRAFT:
-                sql += " and date_trunc('month', createdate) <=  to_date('" + yyyymm + "','YYYY-MM')\n";
+                sql += " and date_trunc('month', qt.createdate) <=  to_date('" + yyyymm + "','YYYY-MM')\n";
                 break;
             }
         }
-        sql = sql + "order by depth desc, ownerId asc;";
+        sql = sql + "order by t.depth desc, ownerId asc;";
 
         logger.fine("query  - getDataversesChildrenRecursively: " + sql);
         return em.createNativeQuery(sql).getResultList();
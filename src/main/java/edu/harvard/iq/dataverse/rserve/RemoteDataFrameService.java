@@ -79,7 +79,6 @@ public class RemoteDataFrameService {
     // ready to be overridden by a sysadmin
     private final String RSERVE_HOST;
     private final String RSERVE_USER;
-    private final String RSERVE_PWD;
     private final int    RSERVE_PORT;
     private final String RSERVE_TMP_DIR;
         
@@ -96,7 +95,6 @@ public class RemoteDataFrameService {
         // these here means the setting can be changed dynamically without too much overhead.
         this.RSERVE_HOST = JvmSettings.RSERVE_HOST.lookup();
         this.RSERVE_USER = JvmSettings.RSERVE_USER.lookup();
-        this.RSERVE_PWD = JvmSettings.RSERVE_PASSWORD.lookup();
         this.RSERVE_PORT = JvmSettings.RSERVE_PORT.lookup(Integer.class);
         this.RSERVE_TMP_DIR = JvmSettings.RSERVE_TEMPDIR.lookup();
         
@@ -118,8 +116,10 @@ public class RemoteDataFrameService {
     public Map<String, String> directConvert(File originalFile, String fmt){
         
         Map<String, String> result = new HashMap<>();
+        RConnection connection = null;
+        boolean succeeded = false;
         try {
-            RConnection connection = setupConnection();
+            connection = setupConnection();
             // send the data file to the Rserve side:
             InputStream inFile = new BufferedInputStream(new FileInputStream(originalFile));
 
@@ -158,12 +158,13 @@ public class RemoteDataFrameService {
             
             String deleteLine = "file.remove('"+tempFileNameIn+"')";
             connection.eval(deleteLine);
- 
-            connection.close();
+            succeeded = true;
         
         } catch (IOException | REXPMismatchException | RserveException e) {
             logger.severe(e.getMessage());
             result.put("RexecError", "true");
+        } finally {
+            releaseConnection(connection, succeeded);
         }
         
         return result;
@@ -184,9 +185,11 @@ public class RemoteDataFrameService {
         logger.fine("RemoteDataFrameService: execute() starts here.");
     
         Map<String, String> result = new HashMap<>();
+        RConnection connection = null;
+        boolean succeeded = false;
         
         try {
-            RConnection connection = setupConnection();
+            connection = setupConnection();
             // send the data file to the Rserve side:
             InputStream inFile = new BufferedInputStream(new FileInputStream(
                                      jobRequest.getTabularDataFileName()));
@@ -462,9 +465,12 @@ public class RemoteDataFrameService {
             logger.fine("wbFileSize="+wbFileSize);
             
             result.putAll(buildResult(connection, dsnprfx, wbFileSize, result));
+            succeeded = true;
         } catch (Exception e) {
             logger.severe(e.getMessage());
             result.put("RexecError", "true");
+        } finally {
+            releaseConnection(connection, succeeded);
         }
         
         return result;
@@ -491,25 +497,34 @@ public class RemoteDataFrameService {
         
         String deleteLine = "file.remove('"+tempFileNameIn+"')";
         connection.eval(deleteLine);
-        connection.close();
         return result;
     }
 
-    private RConnection setupConnection() throws REXPMismatchException, RserveException {
-        // Set up an Rserve connection
+    private RConnection setupConnection() throws RserveException {
+        // Get an Rserve connection from the pool
         logger.fine("RSERVE_USER="+RSERVE_USER+"[default=rserve]");
-        logger.fine("RSERVE_PASSWORD="+RSERVE_PWD+"[default=rserve]");
         logger.fine("RSERVE_PORT="+RSERVE_PORT+"[default=6311]");
         logger.fine("RSERVE_HOST="+RSERVE_HOST);
-        RConnection connection = new RConnection(RSERVE_HOST, RSERVE_PORT);
-        connection.login(RSERVE_USER, RSERVE_PWD);
-        logger.fine(">" + connection.eval("R.version$version.string").asString() + "<");
+        RConnection connection = RserveConnectionPool.getInstance().borrow();
         // check working directories
         // This needs to be done *before* we try to create any files
         // there!
         setupWorkingDirectory(connection);
         return connection;
     }
+
+    /**
+     * Gives a connection obtained from {@link #setupConnection()} back to
+     * the pool; or, if the job failed part way through, closes it, since it
+     * may be left in an unknown state.
+     */
+    private void releaseConnection(RConnection connection, boolean succeeded) {
+        if (succeeded) {
+            RserveConnectionPool.getInstance().release(connection);
+        } else {
+            RserveConnectionPool.getInstance().invalidate(connection);
+        }
+    }
     
     public void setupWorkingDirectory(RConnection connection) {
         
@@ -533,18 +548,14 @@ public class RemoteDataFrameService {
         }
 
         File preprocessedDataFile = null; 
+        RConnection connection = null;
+        boolean succeeded = false;
         
         try {
             
             // Set up an Rserve connection
             
-            RConnection connection = new RConnection(RSERVE_HOST, RSERVE_PORT);
-
-            connection.login(RSERVE_USER, RSERVE_PWD);            
-            // check working directories
-            // This needs to be done *before* we try to create any files 
-            // there!
-            setupWorkingDirectory(connection);
+            connection = setupConnection();
             
             // send the tabular data file to the Rserve side:
             
@@ -603,11 +614,12 @@ public class RemoteDataFrameService {
             
             String deleteLine = "file.remove('"+tempFileNameOut+"')";
             connection.eval(deleteLine);
-            
-            connection.close();
+            succeeded = true;
         } catch (Exception ex){
             ex.printStackTrace();
             return null ;
+        } finally {
+            releaseConnection(connection, succeeded);
         }
 
             
@@ -0,0 +1,261 @@
+package edu.harvard.iq.dataverse.rserve;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+/**
+ * A pool of logged-in Rserve connections, shared by all the
+ * {@link RemoteDataFrameService} instances, so that a format conversion does
+ * not have to pay for a new connection (and, on the Rserve side, the fork of a
+ * new R process) every time.
+ * <p>
+ * At most {@code dataverse.rserve.pool.max-size} connections are open at the
+ * same time; {@link #borrow()} waits up to {@code dataverse.rserve.pool.wait-timeout}
+ * seconds for one to be returned when they are all in use. Idle connections are
+ * checked before they are handed out again, and closed once they have been
+ * idle for longer than {@code dataverse.rserve.pool.idle-timeout} seconds. On
+ * the way back into the pool, the R workspace of the connection is cleared, so
+ * that no data is carried over from one job to the next.
+ * <p>
+ * Every connection handed out by {@link #borrow()} must be given back with
+ * {@link #release(RConnection)}, or with {@link #invalidate(RConnection)} if
+ * it can't be trusted any more (after an error, for example).
+ * <p>
+ * The settings are looked up again by {@link #getInstance()}: when they have
+ * changed, a new pool is made, and the connections of the old one are closed
+ * (those still in use, when they are given back).
+ */
+public class RserveConnectionPool {
+
+    private static final Logger logger = Logger.getLogger(RserveConnectionPool.class.getCanonicalName());
+
+    private static RserveConnectionPool instance;
+
+    record Settings(String host, int port, String user, String password, int maxSize, long waitTimeoutMillis, long idleTimeoutMillis) {
+
+        static Settings lookup() {
+            return new Settings(
+                    JvmSettings.RSERVE_HOST.lookup(),
+                    JvmSettings.RSERVE_PORT.lookup(Integer.class),
+                    JvmSettings.RSERVE_USER.lookup(),
+                    JvmSettings.RSERVE_PASSWORD.lookup(),
+                    JvmSettings.RSERVE_POOL_MAX_SIZE.lookupOptional(Integer.class).orElse(8),
+                    TimeUnit.SECONDS.toMillis(JvmSettings.RSERVE_POOL_WAIT_TIMEOUT.lookupOptional(Long.class).orElse(60L)),
+                    TimeUnit.SECONDS.toMillis(JvmSettings.RSERVE_POOL_IDLE_TIMEOUT.lookupOptional(Long.class).orElse(300L)));
+        }
+    }
+
+    private static class IdleConnection {
+        final RConnection connection;
+        final long idleSince;
+
+        IdleConnection(RConnection connection) {
+            this.connection = connection;
+            this.idleSince = System.currentTimeMillis();
+        }
+    }
+
+    private final Settings settings;
+    private final String host;
+    private final int port;
+    private final String user;
+    private final String password;
+    private final long waitTimeoutMillis;
+    private final long idleTimeoutMillis;
+
+    private final Semaphore permits;
+    private final Deque<IdleConnection> idle = new ArrayDeque<>();
+    // The connections handed out, and not given back yet:
+    private final Set<RConnection> lent = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    private volatile boolean retired;
+
+    RserveConnectionPool(String host, int port, String user, String password, int maxSize, long waitTimeoutMillis, long idleTimeoutMillis) {
+        this(new Settings(host, port, user, password, maxSize, waitTimeoutMillis, idleTimeoutMillis));
+    }
+
+    RserveConnectionPool(Settings settings) {
+        this.settings = settings;
+        this.host = settings.host();
+        this.port = settings.port();
+        this.user = settings.user();
+        this.password = settings.password();
+        this.waitTimeoutMillis = settings.waitTimeoutMillis();
+        this.idleTimeoutMillis = settings.idleTimeoutMillis();
+        this.permits = new Semaphore(Math.max(settings.maxSize(), 1), true);
+    }
+
+    /**
+     * @return the pool for the Rserve configured in the {@code dataverse.rserve.*}
+     * settings, created on first use, and again whenever the settings change
+     */
+    public static synchronized RserveConnectionPool getInstance() {
+        Settings settings = Settings.lookup();
+        if (instance == null || !instance.settings.equals(settings)) {
+            if (instance != null) {
+                logger.info("The Rserve settings have changed; replacing the connection pool");
+                instance.retire();
+            }
+            instance = new RserveConnectionPool(settings);
+        }
+        return instance;
+    }
+
+    /**
+     * Closes the idle connections, and any connection given back from now on.
+     */
+    void retire() {
+        synchronized (idle) {
+            retired = true;
+            idle.forEach(candidate -> closeQuietly(candidate.connection));
+            idle.clear();
+        }
+    }
+
+    /**
+     * @return a healthy, logged-in connection; an idle one if there is one,
+     * a new one otherwise
+     * @throws RserveException if no connection could be made, or if none was
+     * returned to the pool in time
+     */
+    public RConnection borrow() throws RserveException {
+        try {
+            if (!permits.tryAcquire(waitTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new RserveException(null, "Timed out waiting for an Rserve connection");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RserveException(null, "Interrupted waiting for an Rserve connection");
+        }
+
+        try {
+            IdleConnection candidate;
+            while ((candidate = pollIdle()) != null) {
+                if (System.currentTimeMillis() - candidate.idleSince > idleTimeoutMillis) {
+                    logger.fine("Closing an Rserve connection that has been idle for too long");
+                    closeQuietly(candidate.connection);
+                } else if (isHealthy(candidate.connection)) {
+                    lent.add(candidate.connection);
+                    return candidate.connection;
+                } else {
+                    logger.fine("Discarding a broken Rserve connection");
+                    closeQuietly(candidate.connection);
+                }
+            }
+            RConnection connection = connect();
+            lent.add(connection);
+            return connection;
+        } catch (RserveException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a connection to the pool, with its R workspace cleared; or
+     * closes it, if it can't be cleared, or if it was borrowed from a pool
+     * that has been replaced since.
+     *
+     * @param connection a connection obtained from {@link #borrow()}; may be null
+     */
+    public void release(RConnection connection) {
+        if (connection == null) {
+            return;
+        }
+        if (!lent.remove(connection)) {
+            closeQuietly(connection);
+            return;
+        }
+        try {
+            if (retired) {
+                closeQuietly(connection);
+                return;
+            }
+            connection.voidEval("rm(list = ls(all.names = TRUE))");
+            synchronized (idle) {
+                if (retired) {
+                    closeQuietly(connection);
+                } else {
+                    idle.push(new IdleConnection(connection));
+                }
+            }
+        } catch (RserveException | RuntimeException e) {
+            logger.fine("Failed to reset an Rserve connection; closing it: " + e.getMessage());
+            closeQuietly(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes a connection obtained from {@link #borrow()} instead of returning
+     * it to the pool.
+     *
+     * @param connection the connection; may be null
+     */
+    public void invalidate(RConnection connection) {
+        if (connection == null) {
+            return;
+        }
+        closeQuietly(connection);
+        if (lent.remove(connection)) {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return the number of idle connections in the pool
+     */
+    public int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    RConnection connect() throws RserveException {
+        logger.fine("Opening a new Rserve connection to " + host + ":" + port);
+        RConnection connection = new RConnection(host, port);
+        try {
+            connection.login(user, password);
+        } catch (RserveException e) {
+            closeQuietly(connection);
+            throw e;
+        }
+        return connection;
+    }
+
+    boolean isHealthy(RConnection connection) {
+        if (!connection.isConnected()) {
+            return false;
+        }
+        try {
+            connection.voidEval("invisible(TRUE)");
+            return true;
+        } catch (RserveException e) {
+            return false;
+        }
+    }
+
+    private IdleConnection pollIdle() {
+        synchronized (idle) {
+            // most recently used first, so that the others can time out
+            return idle.poll();
+        }
+    }
+
+    private static void closeQuietly(RConnection connection) {
+        try {
+            connection.close();
+        } catch (RuntimeException e) {
+            logger.fine("Failed to close an Rserve connection: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+
+/**
+ * A queue of work items keyed by the object they are about (a dataset id),
+ * where the items for the same object are merged into one:
+ * <ul>
+ * <li>an item is only handed out {@code debounce} after the last request for
+ * its object, so that a burst of requests results in one item - but no
+ * later than {@code maxDelay} after the first one;</li>
+ * <li>at most one item per object is handed out at a time: an item for an
+ * object whose previous item is still being worked on waits until
+ * {@link #done(Long)} is called for it, and keeps merging the requests made
+ * in the meantime;</li>
+ * <li>at most {@code capacity} objects can have an item waiting; a request
+ * for another object blocks until there is room.</li>
+ * </ul>
+ */
+class CoalescingQueue<T> {
+
+    /**
+     * An item handed out by {@link #take()}.
+     *
+     * @param queuedAt when the first of the requests merged into the item was
+     * made, in {@link System#nanoTime()} terms
+     */
+    record Entry<T>(Long key, T item, long queuedAt) {
+    }
+
+    private static class Job<T> {
+        final Long key;
+        final long queuedAt;
+        T item;
+        long dueAt;
+
+        Job(Long key, T item, long queuedAt, long dueAt) {
+            this.key = key;
+            this.item = item;
+            this.queuedAt = queuedAt;
+            this.dueAt = dueAt;
+        }
+    }
+
+    private final long debounceNanos;
+    private final long maxDelayNanos;
+    private final int capacity;
+    private final BinaryOperator<T> merge;
+
+    // The items waiting for their time, by key, and in the order they are due:
+    private final Map<Long, Job<T>> pending = new HashMap<>();
+    private final PriorityQueue<Job<T>> due = new PriorityQueue<>(Comparator.comparingLong(j -> j.dueAt));
+    // The items waiting for the previous item of the same key to be done:
+    private final Map<Long, Job<T>> deferred = new HashMap<>();
+    private final Set<Long> running = new HashSet<>();
+
+    /**
+     * @param merge merges an item waiting in the queue (first argument) with
+     * a new one for the same key (second argument)
+     */
+    CoalescingQueue(long debounce, long maxDelay, TimeUnit unit, int capacity, BinaryOperator<T> merge) {
+        this.debounceNanos = unit.toNanos(debounce);
+        this.maxDelayNanos = Math.max(debounceNanos, unit.toNanos(maxDelay));
+        this.capacity = Math.max(1, capacity);
+        this.merge = merge;
+    }
+
+    /**
+     * Adds an item, or merges it with the one already waiting for the same
+     * key. Waits for room if the queue is full.
+     */
+    synchronized void put(Long key, T item) throws InterruptedException {
+        while (true) {
+            long now = System.nanoTime();
+            Job<T> job = deferred.get(key);
+            if (job != null) {
+                job.item = merge.apply(job.item, item);
+                return;
+            }
+            job = pending.get(key);
+            if (job != null) {
+                due.remove(job);
+                job.item = merge.apply(job.item, item);
+                job.dueAt = Math.min(now + debounceNanos, job.queuedAt + maxDelayNanos);
+                due.add(job);
+                notifyAll();
+                return;
+            }
+            if (size() < capacity) {
+                job = new Job<>(key, item, now, now + debounceNanos);
+                pending.put(key, job);
+                due.add(job);
+                notifyAll();
+                return;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Waits for an item that is due, and whose key has no other item being
+     * worked on. {@link #done(Long)} must be called once it has been worked
+     * on.
+     */
+    synchronized Entry<T> take() throws InterruptedException {
+        while (true) {
+            Job<T> head = due.peek();
+            if (head == null) {
+                wait();
+                continue;
+            }
+            long delay = head.dueAt - System.nanoTime();
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, delay);
+                continue;
+            }
+            due.poll();
+            pending.remove(head.key);
+            if (running.contains(head.key)) {
+                deferred.put(head.key, head);
+                continue;
+            }
+            running.add(head.key);
+            // There may be room for a new key
+            notifyAll();
+            return new Entry<>(head.key, head.item, head.queuedAt);
+        }
+    }
+
+    /**
+     * Waits until no item of the key is being worked on, for work on the
+     * object that does not go through the queue; {@link #done(Long)} must be
+     * called once it is done. Items of the key are held in the meantime.
+     */
+    synchronized void claim(Long key) throws InterruptedException {
+        while (running.contains(key)) {
+            wait();
+        }
+        running.add(key);
+    }
+
+    /**
+     * Records that the item of the key handed out by {@link #take()} (or
+     * the work claimed with {@link #claim(Long)}) is done; an item for the
+     * same key that was waiting for it is due right away.
+     */
+    synchronized void done(Long key) {
+        running.remove(key);
+        Job<T> job = deferred.remove(key);
+        if (job != null) {
+            job.dueAt = System.nanoTime();
+            pending.put(key, job);
+            due.add(job);
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return the number of items waiting
+     */
+    synchronized int size() {
+        return pending.size() + deferred.size();
+    }
+
+    /**
+     * @return the number of items being worked on
+     */
+    synchronized int runningCount() {
+        return running.size();
+    }
+}
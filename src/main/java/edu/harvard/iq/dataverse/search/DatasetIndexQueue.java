@@ -0,0 +1,183 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.inject.Inject;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Timer;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.eclipse.microprofile.metrics.annotation.Metric;
+
+/**
+ * Indexes datasets in the background, on a fixed number of workers running on
+ * the container's threads, for {@link IndexServiceBean#asyncIndexDataset(Dataset, boolean)}.
+ * <p>
+ * The datasets are queued by id: a dataset is indexed
+ * {@code dataverse.solr.concurrency.index-debounce} milliseconds after the
+ * last request to index it (but no later than ten times that after the
+ * first one), so a burst of edits of the same dataset results in one
+ * indexing, of its most recent state. A dataset is never indexed by two
+ * workers at the same time; a request made while it is being indexed is
+ * held until that is done. See {@link CoalescingQueue}.
+ * <p>
+ * There are {@code dataverse.solr.concurrency.max-async-indexes} workers,
+ * so Solr is not sent more than that many datasets at a time, and
+ * at most {@code index-queue-size} datasets can be waiting: when the queue is
+ * full, the request for another dataset waits for room, rather than the
+ * queue growing without bounds.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DatasetIndexQueue {
+    private static final Logger logger = Logger.getLogger(DatasetIndexQueue.class.getCanonicalName());
+
+    /**
+     * How much longer than the debounce window a dataset that keeps being
+     * requested may wait, at most.
+     */
+    static final int MAX_DELAY_FACTOR = 10;
+
+    @Resource
+    ManagedExecutorService managedExecutor;
+
+    @EJB
+    IndexServiceBean indexService;
+
+    @Inject
+    @Metric(name = "index_permit_wait_time", absolute = true, unit = MetricUnits.NANOSECONDS,
+            description = "Displays how long a dataset waits in the queue before it is indexed")
+    Timer indexPermitWaitTimer;
+
+    @Inject
+    @Metric(name = "index_time", absolute = true, unit = MetricUnits.NANOSECONDS,
+            description = "Displays how long does it take to index a dataset")
+    Timer indexTimer;
+
+    record IndexRequest(Dataset dataset, boolean doNormalSolrDocCleanUp) {
+    }
+
+    private CoalescingQueue<IndexRequest> queue;
+    private final List<Future<?>> workers = new ArrayList<>();
+    private volatile boolean shuttingDown;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, JvmSettings.MAX_ASYNC_INDEXES.lookupOptional(Integer.class).orElse(4));
+        long debounce = Math.max(0, JvmSettings.INDEX_DEBOUNCE.lookupOptional(Long.class).orElse(1000L));
+        int queueSize = JvmSettings.INDEX_QUEUE_SIZE.lookupOptional(Integer.class).orElse(10000);
+
+        // The most recent state of the dataset is indexed; the clean up is
+        // done if any of the requests asked for it
+        queue = new CoalescingQueue<>(debounce, debounce * MAX_DELAY_FACTOR, TimeUnit.MILLISECONDS, queueSize,
+                (queued, requested) -> new IndexRequest(requested.dataset(),
+                        queued.doNormalSolrDocCleanUp() || requested.doNormalSolrDocCleanUp()));
+
+        logger.info("Starting dataset indexing with " + threads + " workers");
+        for (int i = 0; i < threads; i++) {
+            workers.add(managedExecutor.submit(this::work));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        if (queue != null) {
+            logger.info("Stopping dataset indexing; " + queue.size() + " datasets were still queued");
+        }
+        workers.forEach(worker -> worker.cancel(true));
+    }
+
+    /**
+     * Queues a dataset for indexing, or updates the request already queued
+     * for it. Waits if the queue is full.
+     */
+    public void enqueue(Dataset dataset, boolean doNormalSolrDocCleanUp) {
+        try {
+            queue.put(dataset.getId(), new IndexRequest(dataset, doNormalSolrDocCleanUp));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            String failureLogText = "Indexing failed: interrupted. You can kickoff a re-index of this dataset with: \r\n curl http://localhost:8080/api/admin/index/datasets/" + dataset.getId().toString();
+            failureLogText += "\r\n" + e.getLocalizedMessage();
+            LoggingUtil.writeOnSuccessFailureLog(null, failureLogText, dataset);
+        }
+    }
+
+    /**
+     * Indexes a dataset right away, in the current thread - once it is not
+     * being indexed by a worker. Used by the batch indexing, which has its
+     * own pace.
+     */
+    public void indexNow(Dataset dataset, boolean doNormalSolrDocCleanUp) {
+        try {
+            queue.claim(dataset.getId());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            String failureLogText = "Indexing failed: interrupted. You can kickoff a re-index of this dataset with: \r\n curl http://localhost:8080/api/admin/index/datasets/" + dataset.getId().toString();
+            failureLogText += "\r\n" + e.getLocalizedMessage();
+            LoggingUtil.writeOnSuccessFailureLog(null, failureLogText, dataset);
+            return;
+        }
+        try {
+            index(dataset, doNormalSolrDocCleanUp);
+        } finally {
+            queue.done(dataset.getId());
+        }
+    }
+
+    private void work() {
+        while (!shuttingDown) {
+            CoalescingQueue.Entry<IndexRequest> entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            indexPermitWaitTimer.update(Duration.ofNanos(System.nanoTime() - entry.queuedAt()));
+            try {
+                index(entry.item().dataset(), entry.item().doNormalSolrDocCleanUp());
+            } finally {
+                queue.done(entry.key());
+            }
+        }
+    }
+
+    private void index(Dataset dataset, boolean doNormalSolrDocCleanUp) {
+        // Time context will automatically start on creation and stop when leaving the try block
+        try (var timeContext = indexTimer.time()) {
+            indexService.indexDataset(dataset, doNormalSolrDocCleanUp);
+        } catch (Exception e) { // catch all possible exceptions; otherwise the worker would be lost
+            String failureLogText = "Indexing failed. You can kickoff a re-index of this dataset with: \r\n curl http://localhost:8080/api/admin/index/datasets/" + dataset.getId().toString();
+            failureLogText += "\r\n" + e.getLocalizedMessage();
+            LoggingUtil.writeOnSuccessFailureLog(null, failureLogText, dataset);
+        }
+    }
+
+    @Gauge(name = "index_queue_size", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of datasets waiting to be indexed")
+    public int getQueueSize() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    @Gauge(name = "index_active", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of datasets being indexed in the background")
+    public int getActiveCount() {
+        return queue == null ? 0 : queue.runningCount();
+    }
+}
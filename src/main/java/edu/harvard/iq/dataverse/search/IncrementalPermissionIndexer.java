@@ -0,0 +1,75 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.BoundedExecutor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import java.util.logging.Logger;
+
+/**
+ * Holds the executor {@link SolrIndexServiceBean} compares and writes
+ * permission documents on, when {@code dataverse.solr.permission-indexing.incremental}
+ * is set: rather than re-adding the permission documents of all the
+ * datasets and files under a collection whose roles changed, only those
+ * whose {@code discoverableBy} set differs from the one indexed are updated.
+ * See {@link PermissionDocWriter}.
+ * <p>
+ * The executor runs on the container's threads, and is shared by all the
+ * permission indexing going on, so that Solr is not sent more than
+ * {@code dataverse.solr.permission-indexing.threads} batches at a time,
+ * however many roles are being assigned (see {@link BoundedExecutor}).
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class IncrementalPermissionIndexer {
+    private static final Logger logger = Logger.getLogger(IncrementalPermissionIndexer.class.getCanonicalName());
+
+    @Resource
+    ManagedExecutorService managedExecutor;
+
+    @EJB
+    SolrClientService solrClientService;
+
+    private boolean incremental;
+    private int batchSize;
+    private int threads;
+    private BoundedExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        incremental = JvmSettings.PERMISSION_INDEXING_INCREMENTAL.lookupOptional(Boolean.class).orElse(false);
+        batchSize = Math.max(1, JvmSettings.PERMISSION_INDEXING_BATCH_SIZE.lookupOptional(Integer.class).orElse(1000));
+        threads = Math.max(1, JvmSettings.PERMISSION_INDEXING_THREADS.lookupOptional(Integer.class).orElse(4));
+        executor = new BoundedExecutor(managedExecutor, threads);
+        if (incremental) {
+            logger.info("Indexing permissions incrementally, in batches of " + batchSize + " documents on " + threads + " threads");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @return a writer of the permission documents of one indexing
+     * operation; each one has up to twice as many batches in flight as
+     * there are threads, so that the threads are kept busy while the next
+     * batch is being put together
+     */
+    PermissionDocWriter newWriter() {
+        return new PermissionDocWriter(solrClientService.getSolrClient(), executor, batchSize, threads * 2);
+    }
+}
@@ -5,7 +5,6 @@ import edu.harvard.iq.dataverse.DatasetVersion.VersionState;
 import edu.harvard.iq.dataverse.DvObject.DType;
 import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
 import edu.harvard.iq.dataverse.authorization.providers.builtin.BuiltinUserServiceBean;
-import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
 import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.DataAccessRequest;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
@@ -38,9 +37,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
-import java.util.concurrent.Semaphore;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -55,7 +52,6 @@ import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
 import static jakarta.ejb.TransactionAttributeType.REQUIRES_NEW;
 
-import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.json.JsonObject;
 import jakarta.persistence.EntityManager;
@@ -80,9 +76,6 @@ import org.apache.tika.parser.ParseContext;
 import org.apache.tika.sax.BodyContentHandler;
 import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.ConfigProvider;
-import org.eclipse.microprofile.metrics.MetricUnits;
-import org.eclipse.microprofile.metrics.Timer;
-import org.eclipse.microprofile.metrics.annotation.Metric;
 import org.xml.sax.ContentHandler;
 
 @Stateless
@@ -104,6 +97,10 @@ public class IndexServiceBean {
     @EJB
     DatasetVersionServiceBean datasetVersionService;
     @EJB
+    DatasetVersionFilesServiceBean datasetVersionFilesService;
+    @EJB
+    CitationCacheServiceBean citationCacheService;
+    @EJB
     BuiltinUserServiceBean dataverseUserServiceBean;
     @EJB
     PermissionServiceBean permissionService;
@@ -132,6 +129,12 @@ public class IndexServiceBean {
     @EJB
     IndexBatchServiceBean indexBatchService;
     
+    @EJB
+    DatasetIndexQueue datasetIndexQueue;
+    
+    @EJB
+    SearchResponseCache searchResponseCache;
+    
     @EJB
     DatasetFieldServiceBean datasetFieldService;
 
@@ -321,6 +324,7 @@ public class IndexServiceBean {
         try {
             if (dataverse.getId() != null) {
                 solrClientService.getSolrClient().add(docs);
+                searchResponseCache.indexChanged();
             } else {
                 logger.info("WARNING: indexing of a dataverse with no id attempted");
             }
@@ -340,125 +344,35 @@ public class IndexServiceBean {
     public void indexDatasetInNewTransaction(Long datasetId) { //Dataset dataset) {
         boolean doNormalSolrDocCleanUp = false;
         Dataset dataset = datasetService.findDeep(datasetId);
-        asyncIndexDataset(dataset, doNormalSolrDocCleanUp);
+        datasetIndexQueue.indexNow(dataset, doNormalSolrDocCleanUp);
         dataset = null;
     }
     
-    // The following two variables are only used in the synchronized getNextToIndex method and do not need to be synchronized themselves
-
-    // nextToIndex contains datasets mapped by dataset id that were added for future indexing while the indexing was already ongoing for a given dataset
-    // (if there already was a dataset scheduled for indexing, it is overwritten and only the most recently requested version is kept in the map)
-    private static final Map<Long, Dataset> NEXT_TO_INDEX = new ConcurrentHashMap<>();
-    // indexingNow is a set of dataset ids of datasets being indexed asynchronously right now
-    private static final Map<Long, Boolean> INDEXING_NOW = new ConcurrentHashMap<>();
-    // semaphore for async indexing
-    private static final Semaphore ASYNC_INDEX_SEMAPHORE = new Semaphore(JvmSettings.MAX_ASYNC_INDEXES.lookupOptional(Integer.class).orElse(4), true);
-    
-    @Inject
-    @Metric(name = "index_permit_wait_time", absolute = true, unit = MetricUnits.NANOSECONDS,
-            description = "Displays how long does it take to receive a permit to index a dataset")
-    Timer indexPermitWaitTimer;
-    
-    @Inject
-    @Metric(name = "index_time", absolute = true, unit = MetricUnits.NANOSECONDS,
-            description = "Displays how long does it take to index a dataset")
-    Timer indexTimer;
-    
-    /**
-     * Try to acquire a permit from the semaphore avoiding too many parallel indexes, potentially overwhelming Solr.
-     * This method will time the duration waiting for the permit, allowing indexing performance to be measured.
-     * @throws InterruptedException
-     */
-    private void acquirePermitFromSemaphore() throws InterruptedException {
-        try (var timeContext = indexPermitWaitTimer.time()) {
-            ASYNC_INDEX_SEMAPHORE.acquire();
-        }
-    }
-
-    // When you pass null as Dataset parameter to this method, it indicates that the indexing of the dataset with "id" has finished
-    // Pass non-null Dataset to schedule it for indexing
-    synchronized private static Dataset getNextToIndex(Long id, Dataset d) {
-        if (d == null) { // -> indexing of the dataset with id has finished
-            Dataset next = NEXT_TO_INDEX.remove(id);
-            if (next == null) { // -> no new indexing jobs were requested while indexing was ongoing
-                // the job can be stopped now
-                INDEXING_NOW.remove(id);
-            }
-            return next;
-        }
-        // index job is requested for a non-null dataset
-        if (INDEXING_NOW.containsKey(id)) { // -> indexing job is already ongoing, and a new job should not be started by the current thread -> return null
-            NEXT_TO_INDEX.put(id, d);
-            return null;
-        }
-        // otherwise, start a new job
-        INDEXING_NOW.put(id, true);
-        return d;
-    }
-
     /**
      * Indexes a dataset asynchronously.
      * 
-     * Note that this method implement a synchronized skipping mechanism. When an
-     * indexing job is already running for a given dataset in the background, the
-     * new call will not index that dataset, but will delegate the execution to
-     * the already running job. The running job will pick up the requested indexing
-     * once that it is finished with the ongoing indexing. If another indexing is
-     * requested before the ongoing indexing is finished, only the indexing that is
-     * requested most recently will be picked up for the next indexing.
+     * The dataset is queued for indexing by the {@link DatasetIndexQueue},
+     * and indexed shortly after, on one of its worker threads. The requests
+     * for the same dataset are merged: when it is requested again before it
+     * has been indexed, it is indexed once, in the most recent state
+     * requested; and when it is being indexed, the new request waits for
+     * that to finish. In other words: we can have at most one indexing
+     * ongoing for the given dataset, and at most one (most recent) request
+     * for reindexing of the same dataset. For the original discussion, see
+     * the pull request: https://github.com/IQSS/dataverse/pull/9558
      * 
-     * In other words: we can have at most one indexing ongoing for the given
-     * dataset, and at most one (most recent) request for reindexing of the same
-     * dataset. All requests that come between the most recent one and the ongoing
-     * one are skipped for the optimization reasons. For a more in depth discussion,
-     * see the pull request: https://github.com/IQSS/dataverse/pull/9558
+     * This method only waits when the queue is full.
      * 
      * @param dataset                The dataset to be indexed.
      * @param doNormalSolrDocCleanUp Flag for normal Solr doc clean up.
      */
-    @Asynchronous
     public void asyncIndexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp) {
-        try {
-            acquirePermitFromSemaphore();
-            doAyncIndexDataset(dataset, doNormalSolrDocCleanUp);
-        } catch (InterruptedException e) {
-            String failureLogText = "Indexing failed: interrupted. You can kickoff a re-index of this dataset with: \r\n curl http://localhost:8080/api/admin/index/datasets/" + dataset.getId().toString();
-            failureLogText += "\r\n" + e.getLocalizedMessage();
-            LoggingUtil.writeOnSuccessFailureLog(null, failureLogText, dataset);
-        } finally {
-            ASYNC_INDEX_SEMAPHORE.release();
-        }
-    }
-
-    private void doAyncIndexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp) {
-        Long id = dataset.getId();
-        Dataset next = getNextToIndex(id, dataset); // if there is an ongoing index job for this dataset, next is null (ongoing index job will reindex the newest version after current indexing finishes)
-        while (next != null) {
-            // Time context will automatically start on creation and stop when leaving the try block
-            try (var timeContext = indexTimer.time()) {
-                indexDataset(next, doNormalSolrDocCleanUp);
-            } catch (Exception e) { // catch all possible exceptions; otherwise when something unexpected happes the dataset wold remain locked and impossible to reindex
-                String failureLogText = "Indexing failed. You can kickoff a re-index of this dataset with: \r\n curl http://localhost:8080/api/admin/index/datasets/" + dataset.getId().toString();
-                failureLogText += "\r\n" + e.getLocalizedMessage();
-                LoggingUtil.writeOnSuccessFailureLog(null, failureLogText, dataset);
-            }
-            next = getNextToIndex(id, null); // if dataset was not changed during the indexing (and no new job was requested), next is null and loop can be stopped
-        }
+        datasetIndexQueue.enqueue(dataset, doNormalSolrDocCleanUp);
     }
 
-    @Asynchronous
     public void asyncIndexDatasetList(List<Dataset> datasets, boolean doNormalSolrDocCleanUp) {
         for(Dataset dataset : datasets) {
-            try {
-                acquirePermitFromSemaphore();
-                doAyncIndexDataset(dataset, true);
-            } catch (InterruptedException e) {
-                String failureLogText = "Indexing failed: interrupted. You can kickoff a re-index of this dataset with: \r\n curl http://localhost:8080/api/admin/index/datasets/" + dataset.getId().toString();
-                failureLogText += "\r\n" + e.getLocalizedMessage();
-                LoggingUtil.writeOnSuccessFailureLog(null, failureLogText, dataset);
-            } finally {
-                ASYNC_INDEX_SEMAPHORE.release();
-            }
+            datasetIndexQueue.enqueue(dataset, true);
         }
     }
     
@@ -502,9 +416,8 @@ public class IndexServiceBean {
                 debug.append("version found with database id " + versionDatabaseId + "\n");
                 debug.append("- title: " + versionTitle + "\n");
                 debug.append("- semanticVersion-VersionState: " + semanticVersion + "-" + versionState + "\n");
-                List<FileMetadata> fileMetadatas = datasetVersion.getFileMetadatas();
                 List<String> fileInfo = new ArrayList<>();
-                for (FileMetadata fileMetadata : fileMetadatas) {
+                for (FileMetadata fileMetadata : new FileMetadataWindow(datasetVersionFilesService, datasetVersion)) {
                     String solrIdOfPublishedFile = solrDocIdentifierFile + fileMetadata.getDataFile().getId();
                     /**
                      * It sounds weird but the first thing we'll do is preemptively
@@ -546,11 +459,7 @@ public class IndexServiceBean {
                 } catch (SearchException | NullPointerException ex) {
                     logger.fine("could not run search of files to delete: " + ex);
                 }
-                int numFiles = 0;
-                if (fileMetadatas != null) {
-                    numFiles = fileMetadatas.size();
-                }
-                debug.append("- files: " + numFiles + " " + fileInfo.toString() + "\n");
+                debug.append("- files: " + fileInfo.size() + " " + fileInfo.toString() + "\n");
             }
             debug.append("numPublishedVersions: " + numPublishedVersions + "\n");
             if (doNormalSolrDocCleanUp) {
@@ -806,7 +715,7 @@ public class IndexServiceBean {
                 IndexableDataset indexableDraftVersion = new IndexableDataset(latestVersion);
                 desiredCards.put(DatasetVersion.VersionState.DRAFT, true);
                 Set<Long> datafilesInDraftVersion = new HashSet<>();
-                for (FileMetadata fm : latestVersion.getFileMetadatas()) {
+                for (FileMetadata fm : new FileMetadataWindow(datasetVersionFilesService, latestVersion)) {
                     datafilesInDraftVersion.add(fm.getDataFile().getId());
                 }
 
@@ -1015,8 +924,8 @@ public class IndexServiceBean {
             addLicenseToSolrDoc(solrInputDocument, datasetVersion);
 
             solrInputDocument.addField(SearchFields.DATASET_VERSION_ID, datasetVersion.getId());
-            solrInputDocument.addField(SearchFields.DATASET_CITATION, datasetVersion.getCitation(false));
-            solrInputDocument.addField(SearchFields.DATASET_CITATION_HTML, datasetVersion.getCitation(true));
+            solrInputDocument.addField(SearchFields.DATASET_CITATION, citationCacheService.getCitation(datasetVersion, CitationCacheServiceBean.Format.TEXT));
+            solrInputDocument.addField(SearchFields.DATASET_CITATION_HTML, citationCacheService.getCitation(datasetVersion, CitationCacheServiceBean.Format.HTML));
 
             if (datasetVersion.isInReview()) {
                 solrInputDocument.addField(SearchFields.PUBLICATION_STATUS, IN_REVIEW_STRING);
@@ -1038,6 +947,8 @@ public class IndexServiceBean {
                     cvocManagedFieldMap.put(cvocEntry.getKey(), managedFieldValues);
                 }
             }
+            // Look up the external vocabulary terms of the version all at once, rather than one by one below
+            datasetFieldService.preloadExternalVocabularyValues(datasetVersion);
 
 
 
@@ -1323,7 +1234,7 @@ public class IndexServiceBean {
             }
             LocalDate embargoEndDate=null;
             LocalDate retentionEndDate=null;
-            final String datasetCitation = dataset.getCitation();
+            final String datasetCitation = citationCacheService.getCitation(dataset.getLatestVersion(), CitationCacheServiceBean.Format.TEXT);
             final Long datasetId = dataset.getId();
             final String datasetGlobalId = dataset.getGlobalId().toString();
             for (FileMetadata fileMetadata : fileMetadatas) {
@@ -1681,6 +1592,7 @@ public class IndexServiceBean {
 
         try {
             solrClientService.getSolrClient().add(docs.getDocuments());
+            searchResponseCache.indexChanged();
         } catch (SolrServerException | IOException ex) {
             if (ex.getCause() instanceof SolrServerException) {
                 throw new SolrServerException(ex);
@@ -1751,6 +1663,20 @@ public class IndexServiceBean {
             topOfPath = rootDataverse;
         }
         if (!dataverse.equals(rootDataverse)) {
+            if (dataverse.getId() != null && dataverse.getOwner() != null && rootDataverse != null) {
+                // one lookup in the dvobjecttree closure table; used as long as
+                // it agrees with the owner of the object we've been handed
+                List<Long> ancestorIds = dvObjectService.findAncestorIds(dataverse.getId());
+                if (!ancestorIds.isEmpty() && ancestorIds.get(ancestorIds.size() - 1).equals(dataverse.getOwner().getId())) {
+                    for (Long ancestorId : ancestorIds) {
+                        if (!ancestorId.equals(rootDataverse.getId())) {
+                            segments.add(ancestorId.toString());
+                        }
+                    }
+                    segments.add(dataverse.getId().toString());
+                    return segments;
+                }
+            }
             // important when creating root dataverse
             if (dataverse.getOwner() != null) {
                 findPathSegments(dataverse.getOwner(), segments, topOfPath);
@@ -1943,6 +1869,7 @@ public class IndexServiceBean {
             sid.removeField(SearchFields.SUBTREE);
             sid.addField(SearchFields.SUBTREE, paths);
             UpdateResponse addResponse = solrClientService.getSolrClient().add(sid);
+            searchResponseCache.indexChanged();
             if (object.isInstanceofDataset()) {
                 for (DataFile df : dataset.getFiles()) {
                     solrQuery.setQuery(SearchUtil.constructQuery(SearchFields.ENTITY_ID, df.getId().toString()));
@@ -1956,6 +1883,7 @@ public class IndexServiceBean {
                         sid.removeField(SearchFields.SUBTREE);
                         sid.addField(SearchFields.SUBTREE, paths);
                         addResponse = solrClientService.getSolrClient().add(sid);
+                        searchResponseCache.indexChanged();
                     }
                 }
             }
@@ -1998,6 +1926,7 @@ public class IndexServiceBean {
         UpdateResponse updateResponse;
         try {
             updateResponse = solrClientService.getSolrClient().deleteById(solrDocIdentifierDataverse + doomed.getId());
+            searchResponseCache.indexChanged();
         } catch (SolrServerException | IOException ex) {
             return ex.toString();
         }
@@ -2018,6 +1947,7 @@ public class IndexServiceBean {
         UpdateResponse updateResponse;
         try {
             updateResponse = solrClientService.getSolrClient().deleteById(doomed);
+            searchResponseCache.indexChanged();
         } catch (SolrServerException | IOException ex) {
             return ex.toString();
         }
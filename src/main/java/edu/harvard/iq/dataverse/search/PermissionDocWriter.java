@@ -0,0 +1,168 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Writes permission documents to Solr, but only those whose
+ * {@code discoverableBy} set is not already the one indexed.
+ * <p>
+ * The documents are collected in batches of {@code batchSize}; each batch is
+ * compared, on the {@code executor}, with the documents indexed under the
+ * same ids (fetched with a real-time get, so that the updates not committed
+ * yet are seen), and only the ones that differ are sent: as an atomic update
+ * of {@code discoverableBy} when the document exists, as a whole document
+ * when it does not. At most {@code maxBatchesInFlight} batches are compared
+ * or sent at the same time; {@link #add(DvObjectSolrDoc)} waits when that
+ * many are, so that the documents do not pile up in memory.
+ * <p>
+ * Not thread safe: the documents are added from one thread, and
+ * {@link #finish()} is called once they all are.
+ */
+class PermissionDocWriter {
+
+    /**
+     * The numbers of permission documents compared with the index, and
+     * written because they differed.
+     */
+    record Result(int checked, int changed) {
+    }
+
+    private final SolrClient solrClient;
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final Semaphore batchesInFlight;
+
+    private List<DvObjectSolrDoc> batch = new ArrayList<>();
+    private final List<Future<Result>> futures = new ArrayList<>();
+
+    PermissionDocWriter(SolrClient solrClient, ExecutorService executor, int batchSize, int maxBatchesInFlight) {
+        this.solrClient = solrClient;
+        this.executor = executor;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchesInFlight = new Semaphore(Math.max(1, maxBatchesInFlight));
+    }
+
+    void add(DvObjectSolrDoc doc) throws InterruptedIOException {
+        batch.add(doc);
+        if (batch.size() >= batchSize) {
+            submit();
+        }
+    }
+
+    void addAll(Collection<DvObjectSolrDoc> docs) throws InterruptedIOException {
+        for (DvObjectSolrDoc doc : docs) {
+            add(doc);
+        }
+    }
+
+    /**
+     * Writes the documents of the last batch, and waits for all the batches
+     * to be written.
+     *
+     * @throws IOException (or SolrServerException) the first failure to
+     * compare or write a batch, once all the batches are done with
+     */
+    Result finish() throws SolrServerException, IOException {
+        if (!batch.isEmpty()) {
+            submit();
+        }
+        int checked = 0;
+        int changed = 0;
+        Exception failure = null;
+        try {
+            for (Future<Result> future : futures) {
+                try {
+                    Result result = future.get();
+                    checked += result.checked();
+                    changed += result.changed();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception cause ? cause : e;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new InterruptedIOException("Interrupted while writing permission documents");
+        }
+        if (failure instanceof SolrServerException solrServerException) {
+            throw solrServerException;
+        } else if (failure instanceof IOException ioException) {
+            throw ioException;
+        } else if (failure != null) {
+            throw new IOException(failure);
+        }
+        return new Result(checked, changed);
+    }
+
+    private void submit() throws InterruptedIOException {
+        List<DvObjectSolrDoc> docs = batch;
+        batch = new ArrayList<>();
+        try {
+            batchesInFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing permission documents");
+        }
+        futures.add(executor.submit(() -> {
+            try {
+                return write(docs);
+            } finally {
+                batchesInFlight.release();
+            }
+        }));
+    }
+
+    private Result write(List<DvObjectSolrDoc> docs) throws SolrServerException, IOException {
+        // The same document may have been added more than once; the last
+        // one wins
+        Map<String, DvObjectSolrDoc> byId = new LinkedHashMap<>();
+        for (DvObjectSolrDoc doc : docs) {
+            byId.put(doc.getSolrId() + IndexServiceBean.discoverabilityPermissionSuffix, doc);
+        }
+
+        Map<String, Set<String>> indexed = new HashMap<>();
+        SolrDocumentList existing = solrClient.getById(byId.keySet());
+        for (SolrDocument solrDocument : existing) {
+            Set<String> discoverableBy = new HashSet<>();
+            Collection<Object> values = solrDocument.getFieldValues(SearchFields.DISCOVERABLE_BY);
+            if (values != null) {
+                values.forEach(value -> discoverableBy.add(value.toString()));
+            }
+            indexed.put((String) solrDocument.getFieldValue(SearchFields.ID), discoverableBy);
+        }
+
+        List<SolrInputDocument> updates = new ArrayList<>();
+        for (Map.Entry<String, DvObjectSolrDoc> entry : byId.entrySet()) {
+            Set<String> discoverableBy = indexed.get(entry.getKey());
+            if (discoverableBy == null) {
+                updates.add(SearchUtil.createSolrDoc(entry.getValue()));
+            } else if (!discoverableBy.equals(new HashSet<>(entry.getValue().getPermissions()))) {
+                updates.add(SearchUtil.createSolrPermissionUpdate(entry.getValue()));
+            }
+        }
+        if (!updates.isEmpty()) {
+            solrClient.add(updates);
+        }
+        return new Result(byId.size(), updates.size());
+    }
+}
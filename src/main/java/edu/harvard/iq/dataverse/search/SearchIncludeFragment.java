@@ -473,6 +473,9 @@ public class SearchIncludeFragment implements java.io.Serializable {
              * solrSearchResult.setCitation method but only the dataset card in
              * the UI (currently) shows this "citation" field.
              */
+            List<SolrSearchResult> dvCards = new ArrayList<>();
+            List<SolrSearchResult> datasetCards = new ArrayList<>();
+            List<SolrSearchResult> fileCards = new ArrayList<>();
             for (SolrSearchResult solrSearchResult : searchResults) {
                 if (solrSearchResult.getEntityId() == null) {
                     // avoiding EJBException a la https://redmine.hmdc.harvard.edu/issues/3809
@@ -485,7 +488,7 @@ public class SearchIncludeFragment implements java.io.Serializable {
                 // (we'll review this later!)
                 
                 if (solrSearchResult.getType().equals("dataverses")) {
-                    dataverseService.populateDvSearchCard(solrSearchResult);
+                    dvCards.add(solrSearchResult);
                     
                     /*
                     Dataverses cannot be harvested yet.
@@ -494,17 +497,9 @@ public class SearchIncludeFragment implements java.io.Serializable {
                     }*/
 
                 } else if (solrSearchResult.getType().equals("datasets")) {
-                    datasetVersionService.populateDatasetSearchCard(solrSearchResult);
-
-                    // @todo - the 3 lines below, should they be moved inside
-                    // searchServiceBean.search()?
-                    String deaccesssionReason = solrSearchResult.getDeaccessionReason();
-                    if (deaccesssionReason != null) {
-                        solrSearchResult.setDescriptionNoSnippet(deaccesssionReason);
-                    }
-                    
+                    datasetCards.add(solrSearchResult);
                 } else if (solrSearchResult.getType().equals("files")) {
-                    dataFileService.populateFileSearchCard(solrSearchResult);
+                    fileCards.add(solrSearchResult);
 
                     /**
                      * @todo: show DataTable variables
@@ -512,6 +507,21 @@ public class SearchIncludeFragment implements java.io.Serializable {
                 }
             }
 
+            // One query per type of card, rather than one (or more) per card:
+            dataverseService.populateDvSearchCards(dvCards);
+            datasetVersionService.populateDatasetSearchCards(datasetCards);
+            dataFileService.populateFileSearchCards(fileCards);
+
+            for (SolrSearchResult solrSearchResult : datasetCards) {
+                // @todo - the 3 lines below, should they be moved inside
+                // searchServiceBean.search()?
+                String deaccesssionReason = solrSearchResult.getDeaccessionReason();
+                if (deaccesssionReason != null) {
+                    solrSearchResult.setDescriptionNoSnippet(deaccesssionReason);
+                }
+            }
+
+            thumbnailServiceWrapper.prefetchCardImages(searchResults);
             
             setDisplayCardValues();
             
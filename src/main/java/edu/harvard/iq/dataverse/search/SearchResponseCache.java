@@ -0,0 +1,194 @@
+package edu.harvard.iq.dataverse.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.params.CommonParams;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+
+/**
+ * The responses of Solr to the searches of users who are not logged in, so
+ * that the same search - typically, the landing page of a collection -
+ * is not sent to Solr again and again. See
+ * {@link SearchServiceBean#search}.
+ * <p>
+ * A response is cached under the Solr query it answers, normalized (see
+ * {@link #key(SolrQuery)}): the query, the filters (including the permission
+ * filter, which lists the groups the user is in), the sort, the page and the
+ * facets asked for. Anything written to the index bumps a generation
+ * counter (see {@link #indexChanged()}), which drops all the responses
+ * cached before. Since Solr only makes the changes searchable on its next
+ * soft commit, nothing is cached for {@code dataverse.solr.search-cache.settle-time}
+ * milliseconds after a change either. The changes made through other
+ * servers are not seen: the responses also expire after
+ * {@code dataverse.solr.search-cache.ttl} seconds.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SearchResponseCache {
+    private static final Logger logger = Logger.getLogger(SearchResponseCache.class.getCanonicalName());
+
+    /**
+     * @param generation the index generation the response was obtained in
+     */
+    record Entry(long generation, QueryResponse response) {
+    }
+
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long lastChange;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private Cache<String, Entry> cache;
+    private long settleNanos;
+
+    @PostConstruct
+    public void init() {
+        long maxSize = JvmSettings.SEARCH_CACHE_SIZE.lookupOptional(Long.class).orElse(1000L);
+        long ttl = JvmSettings.SEARCH_CACHE_TTL.lookupOptional(Long.class).orElse(60L);
+        long settleTime = JvmSettings.SEARCH_CACHE_SETTLE_TIME.lookupOptional(Long.class).orElse(2000L);
+        init(maxSize, ttl, settleTime);
+        if (isEnabled()) {
+            logger.info("Caching up to " + maxSize + " search responses for " + ttl + " seconds");
+        }
+    }
+
+    void init(long maxSize, long ttlSeconds, long settleMillis) {
+        if (maxSize > 0 && ttlSeconds > 0) {
+            cache = Caffeine.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                    .build();
+        } else {
+            cache = null;
+        }
+        settleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, settleMillis));
+        lastChange = System.nanoTime() - settleNanos;
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * @return the index generation, to pass to {@link #put} with the
+     * response of a query sent after this call
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Records that documents were added to, or deleted from, the index: the
+     * responses cached so far are no longer used.
+     */
+    public void indexChanged() {
+        lastChange = System.nanoTime();
+        generation.incrementAndGet();
+    }
+
+    /**
+     * @return the response cached for the key in the current index
+     * generation, or null
+     */
+    public QueryResponse get(String key) {
+        if (cache == null) {
+            return null;
+        }
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.generation() != generation.get()) {
+            cache.invalidate(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.response();
+    }
+
+    /**
+     * Caches a successful response, unless the index changed since
+     * {@code generation} was obtained, or so recently that the change may
+     * not have been searchable yet when the query was answered.
+     */
+    public void put(String key, long generation, QueryResponse response) {
+        if (cache == null || response == null || response.getStatus() != 0) {
+            return;
+        }
+        if (generation == this.generation.get() && System.nanoTime() - lastChange >= settleNanos) {
+            cache.put(key, new Entry(generation, response));
+        }
+    }
+
+    /**
+     * @return the parameters of the query, in a canonical order: parameters
+     * by name, and filter queries (which Solr applies in no particular order)
+     * sorted; the query is trimmed
+     */
+    public static String key(SolrQuery solrQuery) {
+        StringBuilder key = new StringBuilder();
+        for (String name : new TreeSet<>(solrQuery.getParameterNames())) {
+            String[] values = solrQuery.getParams(name);
+            if (values == null) {
+                continue;
+            }
+            values = values.clone();
+            if (CommonParams.FQ.equals(name)) {
+                Arrays.sort(values);
+            } else if (CommonParams.Q.equals(name)) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = values[i] == null ? null : values[i].trim();
+                }
+            }
+            for (String value : values) {
+                // Lengths keep values with separators in them apart
+                key.append(name).append('=').append(value == null ? 0 : value.length()).append(':').append(value).append('&');
+            }
+        }
+        return key.toString();
+    }
+
+    @Gauge(name = "search_cache_hits", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of searches answered from the search response cache")
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Gauge(name = "search_cache_misses", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of cacheable searches sent to Solr")
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Gauge(name = "search_cache_hit_ratio", absolute = true, unit = MetricUnits.NONE,
+            description = "Fraction of the cacheable searches answered from the search response cache")
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Gauge(name = "search_cache_size", absolute = true, unit = MetricUnits.NONE,
+            description = "Number of search responses cached")
+    public long getSize() {
+        return cache == null ? 0 : cache.estimatedSize();
+    }
+}
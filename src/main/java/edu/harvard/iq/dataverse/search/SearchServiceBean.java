@@ -19,6 +19,7 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -71,6 +72,8 @@ public class SearchServiceBean {
     SystemConfig systemConfig;
     @EJB
     SolrClientService solrClientService;
+    @EJB
+    SearchResponseCache searchResponseCache;
     @Inject
     ThumbnailServiceWrapper thumbnailServiceWrapper;
     
@@ -384,8 +387,24 @@ public class SearchServiceBean {
         // -----------------------------------
         QueryResponse queryResponse = null;
         
+        // The searches of users who are not logged in are the most common,
+        // and the same for everyone in the same groups: their responses are
+        // cached (the permission filter, which lists the groups, is part of
+        // the key)
+        String cacheKey = null;
+        if (searchResponseCache.isEnabled() && !(dataverseRequest.getUser() instanceof AuthenticatedUser)) {
+            cacheKey = SearchResponseCache.key(solrQuery);
+            queryResponse = searchResponseCache.get(cacheKey);
+        }
+        
         try {
-            queryResponse = solrClientService.getSolrClient().query(solrQuery);
+            if (queryResponse == null) {
+                long indexGeneration = searchResponseCache.getGeneration();
+                queryResponse = solrClientService.getSolrClient().query(solrQuery);
+                if (cacheKey != null) {
+                    searchResponseCache.put(cacheKey, indexGeneration, queryResponse);
+                }
+            }
 
         } catch (RemoteSolrException ex) {
             String messageFromSolr = ex.getLocalizedMessage();
@@ -559,9 +578,6 @@ public class SearchServiceBean {
 //            logger.info(id + ": " + description);
             solrSearchResult.setId(id);
             solrSearchResult.setEntityId(entityid);
-            if (retrieveEntities) {
-                solrSearchResult.setEntity(dvObjectService.findDvObject(entityid));
-            }
             solrSearchResult.setIdentifier(identifier);
             solrSearchResult.setPersistentUrl(persistentUrl);
             solrSearchResult.setType(type);
@@ -593,7 +609,6 @@ public class SearchServiceBean {
                 solrSearchResult.setDataverseAffiliation(dataverseAffiliation);
                 solrSearchResult.setDataverseParentAlias(dataverseParentAlias);
                 solrSearchResult.setDataverseParentName(dataverseParentName);
-                solrSearchResult.setImageUrl(thumbnailServiceWrapper.getDataverseCardImageAsUrl(solrSearchResult));
                 /**
                  * @todo Expose this API URL after "dvs" is changed to
                  * "dataverses". Also, is an API token required for published
@@ -603,7 +618,6 @@ public class SearchServiceBean {
             } else if (type.equals("datasets")) {
                 solrSearchResult.setHtmlUrl(baseUrl + "/dataset.xhtml?globalId=" + identifier);
                 solrSearchResult.setApiUrl(baseUrl + "/api/datasets/" + entityid);
-                solrSearchResult.setImageUrl(thumbnailServiceWrapper.getDatasetCardImageAsUrl(solrSearchResult));
                 //Image url now set via thumbnail api
                 //solrSearchResult.setImageUrl(baseUrl + "/api/access/dsCardImage/" + datasetVersionId);
                 // No, we don't want to set the base64 thumbnails here.
@@ -652,7 +666,6 @@ public class SearchServiceBean {
                 }
                 solrSearchResult.setHtmlUrl(baseUrl + "/dataset.xhtml?persistentId=" + parentGlobalId);
                 solrSearchResult.setDownloadUrl(baseUrl + "/api/access/datafile/" + entityid);
-                solrSearchResult.setImageUrl(thumbnailServiceWrapper.getFileCardImageAsUrl(solrSearchResult));
                 /**
                  * @todo We are not yet setting the API URL for files because
                  * not all files have metadata. Only subsettable files (those
@@ -689,6 +702,8 @@ public class SearchServiceBean {
                 }
                 List<String> tabularDataTags = (List) solrDocument.getFieldValues(SearchFields.TABDATA_TAG);
                 if (tabularDataTags != null) {
+                    // Sorted in a copy: the response may be cached, and shared
+                    tabularDataTags = new ArrayList<>(tabularDataTags);
                     Collections.sort(tabularDataTags);
                     solrSearchResult.setTabularDataTags(tabularDataTags);
                 }
@@ -706,6 +721,31 @@ public class SearchServiceBean {
             solrSearchResult.setParent(parent);
             solrSearchResults.add(solrSearchResult);
         }
+
+        // The entities, and what is needed for the card images, are looked up
+        // for the whole page at once, rather than one result at a time:
+        if (retrieveEntities) {
+            Set<Long> entityIds = new HashSet<>();
+            for (SolrSearchResult solrSearchResult : solrSearchResults) {
+                if (solrSearchResult.getEntityId() != null) {
+                    entityIds.add(solrSearchResult.getEntityId());
+                }
+            }
+            Map<Long, DvObject> entities = dvObjectService.findDvObjects(entityIds);
+            for (SolrSearchResult solrSearchResult : solrSearchResults) {
+                solrSearchResult.setEntity(entities.get(solrSearchResult.getEntityId()));
+            }
+        }
+        thumbnailServiceWrapper.prefetchCardImages(solrSearchResults);
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            if (solrSearchResult.getType().equals("dataverses")) {
+                solrSearchResult.setImageUrl(thumbnailServiceWrapper.getDataverseCardImageAsUrl(solrSearchResult));
+            } else if (solrSearchResult.getType().equals("datasets")) {
+                solrSearchResult.setImageUrl(thumbnailServiceWrapper.getDatasetCardImageAsUrl(solrSearchResult));
+            } else if (solrSearchResult.getType().equals("files")) {
+                solrSearchResult.setImageUrl(thumbnailServiceWrapper.getFileCardImageAsUrl(solrSearchResult));
+            }
+        }
         Map<String, List<String>> spellingSuggestionsByToken = new HashMap<>();
         SpellCheckResponse spellCheckResponse = queryResponse.getSpellCheckResponse();
         if (spellCheckResponse != null) {
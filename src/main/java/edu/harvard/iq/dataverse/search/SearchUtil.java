@@ -4,6 +4,7 @@ import edu.harvard.iq.dataverse.api.Util;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.common.SolrInputDocument;
@@ -57,6 +58,18 @@ public class SearchUtil {
         return solrInputDocument;
     }
 
+    /**
+     * @return an atomic update of the {@code discoverableBy} field of the
+     * permission document already indexed for the DvObject, leaving its other
+     * fields as they are
+     */
+    public static SolrInputDocument createSolrPermissionUpdate(DvObjectSolrDoc dvObjectSolrDoc) {
+        SolrInputDocument solrInputDocument = new SolrInputDocument();
+        solrInputDocument.addField(SearchFields.ID, dvObjectSolrDoc.getSolrId() + IndexServiceBean.discoverabilityPermissionSuffix);
+        solrInputDocument.addField(SearchFields.DISCOVERABLE_BY, Map.of("set", dvObjectSolrDoc.getPermissions()));
+        return solrInputDocument;
+    }
+
     public static String getTimestampOrNull(Timestamp timestamp) {
         if (timestamp == null) {
             return null;
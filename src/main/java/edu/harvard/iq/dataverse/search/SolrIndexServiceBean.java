@@ -49,6 +49,10 @@ public class SolrIndexServiceBean {
     IndexServiceBean indexService;
     @EJB
     SolrClientService solrClientService;
+    @EJB
+    IncrementalPermissionIndexer incrementalPermissionIndexer;
+    @EJB
+    SearchResponseCache searchResponseCache;
 
     public static String numRowsClearedByClearAllIndexTimes = "numRowsClearedByClearAllIndexTimes";
     public static String messageString = "message";
@@ -295,14 +299,26 @@ public class SolrIndexServiceBean {
             }
         }
 
-        for (DvObjectSolrDoc dvObjectSolrDoc : definitionPoints) {
-            logger.info("creating solr doc in memory for " + dvObjectSolrDoc.getSolrId());
-            SolrInputDocument solrInputDocument = SearchUtil.createSolrDoc(dvObjectSolrDoc);
-            logger.info("adding to list of docs to index " + dvObjectSolrDoc.getSolrId());
-            docs.add(solrInputDocument);
-        }
         try {
-            persistToSolr(docs);
+            String changes = "";
+            if (incrementalPermissionIndexer.isIncremental()) {
+                // Only the documents whose permissions changed are written
+                PermissionDocWriter writer = incrementalPermissionIndexer.newWriter();
+                writer.addAll(definitionPoints);
+                PermissionDocWriter.Result result = writer.finish();
+                if (result.changed() > 0) {
+                    searchResponseCache.indexChanged();
+                }
+                changes = ": " + result.changed() + " of " + result.checked() + " permission documents changed";
+            } else {
+                for (DvObjectSolrDoc dvObjectSolrDoc : definitionPoints) {
+                    logger.info("creating solr doc in memory for " + dvObjectSolrDoc.getSolrId());
+                    SolrInputDocument solrInputDocument = SearchUtil.createSolrDoc(dvObjectSolrDoc);
+                    logger.info("adding to list of docs to index " + dvObjectSolrDoc.getSolrId());
+                    docs.add(solrInputDocument);
+                }
+                persistToSolr(docs);
+            }
             /**
              * @todo Do we need a separate permissionIndexTime timestamp?
              * Probably. Update it here.
@@ -310,7 +326,7 @@ public class SolrIndexServiceBean {
             for (DvObject dvObject : all) {
                 dvObjectService.updatePermissionIndexTime(dvObject);
             }
-            return new IndexResponse("indexed all permissions");
+            return new IndexResponse("indexed all permissions" + changes);
         } catch (SolrServerException | IOException ex) {
             return new IndexResponse("problem indexing");
         }
@@ -357,6 +373,7 @@ public class SolrIndexServiceBean {
          * @todo Do something with these responses from Solr.
          */
         UpdateResponse addResponse = solrClientService.getSolrClient().add(docs);
+        searchResponseCache.indexChanged();
     }
 
     public IndexResponse indexPermissionsOnSelfAndChildren(long definitionPointId) {
@@ -374,6 +391,9 @@ public class SolrIndexServiceBean {
      * inheritance
      */
     public IndexResponse indexPermissionsOnSelfAndChildren(DvObject definitionPoint) {
+        if (incrementalPermissionIndexer.isIncremental()) {
+            return indexPermissionsOnSelfAndChildrenIncrementally(definitionPoint);
+        }
         List<DvObject> dvObjectsToReindexPermissionsFor = new ArrayList<>();
         List<DataFile> filesToReindexAsBatch = new ArrayList<>();
         /**
@@ -426,6 +446,54 @@ public class SolrIndexServiceBean {
         );
     }
 
+    /**
+     * Same as {@link #indexPermissionsOnSelfAndChildren(DvObject)}, but only
+     * the permission documents whose {@code discoverableBy} set is not
+     * already the one indexed are written, in batches, in parallel. The
+     * permissions are looked up once per dataset version, for all its files.
+     */
+    private IndexResponse indexPermissionsOnSelfAndChildrenIncrementally(DvObject definitionPoint) {
+        List<DvObject> dvObjectsToReindexPermissionsFor = new ArrayList<>();
+        PermissionDocWriter writer = incrementalPermissionIndexer.newWriter();
+        try {
+            if (definitionPoint.isInstanceofDataverse()) {
+                Dataverse selfDataverse = (Dataverse) definitionPoint;
+                // No permission doc for the root dataverse, see above
+                if (!selfDataverse.equals(dataverseService.findRootDataverse())) {
+                    dvObjectsToReindexPermissionsFor.add(definitionPoint);
+                    writer.add(constructDataverseSolrDoc(selfDataverse));
+                }
+                for (Dataset dataset : datasetService.findByOwnerId(selfDataverse.getId())) {
+                    dvObjectsToReindexPermissionsFor.add(dataset);
+                    writer.addAll(constructDatasetSolrDocs(dataset));
+                    writer.addAll(constructDatafileSolrDocsFromDataset(dataset));
+                }
+            } else if (definitionPoint.isInstanceofDataset()) {
+                Dataset dataset = (Dataset) definitionPoint;
+                dvObjectsToReindexPermissionsFor.add(dataset);
+                writer.addAll(constructDatasetSolrDocs(dataset));
+                writer.addAll(constructDatafileSolrDocsFromDataset(dataset));
+            } else {
+                dvObjectsToReindexPermissionsFor.add(definitionPoint);
+                writer.addAll(determineSolrDocs(definitionPoint));
+            }
+            PermissionDocWriter.Result result = writer.finish();
+            if (result.changed() > 0) {
+                searchResponseCache.indexChanged();
+            }
+            for (DvObject dvObject : dvObjectsToReindexPermissionsFor) {
+                dvObjectService.updatePermissionIndexTime(dvObject);
+            }
+            return new IndexResponse("Number of dvObject permissions indexed for " + definitionPoint
+                    + ": " + dvObjectsToReindexPermissionsFor.size()
+                    + " (" + result.changed() + " of " + result.checked() + " permission documents changed)"
+            );
+        } catch (SolrServerException | IOException ex) {
+            logger.log(Level.WARNING, "Problem indexing the permissions of " + definitionPoint, ex);
+            return new IndexResponse("problem indexing");
+        }
+    }
+
     private String reindexFilesInBatches(List<DataFile> filesToReindexPermissionsFor) {
         List<SolrInputDocument> docs = new ArrayList<>();
         Map<Long, List<Long>> byParentId = new HashMap<>();
@@ -497,6 +565,7 @@ public class SolrIndexServiceBean {
         }
         try {
             solrClientService.getSolrClient().deleteById(solrIdsToDelete);
+            searchResponseCache.indexChanged();
         } catch (SolrServerException | IOException ex) {
             /**
              * @todo mark these for re-deletion
@@ -510,6 +579,7 @@ public class SolrIndexServiceBean {
         JsonObjectBuilder response = Json.createObjectBuilder();
         logger.info("attempting to delete all Solr documents before a complete re-index");
         solrClientService.getSolrClient().deleteByQuery("*:*");
+        searchResponseCache.indexChanged();
         int numRowsAffected = dvObjectService.clearAllIndexTimes();
         response.add(numRowsClearedByClearAllIndexTimes, numRowsAffected);
         response.add(messageString, "Solr index and database index timestamps cleared.");
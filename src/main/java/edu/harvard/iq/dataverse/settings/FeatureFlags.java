@@ -101,10 +101,6 @@ public enum FeatureFlags {
      * @since Dataverse 6.4
      */
     DISABLE_DATASET_THUMBNAIL_AUTOSELECT("disable-dataset-thumbnail-autoselect"),
-    /**
-     * Feature flag for the new Globus upload framework.
-     */
-    GLOBUS_USE_EXPERIMENTAL_ASYNC_FRAMEWORK("globus-use-experimental-async-framework"),
     ;
     
     final String flag;
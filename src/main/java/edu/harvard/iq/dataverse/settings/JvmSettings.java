@@ -52,10 +52,31 @@ public enum JvmSettings {
     GUESTBOOK_AT_REQUEST(SCOPE_FILES, "guestbook-at-request"),
     GLOBUS_CACHE_MAXAGE(SCOPE_FILES, "globus-cache-maxage"),
     GLOBUS_TASK_MONITORING_SERVER(SCOPE_FILES, "globus-monitoring-server"),
+    SCOPE_GUESTBOOK_RECORDER(SCOPE_FILES, "guestbook-recorder"),
+    GUESTBOOK_RECORDER_FLUSH_INTERVAL(SCOPE_GUESTBOOK_RECORDER, "flush-interval"),
+    GUESTBOOK_RECORDER_BATCH_SIZE(SCOPE_GUESTBOOK_RECORDER, "batch-size"),
+    GUESTBOOK_RECORDER_QUEUE_SIZE(SCOPE_GUESTBOOK_RECORDER, "queue-size"),
+    SCOPE_ZIP_UPLOAD(SCOPE_FILES, "zip-upload"),
+    ZIP_UPLOAD_EXTRACTION_THREADS(SCOPE_ZIP_UPLOAD, "extraction-threads"),
+    SCOPE_THUMBNAILS(SCOPE_FILES, "thumbnails"),
+    THUMBNAILS_BACKGROUND_GENERATION(SCOPE_THUMBNAILS, "background-generation"),
+    THUMBNAILS_GENERATION_THREADS(SCOPE_THUMBNAILS, "generation-threads"),
+    THUMBNAILS_GENERATION_QUEUE_SIZE(SCOPE_THUMBNAILS, "generation-queue-size"),
+    THUMBNAILS_DECODE_MEMORY(SCOPE_THUMBNAILS, "decode-memory"),
+    SCOPE_CHECKSUMS(SCOPE_FILES, "checksums"),
+    CHECKSUMS_THREADS(SCOPE_CHECKSUMS, "threads"),
+    CHECKSUMS_QUEUE_SIZE(SCOPE_CHECKSUMS, "queue-size"),
+    SCOPE_FIXITY(SCOPE_FILES, "fixity"),
+    FIXITY_BATCH_SIZE(SCOPE_FIXITY, "batch-size"),
+    FIXITY_RANGED_READ_THRESHOLD(SCOPE_FIXITY, "ranged-read-threshold"),
+    FIXITY_RANGE_SIZE(SCOPE_FIXITY, "range-size"),
+    FIXITY_RANGE_THREADS(SCOPE_FIXITY, "range-threads"),
 
     //STORAGE DRIVER SETTINGS
     SCOPE_DRIVER(SCOPE_FILES),
     DISABLE_S3_TAGGING(SCOPE_DRIVER, "disable-tagging"),
+    CHECKSUM_CONCURRENCY(SCOPE_DRIVER, "checksum-concurrency"),
+    STORED_CHECKSUMS(SCOPE_DRIVER, "stored-checksums"),
     
     // SOLR INDEX SETTINGS
     SCOPE_SOLR(PREFIX, "solr"),
@@ -68,6 +89,30 @@ public enum JvmSettings {
     // INDEX CONCURENCY
     SCOPE_SOLR_CONCURENCY(SCOPE_SOLR, "concurrency"),
     MAX_ASYNC_INDEXES(SCOPE_SOLR_CONCURENCY, "max-async-indexes"),
+    INDEX_DEBOUNCE(SCOPE_SOLR_CONCURENCY, "index-debounce"),
+    INDEX_QUEUE_SIZE(SCOPE_SOLR_CONCURENCY, "index-queue-size"),
+
+    // PERMISSION INDEXING
+    SCOPE_SOLR_PERMISSION_INDEXING(SCOPE_SOLR, "permission-indexing"),
+    PERMISSION_INDEXING_INCREMENTAL(SCOPE_SOLR_PERMISSION_INDEXING, "incremental"),
+    PERMISSION_INDEXING_BATCH_SIZE(SCOPE_SOLR_PERMISSION_INDEXING, "batch-size"),
+    PERMISSION_INDEXING_THREADS(SCOPE_SOLR_PERMISSION_INDEXING, "threads"),
+
+    // SEARCH RESPONSE CACHE
+    SCOPE_SOLR_SEARCH_CACHE(SCOPE_SOLR, "search-cache"),
+    SEARCH_CACHE_SIZE(SCOPE_SOLR_SEARCH_CACHE, "size"),
+    SEARCH_CACHE_TTL(SCOPE_SOLR_SEARCH_CACHE, "ttl"),
+    SEARCH_CACHE_SETTLE_TIME(SCOPE_SOLR_SEARCH_CACHE, "settle-time"),
+
+    // INGEST SETTINGS
+    SCOPE_INGEST(PREFIX, "ingest"),
+    INGEST_MAX_CONCURRENT_FILES(SCOPE_INGEST, "max-concurrent-files"),
+    INGEST_MAX_CONCURRENT_FILES_PER_DATASET(SCOPE_INGEST, "max-concurrent-files-per-dataset"),
+    INGEST_RETRY_DELAY(SCOPE_INGEST, "retry-delay"),
+    INGEST_MAX_RETRY_DELAY(SCOPE_INGEST, "max-retry-delay"),
+    INGEST_SLOT_LEASE(SCOPE_INGEST, "slot-lease"),
+    INGEST_INSTANCE_ID(SCOPE_INGEST, "instance-id"),
+    INGEST_PREGENERATE_FORMATS(SCOPE_INGEST, "pregenerate-formats"),
 
     // RSERVE CONNECTION
     SCOPE_RSERVE(PREFIX, "rserve"),
@@ -76,6 +121,15 @@ public enum JvmSettings {
     RSERVE_USER(SCOPE_RSERVE, "user"),
     RSERVE_PASSWORD(SCOPE_RSERVE, "password"),
     RSERVE_TEMPDIR(SCOPE_RSERVE, "tempdir"),
+    SCOPE_RSERVE_POOL(SCOPE_RSERVE, "pool"),
+    RSERVE_POOL_MAX_SIZE(SCOPE_RSERVE_POOL, "max-size"),
+    RSERVE_POOL_WAIT_TIMEOUT(SCOPE_RSERVE_POOL, "wait-timeout"),
+    RSERVE_POOL_IDLE_TIMEOUT(SCOPE_RSERVE_POOL, "idle-timeout"),
+
+    // OAI SERVER
+    SCOPE_OAI(PREFIX, "oai"),
+    SCOPE_OAI_SERVER(SCOPE_OAI, "server"),
+    OAI_SERVER_INCREMENTAL_SETS(SCOPE_OAI_SERVER, "incremental-sets"),
     
     // API SETTINGS
     SCOPE_API(PREFIX, "api"),
@@ -97,6 +151,11 @@ public enum JvmSettings {
     SCOPE_METADATA(PREFIX, "metadata"),
     MDB_SYSTEM_METADATA_KEYS(SCOPE_METADATA, "block-system-metadata-keys"),
     MDB_SYSTEM_KEY_FOR(MDB_SYSTEM_METADATA_KEYS),
+    SCOPE_CVOC(SCOPE_METADATA, "external-vocabulary"),
+    CVOC_CACHE_SIZE(SCOPE_CVOC, "cache-size"),
+    CVOC_CACHE_TTL(SCOPE_CVOC, "cache-ttl"),
+    CVOC_RETRIEVAL_THREADS(SCOPE_CVOC, "retrieval-threads"),
+    CVOC_RETRIEVAL_MAX_PER_SERVICE(SCOPE_CVOC, "max-retrievals-per-service"),
 
     // PERSISTENT IDENTIFIER SETTINGS
     SCOPE_PID(PREFIX, "pid"),
@@ -252,6 +311,9 @@ public enum JvmSettings {
     BAGIT_SOURCE_ORG_NAME(SCOPE_BAGIT_SOURCEORG, "name"),
     BAGIT_SOURCEORG_ADDRESS(SCOPE_BAGIT_SOURCEORG, "address"),
     BAGIT_SOURCEORG_EMAIL(SCOPE_BAGIT_SOURCEORG, "email"),
+    BAGIT_DATA_SOURCE(SCOPE_BAGIT, "data-source"),
+    BAGIT_UPLOAD_PART_SIZE(SCOPE_BAGIT, "upload-part-size"),
+    BAGIT_UPLOAD_PARTS_IN_FLIGHT(SCOPE_BAGIT, "upload-parts-in-flight"),
 
     // STORAGE USE SETTINGS
     SCOPE_STORAGEUSE(PREFIX, "storageuse"),
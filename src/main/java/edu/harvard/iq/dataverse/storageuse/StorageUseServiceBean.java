@@ -49,18 +49,10 @@ public class StorageUseServiceBean  implements java.io.Serializable {
         if (dvObjectContainerId != null && increment != null) {
             Optional<Boolean> allow = JvmSettings.STORAGEUSE_DISABLE_UPDATES.lookupOptional(Boolean.class);
             if (!(allow.isPresent() && allow.get())) {
-                String queryString = "WITH RECURSIVE uptree (id, owner_id) AS\n"
-                        + "("
-                        + "    SELECT id, owner_id\n"
-                        + "    FROM dvobject\n"
-                        + "    WHERE id=" + dvObjectContainerId + "\n"
-                        + "    UNION ALL\n"
-                        + "    SELECT dvobject.id, dvobject.owner_id\n"
-                        + "    FROM dvobject\n"
-                        + "    JOIN uptree ON dvobject.id = uptree.owner_id)\n"
-                        + "UPDATE storageuse SET sizeinbytes=COALESCE(sizeinbytes,0)+" + increment + "\n"
-                        + "FROM uptree\n"
-                        + "WHERE dvobjectcontainer_id = uptree.id;";
+                String queryString = "UPDATE storageuse SET sizeinbytes=COALESCE(sizeinbytes,0)+" + increment + "\n"
+                        + "FROM dvobjecttree\n"
+                        + "WHERE dvobjecttree.descendant_id=" + dvObjectContainerId + "\n"
+                        + "AND dvobjectcontainer_id = dvobjecttree.ancestor_id;";
 
                 int parentsUpdated = em.createNativeQuery(queryString).executeUpdate();
             }
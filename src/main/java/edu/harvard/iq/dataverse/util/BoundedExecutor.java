@@ -0,0 +1,181 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks on another executor - normally the container's
+ * ManagedExecutorService - but no more than a given number of them at a time;
+ * the others wait in a queue of their own, of a given capacity. Lets the
+ * background services share the container's threads, while each of them keeps
+ * its own limit on how many threads it uses, and how much work may be waiting.
+ * <p>
+ * A task that cannot be queued (the queue is full, or the executor has been
+ * shut down) is rejected with a {@link RejectedExecutionException}, as by a
+ * ThreadPoolExecutor. {@link #shutdownNow()} drops the waiting tasks and
+ * interrupts the running ones.
+ */
+public class BoundedExecutor extends AbstractExecutorService {
+    private static final Logger logger = Logger.getLogger(BoundedExecutor.class.getCanonicalName());
+
+    private final Executor executor;
+    private final int maxConcurrency;
+    private final int queueCapacity;
+
+    private final Deque<Runnable> queue = new ArrayDeque<>();
+    // The threads running our tasks right now:
+    private final Set<Thread> running = new HashSet<>();
+    // The tasks handed over to the executor (running, or about to):
+    private int active;
+    private boolean shutdown;
+
+    /**
+     * @param executor the executor to run the tasks on
+     * @param maxConcurrency the number of tasks run at the same time, at most
+     */
+    public BoundedExecutor(Executor executor, int maxConcurrency) {
+        this(executor, maxConcurrency, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param executor the executor to run the tasks on
+     * @param maxConcurrency the number of tasks run at the same time, at most
+     * @param queueCapacity the number of tasks waiting to be run, at most
+     */
+    public BoundedExecutor(Executor executor, int maxConcurrency, int queueCapacity) {
+        if (maxConcurrency < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Concurrency can't be less than 1, nor the capacity of the queue less than 0");
+        }
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.queueCapacity = queueCapacity;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Shut down");
+            }
+            if (active >= maxConcurrency) {
+                if (queue.size() >= queueCapacity) {
+                    throw new RejectedExecutionException("The queue is full");
+                }
+                queue.add(task);
+                return;
+            }
+            active++;
+        }
+        try {
+            executor.execute(() -> work(task));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                active--;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the task, then the ones waiting, until there are none left.
+     */
+    private void work(Runnable task) {
+        Thread thread = Thread.currentThread();
+        synchronized (this) {
+            running.add(thread);
+        }
+        Runnable next = task;
+        try {
+            while (next != null) {
+                try {
+                    next.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Task failed", e);
+                }
+                next = nextTask();
+            }
+        } finally {
+            synchronized (this) {
+                running.remove(thread);
+                if (next != null) {
+                    // Left by an Error
+                    active--;
+                    notifyAll();
+                }
+            }
+            // Not to be passed on to the next task of the container's thread
+            Thread.interrupted();
+        }
+    }
+
+    private synchronized Runnable nextTask() {
+        Runnable next = queue.poll();
+        if (next == null) {
+            active--;
+            notifyAll();
+        }
+        return next;
+    }
+
+    /**
+     * @return the number of tasks waiting to be run
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of tasks being run
+     */
+    public synchronized int getActiveCount() {
+        return active;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        // The tasks already queued are still run
+        shutdown = true;
+    }
+
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> waiting = new ArrayList<>(queue);
+        queue.clear();
+        running.forEach(Thread::interrupt);
+        return waiting;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        return shutdown && active == 0;
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+}
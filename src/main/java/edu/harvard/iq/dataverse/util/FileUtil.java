@@ -53,6 +53,7 @@ import static edu.harvard.iq.dataverse.util.xml.html.HtmlFormatUtil.formatLink;
 import static edu.harvard.iq.dataverse.util.xml.html.HtmlFormatUtil.formatTableCellAlignRight;
 import static edu.harvard.iq.dataverse.util.xml.html.HtmlFormatUtil.formatTableRow;
 
+import java.io.ByteArrayInputStream;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -100,6 +101,7 @@ import org.apache.commons.io.FilenameUtils;
 import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.util.file.FileExceedsStorageQuotaException;
+import edu.harvard.iq.dataverse.util.file.UploadedFileCopy;
 import java.util.Arrays;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -427,6 +429,17 @@ public class FileUtil implements java.io.Serializable  {
     }
     
     public static String determineFileType(File f, String fileName) throws IOException{
+        return determineFileType(f, fileName, null);
+    }
+    
+    /**
+     * Same as {@link #determineFileType(File, String)}, but the "magic number"
+     * checks are run on the leading bytes of the file supplied, instead of
+     * reading them from the file (see {@link UploadedFileCopy}).
+     * 
+     * @param header the first bytes of the file, or null
+     */
+    public static String determineFileType(File f, String fileName, byte[] header) throws IOException{
         String fileType = lookupFileTypeByFileName(fileName);
         if (fileType != null) {
             return fileType;
@@ -442,7 +455,7 @@ public class FileUtil implements java.io.Serializable  {
         logger.fine("Attempting to identify potential tabular data files;");
         IngestableDataChecker tabChk = new IngestableDataChecker(TABULAR_DATA_FORMAT_SET);
         
-        fileType = tabChk.detectTabularDataFormat(f);
+        fileType = header != null ? tabChk.detectTabularDataFormat(header) : tabChk.detectTabularDataFormat(f);
         
         logger.fine("determineFileType: tabular data checker found "+fileType);
                 
@@ -457,7 +470,7 @@ public class FileUtil implements java.io.Serializable  {
             // the ".fits" extension and the header check;
             // in 4.0, we'll accept either the extension, or the valid 
             // magic header:
-            if (isFITSFile(f) || (fileExtension != null
+            if ((header != null ? isFITSFile(new ByteArrayInputStream(header)) : isFITSFile(f)) || (fileExtension != null
                     && fileExtension.equalsIgnoreCase("fits"))) {
                 fileType = "application/fits";
             }
@@ -840,6 +853,28 @@ public class FileUtil implements java.io.Serializable  {
 		return false;
 	}
 
+    /**
+     * The content type of a file uploaded directly to the storage: the bytes
+     * are not available here, so only the name of the file is checked.
+     *
+     * @param fileName
+     * @param suppliedContentType the type supplied by the client, if any
+     * @return
+     */
+    public static String determineDirectUploadFileType(String fileName, String suppliedContentType) {
+        // Default to suppliedContentType if set or the overall undetermined default if a contenttype isn't supplied
+        String finalType = StringUtils.isBlank(suppliedContentType) ? MIME_TYPE_UNDETERMINED_DEFAULT : suppliedContentType;
+        String type = determineFileTypeByNameAndExtension(fileName);
+        if (!StringUtils.isBlank(type)) {
+            //Use rules for deciding when to trust browser supplied type
+            if (useRecognizedType(finalType, type)) {
+                finalType = type;
+            }
+            logger.fine("Supplied type: " + suppliedContentType + ", finalType: " + finalType);
+        }
+        return finalType;
+    }
+
 	public static File saveInputStreamInTempFile(InputStream inputStream, Long fileSizeLimit)
             throws IOException, FileExceedsMaxSizeException, FileExceedsStorageQuotaException {
             return saveInputStreamInTempFile(inputStream, fileSizeLimit, null);
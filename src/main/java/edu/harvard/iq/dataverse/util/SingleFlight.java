@@ -0,0 +1,186 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A "single flight" guard: makes sure that only one caller at a time performs
+ * an expensive computation for a given key, while any concurrent callers asking
+ * for the same key wait for, and share, the result of the one in flight.
+ * <p>
+ * Every flight holds a lease; a leader that neither completes nor abandons its
+ * flight before the lease expires (because it died, for example) is simply
+ * replaced by the next caller, and anyone still waiting on it goes ahead and
+ * does the work on their own.
+ *
+ * @param <K> Class for the keys
+ * @param <V> Class for the computed values
+ */
+public class SingleFlight<K, V> {
+
+    private static class Flight<V> {
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        final long expiresAt;
+
+        Flight(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final long leaseMillis;
+
+    public SingleFlight() {
+        this(TimeUnit.MINUTES.toMillis(10));
+    }
+
+    /**
+     * @param leaseMillis the longest time, in milliseconds, that concurrent
+     * callers will wait for a flight to complete
+     */
+    public SingleFlight(long leaseMillis) {
+        if (leaseMillis < 1) {
+            throw new IllegalArgumentException("Lease can't be shorter than 1 ms");
+        }
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * Runs {@code work} for {@code key}, unless the same key is already in
+     * flight; in which case waits for that flight and returns its result.
+     * If the flight in progress fails, its exception is rethrown to all its
+     * waiters. If it returns {@code null}, or overstays its lease, the waiters
+     * run {@code work} themselves.
+     *
+     * @param key the key
+     * @param work the computation
+     * @return the value computed by this, or the concurrent, caller
+     * @throws Exception whatever {@code work} throws
+     */
+    public V execute(K key, Callable<V> work) throws Exception {
+        Flight<V> mine = lead(key);
+        if (mine == null) {
+            Flight<V> current = flights.get(key);
+            if (current != null) {
+                try {
+                    V shared = current.result.get(Math.max(current.expiresAt - System.currentTimeMillis(), 1), TimeUnit.MILLISECONDS);
+                    if (shared != null) {
+                        return shared;
+                    }
+                } catch (ExecutionException ee) {
+                    if (ee.getCause() instanceof Exception) {
+                        throw (Exception) ee.getCause();
+                    }
+                    throw ee;
+                } catch (TimeoutException te) {
+                    // the leader has overstayed its lease; do the work ourselves.
+                }
+            }
+            return work.call();
+        }
+
+        try {
+            V value = work.call();
+            flights.remove(key, mine);
+            mine.result.complete(value);
+            return value;
+        } catch (Exception e) {
+            flights.remove(key, mine);
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Split-phase alternative to {@link #execute(Object, Callable)}, for when
+     * the computation and the publication of its result happen in separate
+     * calls. A caller that gets {@code true} is the leader for the key and
+     * must later call {@link #complete(Object, Object)} or {@link #abandon(Object)}
+     * (or let the lease expire).
+     *
+     * @param key the key
+     * @return {@code true} iff the caller is now the leader for the key
+     */
+    public boolean tryLead(K key) {
+        return lead(key) != null;
+    }
+
+    /**
+     * Waits for the flight currently in progress for {@code key}, if any.
+     *
+     * @param key the key
+     * @param timeout the longest time to wait
+     * @param unit the unit of {@code timeout}
+     * @return the result of the flight, or {@code null} if there was no flight,
+     * or it failed, or it did not complete in time
+     */
+    public V awaitResult(K key, long timeout, TimeUnit unit) {
+        Flight<V> current = flights.get(key);
+        if (current == null) {
+            return null;
+        }
+        try {
+            return current.result.get(timeout, unit);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ends the flight for {@code key}, handing {@code value} to everyone waiting on it.
+     *
+     * @param key the key
+     * @param value the computed value
+     */
+    public void complete(K key, V value) {
+        Flight<V> current = flights.remove(key);
+        if (current != null) {
+            current.result.complete(value);
+        }
+    }
+
+    /**
+     * Ends the flight for {@code key} without a result; everyone waiting on
+     * it will do the work on their own.
+     *
+     * @param key the key
+     */
+    public void abandon(K key) {
+        complete(key, null);
+    }
+
+    /**
+     * @return the number of flights currently in progress
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    private Flight<V> lead(K key) {
+        long now = System.currentTimeMillis();
+        Flight<V> mine = new Flight<>(now + leaseMillis);
+        Object[] replaced = new Object[1];
+        Flight<V> current = flights.compute(key, (k, existing) -> {
+            if (existing == null || existing.isExpired(now)) {
+                replaced[0] = existing;
+                return mine;
+            }
+            return existing;
+        });
+        if (replaced[0] != null) {
+            ((Flight<?>) replaced[0]).result.complete(null);
+        }
+        return current == mine ? mine : null;
+    }
+}
@@ -24,9 +24,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -36,7 +40,6 @@ import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 
 import edu.harvard.iq.dataverse.util.BundleUtil;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
 import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
@@ -73,6 +76,11 @@ import com.google.gson.JsonSyntaxException;
 
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.dataaccess.StoredOriginalFile;
 import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.json.JsonLDTerm;
@@ -120,10 +128,19 @@ public class BagGenerator {
     private boolean usetemp = false;
 
     private int numConnections = 8;
+    private boolean oremapHashesAdded = false;
     public static final String BAG_GENERATOR_THREADS = ":BagGeneratorThreads";
 
     private OREMap oremap;
 
+    public static final String DATA_SOURCE_STORAGE = "storage";
+    public static final String DATA_SOURCE_API = "api";
+    // Files that can be read directly from their store, by storage identifier
+    private Map<String, DataFile> storageFiles = new HashMap<String, DataFile>();
+    // The data files being zipped, with the hashes calculated as they are read
+    private List<HashedFile> hashedFiles = new ArrayList<HashedFile>();
+    private List<CompletableFuture<Void>> hashedFilesDone = new ArrayList<CompletableFuture<Void>>();
+
     static PrintWriter pw = null;
 
     /**
@@ -138,6 +155,13 @@ public class BagGenerator {
      * and zipping are done in parallel, using a connection pool. The required space
      * on disk is ~ n+1/n of the final bag size, e.g. 125% of the bag size for a
      * 4-way parallel zip operation.
+     * 
+     * Unless dataverse.bagit.data-source is set to "api", the files of the dataset
+     * version that are in a Dataverse-accessible store are read directly from
+     * storage rather than retrieved from the /api/access URLs (which are still
+     * used for other files, and if reading from storage fails). Either way, the
+     * hash of each file is calculated as it is zipped, and used to verify the
+     * hash in the ORE map or to add it when it is missing.
      * @throws Exception 
      * @throws JsonSyntaxException 
      */
@@ -148,6 +172,20 @@ public class BagGenerator {
                 //(JsonObject) new JsonParser().parse(oreMap.getOREMap().toString());
         this.dataciteXml = dataciteXml;
 
+        String dataSource = JvmSettings.BAGIT_DATA_SOURCE.lookupOptional().orElse(DATA_SOURCE_STORAGE);
+        if (DATA_SOURCE_STORAGE.equals(dataSource) && oreMap.getDatasetVersion() != null) {
+            for (FileMetadata fmd : oreMap.getDatasetVersion().getFileMetadatas()) {
+                DataFile df = fmd.getDataFile();
+                if (df.getStorageIdentifier() != null && StorageIO.isDataverseAccessible(
+                        DataAccess.getStorageDriverFromIdentifier(df.getStorageIdentifier()))) {
+                    storageFiles.put(df.getStorageIdentifier(), df);
+                }
+            }
+            logger.fine(storageFiles.size() + " files will be read directly from storage");
+        } else if (!DATA_SOURCE_API.equals(dataSource)) {
+            logger.warning("Unknown dataverse.bagit.data-source: " + dataSource + " - files will be retrieved via the API");
+        }
+
         try {
             // Using Dataverse, all the URLs to be retrieved should be on the current server, so allowing self-signed certs and not verifying hostnames are useful in testing and 
             // shouldn't be a significant security issue. This should not be allowed for arbitrary OREMap sources.
@@ -240,6 +278,9 @@ public class BagGenerator {
             // Process current container (the aggregation itself) and its
             // children
             processContainer(aggregation, currentPath);
+            if (!checkHashes()) {
+                return false;
+            }
         }
         // Create manifest files
         // pid-mapping.txt - a DataOne recommendation to connect ids and
@@ -299,10 +340,8 @@ public class BagGenerator {
         }
         aggregation.add(JsonLDTerm.dcTerms("format").getLabel(), mTypes);
         aggregation.addProperty(JsonLDTerm.maxFileSize.getLabel(), maxFileSize);
-        // Serialize oremap itself
-        // FixMe - add missing hash values if needed and update context
-        // (read and cache files or read twice?)
-        createFileFromString("metadata/oai-ore.jsonld", oremapObject.toString());
+        // Serialize oremap itself, with any hash values that were missing
+        createFileFromString("metadata/oai-ore.jsonld", getOREMapWithHashes());
 
         createFileFromString("metadata/datacite.xml", dataciteXml);
 
@@ -340,9 +379,6 @@ public class BagGenerator {
 
                         if (!childIsContainer(aggregates.get(i - 1).getAsJsonObject()))
                             logger.warning("Missing checksum hash for: " + resourceIndex.get(i));
-                        // FixMe - actually generate it before adding the
-                        // oremap
-                        // to the zip
                     }
                 }
             }
@@ -572,43 +608,14 @@ public class BagGenerator {
                     hashtype = DataFile.ChecksumType.SHA512;
                 }
                 try {
-                    if ((childHash == null) | ignorehashes) {
-                        // Generate missing hashInputStream inputStream = null;
-                        InputStream inputStream = null;
-                        try {
-                            inputStream = getInputStreamSupplier(dataUrl).get();
-
-                            if (hashtype != null) {
-                                if (hashtype.equals(DataFile.ChecksumType.SHA1)) {
-                                    childHash = DigestUtils.sha1Hex(inputStream);
-                                } else if (hashtype.equals(DataFile.ChecksumType.SHA256)) {
-                                    childHash = DigestUtils.sha256Hex(inputStream);
-                                } else if (hashtype.equals(DataFile.ChecksumType.SHA512)) {
-                                    childHash = DigestUtils.sha512Hex(inputStream);
-                                } else if (hashtype.equals(DataFile.ChecksumType.MD5)) {
-                                    childHash = DigestUtils.md5Hex(inputStream);
-                                }
-                            }
-
-                        } catch (IOException e) {
-                            logger.severe("Failed to read " + childPath);
-                            throw e;
-                        } finally {
-                            IOUtils.closeQuietly(inputStream);
-                        }
-                        if (childHash != null) {
-                            JsonObject childHashObject = new JsonObject();
-                            childHashObject.addProperty("@type", hashtype.toString());
-                            childHashObject.addProperty("@value", childHash);
-                            child.add(JsonLDTerm.checksum.getLabel(), (JsonElement) childHashObject);
-
-                            checksumMap.put(childPath, childHash);
-                        } else {
-                            logger.warning("Unable to calculate a " + hashtype + " for " + dataUrl);
-                        }
-                    }
-                    logger.fine("Requesting: " + childPath + " from " + dataUrl);
-                    createFileFromURL(childPath, dataUrl);
+                    // The hash is calculated as the file is zipped - to add it
+                    // if it is missing, or to verify the one we have
+                    String storageIdentifier = child.has(JsonLDTerm.storageIdentifier.getLabel())
+                            ? child.get(JsonLDTerm.storageIdentifier.getLabel()).getAsString()
+                            : null;
+                    logger.fine("Requesting: " + childPath + " from "
+                            + (storageFiles.containsKey(storageIdentifier) ? storageIdentifier : dataUrl));
+                    createFileFromSource(childPath, child, ignorehashes ? null : childHash, storageIdentifier, dataUrl);
                     dataCount++;
                     if (dataCount % 1000 == 0) {
                         logger.info("Retrieval in progress: " + dataCount + " files retrieved");
@@ -693,13 +700,99 @@ public class BagGenerator {
         addEntry(archiveEntry, supp);
     }
 
-    private void createFileFromURL(final String relPath, final String uri)
-            throws IOException, ExecutionException, InterruptedException {
+    /**
+     * Adds a data file to the zip, read from storage if it is one of the files
+     * of the dataset version in a Dataverse-accessible store, or from its URL
+     * otherwise. Its hash is calculated as it is written and checked in
+     * checkHashes() once all the files have been written.
+     */
+    private void createFileFromSource(final String relPath, final JsonObject child, final String expectedHash,
+            final String storageIdentifier, final String uri) {
 
         ZipArchiveEntry archiveEntry = new ZipArchiveEntry(bagName + "/" + relPath);
         archiveEntry.setMethod(ZipEntry.DEFLATED);
-        InputStreamSupplier supp = getInputStreamSupplier(uri);
-        addEntry(archiveEntry, supp);
+        DataFile dataFile = storageIdentifier == null ? null : storageFiles.get(storageIdentifier);
+        InputStreamSupplier source = dataFile != null ? getStorageInputStreamSupplier(dataFile, uri)
+                : getInputStreamSupplier(uri);
+        HashingInputStreamSupplier supp = new HashingInputStreamSupplier(source, hashtype);
+
+        CompletableFuture<Void> done = new CompletableFuture<Void>();
+        Callable<ScatterZipOutputStream> zipFile = scatterZipCreator.createCallable(archiveEntry, supp);
+        scatterZipCreator.submitStreamAwareCallable(() -> {
+            try {
+                return zipFile.call();
+            } finally {
+                done.complete(null);
+            }
+        });
+        hashedFiles.add(new HashedFile(relPath, child, expectedHash, supp));
+        hashedFilesDone.add(done);
+    }
+
+    /**
+     * Waits for all the data files to be zipped, then checks their hashes
+     * against the ones in the ORE map; the hashes that were missing (or
+     * ignored) are added to the map.
+     * 
+     * @return false if a file could not be read or its hash doesn't match
+     */
+    private boolean checkHashes() {
+        CompletableFuture.allOf(hashedFilesDone.toArray(new CompletableFuture[0])).join();
+        boolean valid = true;
+        for (HashedFile file : hashedFiles) {
+            String hash = file.hasher.getChecksum();
+            if (hash == null) {
+                logger.severe("Failed to read " + file.path);
+                valid = false;
+            } else if (file.expectedHash != null) {
+                if (!file.expectedHash.equalsIgnoreCase(hash)) {
+                    logger.severe("Hash mismatch for " + file.path + ": expected " + file.expectedHash + " but the "
+                            + file.hasher.getChecksumType() + " of the file is " + hash);
+                    valid = false;
+                }
+            } else {
+                JsonObject childHashObject = new JsonObject();
+                childHashObject.addProperty("@type", file.hasher.getChecksumType().toString());
+                childHashObject.addProperty("@value", hash);
+                file.child.add(JsonLDTerm.checksum.getLabel(), (JsonElement) childHashObject);
+                if (checksumMap.containsValue(hash)) {
+                    // Something else has this hash
+                    logger.warning("Duplicate/Collision: " + file.child.get("@id").getAsString() + " has hash: "
+                            + hash + " in: " + bagID);
+                }
+                checksumMap.put(file.path, hash);
+                oremapHashesAdded = true;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * @return the ORE map, with the hashes that were calculated while creating
+     * the bag added to its aggregated resources
+     */
+    private String getOREMapWithHashes() {
+        if (!oremapHashesAdded) {
+            return oremapObject.toString();
+        }
+        JsonObject map = (JsonObject) new JsonParser().parse(oremapObject.toString());
+        map.getAsJsonObject(JsonLDTerm.ore("describes").getLabel()).add(JsonLDTerm.ore("aggregates").getLabel(),
+                aggregates);
+        return map.toString();
+    }
+
+    private static class HashedFile {
+        final String path;
+        final JsonObject child;
+        final String expectedHash;
+        final HashingInputStreamSupplier hasher;
+
+        HashedFile(String path, JsonObject child, String expectedHash, HashingInputStreamSupplier hasher) {
+            this.path = path;
+            this.child = child;
+            this.expectedHash = expectedHash;
+            this.hasher = hasher;
+        }
     }
 
     private void checkFiles(HashMap<String, String> shaMap, File bagFile) {
@@ -1008,6 +1101,36 @@ public class BagGenerator {
         return request;
     }
 
+    /**
+     * Reads a data file directly from its store (its original, for ingested
+     * files, as the /api/access URL in the ORE map does); if that fails, the
+     * file is retrieved from the URL instead.
+     */
+    InputStreamSupplier getStorageInputStreamSupplier(final DataFile dataFile, final String uriString) {
+
+        return new InputStreamSupplier() {
+            public InputStream get() {
+                try {
+                    StorageIO<DataFile> storageIO = DataAccess.getStorageIO(dataFile);
+                    storageIO.open(DataAccessOption.READ_ACCESS);
+                    boolean ingested = dataFile.getOriginalFileName() != null || dataFile.getOriginalFileSize() != null
+                            || dataFile.getOriginalFileFormat() != null;
+                    InputStream in = ingested
+                            ? storageIO.getAuxFileAsInputStream(StoredOriginalFile.SAVED_ORIGINAL_FILENAME_EXTENSION)
+                            : storageIO.getInputStream();
+                    if (in != null) {
+                        return in;
+                    }
+                    logger.warning("No content in storage for " + dataFile.getStorageIdentifier());
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Unable to read " + dataFile.getStorageIdentifier() + " from storage", e);
+                }
+                logger.fine("Falling back to " + uriString);
+                return getInputStreamSupplier(uriString).get();
+            }
+        };
+    }
+
     InputStreamSupplier getInputStreamSupplier(final String uriString) {
 
         return new InputStreamSupplier() {
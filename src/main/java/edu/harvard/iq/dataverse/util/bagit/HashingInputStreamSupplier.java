@@ -0,0 +1,82 @@
+package edu.harvard.iq.dataverse.util.bagit;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
+
+/**
+ * Supplies the bytes of a data file to be written into a bag, calculating
+ * their checksum as they are written; so that the files don't have to be
+ * read once more just for their hashes (for the manifest, when the checksums
+ * are missing, or to verify the checksums we have).
+ * <p>
+ * The checksum is available once the stream has been read to the end and
+ * closed (as the zip creator does with every entry).
+ */
+public class HashingInputStreamSupplier implements InputStreamSupplier {
+
+    private final InputStreamSupplier source;
+    private final ChecksumType checksumType;
+    private volatile String checksum;
+
+    public HashingInputStreamSupplier(InputStreamSupplier source, ChecksumType checksumType) {
+        this.source = source;
+        this.checksumType = checksumType;
+    }
+
+    @Override
+    public InputStream get() {
+        InputStream in = source.get();
+        if (in == null) {
+            return null;
+        }
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(checksumType.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        return new DigestInputStream(in, md) {
+            private boolean eof = false;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                eof = eof || b == -1;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                eof = eof || n == -1;
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                if (eof && checksum == null) {
+                    checksum = FileUtil.checksumDigestToString(getMessageDigest().digest());
+                }
+            }
+        };
+    }
+
+    public ChecksumType getChecksumType() {
+        return checksumType;
+    }
+
+    /**
+     * @return the checksum of the bytes supplied, or null if they have not
+     * been read completely
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+}
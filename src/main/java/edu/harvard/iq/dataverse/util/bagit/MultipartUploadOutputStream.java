@@ -0,0 +1,293 @@
+package edu.harvard.iq.dataverse.util.bagit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * An OutputStream that sends what is written to it to an archive as a
+ * sequence of parts, e.g. an S3 multipart upload, so that a bag can be
+ * generated straight into its destination without being written to a
+ * temporary file first.
+ * <p>
+ * The bytes are collected in part-sized buffers, which are uploaded in the
+ * background while the next parts are being written. At most
+ * {@code partsInFlight} parts are uploaded at a time; once they are all busy,
+ * writes block until one of them is done. The memory used is therefore
+ * bounded by {@code partSize * (partsInFlight + 1)} whatever the size of the
+ * bag. The parts are uploaded on the given executor, normally the managed
+ * executor service of the container, which the stream does not shut down.
+ * <p>
+ * The upload is only completed when the stream is closed after all the
+ * parts succeeded; otherwise it is aborted, and the parts uploaded so far
+ * are discarded. (They are not reused by the next attempt: a bag is not
+ * generated byte for byte the same twice - the zip entries are timestamped,
+ * among other things - so its parts would not match anyway.)
+ */
+public abstract class MultipartUploadOutputStream extends OutputStream {
+
+    private static final Logger logger = Logger.getLogger(MultipartUploadOutputStream.class.getCanonicalName());
+
+    private final int partSize;
+    private final int partsInFlight;
+    private final Semaphore buffers;
+    private final Executor executor;
+
+    private byte[] buffer;
+    private int count = 0;
+    private int partNumber = 0;
+    private long size = 0;
+    private boolean started = false;
+    private volatile boolean closed = false;
+    private final MessageDigest streamDigest;
+    private String md5 = null;
+
+    private final SortedMap<Integer, String> completedParts = new ConcurrentSkipListMap<Integer, String>();
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+    /**
+     * @param partSize the size of all the parts but the last, in bytes
+     * @param partsInFlight the number of parts that can be uploaded at once
+     * @param executor runs the uploads of the parts
+     */
+    protected MultipartUploadOutputStream(int partSize, int partsInFlight, Executor executor) {
+        this.partSize = partSize;
+        this.partsInFlight = Math.max(partsInFlight, 1);
+        this.buffers = new Semaphore(this.partsInFlight);
+        this.executor = executor;
+        try {
+            streamDigest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Starts the upload, before the first part is uploaded.
+     *
+     * @throws IOException
+     */
+    protected abstract void startUpload() throws IOException;
+
+    /**
+     * Uploads one part. Called from the upload threads, for several parts at
+     * once.
+     *
+     * @param partNumber starting from 1
+     * @param data the content of the part
+     * @param length the number of bytes of data to upload
+     * @param md5 the hex MD5 hash of the part, to verify the transfer
+     * @return the tag that identifies this part when the upload is completed
+     * @throws IOException
+     */
+    protected abstract String uploadPart(int partNumber, byte[] data, int length, String md5) throws IOException;
+
+    /**
+     * Assembles the uploaded parts into the archive file.
+     *
+     * @param parts the tag of each part, by part number
+     * @throws IOException
+     */
+    protected abstract void completeUpload(SortedMap<Integer, String> parts) throws IOException;
+
+    /**
+     * Discards the parts uploaded so far. Called, once none of them is being
+     * uploaded anymore, when the upload is not going to be completed.
+     *
+     * @throws IOException
+     */
+    protected abstract void abortUpload() throws IOException;
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        while (len > 0) {
+            if (buffer == null) {
+                buffer = new byte[partSize];
+            }
+            int n = Math.min(len, partSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == partSize) {
+                sendPart();
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        Exception e = failure.get();
+        if (e != null) {
+            // Nothing more can be uploaded
+            abort();
+            throw new IOException("Upload of part failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void sendPart() throws IOException {
+        if (!started) {
+            startUpload();
+            started = true;
+        }
+        final int number = ++partNumber;
+        final byte[] data = buffer;
+        final int length = count;
+        buffer = null;
+        count = 0;
+        size += length;
+        streamDigest.update(data, 0, length);
+        final String md5 = md5Hex(data, length);
+
+        try {
+            buffers.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to upload part " + number, ie);
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (failure.get() == null && !closed) {
+                        completedParts.put(number, uploadPart(number, data, length, md5));
+                        logger.fine("Uploaded part " + number + " (" + length + " bytes)");
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    buffers.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            buffers.release();
+            throw new IOException("Unable to upload part " + number + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Waits until none of the parts is being uploaded.
+     */
+    private void awaitParts() throws InterruptedException {
+        buffers.acquire(partsInFlight);
+        buffers.release(partsInFlight);
+    }
+
+    /**
+     * Aborts the upload, once the parts being uploaded are done; the parts not
+     * started yet are skipped.
+     */
+    private void abort() {
+        closed = true;
+        if (!started) {
+            return;
+        }
+        started = false;
+        try {
+            awaitParts();
+            abortUpload();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            logger.warning("Interrupted while waiting to abort the upload; its parts are left in place");
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to abort the upload; its parts are left in place", e);
+        }
+    }
+
+    static String md5Hex(byte[] data, int length) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            md.update(data, 0, length);
+            return Hex.encodeHexString(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Uploads the last part, waits for all the parts to be uploaded and
+     * completes the upload.
+     *
+     * @throws IOException if any of the parts failed; the upload is not
+     * completed then
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        boolean completed = false;
+        try {
+            checkOpen();
+            if (count > 0 || partNumber == 0) {
+                if (buffer == null) {
+                    buffer = new byte[0];
+                }
+                sendPart();
+            }
+            md5 = Hex.encodeHexString(streamDigest.digest());
+            try {
+                awaitParts();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the parts to be uploaded", ie);
+            }
+            Exception e = failure.get();
+            if (e != null) {
+                throw new IOException("Upload of part failed: " + e.getMessage(), e);
+            }
+            completeUpload(completedParts);
+            completed = true;
+            logger.fine("Upload completed: " + partNumber + " parts, " + size + " bytes");
+        } finally {
+            if (!completed) {
+                abort();
+            }
+            closed = true;
+        }
+    }
+
+    /**
+     * Stops uploading without completing the upload, e.g. because the bag
+     * could not be generated; the parts uploaded so far are discarded.
+     */
+    public void cancel() {
+        if (!closed) {
+            abort();
+            logger.fine("Upload cancelled after " + partNumber + " parts");
+        }
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the hex MD5 hash of everything written, once the stream is
+     * closed
+     */
+    public String getMd5() {
+        return md5;
+    }
+}
@@ -73,6 +73,10 @@ public class OREMap {
         outputStream.flush();
     }
 
+    public DatasetVersion getDatasetVersion() {
+        return version;
+    }
+
     public JsonObject getOREMap() {
         return getOREMap(false);
     }
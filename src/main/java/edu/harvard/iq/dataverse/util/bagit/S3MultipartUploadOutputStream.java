@@ -0,0 +1,120 @@
+package edu.harvard.iq.dataverse.util.bagit;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+/**
+ * Writes to an S3 object through a multipart upload.
+ * <p>
+ * An upload that fails, or is cancelled, is aborted, so that S3 does not
+ * keep its parts. A bucket lifecycle rule to abort incomplete multipart
+ * uploads after a few days will clean up after those that could not be
+ * aborted either (when the server is stopped in the middle of an upload, for
+ * example).
+ */
+public class S3MultipartUploadOutputStream extends MultipartUploadOutputStream {
+
+    private static final Logger logger = Logger.getLogger(S3MultipartUploadOutputStream.class.getCanonicalName());
+
+    /**
+     * S3 allows at most this many parts in an upload.
+     */
+    public static final int MAX_PARTS = 10000;
+
+    /**
+     * S3 requires all the parts but the last to be at least this large.
+     */
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final AmazonS3 s3;
+    private final String bucketName;
+    private final String key;
+    private String uploadId = null;
+
+    public S3MultipartUploadOutputStream(AmazonS3 s3, String bucketName, String key, int partSize, int partsInFlight,
+            Executor executor) {
+        super(Math.max(partSize, MIN_PART_SIZE), partsInFlight, executor);
+        this.s3 = s3;
+        this.bucketName = bucketName;
+        this.key = key;
+    }
+
+    /**
+     * @param estimatedSize the expected size of the object, in bytes
+     * @param partSize the preferred part size, in bytes
+     * @return a part size, at least the preferred one, that will fit the
+     * object in {@link #MAX_PARTS} parts with some room to spare
+     */
+    public static int getPartSize(long estimatedSize, int partSize) {
+        long needed = (estimatedSize + estimatedSize / 10) / (MAX_PARTS - 1000) + 1;
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(Math.max(needed, partSize), MIN_PART_SIZE));
+    }
+
+    @Override
+    protected void startUpload() throws IOException {
+        try {
+            uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key)).getUploadId();
+            logger.fine("Started upload " + uploadId + " for " + key);
+        } catch (SdkClientException e) {
+            throw new IOException("Unable to start the upload of " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected String uploadPart(int partNumber, byte[] data, int length, String md5) throws IOException {
+        try {
+            UploadPartRequest request = new UploadPartRequest()
+                    .withBucketName(bucketName)
+                    .withKey(key)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partNumber)
+                    .withInputStream(new ByteArrayInputStream(data, 0, length))
+                    .withPartSize(length)
+                    .withMD5Digest(Base64.getEncoder().encodeToString(Hex.decodeHex(md5)));
+            return s3.uploadPart(request).getETag();
+        } catch (SdkClientException | DecoderException e) {
+            throw new IOException("Unable to upload part " + partNumber + " of " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected void completeUpload(SortedMap<Integer, String> parts) throws IOException {
+        List<PartETag> eTags = new ArrayList<PartETag>(parts.size());
+        for (Map.Entry<Integer, String> part : parts.entrySet()) {
+            eTags.add(new PartETag(part.getKey(), part.getValue()));
+        }
+        try {
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, eTags));
+        } catch (SdkClientException e) {
+            throw new IOException("Unable to complete the upload of " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected void abortUpload() throws IOException {
+        try {
+            s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+            logger.fine("Aborted upload " + uploadId + " for " + key);
+        } catch (SdkClientException e) {
+            throw new IOException("Unable to abort the upload of " + key + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package edu.harvard.iq.dataverse.util.file;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Saves an uploaded stream in a (temporary) file, and, in the same pass over
+ * the bytes, calculates the checksum of the file and keeps its leading bytes,
+ * so that neither the checksum calculation nor the content type checks that
+ * only look at the beginning of the file (see
+ * {@link FileUtil#determineFileType(java.io.File, String, byte[])}) have to
+ * read the file from the disk again.
+ */
+public class UploadedFileCopy {
+
+    /**
+     * Number of leading bytes kept; enough for all the "magic number" checks
+     * of the type detection.
+     */
+    public static final int HEADER_SIZE = 8192;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long size;
+    private final ChecksumType checksumType;
+    private final String checksum;
+    private final byte[] header;
+
+    private UploadedFileCopy(long size, ChecksumType checksumType, String checksum, byte[] header) {
+        this.size = size;
+        this.checksumType = checksumType;
+        this.checksum = checksum;
+        this.header = header;
+    }
+
+    /**
+     * Copies the stream into the file (replacing the file, if it exists). The
+     * stream is read to the end, but not closed.
+     *
+     * @param in the uploaded bytes
+     * @param target the file to save them in
+     * @param checksumType the checksum to calculate
+     * @return the size, checksum and leading bytes of the saved file
+     * @throws IOException if the stream could not be read, or the file written
+     */
+    public static UploadedFileCopy save(InputStream in, Path target, ChecksumType checksumType) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(checksumType.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        byte[] header = new byte[HEADER_SIZE];
+        int headerLength = 0;
+        long size = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (OutputStream out = Files.newOutputStream(target)) {
+            int nread;
+            while ((nread = in.read(buffer)) != -1) {
+                out.write(buffer, 0, nread);
+                md.update(buffer, 0, nread);
+                if (headerLength < HEADER_SIZE) {
+                    int n = Math.min(nread, HEADER_SIZE - headerLength);
+                    System.arraycopy(buffer, 0, header, headerLength, n);
+                    headerLength += n;
+                }
+                size += nread;
+            }
+        }
+
+        return new UploadedFileCopy(size, checksumType, FileUtil.checksumDigestToString(md.digest()),
+                Arrays.copyOf(header, headerLength));
+    }
+
+    /**
+     * @return the size of the file, in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public ChecksumType getChecksumType() {
+        return checksumType;
+    }
+
+    /**
+     * @return the checksum of the file, in the format stored in the database
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @return the first {@link #HEADER_SIZE} bytes of the file (all of it, if
+     * it is shorter than that)
+     */
+    public byte[] getHeader() {
+        return header;
+    }
+}
@@ -0,0 +1,57 @@
+package edu.harvard.iq.dataverse.util.file;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.BoundedExecutor;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+
+/**
+ * The executor the entries of the uploaded zip archives are unpacked on (see
+ * {@link ZipUploadExtractor}). It runs on the container's threads, and is
+ * shared by all the uploads, so that no more than
+ * {@code dataverse.files.zip-upload.extraction-threads} entries are unpacked
+ * at a time, however many archives are being uploaded (see
+ * {@link BoundedExecutor}).
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ZipUploadExtractionServiceBean {
+
+    @Resource
+    ManagedExecutorService managedExecutor;
+
+    private BoundedExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, JvmSettings.ZIP_UPLOAD_EXTRACTION_THREADS.lookupOptional(Integer.class)
+                .orElse(Math.min(8, Runtime.getRuntime().availableProcessors())));
+        executor = new BoundedExecutor(managedExecutor, threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param checksumType the checksum to calculate for the unpacked files
+     * @param fileSizeLimit the size limit for each unpacked file, or null
+     * @param storageQuotaLimit the limit on the combined size of the unpacked
+     * files, or null
+     * @return an extractor unpacking the entries of one archive, into the temp
+     * directory, on the shared executor
+     */
+    public ZipUploadExtractor getExtractor(ChecksumType checksumType, Long fileSizeLimit, Long storageQuotaLimit) {
+        return new ZipUploadExtractor(executor, FileUtil.getFilesTempDirectory(), checksumType, fileSizeLimit, storageQuotaLimit);
+    }
+}
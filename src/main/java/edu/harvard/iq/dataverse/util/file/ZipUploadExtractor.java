@@ -0,0 +1,226 @@
+package edu.harvard.iq.dataverse.util.file;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.datasetutility.FileExceedsMaxSizeException;
+import edu.harvard.iq.dataverse.util.BundleUtil;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import static edu.harvard.iq.dataverse.datasetutility.FileSizeChecker.bytesToHumanReadable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Unpacks the entries of an uploaded zip archive concurrently, on the worker
+ * threads shared by all the uploads (see
+ * {@link ZipUploadExtractionServiceBean#getExtractor}). Each worker reads its
+ * entry directly from the {@link ZipFile}, saves it in the temp directory,
+ * calculates its checksum, and determines its content type.
+ * <p>
+ * The size limit and the storage quota are enforced on the actual number of
+ * bytes unpacked, as they are unpacked (the sizes recorded in the zip
+ * directory, that the caller is expected to have checked already, can't be
+ * trusted); if any entry fails, the entries not started yet are skipped, and
+ * all the files unpacked so far are removed.
+ */
+public class ZipUploadExtractor {
+
+    private static final Logger logger = Logger.getLogger(ZipUploadExtractor.class.getCanonicalName());
+
+    /**
+     * An unpacked entry.
+     *
+     * @param entry the zip entry
+     * @param storageIdentifier the name of the unpacked file, in the temp
+     * directory
+     * @param copy the size, checksum and leading bytes of the unpacked file
+     * @param contentType the content type determined, or null if it could not
+     * be determined
+     */
+    public record ExtractedEntry(ZipEntry entry, String storageIdentifier, UploadedFileCopy copy, String contentType) {
+    }
+
+    private final ExecutorService executor;
+    private final String tempDirectory;
+    private final ChecksumType checksumType;
+    private final Long fileSizeLimit;
+    private final Long storageQuotaLimit;
+
+    ZipUploadExtractor(ExecutorService executor, String tempDirectory, ChecksumType checksumType, Long fileSizeLimit, Long storageQuotaLimit) {
+        this.executor = executor;
+        this.tempDirectory = tempDirectory;
+        this.checksumType = checksumType;
+        this.fileSizeLimit = fileSizeLimit;
+        this.storageQuotaLimit = storageQuotaLimit;
+    }
+
+    /**
+     * Unpacks the entries.
+     *
+     * @param zipFile the uploaded archive
+     * @param entries the entries to unpack (files, not directories)
+     * @return the unpacked entries, in the same order as {@code entries}
+     * @throws FileExceedsMaxSizeException if one of the unpacked files is over
+     * the size limit
+     * @throws FileExceedsStorageQuotaException if the unpacked files are, all
+     * together, over the storage quota
+     * @throws IOException if an entry could not be unpacked
+     */
+    public List<ExtractedEntry> extract(ZipFile zipFile, List<ZipEntry> entries)
+            throws IOException, FileExceedsMaxSizeException, FileExceedsStorageQuotaException {
+        AtomicLong combinedSize = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<ExtractedEntry>> futures = new ArrayList<>(entries.size());
+        for (ZipEntry entry : entries) {
+            futures.add(executor.submit(() -> {
+                if (failed.get()) {
+                    return null;
+                }
+                try {
+                    return extract(zipFile, entry, combinedSize);
+                } catch (Exception e) {
+                    failed.set(true);
+                    throw e;
+                }
+            }));
+        }
+
+        // Wait for all of them, even after a failure, so that no worker is
+        // still writing a file when we clean up:
+        List<ExtractedEntry> extracted = new ArrayList<>(entries.size());
+        Throwable failure = null;
+        for (Future<ExtractedEntry> future : futures) {
+            try {
+                extracted.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.set(true);
+                if (failure == null) {
+                    failure = new IOException("Interrupted while unpacking the zip file", e);
+                }
+            }
+        }
+
+        if (failure == null) {
+            return extracted;
+        }
+        for (ExtractedEntry entry : extracted) {
+            if (entry != null) {
+                deleteQuietly(new File(tempDirectory, entry.storageIdentifier()));
+            }
+        }
+        if (failure instanceof IOException ioe) {
+            throw ioe;
+        } else if (failure instanceof FileExceedsMaxSizeException femse) {
+            throw femse;
+        } else if (failure instanceof FileExceedsStorageQuotaException fesqe) {
+            throw fesqe;
+        }
+        throw new IOException("Failed to unpack the zip file", failure);
+    }
+
+    private ExtractedEntry extract(ZipFile zipFile, ZipEntry entry, AtomicLong combinedSize)
+            throws IOException, FileExceedsMaxSizeException, FileExceedsStorageQuotaException {
+        String storageIdentifier = FileUtil.generateStorageIdentifier();
+        File unzippedFile = new File(tempDirectory, storageIdentifier);
+        UploadedFileCopy copy;
+        try (InputStream in = new LimitedInputStream(zipFile.getInputStream(entry), combinedSize)) {
+            copy = UploadedFileCopy.save(in, unzippedFile.toPath(), checksumType);
+        } catch (LimitExceededException e) {
+            deleteQuietly(unzippedFile);
+            if (e.getCause() instanceof FileExceedsMaxSizeException femse) {
+                throw femse;
+            }
+            throw (FileExceedsStorageQuotaException) e.getCause();
+        } catch (IOException e) {
+            deleteQuietly(unzippedFile);
+            throw e;
+        }
+
+        String shortName = entry.getName().replaceFirst("^.*[\\/]", "");
+        String contentType = null;
+        try {
+            contentType = FileUtil.determineFileType(unzippedFile, shortName, copy.getHeader());
+            logger.fine("File utility recognized unzipped file as " + contentType);
+        } catch (Exception ex) {
+            logger.warning("Failed to run the file utility mime type check on file " + shortName);
+        }
+        return new ExtractedEntry(entry, storageIdentifier, copy, contentType);
+    }
+
+    /**
+     * Counts the bytes of an entry as they are unpacked, and stops the
+     * unpacking as soon as the entry is over the size limit, or the unpacked
+     * files are over the storage quota - rather than once the whole entry has
+     * been written to the disk.
+     */
+    private class LimitedInputStream extends FilterInputStream {
+        private final AtomicLong combinedSize;
+        private long size = 0;
+
+        LimitedInputStream(InputStream in, AtomicLong combinedSize) {
+            super(in);
+            this.combinedSize = combinedSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int nread = super.read(b, off, len);
+            if (nread > 0) {
+                count(nread);
+            }
+            return nread;
+        }
+
+        private void count(int nread) throws LimitExceededException {
+            size += nread;
+            if (fileSizeLimit != null && size > fileSizeLimit) {
+                throw new LimitExceededException(new FileExceedsMaxSizeException(MessageFormat.format(BundleUtil.getStringFromBundle("file.addreplace.error.file_exceeds_limit"), bytesToHumanReadable(size), bytesToHumanReadable(fileSizeLimit))));
+            }
+            long combined = combinedSize.addAndGet(nread);
+            if (storageQuotaLimit != null && combined > storageQuotaLimit) {
+                throw new LimitExceededException(new FileExceedsStorageQuotaException(MessageFormat.format(BundleUtil.getStringFromBundle("file.addreplace.error.unzipped.quota_exceeded"), bytesToHumanReadable(storageQuotaLimit))));
+            }
+        }
+    }
+
+    /**
+     * Carries the size limit or the storage quota exception out of
+     * {@link UploadedFileCopy#save}, that only throws IOExceptions.
+     */
+    private static class LimitExceededException extends IOException {
+        LimitExceededException(Exception cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (!file.delete() && file.exists()) {
+            logger.warning("Could not remove temp file " + file);
+        }
+    }
+}
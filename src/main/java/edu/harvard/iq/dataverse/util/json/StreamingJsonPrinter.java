@@ -0,0 +1,63 @@
+package edu.harvard.iq.dataverse.util.json;
+
+import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.api.ApiConstants;
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.stream.JsonGenerator;
+import java.io.OutputStream;
+
+/**
+ * Streaming counterparts of the {@link JsonPrinter} methods that serialize the
+ * files of a dataset version. Instead of building the whole array of files as
+ * a tree of builders first, the files are written out to the output stream as
+ * they are read, one page at a time; so the memory needed no longer grows with
+ * the number of files in the version. The output is the same as that of the
+ * builder-based methods. Use with a {@link edu.harvard.iq.dataverse.FileMetadataWindow}
+ * to read the files one page at a time as well.
+ */
+public class StreamingJsonPrinter {
+
+    private static final int FLUSH_INTERVAL = 1000;
+
+    /**
+     * Writes the same response as {@code ok(JsonPrinter.json(dsv, ..., true, ...))}:
+     * {@code {"status":"OK","data":{...,"files":[...]}}}.
+     *
+     * @param out where to write the response
+     * @param versionWithoutFiles the version, as serialized by
+     * {@link JsonPrinter#json(edu.harvard.iq.dataverse.DatasetVersion, java.util.List, boolean, boolean)}
+     * with {@code includeFiles} false
+     * @param files the files of the version
+     */
+    public static void writeDatasetVersionResponse(OutputStream out, JsonObject versionWithoutFiles, Iterable<FileMetadata> files) {
+        JsonGenerator generator = Json.createGenerator(out);
+        generator.writeStartObject()
+                .write("status", ApiConstants.STATUS_OK)
+                .writeStartObject("data");
+        versionWithoutFiles.forEach(generator::write);
+        generator.writeStartArray("files");
+        writeFileMetadatas(generator, files);
+        generator.writeEnd()
+                .writeEnd()
+                .writeEnd()
+                .flush();
+    }
+
+    /**
+     * Writes the elements of {@link JsonPrinter#jsonFileMetadatas(java.util.Collection)}
+     * into the array currently open in {@code generator}, flushing as it goes.
+     *
+     * @param generator the generator, with an array started
+     * @param files the files to write
+     */
+    public static void writeFileMetadatas(JsonGenerator generator, Iterable<FileMetadata> files) {
+        int written = 0;
+        for (FileMetadata fmd : files) {
+            generator.write(JsonPrinter.json(fmd).build());
+            if (++written % FLUSH_INTERVAL == 0) {
+                generator.flush();
+            }
+        }
+    }
+}
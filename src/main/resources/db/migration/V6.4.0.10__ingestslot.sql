@@ -0,0 +1,20 @@
+-- The ingest slots held by the files being ingested right now, one row per
+-- file, recording the server it is ingested on (owner) and when it started.
+-- They used to be counted in ingestprogress.running, which was never
+-- decremented for a work unit that died before it finished: a row per slot
+-- lets the slots of a server be freed when it restarts, and the slots held
+-- for too long be freed by any server.
+CREATE TABLE IF NOT EXISTS ingestslot (
+  id bigserial PRIMARY KEY,
+  dataset_id bigint NOT NULL,
+  owner varchar(255) NOT NULL,
+  started timestamp NOT NULL,
+  CONSTRAINT fk_ingestslot_dataset_id FOREIGN KEY (dataset_id) REFERENCES dvobject(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS index_ingestslot_dataset_id ON ingestslot (dataset_id);
+CREATE INDEX IF NOT EXISTS index_ingestslot_owner ON ingestslot (owner);
+CREATE INDEX IF NOT EXISTS index_ingestslot_started ON ingestslot (started);
+
+DROP INDEX IF EXISTS index_ingestprogress_running;
+ALTER TABLE ingestprogress DROP COLUMN IF EXISTS running;
@@ -0,0 +1,7 @@
+-- What a cached citation depends on outside of its version: the collection
+-- the dataset is in, and the fields that collection adds to the citations of
+-- its datasets. A citation is only used if they are still the same. The
+-- citations cached so far have no context, and are dropped.
+ALTER TABLE datasetversioncitation ADD COLUMN IF NOT EXISTS context text;
+DELETE FROM datasetversioncitation;
+ALTER TABLE datasetversioncitation ALTER COLUMN context SET NOT NULL;
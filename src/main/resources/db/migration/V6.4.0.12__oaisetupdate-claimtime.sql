@@ -0,0 +1,5 @@
+-- When a node claimed the dataset for an update of its OAI records. The row
+-- is only deleted once the records have been updated, so that a dataset is
+-- not lost when the update fails or the node goes down; a claim that is old
+-- enough is taken to have been abandoned.
+ALTER TABLE oaisetupdate ADD COLUMN IF NOT EXISTS claimtime timestamp;
@@ -0,0 +1,25 @@
+-- Concurrent transactions writing guestbook responses could deadlock on the
+-- downloadcount rows, since each response locked its file row and then its
+-- dataset row, in whatever order the responses were inserted. The rows are
+-- now always locked dataset first, then file; and the responses of a batch
+-- are inserted sorted by dataset and file (see GuestbookResponseServiceBean.saveAll),
+-- so that every writer locks them in the same order.
+CREATE OR REPLACE FUNCTION downloadcount_adjust(fileid bigint, datasetid bigint, delta bigint)
+RETURNS void AS $$
+BEGIN
+  IF delta > 0 THEN
+    INSERT INTO downloadcount (dvobject_id, downloadcount)
+    VALUES (datasetid, delta)
+    ON CONFLICT (dvobject_id) DO UPDATE SET downloadcount = downloadcount.downloadcount + EXCLUDED.downloadcount;
+    INSERT INTO downloadcount (dvobject_id, downloadcount)
+    VALUES (fileid, delta)
+    ON CONFLICT (dvobject_id) DO UPDATE SET downloadcount = downloadcount.downloadcount + EXCLUDED.downloadcount;
+  ELSE
+    -- (the rows may already be gone, if the file or dataset is being deleted)
+    UPDATE downloadcount SET downloadcount = downloadcount + delta
+    WHERE dvobject_id = datasetid;
+    UPDATE downloadcount SET downloadcount = downloadcount + delta
+    WHERE dvobject_id = fileid;
+  END IF;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,5 @@
+-- When a server claimed a completed Globus task, to process it. The row is
+-- only deleted once the task has been processed, so that a task is not lost
+-- when processing fails or the server goes down; a claim that is old enough
+-- is taken to have been abandoned.
+ALTER TABLE globustaskinprogress ADD COLUMN IF NOT EXISTS claimtime TIMESTAMP;
@@ -0,0 +1,93 @@
+-- Closure table for the Collection/Dataset hierarchy. Every DvObjectContainer
+-- (Dataverse or Dataset) gets one row per ancestor (including a depth 0 row
+-- pointing to itself), so that "all descendants", "all ancestors" and "path"
+-- lookups can be answered with a single indexed query, instead of a recursive
+-- CTE or one query per level of the tree.
+-- DataFiles are not included; their ancestors are those of their owner dataset.
+CREATE TABLE IF NOT EXISTS dvobjecttree (
+  ancestor_id bigint NOT NULL,
+  descendant_id bigint NOT NULL,
+  depth integer NOT NULL,
+  PRIMARY KEY (ancestor_id, descendant_id)
+);
+
+DO $$
+BEGIN
+  BEGIN
+    ALTER TABLE dvobjecttree ADD CONSTRAINT fk_dvobjecttree_ancestor_id FOREIGN KEY (ancestor_id) REFERENCES dvobject(id) ON DELETE CASCADE;
+  EXCEPTION
+    WHEN duplicate_object THEN RAISE NOTICE 'Table constraint fk_dvobjecttree_ancestor_id already exists';
+  END;
+  BEGIN
+    ALTER TABLE dvobjecttree ADD CONSTRAINT fk_dvobjecttree_descendant_id FOREIGN KEY (descendant_id) REFERENCES dvobject(id) ON DELETE CASCADE;
+  EXCEPTION
+    WHEN duplicate_object THEN RAISE NOTICE 'Table constraint fk_dvobjecttree_descendant_id already exists';
+  END;
+END $$;
+
+CREATE INDEX IF NOT EXISTS index_dvobjecttree_descendant_id ON dvobjecttree (descendant_id, depth);
+
+-- Populate the table for the existing objects:
+INSERT INTO dvobjecttree (ancestor_id, descendant_id, depth)
+WITH RECURSIVE uptree (ancestor_id, descendant_id, depth) AS
+(
+    SELECT id, id, 0
+    FROM dvobject
+    WHERE dtype IN ('Dataverse', 'Dataset')
+    UNION ALL
+    SELECT dvobject.owner_id, uptree.descendant_id, uptree.depth + 1
+    FROM dvobject
+    JOIN uptree ON dvobject.id = uptree.ancestor_id
+    WHERE dvobject.owner_id IS NOT NULL
+)
+SELECT ancestor_id, descendant_id, depth FROM uptree
+ON CONFLICT DO NOTHING;
+
+-- New containers inherit the ancestors of their owner:
+CREATE OR REPLACE FUNCTION dvobjecttree_insert()
+RETURNS trigger AS $$
+BEGIN
+  IF NEW.dtype IN ('Dataverse', 'Dataset') THEN
+    INSERT INTO dvobjecttree (ancestor_id, descendant_id, depth) VALUES (NEW.id, NEW.id, 0)
+    ON CONFLICT DO NOTHING;
+    IF NEW.owner_id IS NOT NULL THEN
+      INSERT INTO dvobjecttree (ancestor_id, descendant_id, depth)
+      SELECT ancestor_id, NEW.id, depth + 1 FROM dvobjecttree WHERE descendant_id = NEW.owner_id
+      ON CONFLICT DO NOTHING;
+    END IF;
+  END IF;
+  RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- A move (a change of owner) detaches the whole subtree from its old
+-- ancestors and re-attaches it under the ancestors of the new owner:
+CREATE OR REPLACE FUNCTION dvobjecttree_move()
+RETURNS trigger AS $$
+BEGIN
+  IF NEW.dtype IN ('Dataverse', 'Dataset') THEN
+    INSERT INTO dvobjecttree (ancestor_id, descendant_id, depth) VALUES (NEW.id, NEW.id, 0)
+    ON CONFLICT DO NOTHING;
+    DELETE FROM dvobjecttree
+    WHERE descendant_id IN (SELECT descendant_id FROM dvobjecttree WHERE ancestor_id = NEW.id)
+    AND ancestor_id NOT IN (SELECT descendant_id FROM dvobjecttree WHERE ancestor_id = NEW.id);
+    IF NEW.owner_id IS NOT NULL THEN
+      INSERT INTO dvobjecttree (ancestor_id, descendant_id, depth)
+      SELECT up.ancestor_id, down.descendant_id, up.depth + down.depth + 1
+      FROM dvobjecttree up, dvobjecttree down
+      WHERE up.descendant_id = NEW.owner_id AND down.ancestor_id = NEW.id
+      ON CONFLICT DO NOTHING;
+    END IF;
+  END IF;
+  RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- (deletes are taken care of by the ON DELETE CASCADE constraints above)
+DROP TRIGGER IF EXISTS dvobjecttree_insert ON dvobject;
+CREATE TRIGGER dvobjecttree_insert AFTER INSERT ON dvobject
+FOR EACH ROW EXECUTE PROCEDURE dvobjecttree_insert();
+
+DROP TRIGGER IF EXISTS dvobjecttree_move ON dvobject;
+CREATE TRIGGER dvobjecttree_move AFTER UPDATE OF owner_id ON dvobject
+FOR EACH ROW WHEN (OLD.owner_id IS DISTINCT FROM NEW.owner_id) EXECUTE PROCEDURE dvobjecttree_move();
@@ -0,0 +1,85 @@
+-- Pre-aggregated daily counters for the /api/info/metrics endpoints.
+-- One row per metric, collection and day. For "dataverses" the collection is
+-- the published collection itself; for "datasets", "files" and "downloads" it
+-- is the collection the dataset lives in. Subtree totals are obtained by
+-- joining with the dvobjecttree closure table.
+-- The counters are incremented as the events happen (publication, download);
+-- the rebuildmetricrollups() function below recalculates them from scratch and
+-- can be used to reconcile any drift (for example, after datasets have been
+-- moved between collections).
+CREATE TABLE IF NOT EXISTS metricrollup (
+  metricname varchar(255) NOT NULL,
+  collection_id bigint NOT NULL,
+  eventdate date NOT NULL,
+  eventcount bigint NOT NULL DEFAULT 0,
+  PRIMARY KEY (metricname, collection_id, eventdate)
+);
+
+CREATE INDEX IF NOT EXISTS index_metricrollup_collection_id ON metricrollup (collection_id);
+
+CREATE OR REPLACE FUNCTION rebuildmetricrollups()
+RETURNS bigint AS $$
+DECLARE
+  rowsinserted bigint;
+BEGIN
+  DELETE FROM metricrollup;
+
+  -- published collections, on the day they were published:
+  INSERT INTO metricrollup (metricname, collection_id, eventdate, eventcount)
+  SELECT 'dataverses', id, publicationdate::date, 1
+  FROM dvobject
+  WHERE dtype = 'Dataverse' AND publicationdate IS NOT NULL;
+
+  -- local datasets, on the day of their first (non-deaccessioned) release:
+  INSERT INTO metricrollup (metricname, collection_id, eventdate, eventcount)
+  SELECT 'datasets', owner_id, firstrelease, COUNT(*)
+  FROM (SELECT dvobject.owner_id, MIN(datasetversion.releasetime)::date AS firstrelease
+        FROM datasetversion
+        JOIN dataset ON dataset.id = datasetversion.dataset_id
+        JOIN dvobject ON dvobject.id = dataset.id
+        WHERE datasetversion.versionstate = 'RELEASED'
+        AND datasetversion.releasetime IS NOT NULL
+        AND dataset.harvestingclient_id IS NULL
+        GROUP BY datasetversion.dataset_id, dvobject.owner_id) firstreleases
+  GROUP BY owner_id, firstrelease;
+
+  -- files: the change in the number of files from one released version to
+  -- the next, on the day of each release; so that the sum up to any date is
+  -- the number of files in the latest released versions as of that date:
+  INSERT INTO metricrollup (metricname, collection_id, eventdate, eventcount)
+  SELECT 'files', owner_id, releasedate, SUM(delta)
+  FROM (SELECT dvobject.owner_id, datasetversion.releasetime::date AS releasedate,
+        COUNT(filemetadata.id) - COALESCE(LAG(COUNT(filemetadata.id)) OVER (PARTITION BY datasetversion.dataset_id
+            ORDER BY datasetversion.versionnumber, datasetversion.minorversionnumber), 0) AS delta
+        FROM datasetversion
+        JOIN dataset ON dataset.id = datasetversion.dataset_id
+        JOIN dvobject ON dvobject.id = dataset.id
+        LEFT JOIN filemetadata ON filemetadata.datasetversion_id = datasetversion.id
+        WHERE datasetversion.versionstate = 'RELEASED'
+        AND datasetversion.releasetime IS NOT NULL
+        AND dataset.harvestingclient_id IS NULL
+        GROUP BY dvobject.owner_id, datasetversion.id, datasetversion.dataset_id,
+            datasetversion.versionnumber, datasetversion.minorversionnumber, datasetversion.releasetime) deltas
+  GROUP BY owner_id, releasedate
+  HAVING SUM(delta) != 0;
+
+  -- downloads (any guestbook response that is not an access request); historic
+  -- responses without a date are counted in the month prior to the first dated one,
+  -- the same way the downloads time series has always reported them:
+  INSERT INTO metricrollup (metricname, collection_id, eventdate, eventcount)
+  SELECT 'downloads', owner_id, responsedate, COUNT(*)
+  FROM (SELECT dvobject.owner_id,
+        COALESCE(guestbookresponse.responsetime::date,
+            (SELECT (date_trunc('month', MIN(responsetime)) - interval '1 month')::date FROM guestbookresponse)) AS responsedate
+        FROM guestbookresponse
+        JOIN dvobject ON dvobject.id = guestbookresponse.dataset_id
+        WHERE guestbookresponse.eventtype != 'AccessRequest') responses
+  WHERE responsedate IS NOT NULL
+  GROUP BY owner_id, responsedate;
+
+  SELECT COUNT(*) FROM metricrollup INTO rowsinserted;
+  RETURN rowsinserted;
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT rebuildmetricrollups();
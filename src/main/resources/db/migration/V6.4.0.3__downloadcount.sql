@@ -0,0 +1,57 @@
+-- Running download counts, one row per file and one per dataset, so that the
+-- download count of a file or a dataset is a single row lookup rather than a
+-- count over the guestbookresponse table. As everywhere else, any guestbook
+-- response that is not an access request counts as a download.
+-- The counts are maintained by a trigger on guestbookresponse, so they stay
+-- consistent with the table however the responses are written or removed.
+CREATE TABLE IF NOT EXISTS downloadcount (
+  dvobject_id bigint NOT NULL PRIMARY KEY,
+  downloadcount bigint NOT NULL DEFAULT 0,
+  CONSTRAINT fk_downloadcount_dvobject_id FOREIGN KEY (dvobject_id) REFERENCES dvobject(id) ON DELETE CASCADE
+);
+
+INSERT INTO downloadcount (dvobject_id, downloadcount)
+SELECT datafile_id, COUNT(*) FROM guestbookresponse
+WHERE eventtype != 'AccessRequest'
+GROUP BY datafile_id;
+
+INSERT INTO downloadcount (dvobject_id, downloadcount)
+SELECT dataset_id, COUNT(*) FROM guestbookresponse
+WHERE eventtype != 'AccessRequest'
+GROUP BY dataset_id;
+
+CREATE OR REPLACE FUNCTION downloadcount_adjust(fileid bigint, datasetid bigint, delta bigint)
+RETURNS void AS $$
+BEGIN
+  IF delta > 0 THEN
+    INSERT INTO downloadcount (dvobject_id, downloadcount)
+    VALUES (fileid, delta), (datasetid, delta)
+    ON CONFLICT (dvobject_id) DO UPDATE SET downloadcount = downloadcount.downloadcount + EXCLUDED.downloadcount;
+  ELSE
+    -- (the rows may already be gone, if the file or dataset is being deleted)
+    UPDATE downloadcount SET downloadcount = downloadcount + delta
+    WHERE dvobject_id IN (fileid, datasetid);
+  END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION downloadcount_update()
+RETURNS trigger AS $$
+BEGIN
+  IF TG_OP IN ('UPDATE', 'DELETE') AND OLD.eventtype != 'AccessRequest' THEN
+    PERFORM downloadcount_adjust(OLD.datafile_id, OLD.dataset_id, -1);
+  END IF;
+  IF TG_OP IN ('INSERT', 'UPDATE') AND NEW.eventtype != 'AccessRequest' THEN
+    PERFORM downloadcount_adjust(NEW.datafile_id, NEW.dataset_id, 1);
+  END IF;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS downloadcount_insert_delete ON guestbookresponse;
+CREATE TRIGGER downloadcount_insert_delete AFTER INSERT OR DELETE ON guestbookresponse
+FOR EACH ROW EXECUTE PROCEDURE downloadcount_update();
+
+DROP TRIGGER IF EXISTS downloadcount_change ON guestbookresponse;
+CREATE TRIGGER downloadcount_change AFTER UPDATE OF eventtype, datafile_id, dataset_id ON guestbookresponse
+FOR EACH ROW EXECUTE PROCEDURE downloadcount_update();
@@ -0,0 +1,17 @@
+-- Progress of the tabular ingest of the files of a dataset. Every file is
+-- ingested as a work unit of its own, possibly on different nodes at the same
+-- time; this row tracks how many of the files queued for the dataset are yet
+-- to be finished (remaining), how many are being ingested right now (running),
+-- and which ones have failed so far (failed, a comma-separated list of file
+-- ids). The row is removed when the last file is finished, which is when the
+-- Ingest lock is released and the user is notified.
+CREATE TABLE IF NOT EXISTS ingestprogress (
+  dataset_id bigint NOT NULL PRIMARY KEY,
+  authenticateduser_id bigint,
+  remaining integer NOT NULL DEFAULT 0,
+  running integer NOT NULL DEFAULT 0,
+  failed text,
+  CONSTRAINT fk_ingestprogress_dataset_id FOREIGN KEY (dataset_id) REFERENCES dvobject(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS index_ingestprogress_running ON ingestprogress (running) WHERE running > 0;
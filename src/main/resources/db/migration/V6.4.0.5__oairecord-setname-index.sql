@@ -0,0 +1,2 @@
+-- The OAI server pages through the records of a set in global id order
+CREATE INDEX IF NOT EXISTS index_oairecord_setname_globalid ON oairecord (setname, globalid);
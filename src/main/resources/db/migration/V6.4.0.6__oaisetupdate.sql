@@ -0,0 +1,10 @@
+-- Datasets whose OAI records need to be brought up to date, because they have
+-- been published, deaccessioned, moved or destroyed since the records were
+-- last updated (when dataverse.oai.server.incremental-sets is enabled). The
+-- global id is kept, as there is no foreign key: the records of a destroyed
+-- dataset still have to be marked as deleted.
+CREATE TABLE IF NOT EXISTS oaisetupdate (
+  dataset_id bigint NOT NULL PRIMARY KEY,
+  globalid varchar(255),
+  requesttime timestamp NOT NULL
+);
@@ -0,0 +1,7 @@
+-- The state of each Globus transfer being monitored, as last checked by the
+-- task monitoring service. Downloads are monitored as well as uploads now,
+-- and the permission (rule) of a download may not be known.
+ALTER TABLE globustaskinprogress ADD COLUMN IF NOT EXISTS status VARCHAR(255);
+ALTER TABLE globustaskinprogress ADD COLUMN IF NOT EXISTS lastchecktime TIMESTAMP;
+ALTER TABLE globustaskinprogress ADD COLUMN IF NOT EXISTS failedchecks INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE globustaskinprogress ALTER COLUMN ruleid DROP NOT NULL;
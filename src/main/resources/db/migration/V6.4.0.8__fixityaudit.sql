@@ -0,0 +1,39 @@
+-- Fixity audits: the checksums of all the (local) data files are recalculated
+-- and compared with the ones in the database. The files of each storage driver
+-- are checked separately, in id order; fixityauditstore keeps, for each
+-- driver, the id of the last file checked, so that a stopped or interrupted
+-- audit can be resumed where it left off, along with the running totals.
+CREATE TABLE IF NOT EXISTS fixityaudit (
+  id bigserial PRIMARY KEY,
+  status varchar(32) NOT NULL,
+  starttime timestamp NOT NULL,
+  lastupdatetime timestamp NOT NULL,
+  endtime timestamp
+);
+
+CREATE TABLE IF NOT EXISTS fixityauditstore (
+  fixityaudit_id bigint NOT NULL,
+  storagedriver varchar(255) NOT NULL,
+  lastdatafile_id bigint NOT NULL DEFAULT 0,
+  checked bigint NOT NULL DEFAULT 0,
+  failed bigint NOT NULL DEFAULT 0,
+  bytesread bigint NOT NULL DEFAULT 0,
+  completed boolean NOT NULL DEFAULT false,
+  PRIMARY KEY (fixityaudit_id, storagedriver),
+  CONSTRAINT fk_fixityauditstore_fixityaudit_id FOREIGN KEY (fixityaudit_id) REFERENCES fixityaudit(id) ON DELETE CASCADE
+);
+
+-- The files that failed the check: with a checksum that does not match
+-- (invalid), that could not be read (unreadable), or without a checksum to
+-- compare with (nochecksum). No foreign key on the file, so that the record
+-- of the failure survives the file.
+CREATE TABLE IF NOT EXISTS fixityauditfailure (
+  fixityaudit_id bigint NOT NULL,
+  datafile_id bigint NOT NULL,
+  storagedriver varchar(255) NOT NULL,
+  outcome varchar(32) NOT NULL,
+  message text,
+  checktime timestamp NOT NULL,
+  PRIMARY KEY (fixityaudit_id, datafile_id),
+  CONSTRAINT fk_fixityauditfailure_fixityaudit_id FOREIGN KEY (fixityaudit_id) REFERENCES fixityaudit(id) ON DELETE CASCADE
+);
@@ -0,0 +1,11 @@
+-- Rendered citations of released dataset versions, one per format. A
+-- citation is only used if the version has not been updated since it was
+-- rendered (lastupdatetime), so a stale one is replaced on the next use.
+CREATE TABLE IF NOT EXISTS datasetversioncitation (
+  datasetversion_id bigint NOT NULL,
+  format varchar(16) NOT NULL,
+  lastupdatetime timestamp NOT NULL,
+  citation text NOT NULL,
+  PRIMARY KEY (datasetversion_id, format),
+  CONSTRAINT fk_datasetversioncitation_datasetversion_id FOREIGN KEY (datasetversion_id) REFERENCES datasetversion(id) ON DELETE CASCADE
+);
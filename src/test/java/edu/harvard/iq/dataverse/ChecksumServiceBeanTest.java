@@ -0,0 +1,94 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.dataaccess.FileAccessIO;
+import edu.harvard.iq.dataverse.dataaccess.InputStreamIO;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class ChecksumServiceBeanTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ChecksumServiceBean checksumService;
+    // Larger than the buffer, so that it takes more than one read:
+    private final byte[] content = new byte[ChecksumServiceBean.BUFFER_SIZE * 2 + 123];
+
+    @BeforeEach
+    public void setUp() {
+        new Random(42).nextBytes(content);
+        System.setProperty("dataverse.files.checksumtest.type", "file");
+        System.setProperty("dataverse.files.checksumtest.label", "Checksum test");
+        System.setProperty("dataverse.files.checksumtest.checksum-concurrency", "1");
+
+        checksumService = new ChecksumServiceBean();
+        checksumService.managedExecutor = mock(ManagedExecutorService.class);
+        doAnswer(invocation -> {
+            new Thread((Runnable) invocation.getArgument(0)).start();
+            return null;
+        }).when(checksumService.managedExecutor).execute(any(Runnable.class));
+        checksumService.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        checksumService.shutdown();
+        System.clearProperty("dataverse.files.checksumtest.type");
+        System.clearProperty("dataverse.files.checksumtest.label");
+        System.clearProperty("dataverse.files.checksumtest.checksum-concurrency");
+    }
+
+    @Test
+    public void testDigestLocalFile() throws IOException {
+        Path file = Files.write(tempDir.resolve("file"), content);
+
+        String checksum = ChecksumServiceBean.digest(new FileAccessIO<>(file.toString(), "checksumtest"), ChecksumType.SHA256);
+
+        assertEquals(FileUtil.calculateChecksum(content, ChecksumType.SHA256), checksum);
+    }
+
+    @Test
+    public void testDigestStream() throws IOException {
+        String checksum = ChecksumServiceBean.digest(new InputStreamIO(new ByteArrayInputStream(content), content.length), ChecksumType.MD5);
+
+        assertEquals(FileUtil.calculateChecksum(content, ChecksumType.MD5), checksum);
+    }
+
+    @Test
+    public void testCalculateChecksums() throws Exception {
+        Path first = Files.write(tempDir.resolve("first"), content);
+        Path second = Files.write(tempDir.resolve("second"), "Hello, world".getBytes());
+
+        List<ChecksumServiceBean.Checksum> checksums = checksumService.calculateChecksums(List.of(
+                "checksumtest://" + first,
+                "checksumtest://" + tempDir.resolve("missing"),
+                "checksumtest://" + second), ChecksumType.MD5, null);
+
+        // In the order submitted, whatever the order they were calculated in
+        assertEquals(3, checksums.size());
+        assertEquals(FileUtil.calculateChecksum(content, ChecksumType.MD5), checksums.get(0).value());
+        assertFalse(checksums.get(0).stored());
+        assertNull(checksums.get(1).value());
+        assertEquals(FileUtil.calculateChecksum("Hello, world".getBytes(), ChecksumType.MD5), checksums.get(2).value());
+
+        assertEquals(2, checksumService.getCalculatedCount());
+        assertEquals(1, checksumService.getFailedCount());
+        assertEquals(0, checksumService.getStoredCount());
+    }
+}
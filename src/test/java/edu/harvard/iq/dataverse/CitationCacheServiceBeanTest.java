@@ -0,0 +1,80 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.harvest.client.HarvestingClient;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CitationCacheServiceBeanTest {
+
+    private Dataset dataset;
+    private DatasetVersion version;
+
+    @BeforeEach
+    public void setUp() {
+        dataset = new Dataset();
+        version = new DatasetVersion();
+        version.setId(42L);
+        version.setDataset(dataset);
+        version.setVersionState(DatasetVersion.VersionState.RELEASED);
+        version.setLastUpdateTime(new Date());
+    }
+
+    @Test
+    public void testReleasedVersionIsCacheable() {
+        assertTrue(CitationCacheServiceBean.isCacheable(version));
+    }
+
+    @Test
+    public void testDraftIsNotCacheable() {
+        version.setVersionState(DatasetVersion.VersionState.DRAFT);
+        assertFalse(CitationCacheServiceBean.isCacheable(version));
+    }
+
+    @Test
+    public void testDeaccessionedVersionIsNotCacheable() {
+        // Its citation says so, and it is dropped from the cache
+        version.setVersionState(DatasetVersion.VersionState.DEACCESSIONED);
+        assertFalse(CitationCacheServiceBean.isCacheable(version));
+    }
+
+    @Test
+    public void testUnsavedVersionIsNotCacheable() {
+        version.setId(null);
+        assertFalse(CitationCacheServiceBean.isCacheable(version));
+    }
+
+    @Test
+    public void testHarvestedVersionIsNotCacheable() {
+        dataset.setHarvestedFrom(new HarvestingClient());
+        assertFalse(CitationCacheServiceBean.isCacheable(version));
+    }
+
+    @Test
+    public void testContextChangesWithCollectionAndCitationFields() {
+        Dataverse collection = new Dataverse();
+        collection.setId(12L);
+        dataset.setOwner(collection);
+        assertEquals("12:", CitationCacheServiceBean.getContext(version));
+
+        DatasetFieldType keyword = new DatasetFieldType();
+        keyword.setId(5L);
+        DatasetFieldType grant = new DatasetFieldType();
+        grant.setId(31L);
+        collection.setCitationDatasetFieldTypes(List.of(keyword, grant));
+        assertEquals("12:5,31", CitationCacheServiceBean.getContext(version));
+
+        // The fields are cited in that order
+        collection.setCitationDatasetFieldTypes(List.of(grant, keyword));
+        assertEquals("12:31,5", CitationCacheServiceBean.getContext(version));
+
+        Dataverse other = new Dataverse();
+        other.setId(13L);
+        dataset.setOwner(other);
+        assertEquals("13:", CitationCacheServiceBean.getContext(version));
+    }
+}
@@ -152,6 +152,13 @@ public class DatasetFieldServiceBeanTest {
         assertEquals(Collections.emptySet(), result);
     }
 
+    @Test
+    void getRetrievalHost() {
+        assertEquals("pub.orcid.org", DatasetFieldServiceBean.getRetrievalHost("https://pub.orcid.org/v3.0/0000-0002-1825-0097"));
+        assertEquals("api.ror.org", DatasetFieldServiceBean.getRetrievalHost("https://API.ror.org?query=03vek6s52"));
+        assertEquals("localhost:8080", DatasetFieldServiceBean.getRetrievalHost("http://user@localhost:8080/skosmos/rest/v1/data"));
+    }
+
     /**
      * Prepare unit tests with mock methods.
      *
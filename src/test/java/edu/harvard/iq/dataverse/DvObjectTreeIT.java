@@ -0,0 +1,191 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.testing.Tags;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Checks the rows the dvobjecttree closure table gets from its migration and
+ * from its triggers, as objects are created, moved and deleted. The migration
+ * runs against a bare dvobject table, holding just the columns it uses.
+ */
+@Tag(Tags.INTEGRATION_TEST)
+@Tag(Tags.USES_TESTCONTAINERS)
+@Testcontainers(disabledWithoutDocker = true)
+class DvObjectTreeIT {
+
+    static final String MIGRATION = "/db/migration/V6.4.0.1__dvobjecttree-closure-table.sql";
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16");
+
+    record Row(long ancestor, long descendant, int depth) {
+    }
+
+    Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+        execute("DROP SCHEMA public CASCADE");
+        execute("CREATE SCHEMA public");
+        execute("CREATE TABLE dvobject ("
+                + " id bigint PRIMARY KEY,"
+                + " dtype varchar(31),"
+                + " owner_id bigint REFERENCES dvobject(id))");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void migrationFillsTheTableForExistingObjects() throws Exception {
+        insert(1, "Dataverse", null);
+        insert(2, "Dataverse", 1L);
+        insert(3, "Dataset", 2L);
+        insert(4, "DataFile", 3L);
+
+        migrate();
+
+        assertEquals(Set.of(
+                new Row(1, 1, 0),
+                new Row(2, 2, 0), new Row(1, 2, 1),
+                new Row(3, 3, 0), new Row(2, 3, 1), new Row(1, 3, 2)), closure());
+    }
+
+    @Test
+    void insertedObjectInheritsTheAncestorsOfItsOwner() throws Exception {
+        migrate();
+
+        insert(1, "Dataverse", null);
+        insert(2, "Dataverse", 1L);
+        insert(3, "Dataset", 2L);
+        // Files are left out
+        insert(4, "DataFile", 3L);
+
+        assertEquals(Set.of(
+                new Row(1, 1, 0),
+                new Row(2, 2, 0), new Row(1, 2, 1),
+                new Row(3, 3, 0), new Row(2, 3, 1), new Row(1, 3, 2)), closure());
+    }
+
+    @Test
+    void movedDatasetChangesAncestors() throws Exception {
+        migrate();
+        insert(1, "Dataverse", null);
+        insert(2, "Dataverse", 1L);
+        insert(3, "Dataverse", 1L);
+        insert(4, "Dataset", 2L);
+
+        execute("UPDATE dvobject SET owner_id = 3 WHERE id = 4");
+
+        assertEquals(Set.of(
+                new Row(1, 1, 0),
+                new Row(2, 2, 0), new Row(1, 2, 1),
+                new Row(3, 3, 0), new Row(1, 3, 1),
+                new Row(4, 4, 0), new Row(3, 4, 1), new Row(1, 4, 2)), closure());
+    }
+
+    @Test
+    void movedCollectionTakesItsSubtreeAlong() throws Exception {
+        migrate();
+        insert(1, "Dataverse", null);
+        insert(2, "Dataverse", 1L);
+        insert(3, "Dataverse", 2L);
+        insert(4, "Dataset", 3L);
+        insert(5, "Dataverse", 1L);
+
+        // 3, and 4 with it, go from 1 > 2 to 1 > 5
+        execute("UPDATE dvobject SET owner_id = 5 WHERE id = 3");
+
+        assertEquals(Set.of(
+                new Row(1, 1, 0),
+                new Row(2, 2, 0), new Row(1, 2, 1),
+                new Row(5, 5, 0), new Row(1, 5, 1),
+                new Row(3, 3, 0), new Row(5, 3, 1), new Row(1, 3, 2),
+                new Row(4, 4, 0), new Row(3, 4, 1), new Row(5, 4, 2), new Row(1, 4, 3)), closure());
+    }
+
+    @Test
+    void otherUpdatesLeaveTheTableAlone() throws Exception {
+        migrate();
+        insert(1, "Dataverse", null);
+        insert(2, "Dataset", 1L);
+        Set<Row> before = closure();
+
+        execute("UPDATE dvobject SET dtype = dtype, owner_id = 1 WHERE id = 2");
+
+        assertEquals(before, closure());
+    }
+
+    @Test
+    void deletedObjectsAreRemoved() throws Exception {
+        migrate();
+        insert(1, "Dataverse", null);
+        insert(2, "Dataverse", 1L);
+        insert(3, "Dataset", 2L);
+        insert(4, "DataFile", 3L);
+
+        execute("DELETE FROM dvobject WHERE id = 4");
+        execute("DELETE FROM dvobject WHERE id = 3");
+
+        assertEquals(Set.of(
+                new Row(1, 1, 0),
+                new Row(2, 2, 0), new Row(1, 2, 1)), closure());
+
+        execute("DELETE FROM dvobject WHERE id = 2");
+
+        assertEquals(Set.of(new Row(1, 1, 0)), closure());
+    }
+
+    private void migrate() throws IOException, SQLException {
+        try (InputStream in = DvObjectTreeIT.class.getResourceAsStream(MIGRATION)) {
+            execute(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private void insert(long id, String dtype, Long ownerId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO dvobject (id, dtype, owner_id) VALUES (?, ?, ?)")) {
+            statement.setLong(1, id);
+            statement.setString(2, dtype);
+            statement.setObject(3, ownerId);
+            statement.executeUpdate();
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private Set<Row> closure() throws SQLException {
+        Set<Row> rows = new HashSet<>();
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT ancestor_id, descendant_id, depth FROM dvobjecttree")) {
+            while (resultSet.next()) {
+                rows.add(new Row(resultSet.getLong(1), resultSet.getLong(2), resultSet.getInt(3)));
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,92 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExternalVocabularyValueCacheTest {
+
+    private static final String ORCID = "https://orcid.org/0000-0002-1825-0097";
+    private static final String ROR = "https://ror.org/03vek6s52";
+
+    private final AtomicLong now = new AtomicLong(1000);
+    private ExternalVocabularyValueCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ExternalVocabularyValueCache(2, 60000, now::get);
+    }
+
+    private static JsonObject value(String name) {
+        return Json.createObjectBuilder().add("personName", name).build();
+    }
+
+    @Test
+    void testCachedValue() {
+        assertNull(cache.get(ORCID));
+
+        JsonObject value = value("Carberry, Josiah");
+        cache.put(ORCID, value);
+
+        assertSame(value, cache.get(ORCID).value());
+    }
+
+    @Test
+    void testTermWithoutValue() {
+        cache.put(ORCID, null);
+
+        // Cached, as having no value:
+        assertNotNull(cache.get(ORCID));
+        assertNull(cache.get(ORCID).value());
+    }
+
+    @Test
+    void testEntriesExpire() {
+        cache.put(ORCID, value("Carberry, Josiah"));
+
+        now.addAndGet(59999);
+        assertNotNull(cache.get(ORCID));
+
+        now.addAndGet(1);
+        assertNull(cache.get(ORCID));
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        cache.put(ORCID, value("Carberry, Josiah"));
+        cache.put(ROR, value("Harvard University"));
+        // ORCID is now the most recently used
+        cache.get(ORCID);
+        cache.put("https://ror.org/02mhbdp94", value("Universidad de los Andes"));
+
+        assertNotNull(cache.get(ORCID));
+        assertNull(cache.get(ROR));
+    }
+
+    @Test
+    void testInvalidate() {
+        cache.put(ORCID, value("Carberry, Josiah"));
+        cache.put(ROR, value("Harvard University"));
+
+        cache.invalidate(ORCID);
+        assertNull(cache.get(ORCID));
+        assertNotNull(cache.get(ROR));
+
+        cache.invalidate();
+        assertNull(cache.get(ROR));
+    }
+
+    @Test
+    void testDisabled() {
+        cache = new ExternalVocabularyValueCache(0, 60000, now::get);
+        cache.put(ORCID, value("Carberry, Josiah"));
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get(ORCID));
+    }
+}
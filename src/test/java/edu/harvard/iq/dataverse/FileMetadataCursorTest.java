@@ -0,0 +1,85 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.DatasetVersionFilesServiceBean.FileOrderCriteria;
+import java.sql.Timestamp;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileMetadataCursorTest {
+
+    private static FileMetadata createFileMetadata() {
+        DataFile dataFile = new DataFile();
+        dataFile.setContentType("text/tab-separated-values");
+        dataFile.setFilesize(1234L);
+        dataFile.setCreateDate(Timestamp.valueOf("2024-01-02 03:04:05.123456"));
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setId(77L);
+        fileMetadata.setLabel("data file.tab");
+        fileMetadata.setDataFile(dataFile);
+        return fileMetadata;
+    }
+
+    @ParameterizedTest
+    @EnumSource(FileOrderCriteria.class)
+    void testRoundTrip(FileOrderCriteria orderCriteria) {
+        FileMetadataCursor cursor = FileMetadataCursor.after(createFileMetadata(), orderCriteria);
+
+        String encoded = cursor.encode();
+        FileMetadataCursor decoded = FileMetadataCursor.decode(encoded, orderCriteria);
+
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"));
+        assertEquals(orderCriteria, decoded.getOrderCriteria());
+        assertEquals(cursor.getKeyValues(), decoded.getKeyValues());
+        assertEquals(77L, decoded.getId());
+    }
+
+    @Test
+    void testKeyValues() {
+        FileMetadata fileMetadata = createFileMetadata();
+
+        assertEquals(List.of("data file.tab"), FileMetadataCursor.after(fileMetadata, FileOrderCriteria.NameZA).getKeyValues());
+        assertEquals(List.of(1234L), FileMetadataCursor.after(fileMetadata, FileOrderCriteria.Size).getKeyValues());
+        assertEquals(List.of("text/tab-separated-values", "data file.tab"), FileMetadataCursor.after(fileMetadata, FileOrderCriteria.Type).getKeyValues());
+        // the creation date counts until the file is published; with full precision:
+        assertEquals(List.of(Timestamp.valueOf("2024-01-02 03:04:05.123456")),
+                FileMetadataCursor.after(fileMetadata, FileOrderCriteria.Newest).getKeyValues());
+        fileMetadata.getDataFile().setPublicationDate(Timestamp.valueOf("2024-02-01 00:00:00"));
+        assertEquals(List.of(Timestamp.valueOf("2024-02-01 00:00:00")),
+                FileMetadataCursor.after(fileMetadata, FileOrderCriteria.Oldest).getKeyValues());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = FileOrderCriteria.class, names = {"Size", "Type"})
+    void testRoundTripWithUnknownSizeAndType(FileOrderCriteria orderCriteria) {
+        FileMetadata fileMetadata = createFileMetadata();
+        DataFile dataFile = new DataFile();
+        dataFile.setCreateDate(fileMetadata.getDataFile().getCreateDate());
+        fileMetadata.setDataFile(dataFile);
+
+        FileMetadataCursor cursor = FileMetadataCursor.after(fileMetadata, orderCriteria);
+        assertNull(cursor.getKeyValues().get(0));
+        FileMetadataCursor decoded = FileMetadataCursor.decode(cursor.encode(), orderCriteria);
+
+        assertEquals(cursor.getKeyValues(), decoded.getKeyValues());
+        assertNull(decoded.getKeyValues().get(0));
+        assertEquals(77L, decoded.getId());
+    }
+
+    @Test
+    void testCursorIsBoundToItsOrder() {
+        String encoded = FileMetadataCursor.after(createFileMetadata(), FileOrderCriteria.NameAZ).encode();
+
+        assertThrows(IllegalArgumentException.class, () -> FileMetadataCursor.decode(encoded, FileOrderCriteria.NameZA));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "not a cursor", "e30", "eyJvcmRlciI6Ik5hbWVBWiJ9", "WzFd"})
+    void testInvalidCursors(String cursor) {
+        assertThrows(IllegalArgumentException.class, () -> FileMetadataCursor.decode(cursor, FileOrderCriteria.NameAZ));
+    }
+}
@@ -0,0 +1,92 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FileMetadataWindowTest {
+
+    @Mock
+    private DatasetVersionFilesServiceBean datasetVersionFilesService;
+
+    private static List<FileMetadata> createFileMetadatas(long firstId, int count) {
+        List<FileMetadata> fileMetadatas = new ArrayList<>();
+        for (long id = firstId; id < firstId + count; id++) {
+            FileMetadata fileMetadata = new FileMetadata();
+            fileMetadata.setId(id);
+            fileMetadatas.add(fileMetadata);
+        }
+        return fileMetadatas;
+    }
+
+    private FileMetadataWindow unloadedWindow(DatasetVersion datasetVersion, int windowSize) {
+        return new FileMetadataWindow(datasetVersionFilesService, datasetVersion, windowSize) {
+            @Override
+            boolean isCollectionLoaded() {
+                return false;
+            }
+        };
+    }
+
+    @Test
+    void testIteratesWindowByWindow() {
+        DatasetVersion datasetVersion = new DatasetVersion();
+        datasetVersion.setId(1L);
+        List<FileMetadata> first = createFileMetadatas(1, 2);
+        List<FileMetadata> second = createFileMetadatas(3, 2);
+        List<FileMetadata> third = createFileMetadatas(5, 1);
+        when(datasetVersionFilesService.getFileMetadatasAfter(eq(datasetVersion), isNull(), eq(2))).thenReturn(first);
+        when(datasetVersionFilesService.getFileMetadatasAfter(datasetVersion, first.get(1), 2)).thenReturn(second);
+        when(datasetVersionFilesService.getFileMetadatasAfter(datasetVersion, second.get(1), 2)).thenReturn(third);
+
+        List<Long> ids = new ArrayList<>();
+        for (FileMetadata fileMetadata : unloadedWindow(datasetVersion, 2)) {
+            ids.add(fileMetadata.getId());
+        }
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), ids);
+    }
+
+    @Test
+    void testFullLastWindow() {
+        DatasetVersion datasetVersion = new DatasetVersion();
+        datasetVersion.setId(1L);
+        List<FileMetadata> first = createFileMetadatas(1, 2);
+        when(datasetVersionFilesService.getFileMetadatasAfter(eq(datasetVersion), isNull(), eq(2))).thenReturn(first);
+        when(datasetVersionFilesService.getFileMetadatasAfter(datasetVersion, first.get(1), 2)).thenReturn(List.of());
+
+        List<Long> ids = new ArrayList<>();
+        unloadedWindow(datasetVersion, 2).forEach(fileMetadata -> ids.add(fileMetadata.getId()));
+
+        assertEquals(List.of(1L, 2L), ids);
+    }
+
+    @Test
+    void testUnsavedVersionUsesItsCollection() {
+        DatasetVersion datasetVersion = new DatasetVersion();
+        datasetVersion.setFileMetadatas(createFileMetadatas(1, 3));
+
+        List<Long> ids = new ArrayList<>();
+        unloadedWindow(datasetVersion, 2).forEach(fileMetadata -> ids.add(fileMetadata.getId()));
+
+        assertEquals(List.of(1L, 2L, 3L), ids);
+        verify(datasetVersionFilesService, never()).getFileMetadatasAfter(any(), any(), eq(2));
+    }
+
+    @Test
+    void testInvalidWindowSize() {
+        assertThrows(IllegalArgumentException.class, () -> new FileMetadataWindow(datasetVersionFilesService, new DatasetVersion(), 0));
+    }
+}
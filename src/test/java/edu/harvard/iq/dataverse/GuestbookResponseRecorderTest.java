@@ -0,0 +1,67 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GuestbookResponseRecorderTest {
+
+    @Test
+    public void testCopyIsIndependentOfTheOriginal() {
+        CustomQuestion question = new CustomQuestion();
+        question.setDisplayOrder(0);
+        GuestbookResponse original = new GuestbookResponse();
+        CustomQuestionResponse answer = new CustomQuestionResponse();
+        answer.setCustomQuestion(question);
+        answer.setGuestbookResponse(original);
+        answer.setResponse("yes");
+        List<CustomQuestionResponse> answers = new ArrayList<>();
+        answers.add(answer);
+        original.setCustomQuestionResponses(answers);
+        DataFile first = new DataFile();
+        original.setDataFile(first);
+        original.setEventType(GuestbookResponse.DOWNLOAD);
+        original.setName("Jane Doe");
+
+        GuestbookResponse copy = GuestbookResponseRecorder.copyOf(original);
+
+        // the caller goes on to reuse the original for the next file:
+        original.setDataFile(new DataFile());
+        answer.setResponse("no");
+
+        assertSame(first, copy.getDataFile());
+        assertEquals(GuestbookResponse.DOWNLOAD, copy.getEventType());
+        assertEquals("Jane Doe", copy.getName());
+        assertNotNull(copy.getResponseTime());
+        assertEquals(1, copy.getCustomQuestionResponses().size());
+        CustomQuestionResponse copiedAnswer = copy.getCustomQuestionResponses().get(0);
+        assertEquals("yes", copiedAnswer.getResponse());
+        assertSame(question, copiedAnswer.getCustomQuestion());
+        assertSame(copy, copiedAnswer.getGuestbookResponse());
+    }
+
+    @Test
+    public void testCopyKeepsTheResponseTime() {
+        GuestbookResponse original = new GuestbookResponse();
+        Date responseTime = new Date(0);
+        original.setResponseTime(responseTime);
+
+        GuestbookResponse copy = GuestbookResponseRecorder.copyOf(original);
+
+        assertEquals(responseTime, copy.getResponseTime());
+        assertNull(copy.getId());
+    }
+
+    @Test
+    public void testCopyWithoutCustomQuestions() {
+        GuestbookResponse original = new GuestbookResponse();
+
+        GuestbookResponse copy = GuestbookResponseRecorder.copyOf(original);
+
+        assertTrue(copy.getCustomQuestionResponses().isEmpty());
+    }
+}
@@ -0,0 +1,35 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GuestbookResponseServiceBeanTest {
+
+    private static GuestbookResponse response(long datasetId, long dataFileId) {
+        Dataset dataset = new Dataset();
+        dataset.setId(datasetId);
+        DataFile dataFile = new DataFile();
+        dataFile.setId(dataFileId);
+        GuestbookResponse guestbookResponse = new GuestbookResponse();
+        guestbookResponse.setDataset(dataset);
+        guestbookResponse.setDataFile(dataFile);
+        return guestbookResponse;
+    }
+
+    @Test
+    public void testInsertOrderIsByDatasetThenFile() {
+        List<GuestbookResponse> batch = new ArrayList<>(List.of(
+                response(2, 5),
+                response(1, 9),
+                response(2, 3),
+                response(1, 4)));
+
+        batch.sort(GuestbookResponseServiceBean.INSERT_ORDER);
+
+        assertEquals(List.of(4L, 9L, 3L, 5L), batch.stream().map(r -> r.getDataFile().getId()).toList());
+    }
+}
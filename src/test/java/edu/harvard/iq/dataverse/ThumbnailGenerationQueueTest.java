@@ -0,0 +1,92 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class ThumbnailGenerationQueueTest {
+
+    private ThumbnailGenerationQueue queue;
+    private CountDownLatch release;
+
+    @BeforeEach
+    public void setUp() {
+        release = new CountDownLatch(1);
+        queue = new ThumbnailGenerationQueue();
+        queue.managedExecutor = mock(ManagedExecutorService.class);
+        doAnswer(invocation -> {
+            new Thread((Runnable) invocation.getArgument(0)).start();
+            return null;
+        }).when(queue.managedExecutor).execute(any(Runnable.class));
+        queue.dataFileService = mock(DataFileServiceBean.class);
+        // the worker holds on to the file until the test lets it go; the
+        // file is then gone, so nothing is generated:
+        when(queue.dataFileService.find(anyLong())).thenAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        });
+        queue.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        queue.shutdown();
+    }
+
+    private static DataFile makeImage(long id) {
+        DataFile file = new DataFile("image/png");
+        file.setId(id);
+        file.setStorageIdentifier("file://" + id);
+        return file;
+    }
+
+    @Test
+    public void testFileIsQueuedOnce() throws InterruptedException {
+        DataFile file = makeImage(1L);
+
+        queue.enqueue(file);
+        assertTrue(queue.enqueue(file, ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE));
+        assertTrue(queue.isPending(1L, ImageThumbConverter.DEFAULT_PREVIEW_SIZE));
+
+        release.countDown();
+        for (int i = 0; i < 100 && queue.isPending(1L, ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(queue.isPending(1L, ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE));
+        verify(queue.dataFileService, times(1)).find(1L);
+    }
+
+    @Test
+    public void testOtherSizeIsQueuedSeparately() {
+        DataFile file = makeImage(2L);
+
+        queue.enqueue(file);
+        assertFalse(queue.isPending(2L, 200));
+        assertTrue(queue.enqueue(file, 200));
+        assertTrue(queue.isPending(2L, 200));
+    }
+
+    @Test
+    public void testUnsupportedFileIsNotQueued() {
+        DataFile file = makeImage(3L);
+        file.setContentType("text/plain");
+        assertFalse(queue.enqueue(file, ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE));
+
+        DataFile failed = makeImage(4L);
+        failed.setPreviewImageFail(true);
+        assertFalse(queue.enqueue(failed, ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE));
+
+        assertEquals(0, queue.getQueueSize() + queue.getActiveCount());
+    }
+}
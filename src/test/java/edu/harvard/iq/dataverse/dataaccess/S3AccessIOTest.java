@@ -5,6 +5,10 @@
 package edu.harvard.iq.dataverse.dataaccess;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.SSEAlgorithm;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.api.UtilIT;
@@ -133,6 +137,52 @@ public class S3AccessIOTest {
         assertEquals(60, dataFileAccess.getUrlExpirationMinutes());
     }
     
+    @Test
+    void singlePartETag_retrieveChecksumFromMedia() throws IOException {
+        // given
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setHeader(Headers.ETAG, "\"9A0364B9E99BB480DD25E1F0284C8555\"");
+        given(s3client.getObjectMetadata(any(GetObjectMetadataRequest.class))).willReturn(metadata);
+        // when & then
+        assertEquals("9a0364b9e99bb480dd25e1f0284c8555", dataFileAccess.retrieveChecksumFromMedia(DataFile.ChecksumType.MD5));
+        assertNull(dataFileAccess.retrieveChecksumFromMedia(DataFile.ChecksumType.SHA1));
+    }
+    
+    @Test
+    void unusableETag_getChecksum() {
+        // given: uploaded in parts
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setHeader(Headers.ETAG, "d41d8cd98f00b204e9800998ecf8427e-2");
+        // when & then
+        assertNull(S3AccessIO.getChecksum(metadata, DataFile.ChecksumType.MD5));
+        
+        // given: encrypted with KMS
+        metadata.setHeader(Headers.ETAG, "9a0364b9e99bb480dd25e1f0284c8555");
+        metadata.setSSEAlgorithm(SSEAlgorithm.KMS.getAlgorithm());
+        // when & then
+        assertNull(S3AccessIO.getChecksum(metadata, DataFile.ChecksumType.MD5));
+        
+        // given: encrypted with S3 managed keys
+        metadata.setSSEAlgorithm(SSEAlgorithm.AES256.getAlgorithm());
+        // when & then
+        assertEquals("9a0364b9e99bb480dd25e1f0284c8555", S3AccessIO.getChecksum(metadata, DataFile.ChecksumType.MD5));
+    }
+    
+    @Test
+    void additionalChecksum_getChecksum() {
+        // given
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setHeader(S3AccessIO.CHECKSUM_SHA256_HEADER, "MV9b23bQeMQ7isAGTkoBZGErH853yGk0W/yUx1iU7dM=");
+        // when & then
+        assertEquals("315f5bdb76d078c43b8ac0064e4a0164612b1fce77c869345bfc94c75894edd3",
+                S3AccessIO.getChecksum(metadata, DataFile.ChecksumType.SHA256));
+        
+        // given: a composite checksum, of an object uploaded in parts
+        metadata.setHeader(S3AccessIO.CHECKSUM_SHA256_HEADER, "MV9b23bQeMQ7isAGTkoBZGErH853yGk0W/yUx1iU7dM=-3");
+        // when & then
+        assertNull(S3AccessIO.getChecksum(metadata, DataFile.ChecksumType.SHA256));
+    }
+    
     @Test
     void testS3IdentifierFormats() throws IOException {
         assertTrue(DataAccess.isValidDirectStorageIdentifier("s3test://thebucket:" + FileUtil.generateStorageIdentifier()));
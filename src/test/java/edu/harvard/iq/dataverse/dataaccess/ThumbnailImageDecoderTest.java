@@ -0,0 +1,140 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.util.testing.Tags;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ThumbnailImageDecoderTest {
+
+    private static final Logger logger = Logger.getLogger(ThumbnailImageDecoderTest.class.getCanonicalName());
+
+    private static byte[] makeImage(int width, int height, String format) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, Color.ORANGE));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    private static ThumbnailImageDecoder decoder(int budgetKilobytes) {
+        return new ThumbnailImageDecoder(new Semaphore(budgetKilobytes), budgetKilobytes);
+    }
+
+    private static BufferedImage decode(ThumbnailImageDecoder decoder, byte[] bytes, int size) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            return decoder.read(input, size);
+        }
+    }
+
+    @Test
+    public void testSubsamplingFactor() {
+        assertEquals(1, ThumbnailImageDecoder.getSubsamplingFactor(100, 80, 400));
+        assertEquals(1, ThumbnailImageDecoder.getSubsamplingFactor(800, 600, 400));
+        assertEquals(15, ThumbnailImageDecoder.getSubsamplingFactor(2000, 1500, 64));
+        assertEquals(15, ThumbnailImageDecoder.getSubsamplingFactor(1500, 2000, 64));
+    }
+
+    @Test
+    public void testLargeImageIsSubsampled() throws IOException {
+        byte[] png = makeImage(2000, 1500, "png");
+
+        BufferedImage image = decode(decoder(1024), png, 64);
+
+        // 2000 / 15, rounded up:
+        assertEquals(134, image.getWidth());
+        assertEquals(100, image.getHeight());
+    }
+
+    @Test
+    public void testSmallImageIsDecodedAsIs() throws IOException {
+        byte[] jpeg = makeImage(100, 80, "jpg");
+
+        BufferedImage image = decode(decoder(1024), jpeg, 400);
+
+        assertEquals(100, image.getWidth());
+        assertEquals(80, image.getHeight());
+    }
+
+    @Test
+    public void testImageOverMemoryBudgetIsRefused() throws IOException {
+        byte[] png = makeImage(200, 200, "png");
+
+        // 200x200 pixels, at 8 bytes each, is more than 100 KB:
+        assertThrows(IOException.class, () -> decode(decoder(100), png, 400));
+    }
+
+    @Test
+    public void testImageWaitsForBudgetInUse() throws Exception {
+        byte[] png = makeImage(200, 200, "png");
+        Semaphore budget = new Semaphore(1024);
+        // Other decoders are using most of the budget when this one is made
+        budget.acquire(900);
+        ThumbnailImageDecoder decoder = new ThumbnailImageDecoder(budget, 1024);
+        Thread other = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            budget.release(900);
+        });
+        other.start();
+
+        BufferedImage image = decode(decoder, png, 400);
+
+        assertEquals(200, image.getWidth());
+        assertEquals(1024, budget.availablePermits());
+        other.join();
+    }
+
+    @Test
+    public void testNotAnImage() throws IOException {
+        assertNull(decode(decoder(1024), "not an image".getBytes(), 64));
+    }
+
+    /**
+     * Decodes 24 megapixel images, in full (as ImageIO.read() does) and
+     * subsampled for a 400 pixel preview.
+     */
+    @Test
+    @Tag(Tags.NOT_ESSENTIAL_UNITTESTS)
+    public void benchmarkLargeImages() throws IOException {
+        for (String format : new String[]{"png", "jpg"}) {
+            byte[] bytes = makeImage(6000, 4000, format);
+
+            long start = System.nanoTime();
+            BufferedImage full = ImageIO.read(new ByteArrayInputStream(bytes));
+            long fullMillis = (System.nanoTime() - start) / 1_000_000;
+            long fullBytes = (long) full.getWidth() * full.getHeight() * full.getColorModel().getPixelSize() / 8;
+            full = null;
+
+            start = System.nanoTime();
+            BufferedImage subsampled = decode(decoder(256 * 1024), bytes, ImageThumbConverter.DEFAULT_PREVIEW_SIZE);
+            long subsampledMillis = (System.nanoTime() - start) / 1_000_000;
+            long subsampledBytes = (long) subsampled.getWidth() * subsampled.getHeight() * subsampled.getColorModel().getPixelSize() / 8;
+
+            assertTrue(Math.max(subsampled.getWidth(), subsampled.getHeight()) >= ImageThumbConverter.DEFAULT_PREVIEW_SIZE);
+            assertTrue(subsampledBytes * 4 <= fullBytes);
+
+            logger.info(String.format("6000x4000 %s: full decode %d ms, %d KB; subsampled to %dx%d in %d ms, %d KB",
+                    format, fullMillis, fullBytes / 1024, subsampled.getWidth(), subsampled.getHeight(), subsampledMillis, subsampledBytes / 1024));
+        }
+    }
+}
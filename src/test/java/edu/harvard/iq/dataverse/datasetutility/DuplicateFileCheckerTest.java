@@ -6,6 +6,7 @@ import static org.mockito.Mockito.mock;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
@@ -13,9 +14,17 @@ import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.DatasetVersionServiceBean;
 import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.util.testing.Tags;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
 
 public class DuplicateFileCheckerTest {
 
+    private static final Logger logger = Logger.getLogger(DuplicateFileCheckerTest.class.getCanonicalName());
+
     private DuplicateFileChecker duplicateFileChecker;
     private DatasetVersionServiceBean datasetVersionServiceBean;
 
@@ -111,4 +120,92 @@ public class DuplicateFileCheckerTest {
         assertFalse(this.duplicateFileChecker.isFileInSavedDatasetVersion(datasetVersion, fileMetadata));
     }
 
-}
\ No newline at end of file
+    // ----------------------------------------------------------------------------------------------------------
+    // test public static boolean isDuplicate(Map<String, DataFile> checksumIndex, FileMetadata fileMetadata)
+    // ----------------------------------------------------------------------------------------------------------
+
+    private static FileMetadata makeFileMetadata(String label, String checkSum) {
+        DataFile dataFile = new DataFile();
+        dataFile.setChecksumValue(checkSum);
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setLabel(label);
+        fileMetadata.setDataFile(dataFile);
+        dataFile.getFileMetadatas().add(fileMetadata);
+        return fileMetadata;
+    }
+
+    @Test
+    public void testIsDuplicateWithFileInVersion() {
+        DatasetVersion datasetVersion = new DatasetVersion();
+        datasetVersion.getFileMetadatas().add(makeFileMetadata("existing.txt", "checkSum"));
+        Map<String, DataFile> checksumIndex = DuplicateFileChecker.getChecksumIndex(datasetVersion);
+
+        FileMetadata newFile = makeFileMetadata("new.txt", "checkSum");
+        assertTrue(DuplicateFileChecker.isDuplicate(checksumIndex, newFile));
+        assertNotNull(newFile.getDataFile().getDuplicateFilename());
+        assertFalse(DuplicateFileChecker.isDuplicate(checksumIndex, makeFileMetadata("other.txt", "otherCheckSum")));
+    }
+
+    @Test
+    public void testIsDuplicateWithinBatch() {
+        Map<String, DataFile> checksumIndex = DuplicateFileChecker.getChecksumIndex(new DatasetVersion());
+
+        assertFalse(DuplicateFileChecker.isDuplicate(checksumIndex, makeFileMetadata("first.txt", "checkSum")));
+        assertTrue(DuplicateFileChecker.isDuplicate(checksumIndex, makeFileMetadata("second.txt", "checkSum")));
+    }
+
+    @Test
+    public void testIsDuplicateWithoutCheckSum() {
+        Map<String, DataFile> checksumIndex = DuplicateFileChecker.getChecksumIndex(new DatasetVersion());
+
+        assertFalse(DuplicateFileChecker.isDuplicate(checksumIndex, makeFileMetadata("first.txt", null)));
+        assertFalse(DuplicateFileChecker.isDuplicate(checksumIndex, makeFileMetadata("second.txt", null)));
+    }
+
+    /**
+     * Registers 50,000 new files in a version, checking each of them for
+     * duplicates the way addFiles did it (against all the files of the
+     * version) and the way it does it now (against the checksum index).
+     * Only the duplicate checks are timed, not the rest of addFiles.
+     */
+    @Test
+    @Tag(Tags.NOT_ESSENTIAL_UNITTESTS)
+    public void benchmark50kFiles() {
+        int fileCount = 50_000;
+        List<FileMetadata> newFiles = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            // every 100th file is a copy of the one before it
+            newFiles.add(makeFileMetadata("file" + i + ".txt", "checkSum" + (i % 100 == 0 && i > 0 ? i - 1 : i)));
+        }
+
+        DatasetVersion datasetVersion = new DatasetVersion();
+        int duplicates = 0;
+        long start = System.nanoTime();
+        for (FileMetadata newFile : newFiles) {
+            if (DuplicateFileChecker.isDuplicateOriginalWay(datasetVersion, newFile)) {
+                duplicates++;
+            }
+            datasetVersion.getFileMetadatas().add(newFile);
+        }
+        long originalMillis = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(fileCount / 100 - 1, duplicates);
+
+        duplicates = 0;
+        start = System.nanoTime();
+        Map<String, DataFile> checksumIndex = DuplicateFileChecker.getChecksumIndex(new DatasetVersion());
+        for (FileMetadata newFile : newFiles) {
+            if (DuplicateFileChecker.isDuplicate(checksumIndex, newFile)) {
+                duplicates++;
+            }
+        }
+        long indexMillis = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(fileCount / 100 - 1, duplicates);
+
+        // quadratic against linear: far apart, even on a busy build machine
+        assertTrue(indexMillis < originalMillis);
+
+        logger.info(String.format("Duplicate checks for %d files: %d ms one file at a time, %d ms with the checksum index",
+                fileCount, originalMillis, indexMillis));
+    }
+
+}
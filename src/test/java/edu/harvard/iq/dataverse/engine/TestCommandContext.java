@@ -21,7 +21,10 @@ import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
 import edu.harvard.iq.dataverse.search.savedsearch.SavedSearchServiceBean;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.storageuse.StorageUseServiceBean;
+import edu.harvard.iq.dataverse.metrics.MetricsRollupServiceBean;
+import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
 import edu.harvard.iq.dataverse.util.SystemConfig;
+import edu.harvard.iq.dataverse.util.file.ZipUploadExtractionServiceBean;
 import edu.harvard.iq.dataverse.workflow.WorkflowServiceBean;
 import java.util.Stack;
 import jakarta.persistence.EntityManager;
@@ -246,6 +249,26 @@ public class TestCommandContext implements CommandContext {
         return null;
     }
 
+    @Override
+    public MetricsRollupServiceBean metricsRollups() {
+        return null;
+    }
+
+    @Override
+    public CitationCacheServiceBean citations() {
+        return null;
+    }
+
+    @Override
+    public OAIRecordServiceBean oaiRecords() {
+        return null;
+    }
+
+    @Override
+    public ZipUploadExtractionServiceBean zipUploadExtraction() {
+        return null;
+    }
+
     @Override
     public void beginCommandSequence() {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
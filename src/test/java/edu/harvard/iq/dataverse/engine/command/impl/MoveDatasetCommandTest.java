@@ -5,6 +5,7 @@
  */
 package edu.harvard.iq.dataverse.engine.command.impl;
 
+import edu.harvard.iq.dataverse.CitationCacheServiceBean;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetLock;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
@@ -29,6 +30,8 @@ import edu.harvard.iq.dataverse.engine.command.Command;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.exception.IllegalCommandException;
 import edu.harvard.iq.dataverse.engine.command.exception.PermissionException;
+import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
+import edu.harvard.iq.dataverse.metrics.MetricsRollupServiceBean;
 import static edu.harvard.iq.dataverse.mocks.MocksFactory.makeAuthenticatedUser;
 import static edu.harvard.iq.dataverse.mocks.MocksFactory.makeRole;
 import static edu.harvard.iq.dataverse.mocks.MocksFactory.nextId;
@@ -238,6 +241,33 @@ public class MoveDatasetCommandTest {
                 };
             }
 
+            @Override
+            public OAIRecordServiceBean oaiRecords() {
+                return new OAIRecordServiceBean() {
+                    @Override
+                    public void queueOaiRecordsUpdate(Dataset dataset) {
+                    }
+                };
+            }
+
+            @Override
+            public CitationCacheServiceBean citations() {
+                return new CitationCacheServiceBean() {
+                    @Override
+                    public void invalidate(Dataset dataset) {
+                    }
+                };
+            }
+
+            @Override
+            public MetricsRollupServiceBean metricsRollups() {
+                return new MetricsRollupServiceBean() {
+                    @Override
+                    public void recordDatasetMoved(Dataset dataset, Dataverse origin, Dataverse destination) {
+                    }
+                };
+            }
+
             @Override
             public EntityManager em() {
                 return new MockEntityManager() {
@@ -0,0 +1,61 @@
+package edu.harvard.iq.dataverse.fixity;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveConcurrencyTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void testIncreasesUpToMax() {
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(3);
+        assertEquals(1, concurrency.getLimit());
+
+        assertEquals(2, concurrency.update(10, 100 * MB, 1000));
+        assertEquals(3, concurrency.update(10, 100 * MB, 1000));
+        assertEquals(3, concurrency.update(10, 100 * MB, 1000));
+    }
+
+    @Test
+    public void testHalvesWhenStoreSlowsDown() {
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(16);
+        for (int i = 0; i < 10; i++) {
+            concurrency.update(10, 100 * MB, 1000);
+        }
+        assertEquals(11, concurrency.getLimit());
+
+        // A third of the rate
+        assertEquals(5, concurrency.update(10, 100 * MB, 3000));
+        assertEquals(2, concurrency.update(10, 100 * MB, 3000));
+        assertEquals(1, concurrency.update(10, 100 * MB, 3000));
+        assertEquals(1, concurrency.update(10, 100 * MB, 3000));
+    }
+
+    @Test
+    public void testRecoversAsBestRateIsForgotten() {
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(4);
+        concurrency.update(10, 100 * MB, 1000);
+        int limit = concurrency.getLimit();
+        int batches = 0;
+        while (concurrency.update(10, 100 * MB, 3000) <= limit && batches < 100) {
+            batches++;
+        }
+        assertTrue(batches < 100, "Never increased again at the lower rate");
+    }
+
+    @Test
+    public void testSmallFilesCountOpening() {
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(4);
+        concurrency.update(100, 0, 1000);
+        // Same number of files, no bytes either, ten times slower to open
+        assertEquals(1, concurrency.update(100, 0, 10000));
+    }
+
+    @Test
+    public void testEmptyBatchChangesNothing() {
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(4);
+        assertEquals(1, concurrency.update(0, 0, 0));
+    }
+}
@@ -0,0 +1,70 @@
+package edu.harvard.iq.dataverse.fixity;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class FixityCheckerTest {
+
+    private final byte[] content = new byte[1000003];
+    private ExecutorService rangeExecutor;
+
+    @BeforeEach
+    public void setUp() {
+        new Random(42).nextBytes(content);
+        rangeExecutor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        rangeExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testDigestRanges() throws Exception {
+        StorageIO<?> storage = mock(StorageIO.class);
+        when(storage.getRangeInputStream(anyLong(), anyLong())).thenAnswer(invocation -> {
+            int offset = ((Long) invocation.getArgument(0)).intValue();
+            int length = ((Long) invocation.getArgument(1)).intValue();
+            return new ByteArrayInputStream(content, offset, length);
+        });
+        FixityChecker checker = new FixityChecker(0, 65536, 4, rangeExecutor);
+        MessageDigest md = MessageDigest.getInstance(ChecksumType.SHA256.toString());
+
+        assertEquals(content.length, checker.digestRanges(storage, content.length, md));
+        assertEquals(FileUtil.calculateChecksum(content, ChecksumType.SHA256), FileUtil.checksumDigestToString(md.digest()));
+        // 15 full parts and a partial one
+        verify(storage, times(16)).getRangeInputStream(anyLong(), anyLong());
+    }
+
+    @Test
+    public void testDigestRangesShortRead() throws Exception {
+        StorageIO<?> storage = mock(StorageIO.class);
+        when(storage.getRangeInputStream(anyLong(), anyLong())).thenAnswer(invocation -> new ByteArrayInputStream(new byte[10]));
+        FixityChecker checker = new FixityChecker(0, 65536, 4, rangeExecutor);
+
+        assertThrows(IOException.class, () -> checker.digestRanges(storage, content.length, MessageDigest.getInstance("MD5")));
+    }
+
+    @Test
+    public void testDigest() throws Exception {
+        MessageDigest md = MessageDigest.getInstance(ChecksumType.MD5.toString());
+
+        assertEquals(content.length, FixityChecker.digest(new ByteArrayInputStream(content), md));
+        assertEquals(FileUtil.calculateChecksum(content, ChecksumType.MD5), FileUtil.checksumDigestToString(md.digest()));
+    }
+}
@@ -0,0 +1,203 @@
+package edu.harvard.iq.dataverse.globus;
+
+import edu.harvard.iq.dataverse.Dataset;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TaskMonitoringServiceBeanTest {
+
+    @Mock
+    GlobusServiceBean globusService;
+
+    private final TaskMonitoringServiceBean taskMonitoringService = new TaskMonitoringServiceBean();
+    private final Dataset dataset = new Dataset();
+
+    @BeforeEach
+    void setUp() {
+        taskMonitoringService.globusService = globusService;
+        dataset.setId(1L);
+    }
+
+    private GlobusTaskInProgress task(long id, String token, int failedChecks) {
+        GlobusTaskInProgress task = new GlobusTaskInProgress("task-" + id, GlobusTaskInProgress.TaskType.UPLOAD, dataset,
+                token, null, "rule-" + id, new Timestamp(new Date().getTime()));
+        task.setId(id);
+        task.setFailedChecks(failedChecks);
+        return task;
+    }
+
+    private static GlobusTaskState state(String taskId, String status, String niceStatus) {
+        GlobusTaskState state = new GlobusTaskState();
+        state.setTask_id(taskId);
+        state.setStatus(status);
+        state.setNice_status(niceStatus);
+        return state;
+    }
+
+    private void givenOngoingTasks(GlobusTaskInProgress... tasks) {
+        when(globusService.findAllOngoingTasks(any(Date.class))).thenReturn(List.of(tasks));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<GlobusTaskInProgress>[] savedTaskStates() {
+        ArgumentCaptor<List<GlobusTaskInProgress>> checked = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<GlobusTaskInProgress>> changed = ArgumentCaptor.forClass(List.class);
+        verify(globusService).updateTaskStates(checked.capture(), changed.capture(), any(Timestamp.class));
+        return new List[] { checked.getValue(), changed.getValue() };
+    }
+
+    @Test
+    void tasksAreLookedUpInOneBatchPerToken() {
+        GlobusTaskInProgress t1 = task(1, "token-a", 0);
+        GlobusTaskInProgress t2 = task(2, "token-b", 0);
+        GlobusTaskInProgress t3 = task(3, "token-a", 0);
+        givenOngoingTasks(t1, t2, t3);
+        when(globusService.getTasks(eq("token-a"), eq(List.of("task-1", "task-3")), isNull())).thenReturn(Map.of(
+                "task-1", state("task-1", "ACTIVE", "OK"),
+                "task-3", state("task-3", "ACTIVE", "Queued")));
+        when(globusService.getTasks(eq("token-b"), eq(List.of("task-2")), isNull())).thenReturn(Map.of(
+                "task-2", state("task-2", "ACTIVE", "OK")));
+
+        taskMonitoringService.checkOngoingTasks();
+
+        verify(globusService, never()).getTask(any(), any(), any());
+        List<GlobusTaskInProgress>[] saved = savedTaskStates();
+        assertEquals(List.of(t1, t3, t2), saved[0]);
+        // The status was unknown before
+        assertEquals(List.of(t1, t3, t2), saved[1]);
+        assertEquals("ACTIVE", t1.getStatus());
+    }
+
+    @Test
+    void taskMissingFromItsBatchIsLookedUpOnItsOwn() {
+        GlobusTaskInProgress t1 = task(1, "token-a", 0);
+        t1.setStatus("ACTIVE");
+        givenOngoingTasks(t1);
+        when(globusService.getTasks(eq("token-a"), eq(List.of("task-1")), isNull())).thenReturn(Map.of());
+        when(globusService.getTask(eq("token-a"), eq("task-1"), any())).thenReturn(state("task-1", "ACTIVE", "OK"));
+
+        taskMonitoringService.checkOngoingTasks();
+
+        List<GlobusTaskInProgress>[] saved = savedTaskStates();
+        assertEquals(List.of(t1), saved[0]);
+        // Nothing changed
+        assertEquals(List.of(), saved[1]);
+    }
+
+    @Test
+    void failedLookupIsCounted() {
+        GlobusTaskInProgress t1 = task(1, "token-a", 0);
+        givenOngoingTasks(t1);
+        when(globusService.getTasks(eq("token-a"), anyList(), isNull())).thenReturn(Map.of());
+
+        taskMonitoringService.checkOngoingTasks();
+
+        assertEquals(1, t1.getFailedChecks());
+        List<GlobusTaskInProgress>[] saved = savedTaskStates();
+        assertEquals(List.of(t1), saved[0]);
+        assertEquals(List.of(t1), saved[1]);
+        verify(globusService, never()).claimTask(any(), any());
+    }
+
+    @Test
+    void successfulLookupResetsFailedChecks() {
+        GlobusTaskInProgress t1 = task(1, "token-a", 2);
+        t1.setStatus("ACTIVE");
+        givenOngoingTasks(t1);
+        when(globusService.getTasks(eq("token-a"), anyList(), isNull())).thenReturn(Map.of("task-1", state("task-1", "ACTIVE", "OK")));
+
+        taskMonitoringService.checkOngoingTasks();
+
+        assertEquals(0, t1.getFailedChecks());
+        assertEquals(List.of(t1), savedTaskStates()[1]);
+    }
+
+    @Test
+    void taskIsGivenUpOnAfterTooManyFailedLookups() {
+        GlobusTaskInProgress t1 = task(1, "token-a", TaskMonitoringServiceBean.MAX_FAILED_CHECKS - 1);
+        givenOngoingTasks(t1);
+        when(globusService.getTasks(eq("token-a"), anyList(), isNull())).thenReturn(Map.of());
+        when(globusService.claimTask(eq(t1), any(Date.class))).thenReturn(true);
+
+        taskMonitoringService.checkOngoingTasks();
+
+        verify(globusService).processCompletedTask(eq(t1), isNull(), any());
+        verify(globusService).deleteTask(t1);
+        verify(globusService, never()).updateTaskStates(any(), any(), any());
+    }
+
+    @Test
+    void completedTaskIsDeletedOnceProcessed() {
+        GlobusTaskInProgress t1 = task(1, "token-a", 0);
+        GlobusTaskState succeeded = state("task-1", "SUCCEEDED", null);
+        givenOngoingTasks(t1);
+        when(globusService.getTasks(eq("token-a"), anyList(), isNull())).thenReturn(Map.of("task-1", succeeded));
+        when(globusService.claimTask(eq(t1), any(Date.class))).thenReturn(true);
+
+        taskMonitoringService.checkOngoingTasks();
+
+        verify(globusService).processCompletedTask(eq(t1), eq(succeeded), any());
+        verify(globusService).deleteTask(t1);
+    }
+
+    @Test
+    void completedTaskClaimedByAnotherServerIsLeftAlone() {
+        GlobusTaskInProgress t1 = task(1, "token-a", 0);
+        givenOngoingTasks(t1);
+        when(globusService.getTasks(eq("token-a"), anyList(), isNull())).thenReturn(Map.of("task-1", state("task-1", "SUCCEEDED", null)));
+        when(globusService.claimTask(eq(t1), any(Date.class))).thenReturn(false);
+
+        taskMonitoringService.checkOngoingTasks();
+
+        verify(globusService, never()).processCompletedTask(any(), any(), any());
+        verify(globusService, never()).deleteTask(any());
+    }
+
+    @Test
+    void completedTaskThatFailsToBeProcessedIsReleased() {
+        GlobusTaskInProgress t1 = task(1, "token-a", 0);
+        givenOngoingTasks(t1);
+        when(globusService.getTasks(eq("token-a"), anyList(), isNull())).thenReturn(Map.of("task-1", state("task-1", "SUCCEEDED", null)));
+        when(globusService.claimTask(eq(t1), any(Date.class))).thenReturn(true);
+        doThrow(new IllegalStateException("test")).when(globusService).processCompletedTask(eq(t1), any(), any());
+
+        taskMonitoringService.checkOngoingTasks();
+
+        verify(globusService).releaseTask(t1, 1);
+        verify(globusService, never()).deleteTask(any());
+    }
+
+    @Test
+    void completedTaskThatKeepsFailingToBeProcessedIsDeleted() {
+        GlobusTaskInProgress t1 = task(1, "token-a", TaskMonitoringServiceBean.MAX_FAILED_CHECKS - 1);
+        givenOngoingTasks(t1);
+        when(globusService.getTasks(eq("token-a"), anyList(), isNull())).thenReturn(Map.of("task-1", state("task-1", "SUCCEEDED", null)));
+        when(globusService.claimTask(eq(t1), any(Date.class))).thenReturn(true);
+        doThrow(new IllegalStateException("test")).when(globusService).processCompletedTask(eq(t1), any(), any());
+
+        taskMonitoringService.checkOngoingTasks();
+
+        verify(globusService, never()).releaseTask(any(), anyInt());
+        verify(globusService).deleteTask(t1);
+    }
+}
@@ -0,0 +1,142 @@
+package edu.harvard.iq.dataverse.harvest.server;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@LocalJvmSettings
+public class OAISetServiceBeanTest {
+
+    private static final Date EXPORTED = new Date(1_000_000L);
+    private static final Date UPDATED = new Date(2_000_000L);
+
+    private OAISetServiceBean oaiSetService;
+    private Dataset dataset;
+    private OAIRecordServiceBean.QueuedUpdate update;
+
+    @BeforeEach
+    public void setUp() {
+        OAISet defaultSet = new OAISet();
+        defaultSet.setSpec("");
+        oaiSetService = new OAISetServiceBean() {
+            @Override
+            public List<OAISet> findAll() {
+                return List.of(defaultSet);
+            }
+        };
+        // no container: the bean calls its transactional methods directly
+        oaiSetService.self = oaiSetService;
+        oaiSetService.oaiRecordService = mock(OAIRecordServiceBean.class);
+        oaiSetService.datasetService = mock(DatasetServiceBean.class);
+
+        dataset = new Dataset();
+        dataset.setId(1L);
+        update = new OAIRecordServiceBean.QueuedUpdate(1L, "doi:10.5072/FK2/ONE", new Date());
+        when(oaiSetService.oaiRecordService.claimQueuedOaiRecordsUpdates(any(Date.class), any(Date.class))).thenReturn(List.of(update));
+        when(oaiSetService.datasetService.find(1L)).thenReturn(dataset);
+    }
+
+    @Test
+    public void testUpToDateRecordIsLeftAlone() {
+        OAISetServiceBean.OutdatedRecords outdated = OAISetServiceBean.findOutdatedRecords(
+                Map.of("doi:10.5072/FK2/ONE", new OAIRecordServiceBean.RecordState(false, UPDATED)),
+                Map.of(1L, new OAIRecordServiceBean.ExportTime("doi:10.5072/FK2/ONE", EXPORTED)));
+
+        assertTrue(outdated.datasetIds().isEmpty());
+        assertTrue(outdated.globalIds().isEmpty());
+    }
+
+    @Test
+    public void testNewAndReexportedDatasetsAreOutdated() {
+        OAISetServiceBean.OutdatedRecords outdated = OAISetServiceBean.findOutdatedRecords(
+                Map.of("doi:10.5072/FK2/ONE", new OAIRecordServiceBean.RecordState(false, EXPORTED)),
+                Map.of(1L, new OAIRecordServiceBean.ExportTime("doi:10.5072/FK2/ONE", UPDATED),
+                        2L, new OAIRecordServiceBean.ExportTime("doi:10.5072/FK2/TWO", EXPORTED)));
+
+        assertEquals(Set.of(1L, 2L), Set.copyOf(outdated.datasetIds()));
+        assertEquals(Set.of("doi:10.5072/FK2/ONE", "doi:10.5072/FK2/TWO"), outdated.globalIds());
+    }
+
+    @Test
+    public void testNeverExportedDatasetIsOutdated() {
+        // Its export failed when it was published, so it has no record yet
+        OAISetServiceBean.OutdatedRecords outdated = OAISetServiceBean.findOutdatedRecords(
+                Map.of(),
+                Map.of(1L, new OAIRecordServiceBean.ExportTime("doi:10.5072/FK2/ONE", null)));
+
+        assertEquals(List.of(1L), outdated.datasetIds());
+        assertEquals(Set.of("doi:10.5072/FK2/ONE"), outdated.globalIds());
+    }
+
+    @Test
+    public void testRecordOfDatasetNoLongerInSetIsOutdated() {
+        OAISetServiceBean.OutdatedRecords outdated = OAISetServiceBean.findOutdatedRecords(
+                Map.of("doi:10.5072/FK2/ONE", new OAIRecordServiceBean.RecordState(false, UPDATED),
+                        "doi:10.5072/FK2/GONE", new OAIRecordServiceBean.RecordState(true, UPDATED)),
+                Map.of());
+
+        assertTrue(outdated.datasetIds().isEmpty());
+        // The record already marked as removed is left alone
+        assertEquals(Set.of("doi:10.5072/FK2/ONE"), outdated.globalIds());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.OAI_SERVER_INCREMENTAL_SETS, value = "true")
+    public void testQueuedDatasetIsRemovedOnceUpdated() {
+        oaiSetService.updateQueuedDatasets();
+
+        verify(oaiSetService.oaiRecordService).updateOaiRecordsForDataset(eq("doi:10.5072/FK2/ONE"), eq(dataset),
+                eq(Map.of("", true)), any(Date.class), any(Logger.class));
+        verify(oaiSetService.oaiRecordService).removeQueuedOaiRecordsUpdate(update);
+        verify(oaiSetService.oaiRecordService, never()).releaseQueuedOaiRecordsUpdate(any());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.OAI_SERVER_INCREMENTAL_SETS, value = "true")
+    public void testQueuedDatasetStaysQueuedWhenUpdateFails() {
+        doThrow(new IllegalStateException("database is down")).when(oaiSetService.oaiRecordService)
+                .updateOaiRecordsForDataset(any(), any(), any(), any(), any());
+
+        oaiSetService.updateQueuedDatasets();
+
+        verify(oaiSetService.oaiRecordService, never()).removeQueuedOaiRecordsUpdate(any());
+        verify(oaiSetService.oaiRecordService).releaseQueuedOaiRecordsUpdate(update);
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.OAI_SERVER_INCREMENTAL_SETS, value = "true")
+    public void testRecordsOfDestroyedDatasetAreRemoved() {
+        when(oaiSetService.datasetService.find(1L)).thenReturn(null);
+
+        oaiSetService.updateQueuedDatasets();
+
+        verify(oaiSetService.oaiRecordService).updateOaiRecordsForDataset(eq("doi:10.5072/FK2/ONE"), eq(null),
+                eq(Map.of()), any(Date.class), any(Logger.class));
+        verify(oaiSetService.oaiRecordService).removeQueuedOaiRecordsUpdate(update);
+    }
+
+    @Test
+    public void testQueueIsLeftAloneWhenDisabled() {
+        oaiSetService.updateQueuedDatasets();
+
+        verify(oaiSetService.oaiRecordService, never()).claimQueuedOaiRecordsUpdates(any(), any());
+    }
+}
@@ -0,0 +1,81 @@
+package edu.harvard.iq.dataverse.harvest.server.xoai;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExportDocumentCacheTest {
+
+    private static final Date EXPORTED = new Date(1000);
+
+    @Test
+    public void testDocumentIsKeyedByLastExportTime() {
+        ExportDocumentCache cache = new ExportDocumentCache(100);
+        byte[] document = new byte[10];
+
+        cache.put(1L, "oai_dc", EXPORTED, document);
+
+        assertSame(document, cache.get(1L, "oai_dc", EXPORTED));
+        assertNull(cache.get(1L, "oai_dc", new Date(2000)));
+        assertNull(cache.get(1L, "oai_ddi", EXPORTED));
+        assertNull(cache.get(2L, "oai_dc", EXPORTED));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedDocumentIsEvicted() {
+        ExportDocumentCache cache = new ExportDocumentCache(30);
+        cache.put(1L, "oai_dc", EXPORTED, new byte[10]);
+        cache.put(2L, "oai_dc", EXPORTED, new byte[10]);
+        cache.put(3L, "oai_dc", EXPORTED, new byte[10]);
+        // 1 is now more recently used than 2:
+        cache.get(1L, "oai_dc", EXPORTED);
+
+        cache.put(4L, "oai_dc", EXPORTED, new byte[10]);
+
+        assertNotNull(cache.get(1L, "oai_dc", EXPORTED));
+        assertNull(cache.get(2L, "oai_dc", EXPORTED));
+        assertNotNull(cache.get(3L, "oai_dc", EXPORTED));
+        assertNotNull(cache.get(4L, "oai_dc", EXPORTED));
+        assertEquals(30, cache.getSize());
+    }
+
+    @Test
+    public void testReplacedDocumentIsCountedOnce() {
+        ExportDocumentCache cache = new ExportDocumentCache(100);
+        cache.put(1L, "oai_dc", EXPORTED, new byte[10]);
+        cache.put(1L, "oai_dc", EXPORTED, new byte[20]);
+
+        assertEquals(1, cache.getCount());
+        assertEquals(20, cache.getSize());
+    }
+
+    @Test
+    public void testOversizedDocumentIsNotCached() {
+        ExportDocumentCache cache = new ExportDocumentCache(10);
+        cache.put(1L, "oai_dc", EXPORTED, new byte[5]);
+
+        cache.put(2L, "oai_dc", EXPORTED, new byte[11]);
+
+        assertNull(cache.get(2L, "oai_dc", EXPORTED));
+        assertNotNull(cache.get(1L, "oai_dc", EXPORTED));
+    }
+
+    @Test
+    public void testDisabledCache() {
+        ExportDocumentCache cache = new ExportDocumentCache(0);
+        cache.put(1L, "oai_dc", EXPORTED, new byte[1]);
+
+        assertEquals(0, cache.getCount());
+    }
+
+    @Test
+    public void testNeverExportedDatasetIsNotCached() {
+        ExportDocumentCache cache = new ExportDocumentCache(100);
+        cache.put(1L, "oai_dc", null, new byte[1]);
+
+        assertEquals(0, cache.getCount());
+        assertNull(cache.get(1L, "oai_dc", null));
+    }
+}
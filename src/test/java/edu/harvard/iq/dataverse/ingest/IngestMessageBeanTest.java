@@ -0,0 +1,30 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IngestMessageBeanTest {
+
+    @Test
+    public void testRetryDelayDoublesWithEveryRetry() {
+        assertEquals(5000, IngestMessageBean.retryDelay(0, 5000, 300000));
+        assertEquals(10000, IngestMessageBean.retryDelay(1, 5000, 300000));
+        assertEquals(20000, IngestMessageBean.retryDelay(2, 5000, 300000));
+        assertEquals(160000, IngestMessageBean.retryDelay(5, 5000, 300000));
+    }
+
+    @Test
+    public void testRetryDelayIsCapped() {
+        assertEquals(300000, IngestMessageBean.retryDelay(6, 5000, 300000));
+        // No overflow, however many times the message was requeued
+        assertEquals(300000, IngestMessageBean.retryDelay(62, 5000, 300000));
+        assertEquals(300000, IngestMessageBean.retryDelay(Integer.MAX_VALUE, 5000, 300000));
+    }
+
+    @Test
+    public void testRetryDelayIsNeverBelowTheInitialDelay() {
+        // A maximum below the initial delay is ignored
+        assertEquals(5000, IngestMessageBean.retryDelay(3, 5000, 1000));
+    }
+}
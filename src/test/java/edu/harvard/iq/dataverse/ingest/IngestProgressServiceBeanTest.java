@@ -0,0 +1,135 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IngestProgressServiceBeanTest {
+
+    private IngestProgressServiceBean ingestProgressService;
+    private Query expiredSlots;
+    private Query progress;
+    private Query runningSlots;
+    private Query newSlot;
+    private Query localSlots;
+
+    @BeforeEach
+    public void setUp() {
+        ingestProgressService = new IngestProgressServiceBean();
+        ingestProgressService.em = mock(EntityManager.class);
+        when(ingestProgressService.em.createNativeQuery(anyString())).thenReturn(mock(Query.class, RETURNS_SELF));
+        expiredSlots = query("DELETE FROM ingestslot WHERE started");
+        progress = query("SELECT dataset_id FROM ingestprogress");
+        runningSlots = query("SELECT COUNT(*)");
+        newSlot = query("INSERT INTO ingestslot");
+        localSlots = query("DELETE FROM ingestslot WHERE owner");
+        when(progress.getResultList()).thenReturn(List.of(1L));
+        when(newSlot.getSingleResult()).thenReturn(42L);
+    }
+
+    private Query query(String sql) {
+        Query query = mock(Query.class, RETURNS_SELF);
+        when(ingestProgressService.em.createNativeQuery(startsWith(sql))).thenReturn(query);
+        return query;
+    }
+
+    @Test
+    public void testJoinAndParseIds() {
+        List<Long> ids = List.of(1L, 22L, 333L);
+
+        String joined = IngestProgressServiceBean.joinIds(ids);
+
+        assertEquals("1,22,333", joined);
+        assertEquals(ids, IngestProgressServiceBean.parseIds(joined));
+    }
+
+    @Test
+    public void testParseIdsAppendedByTheDatabase() {
+        // CONCAT_WS skips nulls, so the first work unit to fail starts the list
+        assertEquals(List.of(5L, 7L, 8L), IngestProgressServiceBean.parseIds("5,7,8"));
+        assertEquals(List.of(), IngestProgressServiceBean.parseIds(null));
+        assertEquals(List.of(), IngestProgressServiceBean.parseIds(""));
+    }
+
+    @Test
+    public void testFreesExpiredSlotsBeforeCounting() {
+        // The slots left are those that did not expire
+        when(expiredSlots.executeUpdate()).thenReturn(8);
+        when(runningSlots.getSingleResult()).thenReturn(new Object[]{0L, 0L});
+
+        IngestProgressServiceBean.Start start = ingestProgressService.tryStart(1L, 4, 8, 3600);
+
+        assertTrue(start.go());
+        assertEquals(42L, start.slotId());
+        InOrder inOrder = inOrder(expiredSlots, runningSlots, newSlot);
+        inOrder.verify(expiredSlots).setParameter(1, 3600L);
+        inOrder.verify(expiredSlots).executeUpdate();
+        inOrder.verify(runningSlots).getSingleResult();
+        inOrder.verify(newSlot).setParameter(2, IngestProgressServiceBean.INSTANCE_ID);
+        inOrder.verify(newSlot).getSingleResult();
+    }
+
+    @Test
+    public void testWaitsWhenAllSlotsAreTaken() {
+        when(runningSlots.getSingleResult()).thenReturn(new Object[]{1L, 8L});
+
+        IngestProgressServiceBean.Start start = ingestProgressService.tryStart(1L, 4, 8, 3600);
+
+        assertFalse(start.go());
+        assertNull(start.slotId());
+        verify(newSlot, never()).getSingleResult();
+    }
+
+    @Test
+    public void testWaitsWhenTheSlotsOfTheDatasetAreTaken() {
+        when(runningSlots.getSingleResult()).thenReturn(new Object[]{4L, 4L});
+
+        assertFalse(ingestProgressService.tryStart(1L, 4, 8, 3600).go());
+    }
+
+    @Test
+    public void testGoesAheadWithoutSlotWhenNotTracked() {
+        when(progress.getResultList()).thenReturn(List.of());
+
+        IngestProgressServiceBean.Start start = ingestProgressService.tryStart(1L, 4, 8, 3600);
+
+        assertTrue(start.go());
+        assertNull(start.slotId());
+        verify(newSlot, never()).getSingleResult();
+    }
+
+    @Test
+    public void testFreesLocalSlotsOnStartup() {
+        when(localSlots.executeUpdate()).thenReturn(3);
+        IngestSlotRecovery recovery = new IngestSlotRecovery();
+        recovery.ingestProgressService = ingestProgressService;
+
+        recovery.releaseLeakedSlots();
+
+        verify(localSlots).setParameter(1, IngestProgressServiceBean.INSTANCE_ID);
+        verify(localSlots).executeUpdate();
+    }
+
+    @Test
+    public void testStartupSurvivesFailureToFreeSlots() {
+        when(localSlots.executeUpdate()).thenThrow(new IllegalStateException("no database"));
+        IngestSlotRecovery recovery = new IngestSlotRecovery();
+        recovery.ingestProgressService = ingestProgressService;
+
+        assertDoesNotThrow(recovery::releaseLeakedSlots);
+    }
+}
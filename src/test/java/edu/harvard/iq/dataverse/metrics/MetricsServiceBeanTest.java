@@ -0,0 +1,73 @@
+package edu.harvard.iq.dataverse.metrics;
+
+import edu.harvard.iq.dataverse.Metric;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.NoResultException;
+import jakarta.persistence.TypedQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MetricsServiceBeanTest {
+
+    private MetricsServiceBean metricsService;
+    private ExecutorService executor;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        // No metric is cached
+        TypedQuery<Metric> query = mock(TypedQuery.class, RETURNS_SELF);
+        when(query.getSingleResult()).thenThrow(new NoResultException());
+        metricsService = new MetricsServiceBean();
+        metricsService.em = mock(EntityManager.class);
+        when(metricsService.em.createQuery(anyString(), eq(Metric.class))).thenReturn(query);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentCallerGetsTheSavedMetric() throws Exception {
+        // The first caller recalculates the metric
+        assertNull(metricsService.returnUnexpiredCacheAllTime("savedMetric", null, null));
+        Future<String> concurrent = executor.submit(() -> metricsService.returnUnexpiredCacheAllTime("savedMetric", null, null));
+        assertThrows(TimeoutException.class, () -> concurrent.get(200, TimeUnit.MILLISECONDS));
+
+        // Not handed out before the save has returned (and committed)
+        metricsService.save(new Metric("savedMetric", null, null, null, "[]"));
+        assertThrows(TimeoutException.class, () -> concurrent.get(200, TimeUnit.MILLISECONDS));
+
+        metricsService.completeRecompute("savedMetric", null, null, null, "[]");
+        metricsService.releaseRecompute("savedMetric", null, null, null);
+        assertEquals("[]", concurrent.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailedRecalculationReleasesConcurrentCallers() throws Exception {
+        assertNull(metricsService.returnUnexpiredCacheMonthly("failedMetric", "2024-01", null, null));
+        Future<String> concurrent = executor.submit(() -> metricsService.returnUnexpiredCacheMonthly("failedMetric", "2024-01", null, null));
+        assertThrows(TimeoutException.class, () -> concurrent.get(200, TimeUnit.MILLISECONDS));
+
+        // The query failed, nothing was saved: the concurrent caller runs it
+        // itself, rather than wait for the whole minute
+        metricsService.releaseRecompute("failedMetric", "2024-01", null, null);
+        assertNull(concurrent.get(10, TimeUnit.SECONDS));
+    }
+}
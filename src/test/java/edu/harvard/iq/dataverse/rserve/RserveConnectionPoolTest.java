@@ -0,0 +1,140 @@
+package edu.harvard.iq.dataverse.rserve;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class RserveConnectionPoolTest {
+
+    /**
+     * A pool that hands out mock connections instead of connecting to Rserve.
+     */
+    private static class TestPool extends RserveConnectionPool {
+        final List<RConnection> opened = new ArrayList<>();
+
+        TestPool(int maxSize, long waitTimeoutMillis, long idleTimeoutMillis) {
+            super("localhost", 6311, "rserve", "rserve", maxSize, waitTimeoutMillis, idleTimeoutMillis);
+        }
+
+        @Override
+        RConnection connect() {
+            RConnection connection = mock(RConnection.class);
+            when(connection.isConnected()).thenReturn(true);
+            opened.add(connection);
+            return connection;
+        }
+    }
+
+    @Test
+    public void testReleasedConnectionIsReused() throws RserveException {
+        TestPool pool = new TestPool(2, 1000, 60000);
+
+        RConnection first = pool.borrow();
+        pool.release(first);
+        RConnection second = pool.borrow();
+
+        assertSame(first, second);
+        assertEquals(1, pool.opened.size());
+        verify(first).voidEval("rm(list = ls(all.names = TRUE))");
+    }
+
+    @Test
+    public void testBorrowWaitsForAFreeConnection() throws RserveException {
+        TestPool pool = new TestPool(1, 50, 60000);
+
+        RConnection only = pool.borrow();
+
+        assertThrows(RserveException.class, pool::borrow);
+        pool.release(only);
+        assertSame(only, pool.borrow());
+    }
+
+    @Test
+    public void testBrokenConnectionIsReplaced() throws RserveException {
+        TestPool pool = new TestPool(1, 1000, 60000);
+        RConnection broken = pool.borrow();
+        pool.release(broken);
+        when(broken.isConnected()).thenReturn(false);
+
+        RConnection replacement = pool.borrow();
+
+        assertNotSame(broken, replacement);
+        verify(broken).close();
+    }
+
+    @Test
+    public void testConnectionThatCannotBeResetIsClosed() throws RserveException {
+        TestPool pool = new TestPool(1, 1000, 60000);
+        RConnection connection = pool.borrow();
+        doThrow(new RserveException(connection, "broken")).when(connection).voidEval(anyString());
+
+        pool.release(connection);
+
+        assertEquals(0, pool.getIdleCount());
+        verify(connection).close();
+        // the slot is free again:
+        assertNotSame(connection, pool.borrow());
+    }
+
+    @Test
+    public void testIdleConnectionTimesOut() throws RserveException, InterruptedException {
+        TestPool pool = new TestPool(1, 1000, 10);
+        RConnection connection = pool.borrow();
+        pool.release(connection);
+
+        Thread.sleep(50);
+
+        assertNotSame(connection, pool.borrow());
+        verify(connection).close();
+    }
+
+    @Test
+    public void testInvalidatedConnectionFreesItsSlot() throws RserveException {
+        TestPool pool = new TestPool(1, 50, 60000);
+        RConnection connection = pool.borrow();
+
+        pool.invalidate(connection);
+
+        verify(connection).close();
+        assertNotSame(connection, pool.borrow());
+    }
+
+    @Test
+    public void testRetiredPoolClosesItsConnections() throws RserveException {
+        TestPool pool = new TestPool(2, 1000, 60000);
+        RConnection idle = pool.borrow();
+        RConnection inUse = pool.borrow();
+        pool.release(idle);
+
+        pool.retire();
+
+        verify(idle).close();
+        assertEquals(0, pool.getIdleCount());
+        pool.release(inUse);
+        verify(inUse).close();
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testConnectionFromAnotherPoolIsClosedNotKept() throws RserveException {
+        TestPool replaced = new TestPool(1, 1000, 60000);
+        TestPool current = new TestPool(1, 50, 60000);
+        RConnection connection = replaced.borrow();
+
+        current.release(connection);
+
+        verify(connection).close();
+        assertEquals(0, current.getIdleCount());
+        // no slot of the current pool was given back for it:
+        RConnection own = current.borrow();
+        assertThrows(RserveException.class, current::borrow);
+        current.release(own);
+    }
+}
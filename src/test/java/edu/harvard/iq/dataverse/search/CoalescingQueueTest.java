@@ -0,0 +1,106 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CoalescingQueueTest {
+
+    private static CoalescingQueue<String> queue(long debounce, int capacity) {
+        return new CoalescingQueue<>(debounce, debounce * 10, TimeUnit.MILLISECONDS, capacity, (a, b) -> a + b);
+    }
+
+    @Test
+    public void testMergesRequestsForTheSameKey() throws InterruptedException {
+        CoalescingQueue<String> queue = queue(0, 10);
+        queue.put(1L, "a");
+        queue.put(2L, "x");
+        queue.put(1L, "b");
+        assertEquals(2, queue.size());
+
+        CoalescingQueue.Entry<String> first = queue.take();
+        assertEquals(1L, first.key());
+        assertEquals("ab", first.item());
+        CoalescingQueue.Entry<String> second = queue.take();
+        assertEquals(2L, second.key());
+        assertEquals("x", second.item());
+        assertEquals(0, queue.size());
+        assertEquals(2, queue.runningCount());
+    }
+
+    @Test
+    public void testWaitsForTheDebounce() throws InterruptedException {
+        CoalescingQueue<String> queue = queue(200, 10);
+        long start = System.nanoTime();
+        queue.put(1L, "a");
+        CoalescingQueue.Entry<String> entry = queue.take();
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals("a", entry.item());
+    }
+
+    @Test
+    public void testHoldsKeyWhileRunning() throws InterruptedException {
+        CoalescingQueue<String> queue = queue(0, 10);
+        queue.put(1L, "a");
+        CoalescingQueue.Entry<String> running = queue.take();
+        queue.put(1L, "b");
+        queue.put(2L, "x");
+        queue.put(1L, "c");
+
+        // Key 1 is held back until the running item is done
+        assertEquals(2L, queue.take().key());
+        assertEquals(1, queue.size());
+        queue.done(running.key());
+        CoalescingQueue.Entry<String> next = queue.take();
+        assertEquals(1L, next.key());
+        assertEquals("bc", next.item());
+    }
+
+    @Test
+    public void testClaimWaitsForRunningItem() throws InterruptedException {
+        CoalescingQueue<String> queue = queue(0, 10);
+        queue.put(1L, "a");
+        CoalescingQueue.Entry<String> running = queue.take();
+
+        CountDownLatch claimed = new CountDownLatch(1);
+        Thread claimer = new Thread(() -> {
+            try {
+                queue.claim(1L);
+                claimed.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        claimer.start();
+        assertFalse(claimed.await(100, TimeUnit.MILLISECONDS));
+        queue.done(running.key());
+        assertTrue(claimed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, queue.runningCount());
+    }
+
+    @Test
+    public void testBlocksWhenFull() throws InterruptedException {
+        CoalescingQueue<String> queue = queue(0, 2);
+        queue.put(1L, "a");
+        queue.put(2L, "b");
+        // Merging into a waiting item needs no room
+        queue.put(1L, "c");
+
+        CountDownLatch added = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(3L, "d");
+                added.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        assertFalse(added.await(100, TimeUnit.MILLISECONDS));
+        queue.take();
+        assertTrue(added.await(5, TimeUnit.SECONDS));
+        assertEquals(2, queue.size());
+    }
+}
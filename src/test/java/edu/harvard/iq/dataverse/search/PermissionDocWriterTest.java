@@ -0,0 +1,132 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PermissionDocWriterTest {
+
+    private SolrClient solrClient;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        solrClient = Mockito.mock(SolrClient.class);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static DvObjectSolrDoc doc(long id, String... perms) {
+        return new DvObjectSolrDoc(String.valueOf(id), "dataset_" + id, null, "title", List.of(perms));
+    }
+
+    private static SolrDocument indexed(long id, String... perms) {
+        SolrDocument solrDocument = new SolrDocument();
+        solrDocument.setField(SearchFields.ID, "dataset_" + id + IndexServiceBean.discoverabilityPermissionSuffix);
+        solrDocument.setField(SearchFields.DISCOVERABLE_BY, new ArrayList<>(List.of(perms)));
+        return solrDocument;
+    }
+
+    private static SolrDocumentList list(SolrDocument... solrDocuments) {
+        SolrDocumentList solrDocumentList = new SolrDocumentList();
+        solrDocumentList.addAll(List.of(solrDocuments));
+        return solrDocumentList;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWritesOnlyChangedDocs() throws Exception {
+        when(solrClient.getById(anyCollection())).thenReturn(list(
+                indexed(1, "group_1", "group_2"),
+                indexed(2, "group_1")));
+
+        PermissionDocWriter writer = new PermissionDocWriter(solrClient, executor, 10, 2);
+        // Unchanged, in another order
+        writer.add(doc(1, "group_2", "group_1"));
+        // Changed
+        writer.add(doc(2, "group_1", "group_3"));
+        // Not indexed yet
+        writer.add(doc(3, "group_1"));
+        PermissionDocWriter.Result result = writer.finish();
+
+        assertEquals(3, result.checked());
+        assertEquals(2, result.changed());
+        ArgumentCaptor<Collection<SolrInputDocument>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(solrClient).add(captor.capture());
+        List<SolrInputDocument> updates = new ArrayList<>(captor.getValue());
+        assertEquals(2, updates.size());
+
+        SolrInputDocument update = updates.get(0);
+        assertEquals("dataset_2" + IndexServiceBean.discoverabilityPermissionSuffix, update.getFieldValue(SearchFields.ID));
+        assertEquals(Map.of("set", List.of("group_1", "group_3")), update.getFieldValue(SearchFields.DISCOVERABLE_BY));
+        assertNull(update.getField(SearchFields.DEFINITION_POINT));
+
+        SolrInputDocument created = updates.get(1);
+        assertEquals("dataset_3" + IndexServiceBean.discoverabilityPermissionSuffix, created.getFieldValue(SearchFields.ID));
+        assertEquals("dataset_3", created.getFieldValue(SearchFields.DEFINITION_POINT));
+    }
+
+    @Test
+    public void testWritesNothingWhenUnchanged() throws Exception {
+        when(solrClient.getById(anyCollection())).thenReturn(list(indexed(1, "group_1")));
+
+        PermissionDocWriter writer = new PermissionDocWriter(solrClient, executor, 10, 2);
+        writer.add(doc(1, "group_1"));
+        PermissionDocWriter.Result result = writer.finish();
+
+        assertEquals(1, result.checked());
+        assertEquals(0, result.changed());
+        verify(solrClient, never()).add(anyCollection());
+    }
+
+    @Test
+    public void testWritesInBatches() throws Exception {
+        when(solrClient.getById(anyCollection())).thenReturn(list());
+
+        PermissionDocWriter writer = new PermissionDocWriter(solrClient, executor, 2, 1);
+        for (long id = 1; id <= 5; id++) {
+            writer.add(doc(id, "group_1"));
+        }
+        PermissionDocWriter.Result result = writer.finish();
+
+        assertEquals(5, result.checked());
+        assertEquals(5, result.changed());
+        verify(solrClient, times(3)).getById(anyCollection());
+        verify(solrClient, times(3)).add(anyCollection());
+    }
+
+    @Test
+    public void testReportsFailure() throws Exception {
+        when(solrClient.getById(anyCollection())).thenThrow(new IOException("Solr is down"));
+
+        PermissionDocWriter writer = new PermissionDocWriter(solrClient, executor, 10, 2);
+        writer.add(doc(1, "group_1"));
+        IOException e = assertThrows(IOException.class, writer::finish);
+        assertEquals("Solr is down", e.getMessage());
+        verify(solrClient, never()).add(anyCollection());
+    }
+}
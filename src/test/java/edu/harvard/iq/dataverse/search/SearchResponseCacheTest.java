@@ -0,0 +1,101 @@
+package edu.harvard.iq.dataverse.search;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchResponseCacheTest {
+
+    private static SolrQuery query(String q, int start, String... filterQueries) {
+        SolrQuery solrQuery = new SolrQuery();
+        solrQuery.setQuery(q);
+        solrQuery.addFilterQuery(filterQueries);
+        solrQuery.setStart(start);
+        solrQuery.setRows(10);
+        return solrQuery;
+    }
+
+    private static SearchResponseCache cache(long maxSize, long settleMillis) {
+        SearchResponseCache cache = new SearchResponseCache();
+        cache.init(maxSize, 60, settleMillis);
+        return cache;
+    }
+
+    @Test
+    public void testKeyIsNormalized() {
+        String key = SearchResponseCache.key(query("data", 0, "subtreePaths:\"/1\"", "{!join from=definitionPointDocId to=id}discoverableBy:(group_public)"));
+        assertEquals(key, SearchResponseCache.key(query(" data ", 0, "{!join from=definitionPointDocId to=id}discoverableBy:(group_public)", "subtreePaths:\"/1\"")));
+        // Another page
+        assertNotEquals(key, SearchResponseCache.key(query("data", 10, "subtreePaths:\"/1\"", "{!join from=definitionPointDocId to=id}discoverableBy:(group_public)")));
+        // Other groups
+        assertNotEquals(key, SearchResponseCache.key(query("data", 0, "subtreePaths:\"/1\"", "{!join from=definitionPointDocId to=id}discoverableBy:(group_public OR group_ip/1)")));
+    }
+
+    @Test
+    public void testCachesResponses() {
+        SearchResponseCache cache = cache(10, 0);
+        QueryResponse response = Mockito.mock(QueryResponse.class);
+        String key = SearchResponseCache.key(query("data", 0));
+
+        assertNull(cache.get(key));
+        cache.put(key, cache.getGeneration(), response);
+        assertSame(response, cache.get(key));
+        assertSame(response, cache.get(key));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2.0 / 3, cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testIndexChangeDropsResponses() {
+        SearchResponseCache cache = cache(10, 0);
+        QueryResponse response = Mockito.mock(QueryResponse.class);
+        String key = SearchResponseCache.key(query("data", 0));
+
+        cache.put(key, cache.getGeneration(), response);
+        cache.indexChanged();
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testDoesNotCacheResponseObtainedBeforeIndexChange() {
+        SearchResponseCache cache = cache(10, 0);
+        QueryResponse response = Mockito.mock(QueryResponse.class);
+        String key = SearchResponseCache.key(query("data", 0));
+
+        long generation = cache.getGeneration();
+        // The index changes while the query is answered
+        cache.indexChanged();
+        cache.put(key, generation, response);
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testDoesNotCacheRightAfterIndexChange() {
+        SearchResponseCache cache = cache(10, 60000);
+        QueryResponse response = Mockito.mock(QueryResponse.class);
+        String key = SearchResponseCache.key(query("data", 0));
+
+        cache.put(key, cache.getGeneration(), response);
+        assertSame(response, cache.get(key));
+
+        // Solr may not have made the change searchable yet
+        cache.indexChanged();
+        cache.put(key, cache.getGeneration(), response);
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testDisabled() {
+        SearchResponseCache cache = cache(0, 0);
+        assertFalse(cache.isEnabled());
+        String key = SearchResponseCache.key(query("data", 0));
+        cache.put(key, cache.getGeneration(), Mockito.mock(QueryResponse.class));
+        assertNull(cache.get(key));
+        assertEquals(0, cache.getMisses());
+    }
+}
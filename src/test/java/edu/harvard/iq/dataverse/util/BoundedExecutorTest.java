@@ -0,0 +1,100 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedExecutorTest {
+
+    private ExecutorService container;
+
+    @BeforeEach
+    public void setUp() {
+        container = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        container.shutdownNow();
+    }
+
+    @Test
+    public void testNoMoreThanMaxConcurrencyTasksRunAtOnce() throws Exception {
+        BoundedExecutor sut = new BoundedExecutor(container, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(sut.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(2, maxRunning.get());
+        sut.shutdown();
+        assertTrue(sut.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTaskIsRejectedWhenTheQueueIsFull() throws Exception {
+        BoundedExecutor sut = new BoundedExecutor(container, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<?> first = sut.submit(() -> {
+            release.await();
+            return null;
+        });
+        Future<?> second = sut.submit(() -> null);
+        assertEquals(1, sut.getActiveCount());
+        assertEquals(1, sut.getQueueSize());
+        assertThrows(RejectedExecutionException.class, () -> sut.submit(() -> null));
+
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testShutdownNowDropsTheQueueAndInterrupts() throws Exception {
+        BoundedExecutor sut = new BoundedExecutor(container, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        sut.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        sut.execute(() -> fail("Should have been dropped"));
+        started.await(10, TimeUnit.SECONDS);
+
+        assertEquals(1, sut.shutdownNow().size());
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        assertTrue(sut.awaitTermination(10, TimeUnit.SECONDS));
+        assertThrows(RejectedExecutionException.class, () -> sut.execute(() -> { }));
+    }
+}
@@ -0,0 +1,99 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallersShareOneComputation() throws Exception {
+        SingleFlight<String, String> sut = new SingleFlight<>();
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> sut.execute("key", () -> {
+                computations.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "value";
+            })));
+            started.await();
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> sut.execute("key", () -> {
+                    computations.incrementAndGet();
+                    return "other";
+                })));
+            }
+            // give the followers a chance to line up behind the leader:
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, computations.get());
+            assertEquals(0, sut.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDifferentKeysDoNotWait() throws Exception {
+        SingleFlight<String, String> sut = new SingleFlight<>();
+        assertTrue(sut.tryLead("a"));
+        assertEquals("b", sut.execute("b", () -> "b"));
+        assertEquals(1, sut.size());
+    }
+
+    @Test
+    public void testFailureIsRethrown() {
+        SingleFlight<String, String> sut = new SingleFlight<>();
+        assertThrows(IllegalStateException.class, () -> sut.execute("key", () -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals(0, sut.size());
+    }
+
+    @Test
+    public void testSplitPhase() {
+        SingleFlight<String, String> sut = new SingleFlight<>();
+        assertTrue(sut.tryLead("key"));
+        assertFalse(sut.tryLead("key"));
+        assertNull(sut.awaitResult("key", 10, TimeUnit.MILLISECONDS));
+
+        sut.complete("key", "value");
+        assertEquals(0, sut.size());
+        assertNull(sut.awaitResult("key", 10, TimeUnit.MILLISECONDS));
+        assertTrue(sut.tryLead("key"));
+        sut.abandon("key");
+        assertEquals(0, sut.size());
+    }
+
+    @Test
+    public void testExpiredLeaseIsTakenOver() throws Exception {
+        SingleFlight<String, String> sut = new SingleFlight<>(1);
+        assertTrue(sut.tryLead("key"));
+        Thread.sleep(10);
+        assertTrue(sut.tryLead("key"));
+    }
+
+    @Test
+    public void testInvalidLease() {
+        assertThrows(IllegalArgumentException.class, () -> new SingleFlight<String, String>(0));
+    }
+}
@@ -0,0 +1,52 @@
+package edu.harvard.iq.dataverse.util.bagit;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashingInputStreamSupplierTest {
+
+    private static HashingInputStreamSupplier supplierOf(String content, ChecksumType type) {
+        return new HashingInputStreamSupplier(() -> new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), type);
+    }
+
+    @Test
+    public void testChecksumOfFullyReadStream() throws Exception {
+        HashingInputStreamSupplier md5 = supplierOf("test", ChecksumType.MD5);
+        try (InputStream in = md5.get()) {
+            assertEquals("test", IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+        assertEquals("098f6bcd4621d373cade4e832627b4f6", md5.getChecksum());
+
+        HashingInputStreamSupplier sha1 = supplierOf("test", ChecksumType.SHA1);
+        try (InputStream in = sha1.get()) {
+            // one byte at a time
+            while (in.read() != -1) {
+            }
+        }
+        assertEquals("a94a8fe5ccb19ba61c4c0873d391e987982fbbd3", sha1.getChecksum());
+        assertEquals(ChecksumType.SHA1, sha1.getChecksumType());
+    }
+
+    @Test
+    public void testNoChecksumForPartiallyReadStream() throws Exception {
+        HashingInputStreamSupplier sha256 = supplierOf("test", ChecksumType.SHA256);
+        try (InputStream in = sha256.get()) {
+            in.read(new byte[2]);
+        }
+        assertNull(sha256.getChecksum());
+    }
+
+    @Test
+    public void testNoChecksumForMissingStream() {
+        HashingInputStreamSupplier missing = new HashingInputStreamSupplier(() -> null, ChecksumType.SHA512);
+        assertNull(missing.get());
+        assertNull(missing.getChecksum());
+    }
+}
@@ -0,0 +1,189 @@
+package edu.harvard.iq.dataverse.util.bagit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultipartUploadOutputStreamTest {
+
+    /**
+     * Keeps the parts in memory, as an archive would, and assembles them when
+     * the upload is completed.
+     */
+    static class InMemoryUpload extends MultipartUploadOutputStream {
+        final Map<Integer, byte[]> parts = new ConcurrentHashMap<Integer, byte[]>();
+        final AtomicInteger uploads = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        int maxInFlight = 0;
+        int failPart = -1;
+        int starts = 0;
+        byte[] result = null;
+        boolean aborted = false;
+        int inFlightWhenAborted = -1;
+
+        InMemoryUpload(int partSize, int partsInFlight, ExecutorService executor) {
+            super(partSize, partsInFlight, executor);
+        }
+
+        @Override
+        protected void startUpload() {
+            starts++;
+        }
+
+        @Override
+        protected String uploadPart(int partNumber, byte[] data, int length, String md5) throws IOException {
+            int n = inFlight.incrementAndGet();
+            synchronized (this) {
+                maxInFlight = Math.max(maxInFlight, n);
+            }
+            try {
+                Thread.sleep(5);
+                if (partNumber == failPart) {
+                    throw new IOException("Simulated failure of part " + partNumber);
+                }
+                assertEquals(DigestUtils.md5Hex(Arrays.copyOf(data, length)), md5);
+                parts.put(partNumber, Arrays.copyOf(data, length));
+                uploads.incrementAndGet();
+                return md5;
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        protected void completeUpload(SortedMap<Integer, String> tags) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int expected = 1;
+            for (Integer partNumber : tags.keySet()) {
+                assertEquals(expected++, partNumber);
+                out.write(parts.get(partNumber));
+            }
+            result = out.toByteArray();
+        }
+
+        @Override
+        protected void abortUpload() {
+            aborted = true;
+            inFlightWhenAborted = inFlight.get();
+            parts.clear();
+        }
+    }
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static void writeInChunks(MultipartUploadOutputStream out, byte[] data, int chunkSize) throws IOException {
+        for (int i = 0; i < data.length; i += chunkSize) {
+            out.write(data, i, Math.min(chunkSize, data.length - i));
+        }
+    }
+
+    @Test
+    public void testPartsAreReassembled() throws IOException {
+        byte[] data = randomBytes(10_000);
+        InMemoryUpload upload = new InMemoryUpload(1024, 3, executor);
+
+        writeInChunks(upload, data, 333);
+        upload.close();
+
+        assertArrayEquals(data, upload.result);
+        assertEquals(10, upload.parts.size());
+        assertEquals(10_000, upload.getSize());
+        assertEquals(DigestUtils.md5Hex(data), upload.getMd5());
+        assertTrue(upload.maxInFlight <= 3);
+    }
+
+    @Test
+    public void testEmptyStreamIsOnePart() throws IOException {
+        InMemoryUpload upload = new InMemoryUpload(1024, 2, executor);
+        upload.close();
+
+        assertEquals(0, upload.result.length);
+        assertEquals(1, upload.parts.size());
+    }
+
+    @Test
+    public void testFailedPartFailsTheUpload() throws IOException {
+        byte[] data = randomBytes(10_000);
+        InMemoryUpload upload = new InMemoryUpload(1024, 2, executor);
+        upload.failPart = 4;
+
+        assertThrows(IOException.class, () -> {
+            writeInChunks(upload, data, 1000);
+            upload.close();
+        });
+        assertNull(upload.result);
+    }
+
+    @Test
+    public void testFailedUploadIsAborted() throws IOException {
+        byte[] data = randomBytes(10_000);
+        InMemoryUpload upload = new InMemoryUpload(1024, 3, executor);
+        upload.failPart = 4;
+
+        assertThrows(IOException.class, () -> {
+            writeInChunks(upload, data, 1000);
+            upload.close();
+        });
+        assertTrue(upload.aborted);
+        // Only once no part was being uploaded anymore
+        assertEquals(0, upload.inFlightWhenAborted);
+        assertTrue(upload.parts.isEmpty());
+    }
+
+    @Test
+    public void testCancelledUploadIsAborted() throws IOException {
+        byte[] data = randomBytes(5_000);
+        InMemoryUpload upload = new InMemoryUpload(1024, 2, executor);
+
+        writeInChunks(upload, data, 1000);
+        upload.cancel();
+
+        assertTrue(upload.aborted);
+        assertEquals(0, upload.inFlightWhenAborted);
+        assertNull(upload.result);
+        assertThrows(IOException.class, () -> upload.write(1));
+    }
+
+    @Test
+    public void testUploadIsStartedOnce() throws IOException {
+        InMemoryUpload upload = new InMemoryUpload(1024, 2, executor);
+
+        writeInChunks(upload, randomBytes(5_000), 1000);
+        upload.close();
+
+        assertEquals(1, upload.starts);
+        assertFalse(upload.aborted);
+    }
+}
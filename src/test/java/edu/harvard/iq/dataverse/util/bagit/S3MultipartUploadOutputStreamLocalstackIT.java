@@ -0,0 +1,110 @@
+package edu.harvard.iq.dataverse.util.bagit;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.ListMultipartUploadsRequest;
+import edu.harvard.iq.dataverse.util.testing.Tags;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.commons.io.IOUtils;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.localstack.LocalStackContainer;
+import static org.testcontainers.containers.localstack.LocalStackContainer.Service.S3;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+// https://java.testcontainers.org/modules/localstack/
+@Tag(Tags.INTEGRATION_TEST)
+@Tag(Tags.USES_TESTCONTAINERS)
+@Testcontainers(disabledWithoutDocker = true)
+class S3MultipartUploadOutputStreamLocalstackIT {
+
+    static final String bucketName = "bucket-" + UUID.randomUUID().toString();
+    static final int partSize = S3MultipartUploadOutputStream.MIN_PART_SIZE;
+    static AmazonS3 s3 = null;
+    static ExecutorService executor = null;
+
+    static DockerImageName localstackImage = DockerImageName.parse("localstack/localstack:2.3.2");
+    @Container
+    static LocalStackContainer localstack = new LocalStackContainer(localstackImage)
+            .withServices(S3);
+
+    @BeforeAll
+    static void setUp() {
+        s3 = AmazonS3ClientBuilder
+                .standard()
+                .withEndpointConfiguration(
+                        new AwsClientBuilder.EndpointConfiguration(
+                                localstack.getEndpoint().toString(),
+                                localstack.getRegion()
+                        )
+                )
+                .withCredentials(
+                        new AWSStaticCredentialsProvider(
+                                new BasicAWSCredentials(localstack.getAccessKey(), localstack.getSecretKey())
+                        )
+                )
+                .withPathStyleAccessEnabled(true)
+                .build();
+        s3.createBucket(bucketName);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] download(String key) throws IOException {
+        try (InputStream in = s3.getObject(bucketName, key).getObjectContent()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    @Test
+    void testUploadInParts() throws IOException {
+        byte[] data = randomBytes(2 * partSize + 1000);
+        String key = "space/bag.zip";
+
+        try (S3MultipartUploadOutputStream out = new S3MultipartUploadOutputStream(s3, bucketName, key, partSize, 2, executor)) {
+            out.write(data);
+        }
+
+        assertArrayEquals(data, download(key));
+    }
+
+    @Test
+    void testCancelledUploadIsAborted() throws IOException {
+        byte[] data = randomBytes(2 * partSize + 1000);
+        String key = "space/cancelled-bag.zip";
+
+        S3MultipartUploadOutputStream out = new S3MultipartUploadOutputStream(s3, bucketName, key, partSize, 1, executor);
+        out.write(data);
+        out.cancel();
+
+        assertFalse(s3.doesObjectExist(bucketName, key));
+        // S3 does not keep the parts uploaded before the upload was cancelled
+        assertEquals(0, s3.listMultipartUploads(new ListMultipartUploadsRequest(bucketName).withPrefix(key))
+                .getMultipartUploads().size());
+    }
+}
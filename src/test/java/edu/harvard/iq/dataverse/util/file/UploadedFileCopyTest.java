@@ -0,0 +1,60 @@
+package edu.harvard.iq.dataverse.util.file;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadedFileCopyTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testLargeFile() throws IOException {
+        byte[] bytes = new byte[200 * 1024 + 17];
+        new Random(42).nextBytes(bytes);
+        Path target = tempDir.resolve("upload");
+
+        UploadedFileCopy copy = UploadedFileCopy.save(new ByteArrayInputStream(bytes), target, ChecksumType.SHA256);
+
+        assertArrayEquals(bytes, Files.readAllBytes(target));
+        assertEquals(bytes.length, copy.getSize());
+        assertEquals(ChecksumType.SHA256, copy.getChecksumType());
+        assertEquals(FileUtil.calculateChecksum(bytes, ChecksumType.SHA256), copy.getChecksum());
+        assertArrayEquals(Arrays.copyOf(bytes, UploadedFileCopy.HEADER_SIZE), copy.getHeader());
+    }
+
+    @Test
+    public void testSmallFile() throws IOException {
+        byte[] bytes = "SIMPLE  =                    T".getBytes();
+        Path target = tempDir.resolve("upload");
+
+        UploadedFileCopy copy = UploadedFileCopy.save(new ByteArrayInputStream(bytes), target, ChecksumType.MD5);
+
+        assertEquals(bytes.length, copy.getSize());
+        assertEquals(FileUtil.calculateChecksum(bytes, ChecksumType.MD5), copy.getChecksum());
+        assertArrayEquals(bytes, copy.getHeader());
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        Path target = tempDir.resolve("upload");
+
+        UploadedFileCopy copy = UploadedFileCopy.save(new ByteArrayInputStream(new byte[0]), target, ChecksumType.MD5);
+
+        assertTrue(Files.exists(target));
+        assertEquals(0, copy.getSize());
+        assertEquals(0, copy.getHeader().length);
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", copy.getChecksum());
+    }
+}
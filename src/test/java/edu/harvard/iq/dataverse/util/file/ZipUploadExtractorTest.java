@@ -0,0 +1,149 @@
+package edu.harvard.iq.dataverse.util.file;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.datasetutility.FileExceedsMaxSizeException;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZipUploadExtractorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ExecutorService executor;
+    private Path zipPath;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        zipPath = tempDir.resolve("upload.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+            for (int i = 0; i < 50; i++) {
+                out.putNextEntry(new ZipEntry("dir/file" + i + ".txt"));
+                out.write(("content of file " + i).repeat(i + 1).getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private Path extractDir() throws IOException {
+        return Files.createDirectories(tempDir.resolve("extracted"));
+    }
+
+    @Test
+    public void testEntriesAreExtractedInOrder() throws Exception {
+        Path extractDir = extractDir();
+        ZipUploadExtractor extractor = new ZipUploadExtractor(executor, extractDir.toString(), ChecksumType.MD5, null, null);
+
+        try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+            List<ZipEntry> entries = Collections.list(zipFile.entries()).stream().map(e -> (ZipEntry) e).toList();
+
+            List<ZipUploadExtractor.ExtractedEntry> extracted = extractor.extract(zipFile, entries);
+
+            assertEquals(50, extracted.size());
+            for (int i = 0; i < 50; i++) {
+                ZipUploadExtractor.ExtractedEntry entry = extracted.get(i);
+                assertEquals("dir/file" + i + ".txt", entry.entry().getName());
+                byte[] expected = ("content of file " + i).repeat(i + 1).getBytes(StandardCharsets.UTF_8);
+                Path file = extractDir.resolve(entry.storageIdentifier());
+                assertArrayEquals(expected, Files.readAllBytes(file));
+                assertEquals(expected.length, entry.copy().getSize());
+                assertEquals(FileUtil.calculateChecksum(expected, ChecksumType.MD5), entry.copy().getChecksum());
+            }
+        }
+    }
+
+    @Test
+    public void testFileOverSizeLimitRemovesExtractedFiles() throws Exception {
+        Path extractDir = extractDir();
+        // the last few files are over 800 bytes:
+        ZipUploadExtractor extractor = new ZipUploadExtractor(executor, extractDir.toString(), ChecksumType.MD5, 800L, null);
+
+        try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+            List<ZipEntry> entries = Collections.list(zipFile.entries()).stream().map(e -> (ZipEntry) e).toList();
+
+            assertThrows(FileExceedsMaxSizeException.class, () -> extractor.extract(zipFile, entries));
+        }
+        try (var files = Files.list(extractDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testFileOverSizeLimitIsStoppedWhileUnpacking() throws Exception {
+        Path extractDir = extractDir();
+        Path bombPath = tempDir.resolve("bomb.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(bombPath))) {
+            out.putNextEntry(new ZipEntry("zeros.bin"));
+            byte[] zeros = new byte[1024 * 1024];
+            for (int i = 0; i < 64; i++) {
+                out.write(zeros);
+            }
+            out.closeEntry();
+        }
+        ZipUploadExtractor extractor = new ZipUploadExtractor(executor, extractDir.toString(), ChecksumType.MD5, 1024L, null);
+
+        try (ZipFile zipFile = new ZipFile(bombPath.toFile())) {
+            List<ZipEntry> entries = Collections.list(zipFile.entries()).stream().map(e -> (ZipEntry) e).toList();
+
+            FileExceedsMaxSizeException e = assertThrows(FileExceedsMaxSizeException.class, () -> extractor.extract(zipFile, entries));
+            // Only a little more than the limit was unpacked, not the 64 MB
+            assertFalse(e.getMessage().contains("MB"), e.getMessage());
+        }
+        try (var files = Files.list(extractDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testCombinedSizeOverQuota() throws Exception {
+        Path extractDir = extractDir();
+        ZipUploadExtractor extractor = new ZipUploadExtractor(executor, extractDir.toString(), ChecksumType.MD5, null, 1000L);
+
+        try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+            List<ZipEntry> entries = Collections.list(zipFile.entries()).stream().map(e -> (ZipEntry) e).toList();
+
+            assertThrows(FileExceedsStorageQuotaException.class, () -> extractor.extract(zipFile, entries));
+        }
+        try (var files = Files.list(extractDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testEmptyEntryList() throws Exception {
+        Path extractDir = extractDir();
+        ZipUploadExtractor extractor = new ZipUploadExtractor(executor, extractDir.toString(), ChecksumType.MD5, null, null);
+        try (OutputStream out = Files.newOutputStream(tempDir.resolve("empty.zip")); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("dir/"));
+            zip.closeEntry();
+        }
+
+        try (ZipFile zipFile = new ZipFile(tempDir.resolve("empty.zip").toFile())) {
+            assertTrue(extractor.extract(zipFile, List.of()).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package edu.harvard.iq.dataverse.util.json;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataFileCategory;
+import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.api.ApiConstants;
+import edu.harvard.iq.dataverse.util.testing.Tags;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonWriter;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingJsonPrinterTest {
+
+    private static final Logger logger = Logger.getLogger(StreamingJsonPrinterTest.class.getCanonicalName());
+
+    private static final DatasetVersion VERSION = new DatasetVersion();
+
+    static {
+        VERSION.setId(42L);
+    }
+
+    @Test
+    public void testSameOutputAsJsonPrinter() {
+        List<FileMetadata> files = new ArrayList<>();
+        for (long i = 0; i < 10; i++) {
+            files.add(createFileMetadata(i));
+        }
+        files.get(3).setCategories(List.of(createCategory("Data")));
+        files.get(5).setDirectoryLabel("subdir");
+        JsonObject versionWithoutFiles = Json.createObjectBuilder()
+                .add("id", 42)
+                .add("versionState", "RELEASED")
+                .add("metadataBlocks", Json.createObjectBuilder())
+                .build();
+
+        String expected = Json.createObjectBuilder()
+                .add("status", ApiConstants.STATUS_OK)
+                .add("data", Json.createObjectBuilder(versionWithoutFiles)
+                        .add("files", JsonPrinter.jsonFileMetadatas(files)))
+                .build().toString();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingJsonPrinter.writeDatasetVersionResponse(out, versionWithoutFiles, files);
+
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testNoFiles() {
+        JsonObject versionWithoutFiles = Json.createObjectBuilder().add("id", 42).build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        StreamingJsonPrinter.writeDatasetVersionResponse(out, versionWithoutFiles, List.of());
+
+        assertEquals("{\"status\":\"OK\",\"data\":{\"id\":42,\"files\":[]}}", out.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Compares serializing a synthetic version of 100,000 files with the
+     * builders against streaming it, as the files are produced, to an output stream
+     * that discards the bytes. Reports the time taken and the heap in use
+     * while the serialization is under way.
+     */
+    @Test
+    @Tag(Tags.NOT_ESSENTIAL_UNITTESTS)
+    public void benchmark100kFiles() {
+        int fileCount = 100_000;
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        // with the builders: all the files are in memory, then the whole tree
+        System.gc();
+        long start = System.nanoTime();
+        List<FileMetadata> allFiles = new ArrayList<>(fileCount);
+        for (long i = 0; i < fileCount; i++) {
+            allFiles.add(createFileMetadata(i));
+        }
+        JsonObject tree = Json.createObjectBuilder()
+                .add("status", ApiConstants.STATUS_OK)
+                .add("data", Json.createObjectBuilder().add("files", JsonPrinter.jsonFileMetadatas(allFiles)))
+                .build();
+        System.gc();
+        long builderHeap = memory.getHeapMemoryUsage().getUsed();
+        CountingOutputStream builderOut = new CountingOutputStream();
+        try (JsonWriter writer = Json.createWriter(builderOut)) {
+            writer.writeObject(tree);
+        }
+        long builderMillis = (System.nanoTime() - start) / 1_000_000;
+        allFiles = null;
+        tree = null;
+
+        // streamed: the files are produced as they are written
+        System.gc();
+        long[] streamingHeap = new long[1];
+        start = System.nanoTime();
+        CountingOutputStream streamingOut = new CountingOutputStream();
+        Iterable<FileMetadata> files = () -> new Iterator<>() {
+            long next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < fileCount;
+            }
+
+            @Override
+            public FileMetadata next() {
+                if (next == fileCount / 2) {
+                    System.gc();
+                    streamingHeap[0] = memory.getHeapMemoryUsage().getUsed();
+                }
+                return createFileMetadata(next++);
+            }
+        };
+        StreamingJsonPrinter.writeDatasetVersionResponse(streamingOut, Json.createObjectBuilder().build(), files);
+        long streamingMillis = (System.nanoTime() - start) / 1_000_000;
+
+        logger.info(String.format("%d files, %d bytes; builders: %d ms, %d MB heap in use; streaming: %d ms, %d MB heap in use",
+                fileCount, streamingOut.count, builderMillis, builderHeap >> 20, streamingMillis, streamingHeap[0] >> 20));
+
+        assertEquals(builderOut.count, streamingOut.count);
+        assertTrue(streamingHeap[0] < builderHeap);
+    }
+
+    private static FileMetadata createFileMetadata(long id) {
+        DataFile dataFile = new DataFile();
+        dataFile.setId(id);
+        dataFile.setContentType("text/plain");
+        dataFile.setFilesize(1000 + id);
+        dataFile.setChecksumType(DataFile.ChecksumType.MD5);
+        dataFile.setChecksumValue(String.format("%032x", id));
+        dataFile.setStorageIdentifier("s3://bucket:" + Long.toHexString(id));
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setId(id);
+        fileMetadata.setLabel("file" + id + ".txt");
+        fileMetadata.setDescription("File number " + id);
+        fileMetadata.setDatasetVersion(VERSION);
+        fileMetadata.setDataFile(dataFile);
+        fileMetadata.setCategories(new ArrayList<>());
+        return fileMetadata;
+    }
+
+    private static DataFileCategory createCategory(String name) {
+        DataFileCategory category = new DataFileCategory();
+        category.setName(name);
+        return category;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}